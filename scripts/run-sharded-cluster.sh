@@ -0,0 +1,27 @@
+#!/bin/sh
+# Runs the sharded Control Center as local processes: one coordinator and N workers.
+#
+#   scripts/run-sharded-cluster.sh [workers] [traffic control systems]
+#
+# Type "summary", "config <scans> <length> [fixed]", "workers" or "quit" on the coordinator console.
+# Kill a worker (kill <pid>) to watch its Traffic Control Systems move to the others.
+set -e
+cd "$(dirname "$0")/.."
+
+WORKERS=${1:-3}
+SYSTEMS=${2:-16}
+COORDINATOR_PORT=50060
+
+mvn -q -B compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+CP="target/classes:$(cat target/classpath.txt)"
+
+i=1
+while [ "$i" -le "$WORKERS" ]; do
+  (sleep 2; java -cp "$CP" controlCenterCluster.ShardWorker "worker-$i" $((COORDINATOR_PORT + i)) "localhost:$COORDINATOR_PORT") \
+    > "target/worker-$i.log" 2>&1 &
+  echo "worker-$i: port $((COORDINATOR_PORT + i)), log target/worker-$i.log"
+  i=$((i + 1))
+done
+
+trap 'kill $(jobs -p) 2>/dev/null' EXIT
+java -cp "$CP" controlCenterCluster.ShardCoordinator "$COORDINATOR_PORT" "$SYSTEMS"
@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package cityStateStore;
+
+/**
+ * Class represents an immutable, consistent copy of the CityStateStore taken at one point in time.
+ *
+ * It keeps the columnar layout of the store: Traffic Light Systems and Traffic Lights
+ * are addressed by their dense index in the snapshot, and the vehicle counters of every
+ * VRS come already summed per Traffic Light System, as the store keeps them.
+ *
+ * Snapshots are never modified after construction, so they can be shared freely
+ * between any number of monitoring threads.
+ */
+public class CityStateSnapshot {
+
+	// vars
+	private final long version;
+	private final long takenAtMillis;
+
+	private final int lightCount;
+	private final int[] lightIds;
+	private final int[] lightTlsIndexes;
+	private final long[] lightStateWords;
+
+	private final int tlsCount;
+	private final int[] tlsIds;
+	private final int[] tlsTcsIds;
+	private final long[] tlsStateWords;
+	private final int[][] tlsVehicleCounts;   // [vehicle class][tls index]
+	private final int[] tlsAnomalies;
+
+	private final int vrsCount;
+	private final int[] vrsIds;
+	private final int[][] vrsVehicleCounts;   // [vehicle class][vrs index]
+	private final int[] vrsAnomalies;
+
+	private final IntIndexMap tlsIndexes;
+
+	final CityStateStore.Columns columns;    // kept for the store to copy only the changed stripes into the next snapshot
+
+
+	/**
+	 * Initialises a snapshot from the column copies taken by the store,
+	 * summing the VRS anomalies of each Traffic Light System.
+	 * **/
+	CityStateSnapshot(CityStateStore.Columns columns) {
+		this.columns = columns;
+		this.version = columns.version;
+		this.takenAtMillis = System.currentTimeMillis();
+
+		this.lightCount = columns.lightCount;
+		this.lightIds = columns.lightIds;
+		this.lightTlsIndexes = columns.lightTlsIndexes;
+		this.lightStateWords = columns.lightStateWords;
+
+		this.tlsCount = columns.tlsCount;
+		this.tlsIds = columns.tlsIds;
+		this.tlsTcsIds = columns.tlsTcsIds;
+		this.tlsStateWords = columns.tlsStateWords;
+		this.tlsVehicleCounts = columns.tlsVehicleCounts;
+		this.tlsAnomalies = new int[tlsCount];
+		this.tlsIndexes = new IntIndexMap(tlsCount);
+
+		this.vrsCount = columns.vrsCount;
+		this.vrsIds = columns.vrsIds;
+		this.vrsVehicleCounts = columns.vehicleCounts;
+		this.vrsAnomalies = columns.anomalyCounts;
+
+		for (int tls = 0; tls < tlsCount; tls++) {
+			tlsIndexes.put(tlsIds[tls], tls);
+		}
+
+		// roll the anomalies of every VRS up to its Traffic Light System
+		for (int vrs = 0; vrs < columns.vrsCount; vrs++) {
+			int tls = columns.vrsTlsIndexes[vrs];
+			if (tls < 0) {
+				continue;     // VRS not attached to any Traffic Light System
+			}
+			tlsAnomalies[tls] += columns.anomalyCounts[vrs];
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get version of the store this snapshot was taken at
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get time the snapshot was taken, in milliseconds since epoch
+	 */
+	public long getTakenAtMillis() {
+		return takenAtMillis;
+	}
+
+	/**
+	 * Get number of Traffic Light Systems in the snapshot
+	 */
+	public int getTrafficLightSystemCount() {
+		return tlsCount;
+	}
+
+	/**
+	 * Get index of a Traffic Light System in the snapshot by its ID, or -1 if it is not part of it
+	 */
+	public int indexOfTrafficLightSystem(int tlsId) {
+		return tlsIndexes.get(tlsId);
+	}
+
+	/**
+	 * Get ID of the Traffic Light System at the given index
+	 */
+	public int getTrafficLightSystemId(int tlsIndex) {
+		return tlsIds[tlsIndex];
+	}
+
+	/**
+	 * Get ID of the Traffic Control System that owns the Traffic Light System at the given index
+	 */
+	public int getTrafficControlSystemId(int tlsIndex) {
+		return tlsTcsIds[tlsIndex];
+	}
+
+	/**
+	 * Get state of the Traffic Light System at the given index
+	 */
+	public String getTrafficLightSystemState(int tlsIndex) {
+		return CityStateStore.decodeState(getTrafficLightSystemStateCode(tlsIndex));
+	}
+
+	/**
+	 * Get state code of the Traffic Light System at the given index
+	 */
+	public int getTrafficLightSystemStateCode(int tlsIndex) {
+		return CityStateStore.readState(tlsStateWords, tlsIndex);
+	}
+
+	/**
+	 * Get vehicles of one class last counted by all VRS of the Traffic Light System at the given index
+	 */
+	public int getVehicleCount(int tlsIndex, int vehicleClass) {
+		return tlsVehicleCounts[vehicleClass][tlsIndex];
+	}
+
+	/**
+	 * Get vehicles of all classes last counted by all VRS of the Traffic Light System at the given index
+	 */
+	public int getTotalVehicles(int tlsIndex) {
+		int total = 0;
+		for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+			total += tlsVehicleCounts[vehicleClass][tlsIndex];
+		}
+		return total;
+	}
+
+	/**
+	 * Get anomalies last reported by all VRS of the Traffic Light System at the given index
+	 */
+	public int getAnomalies(int tlsIndex) {
+		return tlsAnomalies[tlsIndex];
+	}
+
+	/**
+	 * Get number of Traffic Lights in the snapshot
+	 */
+	public int getLightCount() {
+		return lightCount;
+	}
+
+	/**
+	 * Get ID of the Traffic Light at the given index
+	 */
+	public int getLightId(int lightIndex) {
+		return lightIds[lightIndex];
+	}
+
+	/**
+	 * Get snapshot index of the Traffic Light System the light at the given index belongs to, or -1
+	 */
+	public int getLightTrafficLightSystemIndex(int lightIndex) {
+		return lightTlsIndexes[lightIndex];
+	}
+
+	/**
+	 * Get state of the Traffic Light at the given index
+	 */
+	public String getLightState(int lightIndex) {
+		return CityStateStore.decodeState(getLightStateCode(lightIndex));
+	}
+
+	/**
+	 * Get state code of the Traffic Light at the given index
+	 */
+	public int getLightStateCode(int lightIndex) {
+		return CityStateStore.readState(lightStateWords, lightIndex);
+	}
+
+	/**
+	 * Get number of Visual Recognition Systems in the snapshot
+	 */
+	public int getVisualRecognitionSystemCount() {
+		return vrsCount;
+	}
+
+	/**
+	 * Get ID of the Visual Recognition System at the given index
+	 */
+	public int getVisualRecognitionSystemId(int vrsIndex) {
+		return vrsIds[vrsIndex];
+	}
+
+	/**
+	 * Get vehicles of one class counted by the Visual Recognition System at the given index
+	 */
+	public int getVisualRecognitionSystemVehicleCount(int vrsIndex, int vehicleClass) {
+		return vrsVehicleCounts[vehicleClass][vrsIndex];
+	}
+
+	/**
+	 * Get anomalies last reported by the Visual Recognition System at the given index
+	 */
+	public int getVisualRecognitionSystemAnomalies(int vrsIndex) {
+		return vrsAnomalies[vrsIndex];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		str.append("City state snapshot v").append(version).append(" (").append(tlsCount)
+			.append(" Traffic Light Systems, ").append(lightCount).append(" Traffic Lights)");
+
+		for (int tls = 0; tls < tlsCount; tls++) {
+			str.append("\nTLS ").append(tlsIds[tls])
+				.append(" state ").append(getTrafficLightSystemState(tls))
+				.append(", total vehicles ").append(getTotalVehicles(tls));
+		}
+		return str.toString();
+	}
+}
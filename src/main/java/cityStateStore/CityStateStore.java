@@ -0,0 +1,1403 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Singleton class holds the live state of every Traffic Light, Traffic Light System and
+ * Visual Recognition System of the city in a columnar (struct of arrays) layout.
+ *
+ * - Light and Traffic Light System states are bit packed, 2 bits per state, 32 states per long word.
+ * - Vehicle counters are plain int columns, one column per vehicle class, indexed by VRS.
+ * - The counters are also rolled up, per vehicle class, to every Traffic Light System, Traffic Control System
+ *   and the whole city. Each write to a VRS counter adds its change to the three parent totals in the same
+ *   update section, so the totals of any level are read in constant time and always match their VRSs.
+ * - Every entity is addressed by a dense int index handed out at registration,
+ *   IntIndexMaps translate system IDs to those indexes. The rows of an unregistered Traffic Control System
+ *   are reused by the next registrations, until then they hold NO_ID, no state and zero counters.
+ *
+ * TrafficLight, TrafficLightSystem, VisualRecognitionSystem and TrafficDataCollector keep their
+ * public API but act as thin views over this store, so city wide scans walk a few primitive arrays
+ * instead of chasing object references across the heap.
+ *
+ * Concurrency:
+ * The rows are split into STRIPES row groups by Traffic Control System, a Traffic Light, Traffic Light System
+ * or VRS belongs to the stripe of its Traffic Control System and rows not attached to any system to stripe 0.
+ * - Each stripe has its own StampedLock, so the control loops of different Traffic Control Systems write
+ *   in parallel. A stripe lock is reentrant for the owning thread, a whole phase change is grouped in one
+ *   system update section with beginSystemUpdate()/endSystemUpdate().
+ * - Readers of a row use the stripe lock as a seqlock: an optimistic read validated against the stripe,
+ *   falling back to its read lock only when a write of the same stripe overlaps them.
+ * - Structural changes (registration, unregistration, growing the columns) take the structure lock and
+ *   then every stripe, in the global update section of beginUpdate()/endUpdate(). Only they move rows
+ *   between stripes or replace the columns. A structural change must not be started inside a system
+ *   update section.
+ * - The city totals are atomic, they are added to by the writers of every stripe.
+ * Every stripe has its own version, bumped when one of its sections closes. A snapshot keeps the stripe
+ * versions it was taken at and the next one only copies the rows of the stripes that changed since.
+ */
+public class CityStateStore {
+
+	// state codes
+	public static final int STATE_NONE = 0;
+	public static final int STATE_GREEN = 1;
+	public static final int STATE_YELLOW = 2;
+	public static final int STATE_RED = 3;
+
+	// vehicle classes, one counter column each
+	public static final int CARS = 0;
+	public static final int TRUCKS = 1;
+	public static final int BIKES = 2;
+	public static final int BUSES = 3;
+	public static final int VEHICLE_CLASSES = 4;
+
+	public static final int NO_ID = Integer.MIN_VALUE;   // ID of a free row, never a system ID
+
+	private static final String[] STATE_NAMES = { "", "green", "yellow", "red" };
+	private static final int STATES_PER_WORD = 32;               // 2 bits per state
+	private static final long FIELD_LOW_BITS = 0x5555555555555555L;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int OPTIMISTIC_SNAPSHOT_ATTEMPTS = 8;
+
+	static final int STRIPES = 64;                                // row groups, a power of two
+	private static final int STRIPE_MASK = STRIPES - 1;
+
+	// row values readable through readRow()
+	private static final int LIGHT_STATE = 0;
+	private static final int TLS_STATE = 1;
+	private static final int VRS_COUNT = 2;
+	private static final int VRS_TOTAL = 3;
+	private static final int VRS_ANOMALIES = 4;
+	private static final int TLS_COUNT = 5;
+	private static final int TLS_TOTAL = 6;
+	private static final int TCS_COUNT = 7;
+	private static final int TCS_TOTAL = 8;
+
+	private static final VarHandle STATE_WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+	// vars
+
+	private final StampedLock structureLock;
+	private volatile Thread structureWriter;    // thread owning the global update section, makes it reentrant
+	private int structureDepth;
+	private long structureStamp;
+	private volatile long structureVersion;     // number of global update sections closed so far
+	private final Stripe[] stripes;
+	private volatile CityStateSnapshot lastSnapshot;
+
+	// Traffic Light columns
+	private int lightCount;
+	private int[] lightIds;
+	private int[] lightTlsIndexes;
+	private long[] lightStateWords;
+	private final IntIndexMap lightIndexes;
+	private final ArrayDeque<Integer> freeLights;
+
+	// Traffic Light System columns
+	private int tlsCount;
+	private int[] tlsIds;
+	private int[] tlsTcsIds;
+	private int[] tlsTcsIndexes;
+	private long[] tlsStateWords;
+	private int[][] tlsVehicleCounts;  // [vehicle class][tls index], rolled up from its VRSs
+	private final IntIndexMap tlsIndexes;
+	private final ArrayDeque<Integer> freeTrafficLightSystems;
+
+	// Traffic Control System columns, a system is added by its first Traffic Light System
+	private int tcsCount;
+	private int[] tcsIds;
+	private int[][] tcsVehicleCounts;  // [vehicle class][tcs index], rolled up from its Traffic Light Systems
+	private final IntIndexMap tcsIndexes;
+	private final ArrayDeque<Integer> freeTrafficControlSystems;
+	private final AtomicLongArray cityVehicleCounts;   // [vehicle class], added to by the writers of every stripe
+
+	// Visual Recognition System columns
+	private int vrsCount;
+	private int[] vrsIds;
+	private int[] vrsLightIndexes;
+	private int[] vrsTlsIndexes;
+	private int[][] vehicleCounts;     // [vehicle class][vrs index]
+	private int[] anomalyCounts;
+	private final IntIndexMap vrsIndexes;
+	private final ArrayDeque<Integer> freeVisualRecognitionSystems;
+
+
+	// Constructor
+	public CityStateStore() {
+		this.structureLock = new StampedLock();
+		this.stripes = new Stripe[STRIPES];
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			stripes[stripe] = new Stripe();
+		}
+
+		this.lightIds = new int[INITIAL_CAPACITY];
+		this.lightTlsIndexes = new int[INITIAL_CAPACITY];
+		this.lightStateWords = new long[wordsFor(INITIAL_CAPACITY)];
+		this.lightIndexes = new IntIndexMap(INITIAL_CAPACITY);
+		this.freeLights = new ArrayDeque<>();
+
+		this.tlsIds = new int[INITIAL_CAPACITY];
+		this.tlsTcsIds = new int[INITIAL_CAPACITY];
+		this.tlsTcsIndexes = new int[INITIAL_CAPACITY];
+		this.tlsStateWords = new long[wordsFor(INITIAL_CAPACITY)];
+		this.tlsVehicleCounts = new int[VEHICLE_CLASSES][INITIAL_CAPACITY];
+		this.tlsIndexes = new IntIndexMap(INITIAL_CAPACITY);
+		this.freeTrafficLightSystems = new ArrayDeque<>();
+
+		this.tcsIds = new int[INITIAL_CAPACITY];
+		this.tcsVehicleCounts = new int[VEHICLE_CLASSES][INITIAL_CAPACITY];
+		this.tcsIndexes = new IntIndexMap(INITIAL_CAPACITY);
+		this.freeTrafficControlSystems = new ArrayDeque<>();
+		this.cityVehicleCounts = new AtomicLongArray(VEHICLE_CLASSES);
+
+		this.vrsIds = new int[INITIAL_CAPACITY];
+		this.vrsLightIndexes = new int[INITIAL_CAPACITY];
+		this.vrsTlsIndexes = new int[INITIAL_CAPACITY];
+		this.vehicleCounts = new int[VEHICLE_CLASSES][INITIAL_CAPACITY];
+		this.anomalyCounts = new int[INITIAL_CAPACITY];
+		this.vrsIndexes = new IntIndexMap(INITIAL_CAPACITY);
+		this.freeVisualRecognitionSystems = new ArrayDeque<>();
+	}
+
+	/***
+	 * Static method returns the store shared by the whole Control Centre.
+	 * It is created by class initialisation and returned without taking a monitor, so control loops on virtual threads
+	 * are never pinned here.
+	 * **/
+	public static CityStateStore getInstance() {
+		return Holder.INSTANCE;
+	}
+
+
+	/***********************  STATE CODES ******************/
+
+	/***
+	 * Method encodes a state name ("green", "yellow", "red") into its 2 bit code.
+	 * A null or empty state is encoded as STATE_NONE.
+	 * **/
+	public static int encodeState(String state) {
+		if (state == null || state.isEmpty()) {
+			return STATE_NONE;
+		}
+		for (int code = STATE_GREEN; code < STATE_NAMES.length; code++) {
+			if (STATE_NAMES[code].equals(state)) {
+				return code;
+			}
+		}
+		throw new IllegalArgumentException("Unknown traffic light state: " + state);
+	}
+
+	/***
+	 * Method decodes a 2 bit state code into its state name
+	 * **/
+	public static String decodeState(int code) {
+		return STATE_NAMES[code & 3];
+	}
+
+
+	/***********************  UPDATE SECTIONS ******************/
+
+	/***
+	 * Method opens a global update section, for structural changes or writes spanning many Traffic Control Systems.
+	 *
+	 * It takes the structure lock and every stripe, so every write made by the current thread until
+	 * the matching endUpdate() is seen by readers all at once. Sections can be nested by the same thread.
+	 * **/
+	public void beginUpdate() {
+		Thread current = Thread.currentThread();
+		if (structureWriter == current) {
+			structureDepth++;
+			return;
+		}
+		for (Stripe stripe : stripes) {
+			if (stripe.writer == current) {
+				throw new IllegalStateException("Global update section opened inside a system update section");
+			}
+		}
+		long stamp = structureLock.writeLock();
+		structureWriter = current;
+		structureStamp = stamp;
+		structureDepth = 1;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			lockStripe(stripe);
+		}
+	}
+
+	/***
+	 * Method closes the global update section opened by the last call to beginUpdate()
+	 * **/
+	public void endUpdate() {
+		if (structureWriter != Thread.currentThread()) {
+			throw new IllegalStateException("Current thread has no open update section");
+		}
+		if (--structureDepth == 0) {
+			structureVersion++;        // only the structure lock owner gets here, every snapshot row is copied again
+			for (int stripe = STRIPES - 1; stripe >= 0; stripe--) {
+				unlockStripe(stripe);
+			}
+			long stamp = structureStamp;
+			structureWriter = null;
+			structureLock.unlockWrite(stamp);
+		}
+	}
+
+	/***
+	 * Method opens a system update section over the stripe of a Traffic Light System, which is the stripe
+	 * of its Traffic Control System and of all its lights and VRSs.
+	 *
+	 * Every write the current thread makes to those rows until the matching endSystemUpdate() is seen
+	 * by readers all at once, while the systems of other stripes keep writing. Sections can be nested
+	 * by the same thread, but must not open a section of another Traffic Control System.
+	 *
+	 * @return the section to pass to endSystemUpdate()
+	 * **/
+	public int beginSystemUpdate(int tlsIndex) {
+		return lockRow(TLS_STATE, tlsIndex);
+	}
+
+	/***
+	 * Method closes a system update section opened by beginSystemUpdate()
+	 * **/
+	public void endSystemUpdate(int section) {
+		if (stripes[section].writer != Thread.currentThread()) {
+			throw new IllegalStateException("Current thread has no open update section");
+		}
+		unlockStripe(section);
+	}
+
+	/*
+	 * Method takes the write lock of a stripe, reentrant for the thread already owning it
+	 */
+	private void lockStripe(int index) {
+		Stripe stripe = stripes[index];
+		if (stripe.writer == Thread.currentThread()) {
+			stripe.depth++;
+			return;
+		}
+		long stamp = stripe.lock.writeLock();
+		stripe.writer = Thread.currentThread();
+		stripe.stamp = stamp;
+		stripe.depth = 1;
+	}
+
+	/*
+	 * Method releases the write lock of a stripe taken by lockStripe(), bumping its version when the outermost section closes
+	 */
+	private void unlockStripe(int index) {
+		Stripe stripe = stripes[index];
+		if (--stripe.depth == 0) {
+			stripe.version++;          // only the stripe lock owner gets here
+			long stamp = stripe.stamp;
+			stripe.writer = null;
+			stripe.lock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * Method takes the write lock of the stripe of a row.
+	 * The row is mapped again once the lock is held: rows only move between stripes in a global section,
+	 * which needs every stripe, so the mapping cannot change while the lock is held.
+	 */
+	private int lockRow(int value, int index) {
+		while (true) {
+			int stripe = stripeOf(value, index);
+			lockStripe(stripe);
+			if (stripeOf(value, index) == stripe) {
+				return stripe;
+			}
+			unlockStripe(stripe);
+		}
+	}
+
+	/*
+	 * Method takes the structure read lock, unless the current thread owns the global update section
+	 */
+	private long readLock() {
+		return structureWriter == Thread.currentThread() ? 0L : structureLock.readLock();
+	}
+
+	/*
+	 * Method releases a stamp returned by readLock()
+	 */
+	private void unlockRead(long stamp) {
+		if (stamp != 0L) {
+			structureLock.unlockRead(stamp);
+		}
+	}
+
+	/*
+	 * Method takes the read lock of a stripe, unless the current thread is writing it
+	 */
+	private long readLockStripe(int index) {
+		Stripe stripe = stripes[index];
+		return stripe.writer == Thread.currentThread() ? 0L : stripe.lock.readLock();
+	}
+
+	/*
+	 * Method releases a stamp returned by readLockStripe()
+	 */
+	private void unlockReadStripe(int index, long stamp) {
+		if (stamp != 0L) {
+			stripes[index].lock.unlockRead(stamp);
+		}
+	}
+
+	/*
+	 * Lock, owner and version of one row group
+	 */
+	private static final class Stripe {
+		final StampedLock lock = new StampedLock();
+		volatile Thread writer;        // thread owning the write lock, makes system update sections reentrant
+		int depth;
+		long stamp;
+		volatile long version;         // number of sections of this stripe closed so far
+	}
+
+
+	/***********************  REGISTRATION ******************/
+
+	/***
+	 * Method registers a Traffic Light System and returns its dense index.
+	 * Its Traffic Control System is added to the store the first time one of its systems is registered.
+	 * **/
+	public int registerTrafficLightSystem(int tlsId, int tcsId) {
+		beginUpdate();
+		try {
+			if (freeTrafficLightSystems.isEmpty() && tlsCount == tlsIds.length) {
+				growTrafficLightSystems(tlsCount << 1);
+			}
+			int index = freeTrafficLightSystems.isEmpty() ? tlsCount++ : freeTrafficLightSystems.pop();
+			tlsIds[index] = tlsId;
+			tlsTcsIds[index] = tcsId;
+			tlsTcsIndexes[index] = trafficControlSystemIndex(tcsId);
+			tlsIndexes.put(tlsId, index);
+			return index;
+		} finally {
+			endUpdate();
+		}
+	}
+
+	/***
+	 * Method registers a Traffic Light and returns its dense index.
+	 * The light is linked to its Traffic Light System if that system is already registered.
+	 * **/
+	public int registerTrafficLight(int lightId, int tlsId) {
+		beginUpdate();
+		try {
+			if (freeLights.isEmpty() && lightCount == lightIds.length) {
+				growLights(lightCount << 1);
+			}
+			int index = freeLights.isEmpty() ? lightCount++ : freeLights.pop();
+			lightIds[index] = lightId;
+			lightTlsIndexes[index] = tlsIndexes.get(tlsId);
+			lightIndexes.put(lightId, index);
+			return index;
+		} finally {
+			endUpdate();
+		}
+	}
+
+	/***
+	 * Method registers a Visual Recognition System and returns its dense index.
+	 * The VRS is linked to its Traffic Light and Traffic Light System if they are already registered.
+	 * **/
+	public int registerVisualRecognitionSystem(int vrsId, int lightId, int tlsId) {
+		beginUpdate();
+		try {
+			if (freeVisualRecognitionSystems.isEmpty() && vrsCount == vrsIds.length) {
+				growVisualRecognitionSystems(vrsCount << 1);
+			}
+			int index = freeVisualRecognitionSystems.isEmpty() ? vrsCount++ : freeVisualRecognitionSystems.pop();
+			vrsIds[index] = vrsId;
+			vrsLightIndexes[index] = lightIndexes.get(lightId);
+			vrsTlsIndexes[index] = tlsIndexes.get(tlsId);
+			vrsIndexes.put(vrsId, index);
+			return index;
+		} finally {
+			endUpdate();
+		}
+	}
+
+	/*
+	 * Method returns the index of a Traffic Control System, adding it if it is not known yet
+	 */
+	private int trafficControlSystemIndex(int tcsId) {
+		int index = tcsIndexes.get(tcsId);
+		if (index >= 0) {
+			return index;
+		}
+		if (freeTrafficControlSystems.isEmpty() && tcsCount == tcsIds.length) {
+			growTrafficControlSystems(tcsCount << 1);
+		}
+		index = freeTrafficControlSystems.isEmpty() ? tcsCount++ : freeTrafficControlSystems.pop();
+		tcsIds[index] = tcsId;
+		tcsIndexes.put(tcsId, index);
+		return index;
+	}
+
+	/***
+	 * Method unregisters a Traffic Control System with its Traffic Light Systems, lights and VRSs.
+	 * Their counters are taken out of the city totals and their rows are reused by the next registrations.
+	 * **/
+	public void unregisterTrafficControlSystem(int tcsId) {
+		beginUpdate();
+		try {
+			int tcsIndex = tcsIndexes.get(tcsId);
+			if (tcsIndex < 0) {
+				return;
+			}
+			for (int vrs = 0; vrs < vrsCount; vrs++) {
+				int tls = vrsTlsIndexes[vrs];
+				if (vrsIds[vrs] != NO_ID && tls >= 0 && tlsTcsIndexes[tls] == tcsIndex) {
+					resetVehicleCounts(vrs);
+					anomalyCounts[vrs] = 0;
+					vrsIndexes.remove(vrsIds[vrs]);
+					vrsIds[vrs] = NO_ID;
+					vrsLightIndexes[vrs] = -1;
+					vrsTlsIndexes[vrs] = -1;
+					freeVisualRecognitionSystems.push(vrs);
+				}
+			}
+			for (int light = 0; light < lightCount; light++) {
+				int tls = lightTlsIndexes[light];
+				if (lightIds[light] != NO_ID && tls >= 0 && tlsTcsIndexes[tls] == tcsIndex) {
+					writeState(lightStateWords, light, STATE_NONE);
+					lightIndexes.remove(lightIds[light]);
+					lightIds[light] = NO_ID;
+					lightTlsIndexes[light] = -1;
+					freeLights.push(light);
+				}
+			}
+			for (int tls = 0; tls < tlsCount; tls++) {
+				if (tlsIds[tls] != NO_ID && tlsTcsIndexes[tls] == tcsIndex) {
+					writeState(tlsStateWords, tls, STATE_NONE);
+					tlsIndexes.remove(tlsIds[tls]);
+					tlsIds[tls] = NO_ID;
+					tlsTcsIds[tls] = NO_ID;
+					tlsTcsIndexes[tls] = -1;
+					freeTrafficLightSystems.push(tls);
+				}
+			}
+			tcsIndexes.remove(tcsId);
+			tcsIds[tcsIndex] = NO_ID;
+			freeTrafficControlSystems.push(tcsIndex);
+		} finally {
+			endUpdate();
+		}
+	}
+
+	/***
+	 * Method makes room for registering the given numbers of systems more without growing the columns
+	 * one doubling at a time, before a bulk load
+	 * **/
+	public void reserve(int trafficControlSystems, int lights, int trafficLightSystems, int visualRecognitionSystems) {
+		beginUpdate();
+		try {
+			if (tcsCount + trafficControlSystems > tcsIds.length) {
+				growTrafficControlSystems(tcsCount + trafficControlSystems);
+			}
+			if (lightCount + lights > lightIds.length) {
+				growLights(lightCount + lights);
+			}
+			if (tlsCount + trafficLightSystems > tlsIds.length) {
+				growTrafficLightSystems(tlsCount + trafficLightSystems);
+			}
+			if (vrsCount + visualRecognitionSystems > vrsIds.length) {
+				growVisualRecognitionSystems(vrsCount + visualRecognitionSystems);
+			}
+			tcsIndexes.ensureCapacity(tcsCount + trafficControlSystems);
+			lightIndexes.ensureCapacity(lightCount + lights);
+			tlsIndexes.ensureCapacity(tlsCount + trafficLightSystems);
+			vrsIndexes.ensureCapacity(vrsCount + visualRecognitionSystems);
+		} finally {
+			endUpdate();
+		}
+	}
+
+	/*
+	 * Method grows the Traffic Light columns to the given capacity
+	 */
+	private void growLights(int capacity) {
+		lightIds = Arrays.copyOf(lightIds, capacity);
+		lightTlsIndexes = Arrays.copyOf(lightTlsIndexes, capacity);
+		lightStateWords = Arrays.copyOf(lightStateWords, wordsFor(capacity));
+	}
+
+	/*
+	 * Method grows the Traffic Light System columns to the given capacity
+	 */
+	private void growTrafficLightSystems(int capacity) {
+		tlsIds = Arrays.copyOf(tlsIds, capacity);
+		tlsTcsIds = Arrays.copyOf(tlsTcsIds, capacity);
+		tlsTcsIndexes = Arrays.copyOf(tlsTcsIndexes, capacity);
+		tlsStateWords = Arrays.copyOf(tlsStateWords, wordsFor(capacity));
+		tlsVehicleCounts = growCounts(tlsVehicleCounts, capacity);
+	}
+
+	/*
+	 * Method grows the Traffic Control System columns to the given capacity
+	 */
+	private void growTrafficControlSystems(int capacity) {
+		tcsIds = Arrays.copyOf(tcsIds, capacity);
+		tcsVehicleCounts = growCounts(tcsVehicleCounts, capacity);
+	}
+
+	/*
+	 * Method grows the Visual Recognition System columns to the given capacity
+	 */
+	private void growVisualRecognitionSystems(int capacity) {
+		vrsIds = Arrays.copyOf(vrsIds, capacity);
+		vrsLightIndexes = Arrays.copyOf(vrsLightIndexes, capacity);
+		vrsTlsIndexes = Arrays.copyOf(vrsTlsIndexes, capacity);
+		anomalyCounts = Arrays.copyOf(anomalyCounts, capacity);
+		vehicleCounts = growCounts(vehicleCounts, capacity);
+	}
+
+	/*
+	 * Method returns a copy of counter columns, one per vehicle class, grown to the given capacity.
+	 * The columns are replaced together so optimistic readers never see them half grown.
+	 */
+	private static int[][] growCounts(int[][] columns, int capacity) {
+		int[][] counts = new int[VEHICLE_CLASSES][];
+		for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+			counts[vehicleClass] = Arrays.copyOf(columns[vehicleClass], capacity);
+		}
+		return counts;
+	}
+
+	/***
+	 * Method links an already registered VRS to another Traffic Light
+	 * **/
+	public void setVisualRecognitionSystemLight(int vrsIndex, int lightId) {
+		beginUpdate();
+		try {
+			vrsLightIndexes[vrsIndex] = lightIndexes.get(lightId);
+		} finally {
+			endUpdate();
+		}
+	}
+
+
+	/***********************  WRITES ******************/
+
+	/***
+	 * Method sets the state code of a Traffic Light
+	 * **/
+	public void setLightState(int lightIndex, int stateCode) {
+		int stripe = lockRow(LIGHT_STATE, lightIndex);
+		try {
+			writeState(lightStateWords, lightIndex, stateCode);
+		} finally {
+			unlockStripe(stripe);
+		}
+	}
+
+	/***
+	 * Method sets the state code of a Traffic Light System
+	 * **/
+	public void setTrafficLightSystemState(int tlsIndex, int stateCode) {
+		int stripe = lockRow(TLS_STATE, tlsIndex);
+		try {
+			writeState(tlsStateWords, tlsIndex, stateCode);
+		} finally {
+			unlockStripe(stripe);
+		}
+	}
+
+	/***
+	 * Method sets the counter of one vehicle class of a VRS
+	 * **/
+	public void setVehicleCount(int vrsIndex, int vehicleClass, int count) {
+		int stripe = lockRow(VRS_COUNT, vrsIndex);
+		try {
+			addToRollups(vrsIndex, vehicleClass, count - vehicleCounts[vehicleClass][vrsIndex]);
+			vehicleCounts[vehicleClass][vrsIndex] = count;
+		} finally {
+			unlockStripe(stripe);
+		}
+	}
+
+	/***
+	 * Method adds the vehicles counted in one traffic scan to the counters of a VRS
+	 * **/
+	public void addVehicleCounts(int vrsIndex, int cars, int trucks, int bikes, int buses) {
+		int stripe = lockRow(VRS_COUNT, vrsIndex);
+		try {
+			vehicleCounts[CARS][vrsIndex] += cars;
+			vehicleCounts[TRUCKS][vrsIndex] += trucks;
+			vehicleCounts[BIKES][vrsIndex] += bikes;
+			vehicleCounts[BUSES][vrsIndex] += buses;
+			addToRollups(vrsIndex, CARS, cars);
+			addToRollups(vrsIndex, TRUCKS, trucks);
+			addToRollups(vrsIndex, BIKES, bikes);
+			addToRollups(vrsIndex, BUSES, buses);
+		} finally {
+			unlockStripe(stripe);
+		}
+	}
+
+	/***
+	 * Method resets all vehicle counters of a VRS before a new scan cycle
+	 * **/
+	public void resetVehicleCounts(int vrsIndex) {
+		int stripe = lockRow(VRS_COUNT, vrsIndex);
+		try {
+			for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+				addToRollups(vrsIndex, vehicleClass, -vehicleCounts[vehicleClass][vrsIndex]);
+				vehicleCounts[vehicleClass][vrsIndex] = 0;
+			}
+		} finally {
+			unlockStripe(stripe);
+		}
+	}
+
+	/*
+	 * Method adds the change of a VRS counter to the totals of its Traffic Light System, Traffic Control System
+	 * and the city, called with the stripe of the VRS locked. Its Traffic Light System and Traffic Control System
+	 * are in the same stripe, the city total is atomic.
+	 */
+	private void addToRollups(int vrsIndex, int vehicleClass, int delta) {
+		if (delta == 0) {
+			return;
+		}
+		cityVehicleCounts.addAndGet(vehicleClass, delta);
+		int tls = vrsTlsIndexes[vrsIndex];
+		if (tls < 0) {
+			return;        // VRS not attached to any Traffic Light System
+		}
+		tlsVehicleCounts[vehicleClass][tls] += delta;
+		tcsVehicleCounts[vehicleClass][tlsTcsIndexes[tls]] += delta;
+	}
+
+	/***
+	 * Method sets the number of anomalies last detected by a VRS
+	 * **/
+	public void setAnomalies(int vrsIndex, int anomalies) {
+		int stripe = lockRow(VRS_ANOMALIES, vrsIndex);
+		try {
+			anomalyCounts[vrsIndex] = anomalies;
+		} finally {
+			unlockStripe(stripe);
+		}
+	}
+
+
+	/***********************  READS ******************/
+
+	/***
+	 * Get state code of a Traffic Light
+	 * **/
+	public int getLightState(int lightIndex) {
+		return readRow(LIGHT_STATE, lightIndex, 0);
+	}
+
+	/***
+	 * Get state code of a Traffic Light System
+	 * **/
+	public int getTrafficLightSystemState(int tlsIndex) {
+		return readRow(TLS_STATE, tlsIndex, 0);
+	}
+
+	/***
+	 * Get counter of one vehicle class of a VRS
+	 * **/
+	public int getVehicleCount(int vrsIndex, int vehicleClass) {
+		return readRow(VRS_COUNT, vrsIndex, vehicleClass);
+	}
+
+	/***
+	 * Get total of vehicles, all classes together, counted by a VRS in its last scan cycle
+	 * **/
+	public int getTotalVehicles(int vrsIndex) {
+		return readRow(VRS_TOTAL, vrsIndex, 0);
+	}
+
+	/***
+	 * Get vehicles of one class last counted by all VRSs of a Traffic Light System
+	 * **/
+	public int getTrafficLightSystemVehicleCount(int tlsIndex, int vehicleClass) {
+		return readRow(TLS_COUNT, tlsIndex, vehicleClass);
+	}
+
+	/***
+	 * Get vehicles of all classes last counted by all VRSs of a Traffic Light System
+	 * **/
+	public int getTrafficLightSystemTotalVehicles(int tlsIndex) {
+		return readRow(TLS_TOTAL, tlsIndex, 0);
+	}
+
+	/***
+	 * Get vehicles of one class last counted by all VRSs of a Traffic Control System
+	 * **/
+	public int getTrafficControlSystemVehicleCount(int tcsIndex, int vehicleClass) {
+		return readRow(TCS_COUNT, tcsIndex, vehicleClass);
+	}
+
+	/***
+	 * Get vehicles of all classes last counted by all VRSs of a Traffic Control System
+	 * **/
+	public int getTrafficControlSystemTotalVehicles(int tcsIndex) {
+		return readRow(TCS_TOTAL, tcsIndex, 0);
+	}
+
+	/***
+	 * Get number of anomalies last detected by a VRS
+	 * **/
+	public int getAnomalies(int vrsIndex) {
+		return readRow(VRS_ANOMALIES, vrsIndex, 0);
+	}
+
+	/*
+	 * Method reads one value of a row with an optimistic read of its stripe.
+	 * The row is mapped again before validating, so a row moved to another stripe by a global section
+	 * is never validated against its old stripe. On a failed read the stripe read lock is taken.
+	 */
+	private int readRow(int value, int index, int vehicleClass) {
+		int stripe = stripeOf(value, index);
+		StampedLock lock = stripes[stripe].lock;
+		long stamp = lock.tryOptimisticRead();
+		int result = readValue(value, index, vehicleClass);
+		if (stamp != 0L && stripeOf(value, index) == stripe && lock.validate(stamp)) {
+			return result;
+		}
+		while (true) {
+			stripe = stripeOf(value, index);
+			stamp = readLockStripe(stripe);
+			try {
+				if (stripeOf(value, index) == stripe) {
+					return readValue(value, index, vehicleClass);
+				}
+			} finally {
+				unlockReadStripe(stripe, stamp);
+			}
+		}
+	}
+
+	/*
+	 * Method reads one value of a row, bounds checked for optimistic readers
+	 */
+	private int readValue(int value, int index, int vehicleClass) {
+		switch (value) {
+		case LIGHT_STATE:
+			return readState(lightStateWords, index);
+		case TLS_STATE:
+			return readState(tlsStateWords, index);
+		case VRS_COUNT:
+			return readInt(vehicleCounts[vehicleClass], index);
+		case VRS_TOTAL:
+			return sumColumns(vehicleCounts, index);
+		case VRS_ANOMALIES:
+			return readInt(anomalyCounts, index);
+		case TLS_COUNT:
+			return readInt(tlsVehicleCounts[vehicleClass], index);
+		case TLS_TOTAL:
+			return sumColumns(tlsVehicleCounts, index);
+		case TCS_COUNT:
+			return readInt(tcsVehicleCounts[vehicleClass], index);
+		default:
+			return sumColumns(tcsVehicleCounts, index);
+		}
+	}
+
+	/*
+	 * Method returns the stripe of the row holding a value, from the Traffic Control System the row belongs to
+	 */
+	private int stripeOf(int value, int index) {
+		switch (value) {
+		case LIGHT_STATE:
+			return stripeOfTrafficLightSystem(readIndex(lightTlsIndexes, index));
+		case TLS_STATE:
+		case TLS_COUNT:
+		case TLS_TOTAL:
+			return stripeOfTrafficLightSystem(index);
+		case TCS_COUNT:
+		case TCS_TOTAL:
+			return index & STRIPE_MASK;
+		default:
+			return stripeOfTrafficLightSystem(readIndex(vrsTlsIndexes, index));
+		}
+	}
+
+	/*
+	 * Method returns the stripe of a Traffic Light System, stripe 0 for rows not attached to any system
+	 */
+	private int stripeOfTrafficLightSystem(int tlsIndex) {
+		int tcsIndex = tlsIndex < 0 ? -1 : readIndex(tlsTcsIndexes, tlsIndex);
+		return tcsIndex < 0 ? 0 : tcsIndex & STRIPE_MASK;
+	}
+
+
+	/***********************  SNAPSHOTS ******************/
+
+	/***
+	 * Method takes a consistent copy of every light state, Traffic Light System state and VRS counter.
+	 *
+	 * Each stripe is copied under an optimistic read and its copy is only kept if no section of the stripe
+	 * closed meanwhile, so a snapshot never shows a half applied phase of any Traffic Control System.
+	 * Only the stripes whose version changed since the last snapshot are copied again, the rows of the other
+	 * stripes come from the last snapshot, and the last snapshot itself is returned when no stripe changed.
+	 * Writers are never blocked unless the copy of a stripe keeps failing under constant writes,
+	 * in which case the last attempt takes the read lock of that stripe only.
+	 * Structural changes wait for the snapshot to be taken.
+	 * **/
+	public CityStateSnapshot snapshot() {
+		long structureStamp = readLock();
+		try {
+			CityStateSnapshot last = lastSnapshot;
+			Columns previous = last != null && last.columns.structureVersion == structureVersion ? last.columns : null;
+
+			boolean[] pending = new boolean[STRIPES];
+			long[] versions = new long[STRIPES];
+			boolean changed = previous == null;
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				versions[stripe] = stripes[stripe].version;
+				pending[stripe] = previous == null || versions[stripe] != previous.stripeVersions[stripe];
+				changed |= pending[stripe];
+			}
+			if (!changed) {
+				return last;
+			}
+
+			Columns columns = previous == null ? copyStructure() : previous.copyValues();
+			long[] stamps = new long[STRIPES];
+			for (int attempt = 0; attempt < OPTIMISTIC_SNAPSHOT_ATTEMPTS; attempt++) {
+				boolean retry = false;
+				for (int stripe = 0; stripe < STRIPES; stripe++) {
+					if (pending[stripe]) {
+						stamps[stripe] = stripes[stripe].lock.tryOptimisticRead();
+						versions[stripe] = stripes[stripe].version;
+					}
+				}
+				copyRows(columns, pending);
+				for (int stripe = 0; stripe < STRIPES; stripe++) {
+					if (pending[stripe]) {
+						pending[stripe] = stamps[stripe] == 0L || !stripes[stripe].lock.validate(stamps[stripe]);
+						retry |= pending[stripe];
+					}
+				}
+				if (!retry) {
+					return publish(columns, versions);
+				}
+				Thread.yield();          // a writer is inside its section
+			}
+
+			boolean[] one = new boolean[STRIPES];
+			for (int stripe = 0; stripe < STRIPES; stripe++) {
+				if (pending[stripe]) {
+					long stamp = readLockStripe(stripe);
+					try {
+						versions[stripe] = stripes[stripe].version;
+						one[stripe] = true;
+						copyRows(columns, one);
+						one[stripe] = false;
+					} finally {
+						unlockReadStripe(stripe, stamp);
+					}
+				}
+			}
+			return publish(columns, versions);
+		} finally {
+			unlockRead(structureStamp);
+		}
+	}
+
+	/*
+	 * Method builds the snapshot of the copied columns and keeps it as the last snapshot,
+	 * unless a racing snapshot already kept a newer one
+	 */
+	private CityStateSnapshot publish(Columns columns, long[] versions) {
+		long version = columns.structureVersion;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			version += versions[stripe];
+		}
+		columns.version = version;
+		columns.stripeVersions = versions;
+		CityStateSnapshot snapshot = new CityStateSnapshot(columns);
+
+		CityStateSnapshot last = lastSnapshot;
+		if (last == null || last.getVersion() < version) {
+			lastSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/*
+	 * Method copies the structural columns, which only change in a global section, called with the structure lock held.
+	 * Every value column starts empty, for copyRows() to fill.
+	 */
+	private Columns copyStructure() {
+		Columns columns = new Columns();
+		columns.structureVersion = structureVersion;
+		columns.lightCount = lightCount;
+		columns.lightIds = Arrays.copyOf(lightIds, lightCount);
+		columns.lightTlsIndexes = Arrays.copyOf(lightTlsIndexes, lightCount);
+		columns.lightStripes = new int[lightCount];
+		for (int light = 0; light < lightCount; light++) {
+			columns.lightStripes[light] = stripeOfTrafficLightSystem(lightTlsIndexes[light]);
+		}
+		columns.lightStateWords = new long[wordsFor(lightCount)];
+
+		columns.tlsCount = tlsCount;
+		columns.tlsIds = Arrays.copyOf(tlsIds, tlsCount);
+		columns.tlsTcsIds = Arrays.copyOf(tlsTcsIds, tlsCount);
+		columns.tlsStripes = new int[tlsCount];
+		for (int tls = 0; tls < tlsCount; tls++) {
+			columns.tlsStripes[tls] = stripeOfTrafficLightSystem(tls);
+		}
+		columns.tlsStateWords = new long[wordsFor(tlsCount)];
+
+		columns.vrsCount = vrsCount;
+		columns.vrsIds = Arrays.copyOf(vrsIds, vrsCount);
+		columns.vrsTlsIndexes = Arrays.copyOf(vrsTlsIndexes, vrsCount);
+		columns.vrsStripes = new int[vrsCount];
+		for (int vrs = 0; vrs < vrsCount; vrs++) {
+			columns.vrsStripes[vrs] = stripeOfTrafficLightSystem(vrsTlsIndexes[vrs]);
+		}
+		columns.anomalyCounts = new int[vrsCount];
+		for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+			columns.tlsVehicleCounts[vehicleClass] = new int[tlsCount];
+			columns.vehicleCounts[vehicleClass] = new int[vrsCount];
+		}
+		return columns;
+	}
+
+	/*
+	 * Method copies the values of the rows of the given stripes into the holder, in one pass over the rows.
+	 * The structure lock is held so the columns are not replaced, and only the stripes being copied are validated.
+	 */
+	private void copyRows(Columns columns, boolean[] stripesToCopy) {
+		for (int light = 0; light < columns.lightCount; light++) {
+			if (stripesToCopy[columns.lightStripes[light]]) {
+				setState(columns.lightStateWords, light, readState(lightStateWords, light));
+			}
+		}
+		for (int tls = 0; tls < columns.tlsCount; tls++) {
+			if (stripesToCopy[columns.tlsStripes[tls]]) {
+				setState(columns.tlsStateWords, tls, readState(tlsStateWords, tls));
+				for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+					columns.tlsVehicleCounts[vehicleClass][tls] = tlsVehicleCounts[vehicleClass][tls];
+				}
+			}
+		}
+		for (int vrs = 0; vrs < columns.vrsCount; vrs++) {
+			if (stripesToCopy[columns.vrsStripes[vrs]]) {
+				columns.anomalyCounts[vrs] = anomalyCounts[vrs];
+				for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+					columns.vehicleCounts[vehicleClass][vrs] = vehicleCounts[vehicleClass][vrs];
+				}
+			}
+		}
+	}
+
+	/*
+	 * Holder of the raw column copies a snapshot is built from.
+	 * Once a snapshot is built from it, it is never modified, the next snapshot shares its structural columns
+	 * and starts from copies of its value columns.
+	 */
+	static final class Columns {
+		long version;
+		long structureVersion;
+		long[] stripeVersions;
+		int lightCount;
+		int[] lightIds;
+		int[] lightTlsIndexes;
+		int[] lightStripes;
+		long[] lightStateWords;
+		int tlsCount;
+		int[] tlsIds;
+		int[] tlsTcsIds;
+		int[] tlsStripes;
+		long[] tlsStateWords;
+		int[][] tlsVehicleCounts = new int[VEHICLE_CLASSES][];
+		int vrsCount;
+		int[] vrsIds;
+		int[] vrsTlsIndexes;
+		int[] vrsStripes;
+		int[] anomalyCounts;
+		int[][] vehicleCounts = new int[VEHICLE_CLASSES][];
+
+		/*
+		 * Method returns a holder sharing the structural columns of this one, with copies of its value columns
+		 */
+		Columns copyValues() {
+			Columns copy = new Columns();
+			copy.structureVersion = structureVersion;
+			copy.lightCount = lightCount;
+			copy.lightIds = lightIds;
+			copy.lightTlsIndexes = lightTlsIndexes;
+			copy.lightStripes = lightStripes;
+			copy.lightStateWords = lightStateWords.clone();
+			copy.tlsCount = tlsCount;
+			copy.tlsIds = tlsIds;
+			copy.tlsTcsIds = tlsTcsIds;
+			copy.tlsStripes = tlsStripes;
+			copy.tlsStateWords = tlsStateWords.clone();
+			copy.vrsCount = vrsCount;
+			copy.vrsIds = vrsIds;
+			copy.vrsTlsIndexes = vrsTlsIndexes;
+			copy.vrsStripes = vrsStripes;
+			copy.anomalyCounts = anomalyCounts.clone();
+			for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+				copy.tlsVehicleCounts[vehicleClass] = tlsVehicleCounts[vehicleClass].clone();
+				copy.vehicleCounts[vehicleClass] = vehicleCounts[vehicleClass].clone();
+			}
+			return copy;
+		}
+	}
+
+
+	/***********************  CITY WIDE SCANS ******************/
+
+	/***
+	 * Method counts the Traffic Lights of the whole city that are in the given state.
+	 *
+	 * It compares 32 packed states per long word at once, so the scan cost is one
+	 * xor/or/bitCount per 32 lights.
+	 * **/
+	public int countLightsInState(int stateCode) {
+		long[] stamps = new long[STRIPES];
+		if (tryOptimisticReadAll(stamps)) {
+			int matches = countStates(lightStateWords, lightCount, stateCode);
+			if (validateAll(stamps)) {
+				return matches;
+			}
+		}
+		readLockAll(stamps);
+		try {
+			return countStates(lightStateWords, lightCount, stateCode);
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	/***
+	 * Method counts the Traffic Light Systems of the whole city that are in the given state
+	 * **/
+	public int countTrafficLightSystemsInState(int stateCode) {
+		long[] stamps = new long[STRIPES];
+		if (tryOptimisticReadAll(stamps)) {
+			int matches = countStates(tlsStateWords, tlsCount, stateCode);
+			if (validateAll(stamps)) {
+				return matches;
+			}
+		}
+		readLockAll(stamps);
+		try {
+			return countStates(tlsStateWords, tlsCount, stateCode);
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	/***
+	 * Method returns the vehicles of one class counted by every VRS of the city, from the city total
+	 * kept up to date by every counter write
+	 * **/
+	public long getCityVehicleCount(int vehicleClass) {
+		return cityVehicleCounts.get(vehicleClass);
+	}
+
+	/***
+	 * Method returns the vehicles of all classes counted by every VRS of the city.
+	 * The classes are read one after the other, a scan being written may be counted in some classes only.
+	 * **/
+	public long getCityTotalVehicles() {
+		long total = 0;
+		for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+			total += cityVehicleCounts.get(vehicleClass);
+		}
+		return total;
+	}
+
+	/***
+	 * Method sums the VRS counters of one class over the whole city, walking every VRS with every stripe read locked.
+	 * It always equals getCityVehicleCount(), it is kept to check the rolled up totals.
+	 * **/
+	public long sumCityVehicleCount(int vehicleClass) {
+		long[] stamps = new long[STRIPES];
+		readLockAll(stamps);
+		try {
+			return sumColumn(vehicleCounts[vehicleClass], vrsCount);
+		} finally {
+			unlockReadAll(stamps);
+		}
+	}
+
+	/*
+	 * Method starts an optimistic read of every stripe, it fails if any stripe is being written
+	 */
+	private boolean tryOptimisticReadAll(long[] stamps) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			stamps[stripe] = stripes[stripe].lock.tryOptimisticRead();
+			if (stamps[stripe] == 0L) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Method validates the optimistic reads of every stripe
+	 */
+	private boolean validateAll(long[] stamps) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			if (!stripes[stripe].lock.validate(stamps[stripe])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Method takes the read lock of every stripe, in stripe order like the global update section
+	 */
+	private void readLockAll(long[] stamps) {
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			stamps[stripe] = readLockStripe(stripe);
+		}
+	}
+
+	/*
+	 * Method releases the stamps taken by readLockAll()
+	 */
+	private void unlockReadAll(long[] stamps) {
+		for (int stripe = STRIPES - 1; stripe >= 0; stripe--) {
+			unlockReadStripe(stripe, stamps[stripe]);
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get version of the store, it changes every time an update section is closed.
+	 * It is the sum of the stripe versions and of the global section count, so it only grows.
+	 */
+	public long getVersion() {
+		long version = structureVersion;
+		for (Stripe stripe : stripes) {
+			version += stripe.version;
+		}
+		return version;
+	}
+
+	/**
+	 * Get dense index of a Traffic Light by its ID, or -1 if it is not registered
+	 */
+	public int indexOfTrafficLight(int lightId) {
+		long stamp = readLock();
+		try {
+			return lightIndexes.get(lightId);
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get dense index of a Traffic Light System by its ID, or -1 if it is not registered
+	 */
+	public int indexOfTrafficLightSystem(int tlsId) {
+		long stamp = readLock();
+		try {
+			return tlsIndexes.get(tlsId);
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get dense index of a Traffic Control System by its ID, or -1 if none of its Traffic Light Systems is registered
+	 */
+	public int indexOfTrafficControlSystem(int tcsId) {
+		long stamp = readLock();
+		try {
+			return tcsIndexes.get(tcsId);
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get dense index of a Visual Recognition System by its ID, or -1 if it is not registered
+	 */
+	public int indexOfVisualRecognitionSystem(int vrsId) {
+		long stamp = readLock();
+		try {
+			return vrsIndexes.get(vrsId);
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get ID of the Traffic Light System a Visual Recognition System belongs to, or -1 if it is unknown
+	 */
+	public int trafficLightSystemIdOf(int vrsId) {
+		long stamp = readLock();
+		try {
+			int vrsIndex = vrsIndexes.get(vrsId);
+			int tlsIndex = vrsIndex < 0 ? -1 : vrsTlsIndexes[vrsIndex];
+			return tlsIndex < 0 ? -1 : tlsIds[tlsIndex];
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get number of Traffic Lights registered
+	 */
+	public int getLightCount() {
+		long stamp = readLock();
+		try {
+			return lightCount;
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get number of Traffic Light Systems registered
+	 */
+	public int getTrafficLightSystemCount() {
+		long stamp = readLock();
+		try {
+			return tlsCount;
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Get number of Visual Recognition Systems registered
+	 */
+	public int getVisualRecognitionSystemCount() {
+		long stamp = readLock();
+		try {
+			return vrsCount;
+		} finally {
+			unlockRead(stamp);
+		}
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method returns the number of long words needed to pack the given number of states
+	 */
+	private static int wordsFor(int states) {
+		return (states + STATES_PER_WORD - 1) / STATES_PER_WORD;
+	}
+
+	/*
+	 * Method writes a 2 bit state into its packed word.
+	 * A word packs the states of rows of different stripes, written in parallel, so the word is swapped atomically.
+	 */
+	private static void writeState(long[] words, int index, int stateCode) {
+		int shift = (index & (STATES_PER_WORD - 1)) << 1;
+		int word = index >>> 5;
+		long current;
+		do {
+			current = (long) STATE_WORDS.getVolatile(words, word);
+		} while (!STATE_WORDS.compareAndSet(words, word, current, (current & ~(3L << shift)) | ((long) (stateCode & 3) << shift)));
+	}
+
+	/*
+	 * Method sets a 2 bit state in packed words owned by the calling thread
+	 */
+	private static void setState(long[] words, int index, int stateCode) {
+		int shift = (index & (STATES_PER_WORD - 1)) << 1;
+		int word = index >>> 5;
+		words[word] = (words[word] & ~(3L << shift)) | ((long) (stateCode & 3) << shift);
+	}
+
+	/*
+	 * Method reads a 2 bit state from its packed word.
+	 * Bounds are checked because an optimistic reader may see an array being replaced.
+	 */
+	static int readState(long[] words, int index) {
+		int word = index >>> 5;
+		if (index < 0 || word >= words.length) {
+			return STATE_NONE;
+		}
+		return (int) (words[word] >>> ((index & (STATES_PER_WORD - 1)) << 1)) & 3;
+	}
+
+	/*
+	 * Method reads an int column value, bounds checked for optimistic readers
+	 */
+	private static int readInt(int[] column, int index) {
+		return index >= 0 && index < column.length ? column[index] : 0;
+	}
+
+	/*
+	 * Method reads an index column value, bounds checked for optimistic readers, -1 when out of bounds
+	 */
+	private static int readIndex(int[] column, int index) {
+		return index >= 0 && index < column.length ? column[index] : -1;
+	}
+
+	/*
+	 * Method sums all vehicle classes of one index of counter columns
+	 */
+	private static int sumColumns(int[][] columns, int index) {
+		int total = 0;
+		for (int vehicleClass = 0; vehicleClass < VEHICLE_CLASSES; vehicleClass++) {
+			total += readInt(columns[vehicleClass], index);
+		}
+		return total;
+	}
+
+	/*
+	 * Method sums the first n values of an int column
+	 */
+	private static long sumColumn(int[] column, int n) {
+		long total = 0;
+		int limit = Math.min(n, column.length);
+		for (int i = 0; i < limit; i++) {
+			total += column[i];
+		}
+		return total;
+	}
+
+	/*
+	 * Method counts the packed states equal to the given code among the first n states.
+	 *
+	 * Xor with the code repeated in every field leaves 00 in the matching fields,
+	 * folding the high bit of each field onto the low bit leaves one set bit per non matching field.
+	 */
+	private static int countStates(long[] words, int n, int stateCode) {
+		long pattern = (stateCode & 3) * FIELD_LOW_BITS;
+		int limit = Math.min(n, words.length * STATES_PER_WORD);
+		int fullWords = limit / STATES_PER_WORD;
+		int matches = 0;
+
+		for (int word = 0; word < fullWords; word++) {
+			long diff = words[word] ^ pattern;
+			matches += STATES_PER_WORD - Long.bitCount((diff | (diff >>> 1)) & FIELD_LOW_BITS);
+		}
+
+		int remaining = limit - fullWords * STATES_PER_WORD;
+		if (remaining > 0) {
+			long diff = words[fullWords] ^ pattern;
+			long validBits = (1L << (remaining << 1)) - 1;
+			matches += remaining - Long.bitCount((diff | (diff >>> 1)) & FIELD_LOW_BITS & validBits);
+		}
+		return matches;
+	}
+
+
+	/*
+	 * Holds the shared instance, created by class initialisation the first time getInstance is called
+	 */
+	private static final class Holder {
+		static final CityStateStore INSTANCE = new CityStateStore();
+	}
+}
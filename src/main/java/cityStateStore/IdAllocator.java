@@ -0,0 +1,358 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class allocates the ids of the Traffic Control Systems, Traffic Light Systems, Traffic Lights and
+ * Visual Recognition Systems. The ids are unique across all of them and, when a high-water mark file is used,
+ * across restarts and across the Control Center processes sharing that file.
+ *
+ * The allocator reserves a range of ids at a time, called a lease. Within the lease an id costs one atomic
+ * increment and takes no lock. When the lease runs out, one thread reserves the next one. It takes the lock,
+ * locks the file against the other processes, reads the high-water mark, writes it back moved past the new
+ * lease and forces it to disk. No id above the mark on disk is ever handed out, so a crash only wastes the
+ * rest of the lease.
+ *
+ * A worker creating many systems at once can lease an IdBlock of contiguous ids for itself. Ids of a block
+ * map to the dense indexes 0 to size - 1, so per-worker arrays can be indexed by them. The CityStateStore
+ * maps any id to a dense index of its own.
+ *
+ * Ids known from elsewhere, such as a topology file, are claimed so they are never handed out again.
+ * A claim is kept in memory and written with the next lease, or at once by publishClaims(). Other processes
+ * sharing the file keep clear of a claim only in the leases they reserve after it was written: an id they
+ * leased before can still be handed out there.
+ */
+public final class IdAllocator {
+
+	// vars
+	public static final int FIRST_ID = 1;
+	private static final int DEFAULT_LEASE_SIZE = 1024;
+
+
+	private final int leaseSize;
+	private final ReentrantLock lock;          // held while a lease is reserved, never on the fast path
+	private volatile Lease lease;
+	private final AtomicLong claimed;          // highest id claimed, leases start above it
+	private FileChannel markFile;              // high-water mark shared with other processes, null to keep it in memory
+	private long leases;
+
+
+	/**
+	 * Initialises an allocator keeping its high-water mark in memory
+	 *
+	 * @param leaseSize ids reserved at a time
+	 * **/
+	public IdAllocator(int leaseSize) {
+		if (leaseSize <= 0) {
+			throw new IllegalArgumentException("Lease size must be positive");
+		}
+		this.leaseSize = leaseSize;
+		this.lock = new ReentrantLock();
+		this.lease = new Lease(FIRST_ID, FIRST_ID);    // empty, the first id reserves a lease
+		this.claimed = new AtomicLong(FIRST_ID - 1);
+	}
+
+	/**
+	 * Static method returns the allocator of the Control Center
+	 * **/
+	public static IdAllocator getInstance() {
+		return Holder.INSTANCE;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method hands out a new id
+	 * **/
+	public int nextId() {
+		while (true) {
+			Lease current = lease;
+			long id = current.next.getAndIncrement();
+			if (id < current.end && id > claimed.get()) {
+				return (int) id;
+			}
+			reserve(current, 1);
+		}
+	}
+
+	/***
+	 * Method hands out a block of contiguous ids, for one worker to use without touching the allocator again
+	 *
+	 * @param size ids of the block
+	 * **/
+	public IdBlock lease(int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Block size must be positive");
+		}
+		while (true) {
+			Lease current = lease;
+			long first = current.next.getAndAdd(size);
+			if (first + size <= current.end && first > claimed.get()) {
+				return new IdBlock((int) first, size);
+			}
+			reserve(current, size);
+		}
+	}
+
+	/***
+	 * Method makes sure an id known from elsewhere is never handed out. An id already handed out is not checked.
+	 * **/
+	public void claim(int id) {
+		long highest = claimed.get();
+		while (id > highest && !claimed.compareAndSet(highest, id)) {
+			highest = claimed.get();
+		}
+	}
+
+	/***
+	 * Method writes the claimed ids to the high-water mark file, so the processes sharing it keep clear of them
+	 * in the leases they reserve from now on
+	 * **/
+	public void publishClaims() {
+		lock.lock();
+		try {
+			if (markFile == null) {
+				return;
+			}
+			FileLock fileLock = markFile.lock();
+			try {
+				long mark = claimed.get() + 1;
+				if (mark > readMark()) {
+					writeMark(mark);
+				}
+			} finally {
+				fileLock.release();
+			}
+		} catch (IOException e) {
+			System.err.println("Error writing the claimed ids to the high-water mark: " + e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method keeps the high-water mark in a file from now on, ids handed out before are kept clear of.
+	 * Control Center processes pointed at the same file never hand out the same id.
+	 *
+	 * @throws IOException if the file cannot be opened
+	 * **/
+	public void persistTo(Path file) throws IOException {
+		lock.lock();
+		try {
+			closeMarkFile();
+			Path parent = file.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			markFile = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long next = Math.min(lease.next.get(), lease.end);
+			lease = new Lease(next, next);    // the rest of the lease is not on the file, drop it
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method stops writing the high-water mark, the ids already leased can still be handed out
+	 * **/
+	public void close() {
+		lock.lock();
+		try {
+			closeMarkFile();
+		} catch (IOException e) {
+			System.err.println("Error closing the id high-water mark: " + e.getMessage());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Method reserves the lease after a used up one, unless another thread already did
+	 *
+	 * @param needed ids the caller needs in a row
+	 */
+	private void reserve(Lease usedUp, int needed) {
+		lock.lock();
+		try {
+			if (lease != usedUp) {
+				return;
+			}
+			long start = Math.max(usedUp.end, claimed.get() + 1);
+			long end;
+			if (markFile != null) {
+				FileLock fileLock = markFile.lock();
+				try {
+					start = Math.max(start, readMark());
+					end = start + Math.max(leaseSize, needed);
+					writeMark(end);
+				} finally {
+					fileLock.release();
+				}
+			} else {
+				end = start + Math.max(leaseSize, needed);
+			}
+			if (end - 1 > Integer.MAX_VALUE) {
+				throw new IllegalStateException("Ids are exhausted, the high-water mark is " + start);
+			}
+			leases++;
+			lease = new Lease(start, end);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reserving ids", e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Method reads the high-water mark, the first id no process handed out, the file lock is held
+	 */
+	private long readMark() throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+		while (buffer.hasRemaining() && markFile.read(buffer, buffer.position()) > 0) {
+			// read until the 8 bytes are in or the file ends
+		}
+		return buffer.position() == Long.BYTES ? buffer.getLong(0) : FIRST_ID;
+	}
+
+	/*
+	 * Method writes the high-water mark to disk, the file lock is held
+	 */
+	private void writeMark(long mark) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, mark);
+		while (buffer.hasRemaining()) {
+			markFile.write(buffer, buffer.position());
+		}
+		markFile.force(false);
+	}
+
+	/*
+	 * Method closes the high-water mark file if one is open, the lock is held
+	 */
+	private void closeMarkFile() throws IOException {
+		if (markFile != null) {
+			markFile.close();
+			markFile = null;
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of leases reserved
+	 */
+	public long getLeases() {
+		lock.lock();
+		try {
+			return leases;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/*
+	 * Class holds the range of ids reserved, handed out from next up to end
+	 */
+	private static final class Lease {
+		private final AtomicLong next;
+		private final long end;
+
+		private Lease(long next, long end) {
+			this.next = new AtomicLong(next);
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Class is a block of contiguous ids leased to one worker. It is not thread safe, the worker owns it.
+	 */
+	public static final class IdBlock {
+		private final int first;
+		private final int size;
+		private int used;
+
+		private IdBlock(int first, int size) {
+			this.first = first;
+			this.size = size;
+		}
+
+		/***
+		 * Method hands out the next id of the block
+		 *
+		 * @throws IllegalStateException if the block is used up
+		 * **/
+		public int nextId() {
+			if (used == size) {
+				throw new IllegalStateException("Id block " + this + " is used up");
+			}
+			return first + used++;
+		}
+
+		/***
+		 * Method returns the dense index of an id of the block, from 0 to size - 1
+		 *
+		 * @throws IllegalArgumentException if the id is not in the block
+		 * **/
+		public int indexOf(int id) {
+			if (!contains(id)) {
+				throw new IllegalArgumentException("Id " + id + " is not in block " + this);
+			}
+			return id - first;
+		}
+
+		/***
+		 * Method tells whether an id is in the block
+		 * **/
+		public boolean contains(int id) {
+			return id >= first && id - first < size;
+		}
+
+		/**
+		 * Get first id of the block
+		 */
+		public int getFirst() {
+			return first;
+		}
+
+		/**
+		 * Get number of ids of the block
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * Get number of ids not handed out yet
+		 */
+		public int getRemaining() {
+			return size - used;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + first + ", " + (first + size) + ")";
+		}
+	}
+
+
+	/*
+	 * Holds the shared instance, created by class initialisation the first time getInstance is called
+	 */
+	private static final class Holder {
+		static final IdAllocator INSTANCE = new IdAllocator(DEFAULT_LEASE_SIZE);
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import java.util.Arrays;
+
+/**
+ * Class maps system IDs to the dense int indexes used by the columnar stores.
+ *
+ * It is an open addressing hash table over two parallel int arrays, so looking up
+ * an ID does not box keys or allocate entry objects the way a HashMap<Integer, Integer> would.
+ *
+ * Not thread safe on its own, callers guard it with their own lock.
+ */
+public class IntIndexMap {
+
+	// vars
+	private static final int FREE = Integer.MIN_VALUE;   // marker for an empty slot, never used as a system ID
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	/**
+	 * Initialises a new map able to hold the given number of IDs before growing
+	 * **/
+	public IntIndexMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+		this.keys = new int[capacity];
+		this.values = new int[capacity];
+		this.mask = capacity - 1;
+		this.size = 0;
+		Arrays.fill(keys, FREE);
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method stores the index of the given ID, replacing any previous one
+	 * **/
+	public void put(int id, int index) {
+		if (id == FREE) {
+			throw new IllegalArgumentException("ID " + id + " is reserved and can not be indexed");
+		}
+		if ((size + 1) * 2 > keys.length) {
+			resize(keys.length << 1);
+		}
+		int slot = slotOf(id);
+		if (keys[slot] == FREE) {
+			keys[slot] = id;
+			size++;
+		}
+		values[slot] = index;
+	}
+
+	/***
+	 * Method returns the index stored for the given ID or -1 if the ID is unknown
+	 * **/
+	public int get(int id) {
+		int slot = slotOf(id);
+		return keys[slot] == FREE ? -1 : values[slot];
+	}
+
+	/***
+	 * Method removes the given ID, the IDs probed after it are moved back so lookups still find them
+	 * **/
+	public void remove(int id) {
+		int slot = slotOf(id);
+		if (keys[slot] == FREE) {
+			return;
+		}
+		keys[slot] = FREE;
+		size--;
+
+		for (int next = (slot + 1) & mask; keys[next] != FREE; next = (next + 1) & mask) {
+			int key = keys[next];
+			int value = values[next];
+			keys[next] = FREE;
+			int target = slotOf(key);
+			keys[target] = key;
+			values[target] = value;
+		}
+	}
+
+	/***
+	 * Method grows the table once so the given number of IDs fit without further resizing
+	 * **/
+	public void ensureCapacity(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize) * 2 - 1) << 1;
+		if (capacity > keys.length) {
+			resize(capacity);
+		}
+	}
+
+	/***
+	 * Get number of IDs indexed
+	 * **/
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Method finds the slot of the ID, or the free slot where it should be inserted
+	 */
+	private int slotOf(int id) {
+		int slot = mix(id) & mask;
+		while (keys[slot] != FREE && keys[slot] != id) {
+			slot = (slot + 1) & mask;    // linear probing
+		}
+		return slot;
+	}
+
+	/*
+	 * Method spreads sequential IDs across the table
+	 */
+	private static int mix(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/*
+	 * Method rehashes every ID into a larger table
+	 */
+	private void resize(int newCapacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+
+		keys = new int[newCapacity];
+		values = new int[newCapacity];
+		mask = newCapacity - 1;
+		Arrays.fill(keys, FREE);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				int slot = slotOf(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+}
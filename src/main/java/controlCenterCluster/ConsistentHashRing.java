@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package controlCenterCluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Class maps Traffic Control System IDs to Control Center workers by consistent hashing.
+ *
+ * Every worker is placed on the ring at VIRTUAL_NODES positions, a TCS belongs to the first worker position
+ * found clockwise from the hash of its ID. When a worker joins or leaves only the TCSs of the ring arcs
+ * it takes or gives away change owner, about 1/n of them, the others stay where they are.
+ * Positions hash the UTF-8 bytes of the worker id and the virtual node index, so they are the same
+ * in every process and spread evenly whatever the ids look like.
+ *
+ * Instances are immutable, adding or removing a worker returns a new ring.
+ */
+public final class ConsistentHashRing {
+
+	// vars
+	public static final int VIRTUAL_NODES = 128;
+	private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+
+	private final SortedSet<String> workers;
+	private final long[] positions;     // sorted hashes of the virtual nodes
+	private final String[] owners;      // worker of each position
+
+
+	/**
+	 * Initialises an empty ring
+	 * **/
+	public ConsistentHashRing() {
+		this(new TreeSet<String>());
+	}
+
+	/*
+	 * Initialises a ring over the given workers
+	 */
+	private ConsistentHashRing(SortedSet<String> workers) {
+		this.workers = Collections.unmodifiableSortedSet(workers);
+
+		long[] nodes = new long[workers.size() * VIRTUAL_NODES];
+		Map<Long, String> ownerOfNode = new HashMap<>();
+		int n = 0;
+		for (String worker : workers) {
+			for (int v = 0; v < VIRTUAL_NODES; v++) {
+				long position = nodePosition(worker, v);
+				String previous = ownerOfNode.putIfAbsent(position, worker);
+				if (previous == null) {
+					nodes[n++] = position;
+				} else if (worker.compareTo(previous) < 0) {
+					ownerOfNode.put(position, worker);   // collisions go to the same worker whatever the join order
+				}
+			}
+		}
+		this.positions = Arrays.copyOf(nodes, n);
+		Arrays.sort(this.positions);
+		this.owners = new String[n];
+		for (int i = 0; i < n; i++) {
+			owners[i] = ownerOfNode.get(positions[i]);
+		}
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns a ring with the given worker added
+	 * **/
+	public ConsistentHashRing withWorker(String workerId) {
+		SortedSet<String> next = new TreeSet<>(workers);
+		next.add(workerId);
+		return new ConsistentHashRing(next);
+	}
+
+	/***
+	 * Method returns a ring with the given worker removed
+	 * **/
+	public ConsistentHashRing withoutWorker(String workerId) {
+		SortedSet<String> next = new TreeSet<>(workers);
+		next.remove(workerId);
+		return new ConsistentHashRing(next);
+	}
+
+	/***
+	 * Method returns the worker owning a Traffic Control System, null if the ring has no worker
+	 * **/
+	public String ownerOf(int tcsId) {
+		if (positions.length == 0) {
+			return null;
+		}
+		int i = Arrays.binarySearch(positions, mix64(tcsId));
+		if (i < 0) {
+			i = -i - 1;
+		}
+		return owners[i == positions.length ? 0 : i];     // wrap around the ring
+	}
+
+	/***
+	 * Method splits the given Traffic Control System IDs by owner
+	 *
+	 * @return TCS IDs of every worker of the ring, empty lists included
+	 * **/
+	public Map<String, List<Integer>> assign(Iterable<Integer> tcsIds) {
+		Map<String, List<Integer>> byWorker = new HashMap<>();
+		for (String worker : workers) {
+			byWorker.put(worker, new ArrayList<Integer>());
+		}
+		for (int tcsId : tcsIds) {
+			String owner = ownerOf(tcsId);
+			if (owner != null) {
+				byWorker.get(owner).add(tcsId);
+			}
+		}
+		return byWorker;
+	}
+
+	/*
+	 * Method returns the position of a virtual node: 64-bit FNV-1a over the UTF-8 bytes of the worker id
+	 * and the 4 bytes of the node index, spread by the MurmurHash3 finaliser
+	 */
+	static long nodePosition(String workerId, int virtualNode) {
+		long hash = FNV_OFFSET_BASIS;
+		for (byte b : workerId.getBytes(StandardCharsets.UTF_8)) {
+			hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+		}
+		for (int shift = 24; shift >= 0; shift -= 8) {
+			hash = (hash ^ ((virtualNode >>> shift) & 0xFF)) * FNV_PRIME;
+		}
+		return mix64(hash);
+	}
+
+	/*
+	 * Method spreads the bits of a key, finaliser of MurmurHash3
+	 */
+	private static long mix64(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+
+	// getters
+
+	/**
+	 * Get IDs of the workers on the ring
+	 */
+	public SortedSet<String> getWorkers() {
+		return workers;
+	}
+}
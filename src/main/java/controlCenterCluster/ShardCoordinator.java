@@ -0,0 +1,595 @@
+/**
+ *
+ */
+package controlCenterCluster;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import trafficCluster.AssignmentAck;
+import trafficCluster.ConfigureReply;
+import trafficCluster.JoinReply;
+import trafficCluster.LeaseAck;
+import trafficCluster.LeaseRenewal;
+import trafficCluster.ShardAssignment;
+import trafficCluster.ShardCoordinatorGrpc;
+import trafficCluster.ShardSummary;
+import trafficCluster.ShardWorkerGrpc;
+import trafficCluster.SummaryRequest;
+import trafficCluster.WorkerInfo;
+import trafficCommands.ConfigAck;
+import trafficCommands.ConfigBatch;
+import trafficCommands.ControlStrategy;
+
+/**
+ * Class is the coordinator of the sharded Control Center. It holds no Traffic Control System itself:
+ * - it splits the Traffic Control System IDs between the workers with a ConsistentHashRing,
+ *   and rebalances them when a worker joins, leaves or stops answering,
+ * - it routes configurations to the workers and merges their summaries into one city summary.
+ *
+ * A rebalance runs in two steps so a Traffic Control System never runs on two workers at once:
+ * first every worker is told to stop the systems it loses, and acknowledges once their cycles are over,
+ * then every worker gets its full new assignment. A system whose stop was not acknowledged stays with its worker
+ * and the rebalance is run again later.
+ *
+ * Workers hold a lease the coordinator renews every RENEW_INTERVAL_IN_MILLIS. A worker that stops answering is
+ * taken off the ring but its systems are held, assigned to no one, until its lease and the time it takes
+ * to stop them are over: by then the worker stopped them on its own, even if it only lost the coordinator.
+ * Rebalances run one at a time on their own thread, the assignment calls are made without holding
+ * the rebalance lock so joins, queries and configuration pushes never wait on them.
+ */
+public class ShardCoordinator extends ShardCoordinatorGrpc.ShardCoordinatorImplBase {
+
+	// vars
+	private static final long RPC_TIMEOUT_IN_SECONDS = 10;
+	public static final long LEASE_IN_MILLIS = 15000;               // above the RPC timeout, a slow renewal is not a lost lease
+	public static final long RENEW_INTERVAL_IN_MILLIS = 3000;
+	private static final long STOP_GRACE_IN_MILLIS = 5000;          // time a worker takes to stop a system once its lease is over
+	private static final long RETRY_INTERVAL_IN_MILLIS = 2000;      // rebalances again while a system did not stop
+
+	private final List<Integer> tcsIds;
+	private final ReentrantLock rebalanceLock;
+	private final ScheduledExecutorService rebalancer;
+	private final ScheduledExecutorService renewer;
+	private final long leaseMillis;
+	private final Map<String, WorkerHandle> workers;               // by worker id, guarded by the rebalance lock
+	private Map<String, List<Integer>> assignments;                // by worker id, guarded by the rebalance lock
+	private final Map<String, HeldSystems> held;                   // systems of failed workers by worker id, guarded by the rebalance lock
+	private volatile ConsistentHashRing ring;
+	private long epoch;
+	private final AtomicLong configVersions;
+	private volatile ConfigBatch lastConfig;
+
+
+	/**
+	 * Initialises a coordinator splitting the given Traffic Control Systems
+	 * **/
+	public ShardCoordinator(List<Integer> tcsIds) {
+		this(tcsIds, LEASE_IN_MILLIS, RENEW_INTERVAL_IN_MILLIS);
+	}
+
+	/**
+	 * Initialises a coordinator splitting the given Traffic Control Systems with the given worker leases
+	 * **/
+	public ShardCoordinator(List<Integer> tcsIds, long leaseMillis, long renewIntervalMillis) {
+		this.tcsIds = new ArrayList<>(tcsIds);
+		this.rebalanceLock = new ReentrantLock();
+		this.rebalancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "shard-rebalancer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "shard-lease-renewer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.leaseMillis = leaseMillis;
+		this.workers = new HashMap<>();
+		this.assignments = new HashMap<>();
+		this.held = new HashMap<>();
+		this.ring = new ConsistentHashRing();
+		this.configVersions = new AtomicLong();
+		this.renewer.scheduleWithFixedDelay(this::renewLeases, renewIntervalMillis, renewIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+
+	/***********************  MEMBERSHIP ******************/
+
+	/***
+	 * Method adds a worker to the cluster and rebalances the Traffic Control Systems
+	 * **/
+	@Override
+	public void join(WorkerInfo info, StreamObserver<JoinReply> responseObserver) {
+		rebalanceLock.lock();
+		try {
+			WorkerHandle previous = workers.put(info.getWorkerId(), new WorkerHandle(info));
+			if (previous != null) {
+				previous.channel.shutdownNow();       // the worker restarted, the old process stopped its systems with it
+				assignments.remove(info.getWorkerId());
+			}
+			ring = ring.withWorker(info.getWorkerId());
+			System.out.println("Worker " + info.getWorkerId() + " joined from " + info.getHost() + ":" + info.getPort());
+			requestRebalance();
+
+			responseObserver.onNext(JoinReply.newBuilder().setEpoch(epoch).setWorkers(workers.size()).build());
+		} finally {
+			rebalanceLock.unlock();
+		}
+		responseObserver.onCompleted();
+	}
+
+	/***
+	 * Method removes a worker from the cluster and moves its Traffic Control Systems to the others,
+	 * the worker stopped them before leaving
+	 * **/
+	@Override
+	public void leave(WorkerInfo info, StreamObserver<JoinReply> responseObserver) {
+		rebalanceLock.lock();
+		try {
+			removeWorker(info.getWorkerId());
+			assignments.remove(info.getWorkerId());
+			System.out.println("Worker " + info.getWorkerId() + " left");
+			requestRebalance();
+
+			responseObserver.onNext(JoinReply.newBuilder().setEpoch(epoch).setWorkers(workers.size()).build());
+		} finally {
+			rebalanceLock.unlock();
+		}
+		responseObserver.onCompleted();
+	}
+
+
+	/***********************  ROUTING ******************/
+
+	/***
+	 * Method pushes a configuration with a new version to the Traffic Control Systems of every worker
+	 *
+	 * @return acknowledgements of every Traffic Control System reached, by TCS id
+	 * **/
+	public Map<Integer, ConfigAck> pushConfiguration(ConfigBatch.Builder batch) {
+		ConfigBatch versioned = batch.setVersion(configVersions.incrementAndGet()).build();
+		lastConfig = versioned;      // workers joining later start their systems with it
+
+		Map<String, CompletableFuture<ConfigureReply>> replies = new HashMap<>();
+		for (WorkerHandle worker : currentWorkers()) {
+			CompletableFuture<ConfigureReply> reply = new CompletableFuture<>();
+			worker.asyncStub().configure(versioned, completing(reply));
+			replies.put(worker.info.getWorkerId(), reply);
+		}
+
+		Map<Integer, ConfigAck> acks = new TreeMap<>();
+		for (Map.Entry<String, CompletableFuture<ConfigureReply>> reply : replies.entrySet()) {
+			try {
+				for (ConfigAck ack : reply.getValue().join().getAcksList()) {
+					acks.put(ack.getTcsId(), ack);
+					configVersions.accumulateAndGet(ack.getRunningVersion(), Math::max);   // pushed before a restart of the coordinator
+				}
+			} catch (RuntimeException e) {
+				workerFailed(reply.getKey(), e);
+			}
+		}
+		return acks;
+	}
+
+	/***
+	 * Method asks every worker for its summary, all at once, and merges them into a city summary
+	 *
+	 * @param perWorker receives the summary of every worker that answered, can be null
+	 * **/
+	public ShardSummary summarizeCity(List<ShardSummary> perWorker) {
+		Map<String, CompletableFuture<ShardSummary>> replies = new HashMap<>();
+		for (WorkerHandle worker : currentWorkers()) {
+			CompletableFuture<ShardSummary> reply = new CompletableFuture<>();
+			worker.asyncStub().summarize(SummaryRequest.getDefaultInstance(), completing(reply));
+			replies.put(worker.info.getWorkerId(), reply);
+		}
+
+		int tcs = 0, tls = 0, green = 0, yellow = 0, red = 0;
+		long cars = 0, trucks = 0, bikes = 0, buses = 0, cycles = 0;
+		for (Map.Entry<String, CompletableFuture<ShardSummary>> reply : replies.entrySet()) {
+			try {
+				ShardSummary summary = reply.getValue().join();
+				if (perWorker != null) {
+					perWorker.add(summary);
+				}
+				tcs += summary.getTcsCount();
+				tls += summary.getTlsCount();
+				green += summary.getTlsGreen();
+				yellow += summary.getTlsYellow();
+				red += summary.getTlsRed();
+				cars += summary.getCars();
+				trucks += summary.getTrucks();
+				bikes += summary.getBikes();
+				buses += summary.getBuses();
+				cycles += summary.getCycles();
+			} catch (RuntimeException e) {
+				workerFailed(reply.getKey(), e);
+			}
+		}
+
+		rebalanceLock.lock();
+		try {
+			return ShardSummary.newBuilder()
+					.setWorkerId("city")
+					.setEpoch(epoch)
+					.setTcsCount(tcs).setTlsCount(tls)
+					.setTlsGreen(green).setTlsYellow(yellow).setTlsRed(red)
+					.setCars(cars).setTrucks(trucks).setBikes(bikes).setBuses(buses)
+					.setCycles(cycles)
+					.build();
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method queues a rebalance on the rebalancing thread, the rebalance lock must be held
+	 */
+	private void requestRebalance() {
+		rebalancer.execute(this::rebalance);
+	}
+
+	/*
+	 * Method sends the new assignments to the workers, runs on the rebalancing thread only.
+	 * Workers that do not answer are fenced and the rebalance is run again without them.
+	 */
+	private void rebalance() {
+		while (true) {
+			Map<String, WorkerHandle> members;
+			Map<String, List<Integer>> current;
+			ConsistentHashRing membersRing;
+			Set<Integer> heldIds = new HashSet<>();
+			long assignmentEpoch;
+			rebalanceLock.lock();
+			try {
+				releaseHeldSystems();
+				for (HeldSystems systems : held.values()) {
+					heldIds.addAll(systems.tcsIds);
+				}
+				members = new HashMap<>(workers);
+				current = assignments;
+				membersRing = ring;
+				assignmentEpoch = ++epoch;
+			} finally {
+				rebalanceLock.unlock();
+			}
+			List<Integer> free = new ArrayList<>(tcsIds);
+			free.removeAll(heldIds);                            // systems of a failed worker may still run until its lease is over
+			Map<String, List<Integer>> next = membersRing.assign(free);
+			ConfigBatch config = lastConfig;
+
+			// step 1: every worker stops the systems it loses
+			Map<String, List<Integer>> stops = new HashMap<>();
+			for (Map.Entry<String, List<Integer>> assignment : current.entrySet()) {
+				List<Integer> kept = new ArrayList<>(assignment.getValue());
+				kept.retainAll(next.getOrDefault(assignment.getKey(), new ArrayList<Integer>()));
+				if (members.containsKey(assignment.getKey()) && kept.size() < assignment.getValue().size()) {
+					stops.put(assignment.getKey(), kept);
+				}
+			}
+			Set<String> failed = new HashSet<>();
+			Map<String, AssignmentAck> stopped = send(members, stops, assignmentEpoch, config, failed);
+			if (!failed.isEmpty()) {
+				// nothing is started: the systems of a worker that did not acknowledge their stop may still run
+				rebalanceLock.lock();
+				try {
+					for (String workerId : failed) {
+						System.err.println("Worker " + workerId + " did not acknowledge its stops, its Traffic Control Systems"
+								+ " move to the others once its lease is over");
+						fenceWorker(workerId, new HashSet<>(current.getOrDefault(workerId, new ArrayList<Integer>())));
+					}
+				} finally {
+					rebalanceLock.unlock();
+				}
+				continue;
+			}
+
+			// a system still running on the worker that lost it stays there until a later rebalance stops it
+			boolean unstopped = false;
+			for (Map.Entry<String, AssignmentAck> ack : stopped.entrySet()) {
+				for (int tcsId : ack.getValue().getUnstoppedTcsIdsList()) {
+					for (List<Integer> assignment : next.values()) {
+						assignment.remove(Integer.valueOf(tcsId));
+					}
+					next.computeIfAbsent(ack.getKey(), worker -> new ArrayList<Integer>()).add(tcsId);
+					unstopped = true;
+				}
+			}
+
+			// step 2: every worker gets its full assignment and starts the systems it gains
+			send(members, next, assignmentEpoch, config, failed);
+
+			rebalanceLock.lock();
+			try {
+				assignments = new HashMap<>(next);
+				for (String workerId : failed) {
+					// the worker may run what it had and what it was just sent
+					Set<Integer> maybeRunning = new HashSet<>(current.getOrDefault(workerId, new ArrayList<Integer>()));
+					maybeRunning.addAll(next.getOrDefault(workerId, new ArrayList<Integer>()));
+					System.err.println("Worker " + workerId + " is not answering, its Traffic Control Systems move to the others"
+							+ " once its lease is over");
+					fenceWorker(workerId, maybeRunning);
+				}
+				if (!failed.isEmpty()) {
+					continue;
+				}
+				for (Map.Entry<String, List<Integer>> assignment : next.entrySet()) {
+					System.out.println("Assignment " + assignmentEpoch + ": worker " + assignment.getKey() + " runs "
+							+ assignment.getValue().size() + " Traffic Control Systems");
+				}
+				if (unstopped) {
+					rebalancer.schedule(this::rebalance, RETRY_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				return;
+			} finally {
+				rebalanceLock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Method sends their assignments to the workers all at once
+	 *
+	 * @param failed receives the workers that did not answer
+	 * @return acknowledgements of the workers that answered, by worker id
+	 */
+	private Map<String, AssignmentAck> send(Map<String, WorkerHandle> members, Map<String, List<Integer>> tcs,
+			long assignmentEpoch, ConfigBatch config, Set<String> failed) {
+		Map<String, CompletableFuture<AssignmentAck>> replies = new HashMap<>();
+		for (Map.Entry<String, List<Integer>> assignment : tcs.entrySet()) {
+			ShardAssignment.Builder message = ShardAssignment.newBuilder().setEpoch(assignmentEpoch)
+					.addAllTcsIds(assignment.getValue())
+					.setLeaseMillis(leaseMillis);
+			if (config != null) {
+				message.setConfig(config);
+			}
+			CompletableFuture<AssignmentAck> reply = new CompletableFuture<>();
+			members.get(assignment.getKey()).asyncStub().assign(message.build(), completing(reply));
+			replies.put(assignment.getKey(), reply);
+		}
+
+		Map<String, AssignmentAck> acks = new HashMap<>();
+		for (Map.Entry<String, CompletableFuture<AssignmentAck>> reply : replies.entrySet()) {
+			try {
+				acks.put(reply.getKey(), reply.getValue().join());
+			} catch (RuntimeException e) {
+				failed.add(reply.getKey());
+			}
+		}
+		return acks;
+	}
+
+	/*
+	 * Method renews the lease of every worker, runs on the renewing thread only
+	 */
+	private void renewLeases() {
+		LeaseRenewal renewal;
+		rebalanceLock.lock();
+		try {
+			renewal = LeaseRenewal.newBuilder().setEpoch(epoch).setLeaseMillis(leaseMillis).build();
+		} finally {
+			rebalanceLock.unlock();
+		}
+		Map<String, CompletableFuture<LeaseAck>> replies = new HashMap<>();
+		for (WorkerHandle worker : currentWorkers()) {
+			CompletableFuture<LeaseAck> reply = new CompletableFuture<>();
+			worker.asyncStub().renew(renewal, completing(reply));
+			replies.put(worker.info.getWorkerId(), reply);
+		}
+		for (Map.Entry<String, CompletableFuture<LeaseAck>> reply : replies.entrySet()) {
+			try {
+				reply.getValue().join();
+			} catch (RuntimeException e) {
+				workerFailed(reply.getKey(), e);
+			}
+		}
+	}
+
+	/*
+	 * Method removes a worker from the ring, the rebalance lock must be held
+	 */
+	private void removeWorker(String workerId) {
+		WorkerHandle worker = workers.remove(workerId);
+		if (worker != null) {
+			worker.channel.shutdownNow();
+		}
+		ring = ring.withoutWorker(workerId);
+	}
+
+	/*
+	 * Method removes a worker that stopped answering and holds the systems it may still run until its lease is over,
+	 * the rebalance lock must be held.
+	 * The last lease the worker got was granted before now, so it stopped them by now + lease + stop grace.
+	 */
+	private void fenceWorker(String workerId, Set<Integer> maybeRunning) {
+		removeWorker(workerId);
+		assignments.remove(workerId);
+		long releaseDelay = leaseMillis + STOP_GRACE_IN_MILLIS;
+		HeldSystems previous = held.get(workerId);
+		Set<Integer> systems = new HashSet<>(maybeRunning);
+		if (previous != null) {
+			systems.addAll(previous.tcsIds);
+		}
+		held.put(workerId, new HeldSystems(systems, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(releaseDelay)));
+		rebalancer.schedule(this::rebalance, releaseDelay, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * Method releases the systems held for failed workers whose lease is over, the rebalance lock must be held
+	 */
+	private void releaseHeldSystems() {
+		long now = System.nanoTime();
+		held.values().removeIf(systems -> now - systems.releaseAt >= 0);
+	}
+
+	/*
+	 * Method handles a worker that failed to answer a query: it is fenced and the systems are rebalanced
+	 */
+	private void workerFailed(String workerId, Throwable cause) {
+		rebalanceLock.lock();
+		try {
+			if (workers.containsKey(workerId)) {
+				System.err.println("Worker " + workerId + " failed: " + cause.getMessage());
+				fenceWorker(workerId, new HashSet<>(assignments.getOrDefault(workerId, new ArrayList<Integer>())));
+				requestRebalance();
+			}
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/*
+	 * Method returns the workers of the cluster
+	 */
+	private List<WorkerHandle> currentWorkers() {
+		rebalanceLock.lock();
+		try {
+			return new ArrayList<>(workers.values());
+		} finally {
+			rebalanceLock.unlock();
+		}
+	}
+
+	/*
+	 * Method returns an observer completing the future with the single reply of a call
+	 */
+	private static <T> StreamObserver<T> completing(CompletableFuture<T> future) {
+		return new StreamObserver<T>() {
+
+			@Override
+			public void onNext(T value) {
+				future.complete(value);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				future.completeExceptionally(t);
+			}
+
+			@Override
+			public void onCompleted() {
+			}
+		};
+	}
+
+
+	// getters
+
+	/**
+	 * Get current ring of workers
+	 */
+	public ConsistentHashRing getRing() {
+		return ring;
+	}
+
+
+	/*
+	 * Systems of a failed worker, assigned to no one until releaseAt (System.nanoTime())
+	 */
+	private static final class HeldSystems {
+		private final Set<Integer> tcsIds;
+		private final long releaseAt;
+
+		HeldSystems(Set<Integer> tcsIds, long releaseAt) {
+			this.tcsIds = tcsIds;
+			this.releaseAt = releaseAt;
+		}
+	}
+
+
+	/*
+	 * Connection to a worker
+	 */
+	private static final class WorkerHandle {
+		private final WorkerInfo info;
+		private final ManagedChannel channel;
+
+		WorkerHandle(WorkerInfo info) {
+			this.info = info;
+			this.channel = ManagedChannelBuilder.forAddress(info.getHost(), info.getPort()).usePlaintext().build();
+		}
+
+		ShardWorkerGrpc.ShardWorkerStub asyncStub() {
+			return ShardWorkerGrpc.newStub(channel).withDeadlineAfter(RPC_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+
+
+	/**
+	 * Starts the coordinator and reads commands from the console:
+	 * - summary: prints the city summary merged from the workers
+	 * - config scans length [fixed]: pushes a configuration to every Traffic Control System
+	 * - workers: prints the workers of the ring
+	 * - quit
+	 * The coordinator listens on the address of the cluster.host system property, loopback by default.
+	 *
+	 * @param args port of the coordinator, number of Traffic Control Systems of the city (IDs 1 to n)
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 50060;
+		int systems = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+		List<Integer> tcsIds = new ArrayList<>();
+		for (int id = 1; id <= systems; id++) {
+			tcsIds.add(id);
+		}
+		ShardCoordinator coordinator = new ShardCoordinator(tcsIds);
+		String host = System.getProperty(ShardWorker.HOST_PROPERTY, ShardWorker.DEFAULT_HOST);
+		Server server = NettyServerBuilder.forAddress(new InetSocketAddress(host, port)).addService(coordinator).build().start();
+		System.out.println("Coordinator listening on " + host + ":" + port + " for " + systems + " Traffic Control Systems");
+
+		BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+		String line;
+		while ((line = console.readLine()) != null) {
+			String[] command = line.trim().split("\\s+");
+			if (command[0].equals("summary")) {
+				List<ShardSummary> perWorker = new ArrayList<>();
+				ShardSummary city = coordinator.summarizeCity(perWorker);
+				for (ShardSummary worker : perWorker) {
+					System.out.println(worker.getWorkerId() + ": " + worker.getTcsCount() + " TCS, " + worker.getCycles() + " cycles");
+				}
+				System.out.println("City: " + city.getTcsCount() + " TCS, " + city.getTlsCount() + " TLS (" + city.getTlsGreen()
+						+ " green, " + city.getTlsYellow() + " yellow, " + city.getTlsRed() + " red), vehicles "
+						+ (city.getCars() + city.getTrucks() + city.getBikes() + city.getBuses()));
+
+			} else if (command[0].equals("config") && command.length >= 3) {
+				Map<Integer, ConfigAck> acks = coordinator.pushConfiguration(ConfigBatch.newBuilder()
+						.setNumOfScans(Integer.parseInt(command[1]))
+						.setScanLengthSeconds(Integer.parseInt(command[2]))
+						.setStrategy(command.length > 3 && command[3].equals("fixed")
+								? ControlStrategy.CONTROL_STRATEGY_FIXED_TIME : ControlStrategy.CONTROL_STRATEGY_TRAFFIC_DENSITY));
+				System.out.println("Configuration acknowledged by " + acks.size() + " Traffic Control Systems");
+
+			} else if (command[0].equals("workers")) {
+				System.out.println("Workers: " + coordinator.getRing().getWorkers());
+
+			} else if (command[0].equals("quit")) {
+				break;
+			}
+		}
+		server.shutdownNow();
+	}
+}
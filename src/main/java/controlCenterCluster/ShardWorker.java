@@ -0,0 +1,445 @@
+/**
+ *
+ */
+package controlCenterCluster;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cityStateStore.CityStateStore;
+import cityStateStore.IdAllocator;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import trafficCluster.AssignmentAck;
+import trafficCluster.ConfigureReply;
+import trafficCluster.JoinReply;
+import trafficCluster.LeaseAck;
+import trafficCluster.LeaseRenewal;
+import trafficCluster.ShardAssignment;
+import trafficCluster.ShardCoordinatorGrpc;
+import trafficCluster.ShardSummary;
+import trafficCluster.ShardWorkerGrpc;
+import trafficCluster.SummaryRequest;
+import trafficCluster.WorkerInfo;
+import trafficCommands.ConfigBatch;
+import trafficControlSystem.CommandClient;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.TrafficLightSystem;
+import visualRecognitionSystem.VisualRecognitionSystem;
+
+/**
+ * Class is a Control Center worker of the sharded mode: a process running the Traffic Control Systems
+ * the coordinator assigns to it, each one cycling on its own thread.
+ *
+ * On a new assignment the worker first stops the systems it no longer owns, then starts the new ones
+ * with the last configuration pushed. A stopped system is interrupted and its cycle thread waited for
+ * before the assignment is acknowledged, so the coordinator only hands it over once it stopped.
+ * Its rows are then removed from the CityStateStore. Its cycle count and history are not handed over,
+ * the new owner starts it from the predefined state. A system whose cycle thread is still running after
+ * the stop timeout is kept and reported in the acknowledgement, the coordinator does not hand it over yet.
+ *
+ * Every assignment and renewal from the coordinator grants the worker a lease. A worker whose lease runs out,
+ * because the coordinator lost it or thinks it failed, stops all its systems on its own: the coordinator
+ * only hands them to other workers once that lease is over.
+ *
+ * The lights, Traffic Light Systems and VRSs of a system get new ids from the IdAllocator. Workers sharing its
+ * high-water mark file never hand out the same id.
+ */
+public class ShardWorker extends ShardWorkerGrpc.ShardWorkerImplBase {
+
+	// vars
+	private static final int DEFAULT_NUM_OF_SCANS = 3;
+	private static final int DEFAULT_SCAN_LENGTH_IN_SECONDS = 2;
+	private static final long RPC_TIMEOUT_IN_SECONDS = 10;
+	private static final long STOP_TIMEOUT_IN_MILLIS = 5000;        // below the coordinator RPC timeout
+	private static final String DEFAULT_ID_MARK_FILE = "ids.hwm";   // shared by the workers of a host, so their ids never clash
+	private static final long LEASE_CHECK_INTERVAL_IN_MILLIS = 250;
+	public static final String HOST_PROPERTY = "cluster.host";    // address the cluster processes bind and are reached at
+	public static final String DEFAULT_HOST = "127.0.0.1";
+
+	private final String workerId;
+	private final ReentrantLock assignmentLock;
+	private final Map<Integer, TrafficControlSystem> running;   // by TCS id, guarded by the assignment lock
+	private final Map<Integer, Thread> cycleThreads;            // by TCS id, guarded by the assignment lock
+	private long epoch;
+	private ConfigBatch lastConfig;
+	private volatile long leaseDeadline;                         // System.nanoTime(), 0 while no lease was granted
+	private final ScheduledExecutorService leaseWatch;
+
+
+	/**
+	 * Initialises a worker running no Traffic Control System
+	 * **/
+	public ShardWorker(String workerId) {
+		this.workerId = workerId;
+		this.assignmentLock = new ReentrantLock();
+		this.running = new LinkedHashMap<>();
+		this.cycleThreads = new HashMap<>();
+		this.epoch = -1;
+		this.leaseWatch = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "lease-watch-" + workerId);
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.leaseWatch.scheduleWithFixedDelay(this::checkLease, LEASE_CHECK_INTERVAL_IN_MILLIS,
+				LEASE_CHECK_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+
+	/***********************  SERVICE ******************/
+
+	/***
+	 * Method sets the Traffic Control Systems this worker runs
+	 * **/
+	@Override
+	public void assign(ShardAssignment assignment, StreamObserver<AssignmentAck> responseObserver) {
+		int started = 0;
+		int stopped = 0;
+		List<Integer> unstopped = new ArrayList<>();
+		long runningEpoch;
+
+		assignmentLock.lock();
+		try {
+			if (assignment.getEpoch() >= epoch) {        // an older assignment arriving late is ignored
+				renewLease(assignment.getLeaseMillis());
+				epoch = assignment.getEpoch();
+				if (assignment.hasConfig()) {
+					lastConfig = assignment.getConfig();
+				}
+				Set<Integer> wanted = new HashSet<>(assignment.getTcsIdsList());
+
+				Iterator<Map.Entry<Integer, TrafficControlSystem>> systems = running.entrySet().iterator();
+				while (systems.hasNext()) {
+					Map.Entry<Integer, TrafficControlSystem> system = systems.next();
+					if (!wanted.contains(system.getKey())) {
+						if (stopSystem(system.getKey(), system.getValue())) {
+							systems.remove();
+							stopped++;
+						} else {
+							unstopped.add(system.getKey());
+						}
+					}
+				}
+				for (int tcsId : assignment.getTcsIdsList()) {
+					if (!running.containsKey(tcsId) && startSystem(tcsId)) {
+						started++;
+					}
+				}
+			}
+			runningEpoch = epoch;
+		} finally {
+			assignmentLock.unlock();
+		}
+
+		System.out.println("Worker " + workerId + " runs assignment " + runningEpoch + ": " + started + " started, "
+				+ stopped + " stopped");
+		responseObserver.onNext(AssignmentAck.newBuilder()
+				.setWorkerId(workerId)
+				.setEpoch(runningEpoch)
+				.setStarted(started)
+				.setStopped(stopped)
+				.addAllUnstoppedTcsIds(unstopped)
+				.build());
+		responseObserver.onCompleted();
+	}
+
+	/***
+	 * Method extends the lease of the worker
+	 * **/
+	@Override
+	public void renew(LeaseRenewal renewal, StreamObserver<LeaseAck> responseObserver) {
+		long runningEpoch;
+		assignmentLock.lock();
+		try {
+			renewLease(renewal.getLeaseMillis());
+			runningEpoch = epoch;
+		} finally {
+			assignmentLock.unlock();
+		}
+		responseObserver.onNext(LeaseAck.newBuilder().setWorkerId(workerId).setEpoch(runningEpoch).build());
+		responseObserver.onCompleted();
+	}
+
+	/***
+	 * Method applies a configuration to every Traffic Control System of the worker
+	 * **/
+	@Override
+	public void configure(ConfigBatch batch, StreamObserver<ConfigureReply> responseObserver) {
+		ConfigureReply.Builder reply = ConfigureReply.newBuilder().setWorkerId(workerId);
+
+		assignmentLock.lock();
+		try {
+			if (isValid(batch) && (lastConfig == null || batch.getVersion() > lastConfig.getVersion())) {
+				lastConfig = batch;     // systems started later get it too
+			}
+			for (TrafficControlSystem tcs : running.values()) {
+				reply.addAcks(CommandClient.apply(tcs, batch));
+			}
+		} finally {
+			assignmentLock.unlock();
+		}
+
+		responseObserver.onNext(reply.build());
+		responseObserver.onCompleted();
+	}
+
+	/***
+	 * Method summarises the state of the Traffic Control Systems of the worker
+	 * **/
+	@Override
+	public void summarize(SummaryRequest request, StreamObserver<ShardSummary> responseObserver) {
+		CityStateStore store = CityStateStore.getInstance();
+		ShardSummary.Builder summary = ShardSummary.newBuilder().setWorkerId(workerId);
+		int green = 0;
+		int yellow = 0;
+		int red = 0;
+		int lightSystems = 0;
+		long cycles = 0;
+		long[] vehicles = new long[CityStateStore.VEHICLE_CLASSES];
+
+		assignmentLock.lock();
+		try {
+			summary.setEpoch(epoch).setTcsCount(running.size());
+			for (TrafficControlSystem tcs : running.values()) {
+				cycles += tcs.getCycleCount();
+				for (TrafficLightSystem tls : tcs.getTrafficLightSystems()) {
+					lightSystems++;
+					switch (CityStateStore.encodeState(tls.getState())) {
+					case CityStateStore.STATE_GREEN:
+						green++;
+						break;
+					case CityStateStore.STATE_YELLOW:
+						yellow++;
+						break;
+					case CityStateStore.STATE_RED:
+						red++;
+						break;
+					default:
+						break;
+					}
+					for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+						for (int c = 0; c < CityStateStore.VEHICLE_CLASSES; c++) {
+							vehicles[c] += store.getVehicleCount(vrs.getIndex(), c);
+						}
+					}
+				}
+			}
+		} finally {
+			assignmentLock.unlock();
+		}
+
+		responseObserver.onNext(summary
+				.setTlsCount(lightSystems)
+				.setTlsGreen(green)
+				.setTlsYellow(yellow)
+				.setTlsRed(red)
+				.setCars(vehicles[CityStateStore.CARS])
+				.setTrucks(vehicles[CityStateStore.TRUCKS])
+				.setBikes(vehicles[CityStateStore.BIKES])
+				.setBuses(vehicles[CityStateStore.BUSES])
+				.setCycles(cycles)
+				.build());
+		responseObserver.onCompleted();
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method creates, configures and starts the cycles of a Traffic Control System, the assignment lock must be held
+	 */
+	private boolean startSystem(int tcsId) {
+		TrafficControlSystem tcs = new TrafficControlSystem(tcsId);
+		try {
+			tcs.initTrafficLightSystems();
+			if (lastConfig != null) {
+				tcs.applyConfiguration(CommandClient.toConfiguration(lastConfig));
+			} else {
+				tcs.configAllVisualRecognitionSystems(DEFAULT_NUM_OF_SCANS, DEFAULT_SCAN_LENGTH_IN_SECONDS);
+			}
+		} catch (Exception e) {
+			System.err.println("Worker " + workerId + " could not start Traffic Control System " + tcsId + ": " + e.getMessage());
+			return false;
+		}
+		running.put(tcsId, tcs);
+		IdAllocator.getInstance().publishClaims();   // the assigned id is kept clear of by the workers sharing the mark
+
+		Thread cycles = new Thread(() -> tcs.startTrafficControlCycle("green"), "tcs-" + tcsId);
+		cycles.setDaemon(true);
+		cycleThreads.put(tcsId, cycles);
+		cycles.start();
+		return true;
+	}
+
+	/*
+	 * Method stops a Traffic Control System and waits for its cycle thread, the assignment lock must be held.
+	 * The rows of the system are removed from the store once its thread is over, a thread still running
+	 * after the timeout keeps them so it never writes to rows handed to another system.
+	 *
+	 * @return false if the cycle thread is still running, the system stays with the worker and is stopped again later
+	 */
+	private boolean stopSystem(int tcsId, TrafficControlSystem tcs) {
+		tcs.setIsOperative(false);
+		Thread cycles = cycleThreads.get(tcsId);
+		if (cycles != null) {
+			cycles.interrupt();      // cuts the phase short, a stopped system does not run it again
+			try {
+				cycles.join(STOP_TIMEOUT_IN_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (cycles.isAlive()) {
+				System.err.println("Worker " + workerId + ": Traffic Control System " + tcsId + " did not stop within "
+						+ STOP_TIMEOUT_IN_MILLIS + " ms");
+				return false;
+			}
+			cycleThreads.remove(tcsId);
+		}
+		CityStateStore.getInstance().unregisterTrafficControlSystem(tcsId);
+		return true;
+	}
+
+	/*
+	 * Method returns whether the batch converts into a configuration
+	 */
+	private static boolean isValid(ConfigBatch batch) {
+		try {
+			CommandClient.toConfiguration(batch);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Method extends the lease by the given length, the assignment lock must be held
+	 */
+	private void renewLease(long leaseMillis) {
+		leaseDeadline = leaseMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseMillis) : 0;
+	}
+
+	/*
+	 * Method stops every Traffic Control System once the lease ran out, runs on the lease watch thread
+	 */
+	private void checkLease() {
+		long deadline = leaseDeadline;
+		if (deadline == 0 || System.nanoTime() - deadline < 0) {
+			return;
+		}
+		assignmentLock.lock();
+		try {
+			if (leaseDeadline != deadline) {
+				return;          // renewed meanwhile
+			}
+			leaseDeadline = 0;
+			if (!running.isEmpty()) {
+				System.err.println("Worker " + workerId + " lost its lease, stopping its " + running.size()
+						+ " Traffic Control Systems");
+				stopAll();
+			}
+		} finally {
+			assignmentLock.unlock();
+		}
+	}
+
+	/***
+	 * Method stops every Traffic Control System of the worker
+	 * **/
+	public void stopAll() {
+		assignmentLock.lock();
+		try {
+			for (Map.Entry<Integer, TrafficControlSystem> system : running.entrySet()) {
+				system.getValue().setIsOperative(false);     // all of them stop at once, then they are waited for
+			}
+			Iterator<Map.Entry<Integer, TrafficControlSystem>> systems = running.entrySet().iterator();
+			while (systems.hasNext()) {
+				Map.Entry<Integer, TrafficControlSystem> system = systems.next();
+				if (stopSystem(system.getKey(), system.getValue())) {
+					systems.remove();
+				}
+			}
+		} finally {
+			assignmentLock.unlock();
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get ID of the worker
+	 */
+	public String getWorkerId() {
+		return workerId;
+	}
+
+	/**
+	 * Get IDs of the Traffic Control Systems the worker runs
+	 */
+	public List<Integer> getRunningSystems() {
+		assignmentLock.lock();
+		try {
+			return new ArrayList<>(running.keySet());
+		} finally {
+			assignmentLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Starts a worker and joins the cluster. The worker listens on the address of the cluster.host system property,
+	 * loopback by default, and gives it to the coordinator.
+	 *
+	 * @param args worker id, port of the worker, address of the coordinator (host:port)
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: ShardWorker <worker id> <port> <coordinator host:port> [id high-water mark file]");
+			return;
+		}
+		String workerId = args[0];
+		int port = Integer.parseInt(args[1]);
+		IdAllocator.getInstance().persistTo(Paths.get(args.length > 3 ? args[3] : DEFAULT_ID_MARK_FILE));
+
+		String host = System.getProperty(HOST_PROPERTY, DEFAULT_HOST);
+
+		ShardWorker worker = new ShardWorker(workerId);
+		Server server = NettyServerBuilder.forAddress(new InetSocketAddress(host, port)).addService(worker).build().start();
+		ManagedChannel coordinatorChannel = ManagedChannelBuilder.forTarget(args[2]).usePlaintext().build();
+		ShardCoordinatorGrpc.ShardCoordinatorBlockingStub coordinator = ShardCoordinatorGrpc.newBlockingStub(coordinatorChannel);
+		WorkerInfo info = WorkerInfo.newBuilder().setWorkerId(workerId).setHost(host).setPort(port).build();
+
+		JoinReply joined = coordinator.withDeadlineAfter(RPC_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS).join(info);
+		System.out.println("Worker " + workerId + " joined a cluster of " + joined.getWorkers() + " workers, assignment "
+				+ joined.getEpoch());
+
+		// leave on shutdown: stop the systems first so they never run on two workers at once
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			worker.stopAll();
+			try {
+				coordinator.withDeadlineAfter(RPC_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS).leave(info);
+			} catch (StatusRuntimeException e) {
+				System.err.println("Worker " + workerId + " could not leave the cluster: " + e.getMessage());
+			}
+			coordinatorChannel.shutdownNow();
+			server.shutdownNow();
+		}));
+		server.awaitTermination();
+	}
+}
@@ -0,0 +1,333 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import cityStateStore.IntIndexMap;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.TrafficLightSystem;
+import visualRecognitionSystem.CountFeedProtocol;
+import visualRecognitionSystem.VisualRecognitionSystem;
+
+/**
+ * Class receives the scan counts pushed by external camera processes and routes them to their
+ * Visual Recognition Systems.
+ *
+ * One selector thread serves every connection, over local TCP or Unix domain sockets, without blocking on any.
+ * Each connection reads into its own direct buffer, allocated when it is accepted, and the frames of
+ * CountFeedProtocol are decoded in place from it, so a message is routed without allocating anything.
+ * A VRS that receives camera counts stops simulating its own.
+ *
+ * The VRSs are registered before the server starts, the routing table is not changed afterwards.
+ */
+public class CameraFeedServer {
+
+	// vars
+	private static final int READ_BUFFER_BYTES = 64 * 1024;
+
+	private final IntIndexMap vrsIndexById;
+	private final List<VisualRecognitionSystem> systems;
+	private final List<ServerSocketChannel> listeners;
+	private final List<Path> socketFiles;
+	private boolean[] fed;                            // by VRS index, touched by the selector thread only
+	private Selector selector;
+	private Thread selectorThread;
+	private volatile boolean running;
+	private volatile long messages;                   // written by the selector thread only
+	private volatile long unknownVrsMessages;
+	private volatile long malformedConnections;
+	private volatile int connections;
+
+
+	/**
+	 * Initialises a server with no VRS and no listening address
+	 * **/
+	public CameraFeedServer() {
+		this.vrsIndexById = new IntIndexMap(64);
+		this.systems = new ArrayList<>();
+		this.listeners = new ArrayList<>();
+		this.socketFiles = new ArrayList<>();
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method makes a VRS receive the counts sent with its id
+	 * **/
+	public void register(VisualRecognitionSystem vrs) {
+		checkNotStarted();
+		vrsIndexById.put(vrs.getSYSTEMID(), systems.size());
+		systems.add(vrs);
+	}
+
+	/***
+	 * Method registers the VRSs of every Traffic Light System of every Traffic Control System
+	 * **/
+	public void registerAll(Iterable<TrafficControlSystem> trafficControlSystems) {
+		for (TrafficControlSystem tcs : trafficControlSystems) {
+			for (TrafficLightSystem tls : tcs.getTrafficLightSystems()) {
+				for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+					register(vrs);
+				}
+			}
+		}
+	}
+
+	/***
+	 * Method listens on a TCP address, port 0 picks a free port
+	 *
+	 * @return the address bound
+	 * **/
+	public SocketAddress bindTcp(InetSocketAddress address) throws IOException {
+		checkNotStarted();
+		ServerSocketChannel listener = ServerSocketChannel.open();
+		listener.bind(address);
+		listeners.add(listener);
+		return listener.getLocalAddress();
+	}
+
+	/***
+	 * Method listens on a Unix domain socket, replacing a socket file left by a previous run
+	 *
+	 * @return the address bound
+	 * **/
+	public SocketAddress bindUnix(Path socketFile) throws IOException {
+		checkNotStarted();
+		Files.deleteIfExists(socketFile);
+		ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		listener.bind(UnixDomainSocketAddress.of(socketFile));
+		listeners.add(listener);
+		socketFiles.add(socketFile);
+		return listener.getLocalAddress();
+	}
+
+	/***
+	 * Method starts the selector thread
+	 * **/
+	public synchronized void start() throws IOException {
+		checkNotStarted();
+		fed = new boolean[systems.size()];
+		selector = Selector.open();
+		for (ServerSocketChannel listener : listeners) {
+			listener.configureBlocking(false);
+			listener.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		running = true;
+		selectorThread = new Thread(this::serve, "camera-feed-server");
+		selectorThread.setDaemon(true);
+		selectorThread.start();
+	}
+
+	/***
+	 * Method stops the selector thread and closes every connection
+	 * **/
+	public synchronized void close() {
+		if (selectorThread == null) {
+			return;
+		}
+		running = false;
+		selector.wakeup();
+		try {
+			selectorThread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Path socketFile : socketFiles) {
+			try {
+				Files.deleteIfExists(socketFile);
+			} catch (IOException e) {
+				System.err.println("Socket file " + socketFile + " could not be removed: " + e.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Method fails once the server has started
+	 */
+	private void checkNotStarted() {
+		if (selectorThread != null) {
+			throw new IllegalStateException("Camera feed server already started");
+		}
+	}
+
+	/*
+	 * Method runs the selector loop until the server is closed
+	 */
+	private void serve() {
+		try {
+			while (running) {
+				selector.select(this::handle);
+			}
+		} catch (IOException e) {
+			System.err.println("Camera feed server stopped: " + e.getMessage());
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key);
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				System.err.println("Camera feed selector could not be closed: " + e.getMessage());
+			}
+		}
+	}
+
+	/*
+	 * Method handles a ready key, errors only close the connection concerned
+	 */
+	private void handle(SelectionKey key) {
+		try {
+			if (key.isAcceptable()) {
+				accept((ServerSocketChannel) key.channel());
+			} else if (key.isReadable()) {
+				read(key);
+			}
+		} catch (IOException e) {
+			closeQuietly(key);
+		}
+	}
+
+	/*
+	 * Method accepts a connection and gives it its read buffer
+	 */
+	private void accept(ServerSocketChannel listener) throws IOException {
+		SocketChannel channel = listener.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocateDirect(READ_BUFFER_BYTES));
+		connections++;
+	}
+
+	/*
+	 * Method reads what a connection sent and routes the complete frames, a partial frame waits for the next read
+	 */
+	private void read(SelectionKey key) throws IOException {
+		SocketChannel channel = (SocketChannel) key.channel();
+		ByteBuffer buffer = (ByteBuffer) key.attachment();
+		if (channel.read(buffer) < 0) {
+			closeQuietly(key);
+			return;
+		}
+		buffer.flip();
+		while (buffer.remaining() >= CountFeedProtocol.HEADER_BYTES) {
+			int position = buffer.position();
+			int length = buffer.getShort(position) & 0xFFFF;
+			if (length == 0 || length > CountFeedProtocol.MAX_BODY_BYTES) {
+				malformedConnections++;
+				closeQuietly(key);
+				return;
+			}
+			if (buffer.remaining() < CountFeedProtocol.HEADER_BYTES + length) {
+				break;
+			}
+			int body = position + CountFeedProtocol.HEADER_BYTES;
+			if (buffer.get(body) == CountFeedProtocol.SCAN_COUNTS) {
+				if (length < CountFeedProtocol.SCAN_BODY_BYTES) {
+					malformedConnections++;
+					closeQuietly(key);
+					return;
+				}
+				routeScanCounts(buffer, body);
+			}
+			buffer.position(body + length);      // unknown types are skipped
+		}
+		buffer.compact();
+	}
+
+	/*
+	 * Method passes the counts of a scan message to its VRS
+	 */
+	private void routeScanCounts(ByteBuffer buffer, int body) {
+		int vrsId = buffer.getInt(body + 1);
+		int index = vrsIndexById.get(vrsId);
+		if (index < 0) {
+			unknownVrsMessages++;
+			return;
+		}
+		VisualRecognitionSystem vrs = systems.get(index);
+		if (!fed[index]) {
+			vrs.setCameraFed(true);
+			fed[index] = true;
+		}
+		vrs.reportDetectedVehicles(buffer.getLong(body + 5),
+				buffer.getShort(body + 13) & 0xFFFF,
+				buffer.getShort(body + 15) & 0xFFFF,
+				buffer.getShort(body + 17) & 0xFFFF,
+				buffer.getShort(body + 19) & 0xFFFF,
+				buffer.getInt(body + 21));
+		messages++;
+	}
+
+	/*
+	 * Method closes the channel of a key
+	 */
+	private void closeQuietly(SelectionKey key) {
+		if (!key.isValid()) {
+			return;              // closed already
+		}
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			System.err.println("Camera feed connection could not be closed: " + e.getMessage());
+		}
+		if (key.attachment() != null) {
+			connections--;
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of scan messages routed to a VRS
+	 */
+	public long getMessages() {
+		return messages;
+	}
+
+	/**
+	 * Get number of scan messages of a VRS not registered
+	 */
+	public long getUnknownVrsMessages() {
+		return unknownVrsMessages;
+	}
+
+	/**
+	 * Get number of connections closed for sending an invalid frame
+	 */
+	public long getMalformedConnections() {
+		return malformedConnections;
+	}
+
+	/**
+	 * Get number of connections open
+	 */
+	public int getConnections() {
+		return connections;
+	}
+
+	@Override
+	public String toString() {
+		return "Camera feed: " + messages + " scans routed, " + unknownVrsMessages + " of unknown VRSs, "
+				+ malformedConnections + " connections dropped for invalid frames";
+	}
+}
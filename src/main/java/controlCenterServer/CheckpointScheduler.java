@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class writes a controller checkpoint periodically on a background thread.
+ *
+ * Checkpoints are taken from consistent snapshots, so the Traffic Control cycles
+ * keep running while a checkpoint is written.
+ */
+public class CheckpointScheduler {
+
+	// vars
+	private final Path checkpointFile;
+	private final long intervalInSeconds;
+
+	// objects
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Initialises a scheduler writing to the given file every n seconds
+	 * **/
+	public CheckpointScheduler(Path checkpointFile, long intervalInSeconds) {
+		this.checkpointFile = checkpointFile;
+		this.intervalInSeconds = intervalInSeconds;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method starts writing checkpoints periodically
+	 * **/
+	public synchronized void start() {
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "controller-checkpoint");
+			thread.setDaemon(true);      // never keeps the Control Centre alive on its own
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::writeCheckpoint, intervalInSeconds, intervalInSeconds, TimeUnit.SECONDS);
+	}
+
+	/***
+	 * Method stops the periodic checkpoints and writes a last one
+	 * **/
+	public synchronized void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(intervalInSeconds, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		scheduler = null;
+		writeCheckpoint();
+	}
+
+	/*
+	 * Method writes one checkpoint, errors are reported and the next run tries again
+	 */
+	private void writeCheckpoint() {
+		try {
+			ControllerCheckpoint.write(checkpointFile);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Error writing controller checkpoint " + checkpointFile + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.stub.StreamObserver;
+import trafficCommands.CommandReply;
+import trafficCommands.CommandServiceGrpc;
+import trafficCommands.ConfigAck;
+import trafficCommands.ConfigBatch;
+import trafficCommands.Register;
+
+/**
+ * Class is the Control Center end of the command streams opened by the Traffic Control Systems.
+ *
+ * Every Traffic Control System keeps one stream open. A configuration is pushed down all the streams at once
+ * with a new version and the acknowledgements come back on the same streams, so reconfiguring the city
+ * takes one round trip instead of one blocking call per camera.
+ *
+ * The last configuration pushed is kept: a Traffic Control System registering with an older version,
+ * after a restart or a lost stream, gets it as soon as it registers. A Traffic Control System registering
+ * with a newer version, pushed before the Control Center restarted, moves the version counter past it,
+ * so the next push is not ignored as stale.
+ */
+public class CommandDispatcher extends CommandServiceGrpc.CommandServiceImplBase {
+
+	// vars
+	public static final String NOT_ACKNOWLEDGED = "Not acknowledged in time";
+
+	private final ConcurrentMap<Integer, Session> sessions;   // by TCS id
+	private final AtomicLong versions;
+	private final ReentrantLock registrationLock;
+	private final Condition registered;
+	private volatile ConfigBatch latest;
+
+
+	/**
+	 * Initialises a dispatcher with no Traffic Control System connected
+	 * **/
+	public CommandDispatcher() {
+		this.sessions = new ConcurrentHashMap<>();
+		this.versions = new AtomicLong();
+		this.registrationLock = new ReentrantLock();
+		this.registered = registrationLock.newCondition();
+	}
+
+
+	/***
+	 * Method handles the command stream of a Traffic Control System
+	 * **/
+	@Override
+	public StreamObserver<CommandReply> openCommandStream(StreamObserver<ConfigBatch> batches) {
+		return new StreamObserver<CommandReply>() {
+			private Session session;
+
+			@Override
+			public void onNext(CommandReply reply) {
+				switch (reply.getReplyCase()) {
+				case REGISTER:
+					Register register = reply.getRegister();
+					versions.accumulateAndGet(register.getAppliedVersion(), Math::max);
+					session = new Session(register.getTcsId(), batches);
+					Session previous = sessions.put(session.tcsId, session);
+					if (previous != null) {
+						previous.fail("Traffic Control System " + session.tcsId + " opened a new command stream");
+					}
+					signalRegistration();
+
+					ConfigBatch last = latest;
+					if (last != null && last.getVersion() > register.getAppliedVersion()) {
+						session.send(last);      // catch up with the last configuration pushed
+					}
+					break;
+				case ACK:
+					if (session != null) {
+						session.acknowledge(reply.getAck());
+					}
+					break;
+				default:
+					break;
+				}
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				close("Command stream failed: " + t.getMessage());
+			}
+
+			@Override
+			public void onCompleted() {
+				close("Command stream closed");
+				batches.onCompleted();
+			}
+
+			private void close(String reason) {
+				if (session != null) {
+					sessions.remove(session.tcsId, session);
+					session.fail(reason);
+				}
+			}
+		};
+	}
+
+
+	/***
+	 * Method pushes a configuration to every connected Traffic Control System with a new version
+	 *
+	 * @param batch configuration without version, the version is assigned here
+	 * @param timeout time every Traffic Control System has to acknowledge
+	 * @return acknowledgements by TCS id, completed once every Traffic Control System answered, its stream was closed
+	 *         or the timeout elapsed (then its acknowledgement says it was not applied, with NOT_ACKNOWLEDGED as error)
+	 * **/
+	public CompletableFuture<Map<Integer, ConfigAck>> pushToAll(ConfigBatch.Builder batch, long timeout, TimeUnit unit) {
+		ConfigBatch versioned = batch.setVersion(versions.incrementAndGet()).build();
+		latest = versioned;
+
+		List<Session> targets = new ArrayList<>(sessions.values());
+		List<CompletableFuture<ConfigAck>> acks = new ArrayList<>(targets.size());
+		for (Session session : targets) {
+			acks.add(session.send(versioned, timeout, unit));
+		}
+
+		return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			Map<Integer, ConfigAck> byTcs = new HashMap<>();
+			for (CompletableFuture<ConfigAck> ack : acks) {
+				ConfigAck value = ack.join();
+				byTcs.put(value.getTcsId(), value);
+			}
+			return byTcs;
+		});
+	}
+
+	/***
+	 * Method waits until the given number of Traffic Control Systems have registered
+	 *
+	 * @return false if the timeout elapsed first
+	 * **/
+	public boolean awaitSessions(int count, long timeout, TimeUnit unit) throws InterruptedException {
+		long nanos = unit.toNanos(timeout);
+		registrationLock.lock();
+		try {
+			while (sessions.size() < count) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = registered.awaitNanos(nanos);
+			}
+			return true;
+		} finally {
+			registrationLock.unlock();
+		}
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method wakes up the threads waiting for registrations
+	 */
+	private void signalRegistration() {
+		registrationLock.lock();
+		try {
+			registered.signalAll();
+		} finally {
+			registrationLock.unlock();
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of Traffic Control Systems connected
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
+	/**
+	 * Get version of the last configuration pushed or registered
+	 */
+	public long getVersion() {
+		return versions.get();
+	}
+
+	/**
+	 * Get last configuration pushed, null if none was
+	 */
+	public ConfigBatch getLatest() {
+		return latest;
+	}
+
+
+	/*
+	 * Command stream of one Traffic Control System with the batches waiting for acknowledgement
+	 */
+	private static final class Session {
+		private final int tcsId;
+		private final StreamObserver<ConfigBatch> batches;
+		private final ReentrantLock sendLock;        // the response stream is not thread safe
+		private final ConcurrentMap<Long, CompletableFuture<ConfigAck>> pending;   // by version
+		private volatile boolean closed;
+
+		Session(int tcsId, StreamObserver<ConfigBatch> batches) {
+			this.tcsId = tcsId;
+			this.batches = batches;
+			this.sendLock = new ReentrantLock();
+			this.pending = new ConcurrentHashMap<>();
+		}
+
+		CompletableFuture<ConfigAck> send(ConfigBatch batch) {
+			return send(batch, 0, TimeUnit.MILLISECONDS);
+		}
+
+		/*
+		 * Method sends a batch, an acknowledgement not received within the timeout, if positive,
+		 * completes as not applied and is no longer waited for.
+		 * The same batch may be sent twice, by a push and by the catch-up of a registration racing it,
+		 * both wait on the same acknowledgement.
+		 */
+		CompletableFuture<ConfigAck> send(ConfigBatch batch, long timeout, TimeUnit unit) {
+			CompletableFuture<ConfigAck> ack = pending.computeIfAbsent(batch.getVersion(), version -> {
+				CompletableFuture<ConfigAck> waiting = new CompletableFuture<>();
+				waiting.whenComplete((value, error) -> pending.remove(version, waiting));
+				return waiting;
+			});
+			if (timeout > 0) {
+				ack.completeOnTimeout(notApplied(batch.getVersion(), NOT_ACKNOWLEDGED), timeout, unit);
+			}
+			sendLock.lock();
+			try {
+				if (closed) {
+					pending.remove(batch.getVersion());
+					ack.complete(notApplied(batch.getVersion(), "Command stream closed"));
+				} else {
+					batches.onNext(batch);
+				}
+			} finally {
+				sendLock.unlock();
+			}
+			return ack;
+		}
+
+		void acknowledge(ConfigAck ack) {
+			CompletableFuture<ConfigAck> waiting = pending.remove(ack.getVersion());
+			if (waiting != null) {
+				waiting.complete(ack);
+			}
+		}
+
+		void fail(String reason) {
+			sendLock.lock();
+			try {
+				closed = true;
+			} finally {
+				sendLock.unlock();
+			}
+			for (Long version : pending.keySet()) {
+				CompletableFuture<ConfigAck> waiting = pending.remove(version);
+				if (waiting != null) {
+					waiting.complete(notApplied(version, reason));
+				}
+			}
+		}
+
+		private ConfigAck notApplied(long version, String reason) {
+			return ConfigAck.newBuilder().setTcsId(tcsId).setVersion(version).setApplied(false).setError(reason).build();
+		}
+	}
+}
@@ -3,7 +3,36 @@
  */
 package controlCenterServer;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import cityStateStore.IdAllocator;
+import controlLoops.ControlLoopThreads;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import signalPlanning.SignalPlan;
+import signalPlanning.SignalPlanCache;
+import trafficCommands.ConfigAck;
+import trafficCommands.ConfigBatch;
+import trafficControlSystem.ActuatedPhaseTimer;
+import trafficControlSystem.CommandClient;
+import trafficControlSystem.TelemetryClient;
 import trafficControlSystem.TrafficControlSystem;
+import trafficDataStore.PhaseHistoryStore;
+import trafficDataStore.VehicleCountStore;
+import trafficLightSystem.CycleHeartbeats;
+import trafficLightSystem.TrafficLightSystem;
 
 /**
  * Class ats as Control Center of the Traffic Light Management System.
@@ -13,13 +42,62 @@ import trafficControlSystem.TrafficControlSystem;
  * This class is responsible for setting up traffic control systems, configuring visual recognition systems,
  * and starting the traffic control cycle with predefined initial states.
  * 
+ * The files the Control Center reads and writes (checkpoint, traffic history, signal plans, city topology,
+ * id high-water mark and camera feed socket) are kept in the directory named by the controlCenter.dataDir
+ * system property, "data" under the working directory by default.
+ * The optional features are off unless their system property is set to true, e.g. -DcontrolCenter.adaptiveScans=true.
  * 
  */
 public class ControlCenterServer {
 	
 	// vars
 	private int systemID = 700;
+	public static final String DATA_DIR_PROPERTY = "controlCenter.dataDir";
+	public static final String ADAPTIVE_SCANS_PROPERTY = "controlCenter.adaptiveScans";   // VRS scans scale with the traffic
+	public static final String ACTUATED_PHASES_PROPERTY = "controlCenter.actuatedPhases";   // green phases sized from the vehicles counted
+	public static final String WATCHDOG_PROPERTY = "controlCenter.watchdog";   // stalled cycles interrupted and restarted
+	public static final String CAMERA_FALLBACKS_PROPERTY = "controlCenter.cameraFallbacks";   // fixed time plan while a camera fails
+	public static final String STATUS_PROPERTY = "controlCenter.status";   // city status and metrics over HTTP on loopback
+	private static final Path DATA_DIR = Paths.get(System.getProperty(DATA_DIR_PROPERTY, "data"));
+	private static final Path CHECKPOINT_FILE = DATA_DIR.resolve("controller.checkpoint");
+	private static final long CHECKPOINT_INTERVAL_IN_SECONDS = 5;
+	private static final Path TRAFFIC_HISTORY_DIR = DATA_DIR.resolve("traffic-data");
+	private static final Path SIGNAL_PLANS_FILE = DATA_DIR.resolve("signal-plans.txt");   // written by the SignalPlanOptimizer
+	private static final Path PLAN_SCHEDULES_DIR = DATA_DIR.resolve("signal-plans");      // time of day schedules, <tcs id>.plans
+	private static final int RESIDENT_PLAN_SCHEDULES = 256;
+	private static final int SERVICES_PORT = 50051;             // telemetry and command streams
+	private static final int CAMERA_FEED_PORT = 50052;          // scan counts pushed by camera processes
+	private static final Path CAMERA_FEED_SOCKET = DATA_DIR.resolve("camera-feed.sock");
+	private static final Path TOPOLOGY_FILE = DATA_DIR.resolve("city.topology");      // written with TopologyFile.Writer
+	private static final Path ID_MARK_FILE = DATA_DIR.resolve("ids.hwm");             // high-water mark of the ids handed out
+	private static final int DEFAULT_TCS_ID = 2012;               // id of the Traffic Control System used without a topology
+	private static final int DEFAULT_FIRST_COMPONENT_ID = DEFAULT_TCS_ID * 10;   // its TLSs, lights and VRSs keep their ids too
+	private static final long CONFIGURATION_TIMEOUT_IN_SECONDS = 10;
+	private static final int ADAPTIVE_MIN_SCAN_MILLIS = 500;       // adaptive scan bounds of the VRSs
+	private static final int ADAPTIVE_MAX_SCAN_MILLIS = 6000;
+	private static final double ADAPTIVE_REFERENCE_RATE = 4.0;     // vehicles per second at the configured scan length
+	private static final int MIN_GREEN_IN_SECONDS = 4;             // actuated green phase bounds
+	private static final int MAX_GREEN_IN_SECONDS = 20;
+	private static final double SATURATION_FLOW = 10.0;            // vehicles a TLS clears per second of green
+	private static final long HEARTBEAT_GRACE_MILLIS = 2000;       // a phase may overrun its length by this much
+	private static final long WATCHDOG_SCAN_MILLIS = 100;
+	private static final long WATCHDOG_RESTART_AFTER_MILLIS = 5000;  // an interrupted cycle must stamp again within this
+	private static final int WATCHDOG_MAX_RESTARTS = 3;
+	private static final int FALLBACK_GREEN_IN_SECONDS = 10;       // fixed time plan of restarted cycles and failing cameras
+	private static final int FALLBACK_YELLOW_IN_SECONDS = 3;
+	private static final int STATUS_PORT = 8080;                   // HTTP status and metrics of the city
+	private static final long STATUS_SNAPSHOT_INTERVAL_MILLIS = 1000;
+	private static final int STATUS_THREADS = 2;
 	private static TrafficControllSystemsInitializer tcsInitializer;
+	private static CheckpointScheduler checkpointScheduler;
+	private static TelemetryReceiver telemetryReceiver;
+	private static CommandDispatcher commandDispatcher;
+	private static Server servicesServer;
+	private static ManagedChannel servicesChannel;
+	private static SignalPlanCache planCache;
+	private static CameraFeedServer cameraFeedServer;
+	private static CycleWatchdog cycleWatchdog;
+	private static StatusHttpServer statusServer;
 	
 	/** Default constructor */
 	public ControlCenterServer() {
@@ -68,6 +146,9 @@ public class ControlCenterServer {
 	 * - The number of traffics scans withing a whole scan cycle.
 	 * - The length of each of those traffic scans.
 	 * 
+	 * The configuration is pushed as one versioned batch down the command stream of every Traffic Control System
+	 * and the acknowledgements are awaited together. Without command streams each system is configured in place.
+	 * 
 	 * @param numOfScanCycles
 	 * @param numOfScanCycles
 	 * **/
@@ -75,12 +156,108 @@ public class ControlCenterServer {
 		
 	    TCSystemsListManager listManager = TCSystemsListManager.getInstance();   // get instance of associated Traffic Control Systems list
 	    
+	    if (commandDispatcher != null && commandDispatcher.getSessionCount() > 0
+	    		&& pushConfiguration(ConfigBatch.newBuilder()
+	    	    		.setNumOfScans(numOfScanCycles)
+	    	    		.setScanLengthSeconds(scanLenghtInSeconds))) {
+	    	    return;
+	    }
+	    // no stream or the push did not complete: configure the systems directly
+	    
 	    // iterate through list
 	    for(TrafficControlSystem tcs : listManager) {
 	       	tcs.configAllVisualRecognitionSystems(numOfScanCycles, scanLenghtInSeconds); // Configure visual recognition parameters
 	    }
 	}
 	
+	/***
+	 * Method makes the Visual Recognition Systems of every Traffic Control System scale their scans with the traffic
+	 * **/
+	private static void enableAdaptiveScans() {
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			tcs.enableAdaptiveScans(ADAPTIVE_MIN_SCAN_MILLIS, ADAPTIVE_MAX_SCAN_MILLIS, ADAPTIVE_REFERENCE_RATE);
+		}
+	}
+	
+	/***
+	 * Method picks the threads the control loops run on: platform threads unless the controlLoops.virtual
+	 * system property asks for virtual threads and the JDK has them
+	 * **/
+	private static void selectControlLoopThreads() {
+		if (ControlLoopThreads.getRequestedMode() == ControlLoopThreads.Mode.VIRTUAL) {
+			if (ControlLoopThreads.isVirtualSupported()) {
+				ControlLoopThreads.setMode(ControlLoopThreads.Mode.VIRTUAL);
+			} else {
+				System.err.println("Virtual control loops need JDK 21 or later, running on " + System.getProperty("java.version"));
+			}
+		}
+		System.out.println("Control loops run on " + ControlLoopThreads.getMode().name().toLowerCase() + " threads");
+	}
+	
+	/***
+	 * Method makes every Traffic Control System size its phases from the vehicles counted
+	 * **/
+	private static void enableActuatedPhases() {
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			tcs.setPhaseTimer(new ActuatedPhaseTimer(MIN_GREEN_IN_SECONDS, MAX_GREEN_IN_SECONDS, SATURATION_FLOW));
+		}
+	}
+	
+	/***
+	 * Method makes every Traffic Control System fall back on a fixed time plan while a camera of its intersection fails
+	 * **/
+	private static void enableCameraFallbacks() {
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			tcs.setFixedTimeFallback(new SignalPlan(tcs.getSystemID(), FALLBACK_GREEN_IN_SECONDS, FALLBACK_GREEN_IN_SECONDS,
+					FALLBACK_YELLOW_IN_SECONDS, 0));
+		}
+	}
+	
+	/***
+	 * Method prints the planned against achieved green time of every actuated Traffic Control System
+	 * **/
+	private static void reportActuatedPhases() {
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			ActuatedPhaseTimer timer = tcs.getPhaseTimer();
+			if (timer != null) {
+				System.out.println("Traffic Control System " + tcs.getSystemID() + ": " + timer.report());
+			}
+		}
+	}
+	
+	/***
+	 * Method pushes a configuration to every connected Traffic Control System and reports their acknowledgements
+	 * 
+	 * @return false if the acknowledgements did not all arrive in time or the push failed
+	 * **/
+	private static boolean pushConfiguration(ConfigBatch.Builder batch) {
+		try {
+			Map<Integer, ConfigAck> acks = commandDispatcher.pushToAll(batch, CONFIGURATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)
+					.get();
+			boolean acknowledged = true;
+			for (ConfigAck ack : acks.values()) {
+				if (ack.getApplied()) {
+					System.out.println("Traffic Control System " + ack.getTcsId() + " runs configuration version " + ack.getVersion());
+				} else if (CommandDispatcher.NOT_ACKNOWLEDGED.equals(ack.getError())) {
+					acknowledged = false;
+				} else {
+					System.err.println("Traffic Control System " + ack.getTcsId() + " rejected configuration version " 
+							+ ack.getVersion() + ": " + ack.getError());
+				}
+			}
+			if (!acknowledged) {
+				System.err.println("Not every Traffic Control System acknowledged the configuration within " 
+						+ CONFIGURATION_TIMEOUT_IN_SECONDS + " seconds");
+			}
+			return acknowledged;
+		} catch (ExecutionException e) {
+			System.err.println("Configuration push failed: " + e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
 	/***
 	 * Method adds a new Traffic Control System to the list of
 	 * Traffic Control Systems this Control Centre manages.
@@ -92,8 +269,313 @@ public class ControlCenterServer {
 	private static void addTrafficControlSystem() {
 		
 		TCSystemsListManager instance = TCSystemsListManager.getInstance(); // get instance of associated Traffic Control Systems list
-		instance.addTrafficContolSystem(new TrafficControlSystem());        // add new Traffic Control System
+		TrafficControlSystem tcs = new TrafficControlSystem(DEFAULT_TCS_ID);   // its plans and checkpoints use this id
+		tcs.setFirstComponentId(DEFAULT_FIRST_COMPONENT_ID);   // checkpoints find its lights, TLSs and VRSs by id as well
+		instance.addTrafficContolSystem(tcs);   // add new Traffic Control System
+		
+	}
+	
+	
+	/***
+	 * Method creates the data directory of the Control Center if it does not exist yet
+	 * 
+	 * @return false if it could not be created, the Control Center does not start then
+	 * **/
+	private static boolean createDataDir() {
+		try {
+			Files.createDirectories(DATA_DIR);
+			System.out.println("Control Center data kept in " + DATA_DIR.toAbsolutePath());
+			return true;
+		} catch (IOException e) {
+			System.err.println("Data directory " + DATA_DIR + " could not be created: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/***
+	 * Method keeps the high-water mark of the ids in a file, so the ids handed out are unique across restarts
+	 * and across the Control Center processes sharing the file
+	 * **/
+	private static void persistIds() {
+		try {
+			IdAllocator.getInstance().persistTo(ID_MARK_FILE);
+		} catch (IOException e) {
+			System.err.println("Ids are not persisted, " + ID_MARK_FILE + " could not be opened: " + e.getMessage());
+		}
+	}
+	
+	/***
+	 * Method adds the Traffic Control Systems of the city topology file, fully built, if the file exists
+	 * 
+	 * @return false if there is no topology to load, the default Traffic Control System is used then
+	 * **/
+	private static boolean loadTopology() {
+		if (!Files.exists(TOPOLOGY_FILE)) {
+			return false;
+		}
+		long start = System.nanoTime();
+		try {
+			List<TrafficControlSystem> systems = TopologyFile.load(TOPOLOGY_FILE);
+			TCSystemsListManager.getInstance().addTrafficControlSystems(systems);
+			System.out.println(systems.size() + " Traffic Control Systems loaded from " + TOPOLOGY_FILE + " in " 
+					+ (System.nanoTime() - start) / 1_000_000 + " ms");
+			return true;
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("City topology could not be loaded, using the default Traffic Control System: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	
+	/***
+	 * Method restores the controller state from the last checkpoint, if there is one.
+	 * 
+	 * Traffic lights get back their exact state straight away and every Traffic Control System 
+	 * resumes its cycles from the restored cycle count instead of the predefined "green" state.
+	 * A corrupt checkpoint is reported and ignored.
+	 * **/
+	private static void restoreCheckpoint() {
+		
+		long start = System.nanoTime();
+		try {
+			if (ControllerCheckpoint.restore(CHECKPOINT_FILE)) {
+				System.out.println("Controller state restored from " + CHECKPOINT_FILE + " in " 
+						+ ((System.nanoTime() - start) / 1000) + " microseconds");
+			}
+		} catch (IOException e) {
+			System.err.println("Controller checkpoint could not be restored, starting from predefined states: " + e.getMessage());
+		}
+	}
+	
+	/***
+	 * Method loads the signal plans computed offline into the Traffic Control Systems they are for, if a plan file exists
+	 * **/
+	private static void loadSignalPlans() {
+		if (!Files.exists(SIGNAL_PLANS_FILE)) {
+			return;
+		}
+		try {
+			List<SignalPlan> plans = SignalPlan.load(SIGNAL_PLANS_FILE);
+			for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+				for (SignalPlan plan : plans) {
+					if (plan.getTcsId() == tcs.getSystemID()) {
+						tcs.setSignalPlan(plan);
+						System.out.println("Signal plan loaded: " + plan);
+					}
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Signal plans could not be loaded, phases follow the scan configuration: " + e.getMessage());
+		}
+	}
+	
+	/***
+	 * Method makes every Traffic Control System follow its time of day plan schedule, if a schedule directory exists
+	 * **/
+	private static void startPlanSchedules() {
+		if (!Files.isDirectory(PLAN_SCHEDULES_DIR)) {
+			return;
+		}
+		planCache = new SignalPlanCache(PLAN_SCHEDULES_DIR, RESIDENT_PLAN_SCHEDULES, ZoneId.systemDefault());
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			planCache.reload(tcs.getSystemID());    // load ahead of the first cycle
+			tcs.setPlanCache(planCache);
+		}
+	}
+	
+	/***
+	 * Method opens the traffic history, every traffic scan and every cycle decision is recorded into it from now on
+	 * **/
+	private static void openTrafficHistory() {
+		try {
+			VehicleCountStore.open(TRAFFIC_HISTORY_DIR, VehicleCountStore.DEFAULT_PARTITION_MILLIS);
+			PhaseHistoryStore.open(TRAFFIC_HISTORY_DIR, PhaseHistoryStore.DEFAULT_PARTITION_MILLIS);
+		} catch (IOException e) {
+			System.err.println("Traffic history could not be opened, it will not be recorded: " + e.getMessage());
+		}
+	}
+	
+	/***
+	 * Method seals the traffic history so the last partition is kept on disk
+	 * **/
+	private static void closeTrafficHistory() {
+		try {
+			VehicleCountStore counts = VehicleCountStore.getInstance();
+			if (counts != null) {
+				counts.close();
+			}
+			PhaseHistoryStore phases = PhaseHistoryStore.getInstance();
+			if (phases != null) {
+				phases.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Error closing traffic history: " + e.getMessage());
+		}
+	}
+	
+	/***
+	 * Method starts the telemetry and command services on the loopback interface and connects every Traffic Control System
+	 * to them over localhost.
+	 * If the services can not be started the Traffic Control Systems run without them, configured in place.
+	 * **/
+	private static void startControlCenterServices() {
+		telemetryReceiver = new TelemetryReceiver();
+		commandDispatcher = new CommandDispatcher();
+		try {
+			servicesServer = NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), SERVICES_PORT))
+					.addService(telemetryReceiver)
+					.addService(commandDispatcher)
+					.build()
+					.start();
+		} catch (IOException e) {
+			System.err.println("Control Center services could not be started on port " + SERVICES_PORT + ": " + e.getMessage());
+			commandDispatcher = null;
+			return;
+		}
+		servicesChannel = ManagedChannelBuilder.forAddress("localhost", SERVICES_PORT).usePlaintext().build();
+		
+		int systems = 0;
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			TelemetryClient telemetry = new TelemetryClient(tcs.getSystemID(), servicesChannel);
+			telemetry.start();
+			tcs.setTelemetryClient(telemetry);
+			
+			CommandClient commands = new CommandClient(tcs, servicesChannel);
+			commands.start();
+			tcs.setCommandClient(commands);
+			systems++;
+		}
 		
+		try {
+			if (!commandDispatcher.awaitSessions(systems, CONFIGURATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+				System.err.println("Only " + commandDispatcher.getSessionCount() + " of " + systems 
+						+ " Traffic Control Systems opened their command stream");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/***
+	 * Method starts receiving the scan counts of camera processes on the loopback interface and a Unix domain socket
+	 * **/
+	private static void startCameraFeeds() {
+		cameraFeedServer = new CameraFeedServer();
+		cameraFeedServer.registerAll(TCSystemsListManager.getInstance());
+		try {
+			cameraFeedServer.bindTcp(new InetSocketAddress(InetAddress.getLoopbackAddress(), CAMERA_FEED_PORT));
+			cameraFeedServer.bindUnix(CAMERA_FEED_SOCKET);
+			cameraFeedServer.start();
+		} catch (IOException | UnsupportedOperationException e) {
+			System.err.println("Camera feed server could not be started, VRSs keep simulating counts: " + e.getMessage());
+			cameraFeedServer = null;
+		}
+	}
+	
+	/***
+	 * Method makes every cycle and data collection stamp its heartbeats and starts the watchdog recovering the stalled ones
+	 * **/
+	private static void startCycleWatchdog() {
+		int loops = 0;
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			loops++;
+			for (TrafficLightSystem tls : tcs.getTrafficLightSystems()) {
+				loops += tls.getVisualRecognitionSystems().size();
+			}
+		}
+		CycleHeartbeats heartbeats = new CycleHeartbeats(Math.max(loops, 1), HEARTBEAT_GRACE_MILLIS);
+		for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+			tcs.setHeartbeats(heartbeats);
+		}
+		cycleWatchdog = new CycleWatchdog(heartbeats, TCSystemsListManager.getInstance(), WATCHDOG_SCAN_MILLIS, 
+				WATCHDOG_RESTART_AFTER_MILLIS, WATCHDOG_MAX_RESTARTS, FALLBACK_GREEN_IN_SECONDS, FALLBACK_YELLOW_IN_SECONDS);
+		cycleWatchdog.start();
+	}
+	
+	/***
+	 * Method starts serving the status of the city and the metrics over HTTP, on the loopback interface
+	 * only since the server has no authentication. If the port can not be bound the Control Center runs without it.
+	 * **/
+	private static void startStatusServer() {
+		statusServer = new StatusHttpServer(TCSystemsListManager.getInstance(), STATUS_SNAPSHOT_INTERVAL_MILLIS, STATUS_THREADS);
+		statusServer.setCycleWatchdog(cycleWatchdog);
+		try {
+			InetSocketAddress address = statusServer.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), STATUS_PORT));
+			System.out.println("City status served on http://" + address.getHostString() + ":" + address.getPort() 
+					+ StatusHttpServer.CITY_PATH);
+		} catch (IOException e) {
+			System.err.println("Status server could not be started on port " + STATUS_PORT + ": " + e.getMessage());
+			statusServer = null;
+		}
+	}
+	
+	/***
+	 * Method stops serving the status of the city
+	 * **/
+	private static void stopStatusServer() {
+		if (statusServer != null) {
+			statusServer.close();
+			System.out.println(statusServer);
+		}
+	}
+	
+	/***
+	 * Method stops the watchdog and reports what it recovered
+	 * **/
+	private static void stopCycleWatchdog() {
+		if (cycleWatchdog != null) {
+			cycleWatchdog.close();
+			System.out.println(cycleWatchdog);
+		}
+	}
+	
+	/***
+	 * Method stops receiving camera scan counts
+	 * **/
+	private static void stopCameraFeeds() {
+		if (cameraFeedServer != null) {
+			cameraFeedServer.close();
+			System.out.println(cameraFeedServer);
+		}
+	}
+	
+	/***
+	 * Method sends the telemetry still pending, closes the streams and stops the services
+	 * **/
+	private static void stopControlCenterServices() {
+		if (servicesServer == null) {
+			return;
+		}
+		try {
+			for (TrafficControlSystem tcs : TCSystemsListManager.getInstance()) {
+				CommandClient commands = tcs.getCommandClient();
+				if (commands != null) {
+					tcs.setCommandClient(null);
+					commands.close();
+				}
+				TelemetryClient telemetry = tcs.getTelemetryClient();
+				if (telemetry != null) {
+					tcs.setTelemetryClient(null);
+					telemetry.close(5, TimeUnit.SECONDS);
+				}
+			}
+			servicesChannel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+			servicesServer.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+			
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (TelemetryStats stats : telemetryReceiver.getAllStats()) {
+			System.out.println("Telemetry received from " + stats);
+		}
+	}
+	
+	/***
+	 * Method starts writing periodic checkpoints of the controller state
+	 * **/
+	private static void startCheckpoints() {
+		checkpointScheduler = new CheckpointScheduler(CHECKPOINT_FILE, CHECKPOINT_INTERVAL_IN_SECONDS);
+		checkpointScheduler.start();
 	}
 	
 	
@@ -121,13 +603,54 @@ public class ControlCenterServer {
 	 */
 	public static void main(String[] args) {
 		
+		if (!createDataDir()) {
+			return;
+		}
 		ControlCenterServer n = new ControlCenterServer();
 		
-		addTrafficControlSystem();
-		initializeTrafficControlSystems();
+		persistIds();
+		if (!loadTopology()) {
+			addTrafficControlSystem();
+			initializeTrafficControlSystems();
+		}
+		IdAllocator.getInstance().publishClaims();   // the fixed ids of the city are kept clear of by the processes sharing the mark
+		startControlCenterServices();
+		startCameraFeeds();
 		configureVisualRecognitionSystem(/*numOfScans*/  3, /*scanLengthInaNoSeconds*/  2);    //     
+		if (Boolean.getBoolean(ADAPTIVE_SCANS_PROPERTY)) {
+			enableAdaptiveScans();
+		}
+		if (Boolean.getBoolean(ACTUATED_PHASES_PROPERTY)) {
+			enableActuatedPhases();
+		}
+		if (Boolean.getBoolean(CAMERA_FALLBACKS_PROPERTY)) {
+			enableCameraFallbacks();
+		}
+		loadSignalPlans();
+		startPlanSchedules();
+		restoreCheckpoint();
+		startCheckpoints();
+		openTrafficHistory();
+		selectControlLoopThreads();
+		if (Boolean.getBoolean(WATCHDOG_PROPERTY)) {
+			startCycleWatchdog();
+		}
+		if (Boolean.getBoolean(STATUS_PROPERTY)) {
+			startStatusServer();
+		}
 	
 		startTrafficControlCycle();
+		stopStatusServer();
+		stopCycleWatchdog();
+		checkpointScheduler.stop();     // cycles are over, write the final state
+		reportActuatedPhases();
+		if (planCache != null) {
+			planCache.close();
+		}
+		stopCameraFeeds();
+		stopControlCenterServices();
+		closeTrafficHistory();
+		IdAllocator.getInstance().close();
 	}
 
 	
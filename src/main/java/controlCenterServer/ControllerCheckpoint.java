@@ -0,0 +1,306 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import cityStateStore.CityStateSnapshot;
+import cityStateStore.CityStateStore;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.StateRecord;
+
+/**
+ * Class writes and restores compact binary checkpoints of the whole controller state,
+ * so a restarted Control Centre carries on from where it stopped instead of the predefined "green" state.
+ *
+ * A checkpoint holds:
+ * - The state of every Traffic Light and Traffic Light System, packed 4 states per byte.
+ * - The vehicle and anomaly counters of every Visual Recognition System.
+ * - The cycle count, running cycle state and green state history of every Traffic Control System.
+ *
+ * A checkpoint does not hold the phase a cycle was in or its time left, so a restored TCS runs its
+ * interrupted cycle again from its start (see TrafficControlSystem.restoreControllerState()).
+ *
+ * The store part is taken from a CityStateSnapshot, so writing a checkpoint never pauses the cycles.
+ * Files are written to a temporary file and moved in place, and end with a CRC32
+ * so a torn or corrupt checkpoint is rejected instead of restored.
+ */
+public class ControllerCheckpoint {
+
+	// vars
+	private static final int MAGIC = 0x54434B50;   // "TCKP"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 16;    // magic, version, time taken
+	private static final int TRAILER_BYTES = 8;    // CRC32 of everything before it
+
+	// Private constructor, static helper class
+	private ControllerCheckpoint() {
+	}
+
+
+	/***
+	 * Method writes a checkpoint of the current controller state to the given file.
+	 *
+	 * @param file checkpoint file, replaced atomically
+	 * @throws IOException if the checkpoint could not be written
+	 * **/
+	public static void write(Path file) throws IOException {
+
+		TCSystemsListManager listManager = TCSystemsListManager.getInstance();
+		CityStateSnapshot snapshot = listManager.getSnapshot();   // consistent view, taken without locking the cycles
+
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+
+		try (DataOutputStream out = new DataOutputStream(
+				new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile)), crc))) {
+
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeLong(snapshot.getTakenAtMillis());
+
+			// Traffic Lights
+			int lightCount = snapshot.getLightCount();
+			out.writeInt(lightCount);
+			for (int light = 0; light < lightCount; light++) {
+				out.writeInt(snapshot.getLightId(light));
+			}
+			writePackedStates(out, lightCount, snapshot, true);
+
+			// Traffic Light Systems
+			int tlsCount = snapshot.getTrafficLightSystemCount();
+			out.writeInt(tlsCount);
+			for (int tls = 0; tls < tlsCount; tls++) {
+				out.writeInt(snapshot.getTrafficLightSystemId(tls));
+			}
+			writePackedStates(out, tlsCount, snapshot, false);
+
+			// Visual Recognition Systems
+			int vrsCount = snapshot.getVisualRecognitionSystemCount();
+			out.writeInt(vrsCount);
+			for (int vrs = 0; vrs < vrsCount; vrs++) {
+				out.writeInt(snapshot.getVisualRecognitionSystemId(vrs));
+				for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+					out.writeInt(snapshot.getVisualRecognitionSystemVehicleCount(vrs, vehicleClass));
+				}
+				out.writeInt(snapshot.getVisualRecognitionSystemAnomalies(vrs));
+			}
+
+			// Traffic Control Systems
+			List<TrafficControlSystem> systems = listManager.getTrafficControlSystems();
+			out.writeInt(systems.size());
+			for (TrafficControlSystem tcs : systems) {
+				List<StateRecord> history = tcs.getStateHistory();
+
+				out.writeInt(tcs.getSystemID());
+				out.writeInt(tcs.getCycleCount());
+				out.writeByte(CityStateStore.encodeState(tcs.getCurrentCycleState()));
+				out.writeInt(history.size());
+				for (StateRecord record : history) {
+					out.writeInt(record.getTLSID());
+					out.writeByte(CityStateStore.encodeState(record.getState()));
+				}
+			}
+
+			out.flush();
+			out.writeLong(crc.getValue());   // trailer, not part of the checksum
+		}
+
+		Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	/***
+	 * Method restores the controller state saved in the given checkpoint file.
+	 *
+	 * Entities are matched by system ID, so the topology must be initialised before restoring.
+	 * Traffic Control Systems are matched by their position in the Control Centre list.
+	 * Entities missing from the current topology are skipped.
+	 *
+	 * @param file checkpoint file
+	 * @return true if a checkpoint was restored, false if there is no checkpoint file
+	 * @throws IOException if the checkpoint could not be read, is corrupt or truncated
+	 * **/
+	public static boolean restore(Path file) throws IOException {
+
+		if (!Files.exists(file)) {
+			return false;
+		}
+
+		// the checksum is verified before anything is parsed, so counts read from a corrupt file are never trusted
+		byte[] bytes = Files.readAllBytes(file);
+		if (bytes.length < HEADER_BYTES + TRAILER_BYTES) {
+			throw new IOException("Controller checkpoint " + file + " is truncated");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - TRAILER_BYTES);
+		if (ByteBuffer.wrap(bytes, bytes.length - TRAILER_BYTES, TRAILER_BYTES).getLong() != crc.getValue()) {
+			throw new IOException("Controller checkpoint " + file + " is corrupt, checksum mismatch");
+		}
+
+		CityStateStore store = CityStateStore.getInstance();
+
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - TRAILER_BYTES))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException("File " + file + " is not a supported controller checkpoint");
+			}
+			in.readLong();   // time the checkpoint was taken
+
+			int lightCount = readCount(in, 4);
+			int[] lightIds = readInts(in, lightCount);
+			byte[] lightStates = readPackedStates(in, lightCount);
+
+			int tlsCount = readCount(in, 4);
+			int[] tlsIds = readInts(in, tlsCount);
+			byte[] tlsStates = readPackedStates(in, tlsCount);
+
+			int vrsCount = readCount(in, (CityStateStore.VEHICLE_CLASSES + 2) * 4);
+			int[] vrsIds = new int[vrsCount];
+			int[][] vehicleCounts = new int[vrsCount][CityStateStore.VEHICLE_CLASSES];
+			int[] anomalies = new int[vrsCount];
+			for (int vrs = 0; vrs < vrsCount; vrs++) {
+				vrsIds[vrs] = in.readInt();
+				for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+					vehicleCounts[vrs][vehicleClass] = in.readInt();
+				}
+				anomalies[vrs] = in.readInt();
+			}
+
+			int tcsCount = readCount(in, 13);
+			int[] tcsIds = new int[tcsCount];
+			int[] cycleCounts = new int[tcsCount];
+			String[] cycleStates = new String[tcsCount];
+			List<List<StateRecord>> histories = new ArrayList<>(tcsCount);
+			for (int tcs = 0; tcs < tcsCount; tcs++) {
+				tcsIds[tcs] = in.readInt();
+				cycleCounts[tcs] = in.readInt();
+				cycleStates[tcs] = decodeCycleState(in.readByte());
+
+				int historySize = readCount(in, 5);
+				List<StateRecord> history = new ArrayList<>(historySize);
+				for (int record = 0; record < historySize; record++) {
+					int tlsId = in.readInt();
+					history.add(new StateRecord(tlsId, CityStateStore.decodeState(in.readByte())));
+				}
+				histories.add(history);
+			}
+
+			if (in.available() != 0) {
+				throw new IOException("Controller checkpoint " + file + " has trailing bytes");
+			}
+
+			// apply the store part in one update section, readers see the restored city all at once
+			store.beginUpdate();
+			try {
+				for (int light = 0; light < lightCount; light++) {
+					int index = store.indexOfTrafficLight(lightIds[light]);
+					if (index >= 0) {
+						store.setLightState(index, lightStates[light]);
+					}
+				}
+				for (int tls = 0; tls < tlsCount; tls++) {
+					int index = store.indexOfTrafficLightSystem(tlsIds[tls]);
+					if (index >= 0) {
+						store.setTrafficLightSystemState(index, tlsStates[tls]);
+					}
+				}
+				for (int vrs = 0; vrs < vrsCount; vrs++) {
+					int index = store.indexOfVisualRecognitionSystem(vrsIds[vrs]);
+					if (index >= 0) {
+						for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+							store.setVehicleCount(index, vehicleClass, vehicleCounts[vrs][vehicleClass]);
+						}
+						store.setAnomalies(index, anomalies[vrs]);
+					}
+				}
+			} finally {
+				store.endUpdate();
+			}
+
+			List<TrafficControlSystem> systems = TCSystemsListManager.getInstance().getTrafficControlSystems();
+			for (int tcs = 0; tcs < tcsCount && tcs < systems.size(); tcs++) {
+				TrafficControlSystem system = systems.get(tcs);
+				if (system.getSystemID() == tcsIds[tcs]) {
+					system.restoreControllerState(cycleCounts[tcs], cycleStates[tcs], histories.get(tcs));
+				}
+			}
+		}
+		return true;
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method writes the light (or Traffic Light System) states of the snapshot, 4 states per byte
+	 */
+	private static void writePackedStates(DataOutputStream out, int count, CityStateSnapshot snapshot,
+			boolean lights) throws IOException {
+
+		for (int first = 0; first < count; first += 4) {
+			int packed = 0;
+			for (int i = first; i < first + 4 && i < count; i++) {
+				int code = lights ? snapshot.getLightStateCode(i) : snapshot.getTrafficLightSystemStateCode(i);
+				packed |= code << ((i - first) << 1);
+			}
+			out.writeByte(packed);
+		}
+	}
+
+	/*
+	 * Method reads states written by writePackedStates(), one state code per byte
+	 */
+	private static byte[] readPackedStates(DataInputStream in, int count) throws IOException {
+		byte[] states = new byte[count];
+		for (int first = 0; first < count; first += 4) {
+			int packed = in.readUnsignedByte();
+			for (int i = first; i < first + 4 && i < count; i++) {
+				states[i] = (byte) ((packed >>> ((i - first) << 1)) & 3);
+			}
+		}
+		return states;
+	}
+
+	/*
+	 * Method reads a count of records, rejecting counts larger than the bytes left to read
+	 */
+	private static int readCount(DataInputStream in, int minRecordBytes) throws IOException {
+		int count = in.readInt();
+		if (count < 0 || (long) count * minRecordBytes > in.available()) {
+			throw new IOException("Controller checkpoint is corrupt, bad record count " + count);
+		}
+		return count;
+	}
+
+	/*
+	 * Method reads n ints
+	 */
+	private static int[] readInts(DataInputStream in, int n) throws IOException {
+		int[] values = new int[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	/*
+	 * Method decodes the running cycle state, null when no cycle had started
+	 */
+	private static String decodeCycleState(int code) {
+		return code == CityStateStore.STATE_NONE ? null : CityStateStore.decodeState(code);
+	}
+}
@@ -0,0 +1,260 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import signalPlanning.SignalPlan;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.CycleHeartbeats;
+
+/**
+ * Class watches the heartbeats of every control loop from one thread and recovers the loops that stop stamping.
+ *
+ * Every scanMillis the watchdog walks all the slots of the CycleHeartbeats, reading one deadline per slot,
+ * so a stalled loop is found at most scanMillis after its heartbeat was due, that is after the length the phase
+ * announced plus the grace of the registry.
+ *
+ * - A Traffic Control System cycle whose thread died, on an exception, is restarted at once on a fixed time
+ *   fallback plan.
+ * - A cycle overrunning its phase is interrupted first, which ends its control loop if it is stuck in a sleep
+ *   or a wait. If it has not stamped again restartAfterMillis later, it is restarted on the fallback plan.
+ * - A system restarted maxRestarts times and still stalling is taken out of operation.
+ * - A VRS data collection overrunning its observation window is interrupted and stops watching until its next one.
+ */
+public class CycleWatchdog {
+
+	// vars
+	private final CycleHeartbeats heartbeats;
+	private final Map<Integer, TrafficControlSystem> systems;   // by id
+	private final long scanMillis;
+	private final long restartAfterNanos;
+	private final int maxRestarts;
+	private final int fallbackGreenSeconds;
+	private final int fallbackYellowSeconds;
+	private final long[] actedAt;        // by slot, time the watchdog last acted on a missed heartbeat, 0 if it did not
+	private final long[] actedOnStamp;   // by slot, heartbeat that was missed then
+	private Thread thread;
+	private volatile boolean running;
+	private volatile long scans;
+	private volatile long overdueCycles;
+	private volatile long restartedCycles;
+	private volatile long stoppedSystems;
+	private volatile long stalledCollections;
+
+
+	/**
+	 * Initialises a watchdog of the loops stamping in the given registry
+	 *
+	 * @param trafficControlSystems systems whose cycles are restarted when they stall
+	 * @param scanMillis time between two scans of all the heartbeats
+	 * @param restartAfterMillis time an interrupted cycle gets to stamp again before it is restarted
+	 * @param maxRestarts restarts of a system before it is taken out of operation
+	 * @param fallbackGreenSeconds green of both Traffic Light Systems in the fallback plan
+	 * @param fallbackYellowSeconds yellow of the fallback plan
+	 * @throws IllegalArgumentException if a time is not positive or the fallback plan is not a valid SignalPlan
+	 * **/
+	public CycleWatchdog(CycleHeartbeats heartbeats, Iterable<TrafficControlSystem> trafficControlSystems, long scanMillis,
+			long restartAfterMillis, int maxRestarts, int fallbackGreenSeconds, int fallbackYellowSeconds) {
+		if (scanMillis <= 0 || restartAfterMillis <= 0 || maxRestarts < 0) {
+			throw new IllegalArgumentException("Scan and restart times must be positive, restarts not negative");
+		}
+		this.heartbeats = heartbeats;
+		this.systems = new HashMap<>();
+		for (TrafficControlSystem tcs : trafficControlSystems) {
+			systems.put(tcs.getSystemID(), tcs);
+		}
+		this.scanMillis = scanMillis;
+		this.restartAfterNanos = TimeUnit.MILLISECONDS.toNanos(restartAfterMillis);
+		this.maxRestarts = maxRestarts;
+		new SignalPlan(0, fallbackGreenSeconds, fallbackGreenSeconds, fallbackYellowSeconds, 0);   // fails now on an invalid fallback
+		this.fallbackGreenSeconds = fallbackGreenSeconds;
+		this.fallbackYellowSeconds = fallbackYellowSeconds;
+		this.actedAt = new long[heartbeats.getCapacity()];
+		this.actedOnStamp = new long[heartbeats.getCapacity()];
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method starts the watchdog thread
+	 * **/
+	public synchronized void start() {
+		if (thread != null) {
+			throw new IllegalStateException("Cycle watchdog already started");
+		}
+		running = true;
+		thread = new Thread(this::watch, "cycle-watchdog");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/***
+	 * Method stops the watchdog thread
+	 * **/
+	public synchronized void close() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Method scans the heartbeats until the watchdog is closed
+	 */
+	private void watch() {
+		long scanNanos = TimeUnit.MILLISECONDS.toNanos(scanMillis);
+		while (running) {
+			try {
+				scan(System.nanoTime());
+			} catch (RuntimeException e) {
+				System.err.println("Cycle watchdog scan failed, it carries on: " + e);   // the watchdog itself must not stall
+			}
+			LockSupport.parkNanos(scanNanos);
+		}
+	}
+
+	/***
+	 * Method checks every heartbeat once and acts on the loops that missed theirs.
+	 * Only called by the watchdog thread, or by a caller driving the watchdog without starting it.
+	 * **/
+	public void scan(long nowNanos) {
+		int slots = heartbeats.getSlotCount();
+		for (int slot = 0; slot < slots; slot++) {
+			if (!heartbeats.isOverdue(slot, nowNanos)) {
+				actedAt[slot] = 0;
+				continue;
+			}
+			long stamp = heartbeats.getStamp(slot);
+			if (actedAt[slot] != 0 && actedOnStamp[slot] == stamp) {
+				// acted on this missed heartbeat already, a cycle gets restartAfter to recover
+				if (heartbeats.getKind(slot) == CycleHeartbeats.CYCLE && nowNanos - actedAt[slot] > restartAfterNanos) {
+					restart(slot, nowNanos);
+				}
+				continue;
+			}
+			if (heartbeats.getKind(slot) == CycleHeartbeats.CYCLE) {
+				cycleOverdue(slot, nowNanos, stamp);
+			} else {
+				collectionOverdue(slot, nowNanos);
+			}
+		}
+		scans++;
+	}
+
+	/*
+	 * Method acts on a cycle that just missed its heartbeat
+	 */
+	private void cycleOverdue(int slot, long nowNanos, long stamp) {
+		overdueCycles++;
+		Thread loop = heartbeats.getThread(slot);
+		if (loop == null || !loop.isAlive()) {
+			System.err.println("Traffic Control System " + heartbeats.getOwnerId(slot) + " cycle thread died in its "
+					+ CycleHeartbeats.phaseName(heartbeats.getPhase(slot)) + " phase");
+			restart(slot, nowNanos);
+			return;
+		}
+		if (heartbeats.getStamp(slot) != stamp) {
+			return;        // the phase ended meanwhile, the interrupt would end a loop that is on time
+		}
+		System.err.println("Traffic Control System " + heartbeats.getOwnerId(slot) + " overran its "
+				+ CycleHeartbeats.phaseName(heartbeats.getPhase(slot)) + " phase by "
+				+ TimeUnit.NANOSECONDS.toMillis(nowNanos - heartbeats.getDeadline(slot)) + " ms, interrupting it");
+		loop.interrupt();
+		actedAt[slot] = nowNanos;
+		actedOnStamp[slot] = stamp;
+	}
+
+	/*
+	 * Method restarts a stalled cycle on the fallback plan, or takes its system out of operation
+	 * once it used up its restarts
+	 */
+	private void restart(int slot, long nowNanos) {
+		TrafficControlSystem tcs = systems.get(heartbeats.getOwnerId(slot));
+		if (tcs == null || tcs.getRestarts() >= maxRestarts) {
+			if (tcs != null) {
+				tcs.setIsOperative(false);
+				stoppedSystems++;
+				System.err.println("Traffic Control System " + tcs.getSystemID() + " keeps stalling after "
+						+ maxRestarts + " restarts, it is taken out of operation");
+			}
+			heartbeats.idle(slot);
+			actedAt[slot] = 0;
+			return;
+		}
+		System.err.println("Traffic Control System " + tcs.getSystemID() + " cycle restarted on a fixed time plan");
+		tcs.restartCycle(new SignalPlan(tcs.getSystemID(), fallbackGreenSeconds, fallbackGreenSeconds, fallbackYellowSeconds, 0));
+		restartedCycles++;
+		actedAt[slot] = nowNanos;                   // the restarted cycle must stamp within restartAfter
+		actedOnStamp[slot] = heartbeats.getStamp(slot);
+	}
+
+	/*
+	 * Method interrupts a data collection overrunning its window, it is not watched until its next collection
+	 */
+	private void collectionOverdue(int slot, long nowNanos) {
+		stalledCollections++;
+		Thread loop = heartbeats.getThread(slot);
+		System.err.println("Visual Recognition System " + heartbeats.getOwnerId(slot) + " data collection overran its window by "
+				+ TimeUnit.NANOSECONDS.toMillis(nowNanos - heartbeats.getDeadline(slot)) + " ms, interrupting it");
+		if (loop != null) {
+			loop.interrupt();
+		}
+		heartbeats.idle(slot);
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of scans of all the heartbeats
+	 */
+	public long getScans() {
+		return scans;
+	}
+
+	/**
+	 * Get number of missed cycle heartbeats
+	 */
+	public long getOverdueCycles() {
+		return overdueCycles;
+	}
+
+	/**
+	 * Get number of cycles restarted on the fallback plan
+	 */
+	public long getRestartedCycles() {
+		return restartedCycles;
+	}
+
+	/**
+	 * Get number of systems taken out of operation
+	 */
+	public long getStoppedSystems() {
+		return stoppedSystems;
+	}
+
+	/**
+	 * Get number of data collections interrupted
+	 */
+	public long getStalledCollections() {
+		return stalledCollections;
+	}
+
+	@Override
+	public String toString() {
+		return "Cycle watchdog: " + scans + " scans, " + overdueCycles + " missed cycle heartbeats, " + restartedCycles
+				+ " cycles restarted, " + stoppedSystems + " systems stopped, " + stalledCollections + " collections interrupted";
+	}
+}
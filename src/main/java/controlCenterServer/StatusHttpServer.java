@@ -0,0 +1,584 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import cityStateStore.CityStateSnapshot;
+import cityStateStore.CityStateStore;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.StateChangePublisher;
+import trafficLightSystem.TrafficLightSystem;
+import visualRecognitionSystem.CameraCircuitBreaker;
+import visualRecognitionSystem.VisualRecognitionSystem;
+
+/**
+ * Class serves the status of the city, of every Traffic Control System and of every Traffic Light System,
+ * and the metrics of the Control Center, over HTTP with the server built into the JDK.
+ *
+ * - /status/city: totals of the city, JSON
+ * - /status/tcs: every Traffic Control System, JSON
+ * - /status/tls: every Traffic Light System, JSON
+ * - /metrics: counters and gauges in the Prometheus text format
+ *
+ * A background thread serializes every document once per snapshot interval, from one CityStateSnapshot,
+ * and keeps the bytes, gzip compressed too when they are large. Requests only pick the cached bytes of the
+ * current document and write them, so their cost does not depend on the size of the city nor on how many
+ * clients poll. A document keeps its ETag while its bytes do not change and a request with a matching
+ * If-None-Match gets a 304 with no body. The documents carry no timestamp, the version of the store
+ * identifies the state they show, so a city that does not change keeps its ETag.
+ */
+public class StatusHttpServer {
+
+	// vars
+	public static final String CITY_PATH = "/status/city";
+	public static final String TCS_PATH = "/status/tcs";
+	public static final String TLS_PATH = "/status/tls";
+	public static final String METRICS_PATH = "/metrics";
+
+	private static final String JSON_TYPE = "application/json; charset=utf-8";
+	private static final String METRICS_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final int GZIP_MIN_BYTES = 1024;       // smaller documents are always sent as they are
+	private static final String[] VEHICLE_CLASS_NAMES = { "cars", "trucks", "bikes", "buses" };
+	private static final String[] STATE_NAMES = { "none", "green", "yellow", "red" };   // by state code
+
+	private final TCSystemsListManager systems;
+	private final long snapshotIntervalMillis;
+	private final int threads;
+	private final String etagPrefix;                  // differs between runs, so old ETags never match a new run
+	private final Endpoint city;
+	private final Endpoint trafficControlSystems;
+	private final Endpoint trafficLightSystems;
+	private final Endpoint metrics;
+	private final LongAdder requests;
+	private final LongAdder notModified;
+	private final AtomicLong serializations;
+	private volatile long lastSerializationNanos;
+	private volatile CycleWatchdog cycleWatchdog;
+
+	// objects
+	private HttpServer server;
+	private ExecutorService handlers;
+	private ScheduledExecutorService serializer;
+
+
+	/**
+	 * Initialises a server for the Traffic Control Systems of the list
+	 *
+	 * @param systems Traffic Control Systems reported, their Traffic Light Systems are read from the CityStateStore
+	 * @param snapshotIntervalMillis time between two serializations of the documents
+	 * @param threads threads writing the responses
+	 * @throws IllegalArgumentException if the interval or the threads are not positive
+	 * **/
+	public StatusHttpServer(TCSystemsListManager systems, long snapshotIntervalMillis, int threads) {
+		if (snapshotIntervalMillis <= 0 || threads <= 0) {
+			throw new IllegalArgumentException("Snapshot interval and threads must be positive");
+		}
+		this.systems = systems;
+		this.snapshotIntervalMillis = snapshotIntervalMillis;
+		this.threads = threads;
+		this.etagPrefix = Long.toHexString(System.currentTimeMillis());
+		this.city = new Endpoint(CITY_PATH, JSON_TYPE);
+		this.trafficControlSystems = new Endpoint(TCS_PATH, JSON_TYPE);
+		this.trafficLightSystems = new Endpoint(TLS_PATH, JSON_TYPE);
+		this.metrics = new Endpoint(METRICS_PATH, METRICS_TYPE);
+		this.requests = new LongAdder();
+		this.notModified = new LongAdder();
+		this.serializations = new AtomicLong();
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method serializes the first documents and starts serving them, port 0 picks a free port
+	 *
+	 * @return the address bound
+	 * **/
+	public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Status server already started");
+		}
+		refresh();                       // no request is ever served without a document
+		server = HttpServer.create(address, 0);
+		for (Endpoint endpoint : new Endpoint[] { city, trafficControlSystems, trafficLightSystems, metrics }) {
+			server.createContext(endpoint.path, endpoint);
+		}
+		AtomicInteger handlerThreads = new AtomicInteger();
+		handlers = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "status-http-" + handlerThreads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(handlers);
+		server.start();
+
+		serializer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "status-snapshots");
+			thread.setDaemon(true);      // never keeps the Control Centre alive on its own
+			return thread;
+		});
+		serializer.scheduleWithFixedDelay(this::refresh, snapshotIntervalMillis, snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+		return server.getAddress();
+	}
+
+	/***
+	 * Method stops serializing and serving, waiting a second at most for the responses being written
+	 * **/
+	public synchronized void close() {
+		if (server == null) {
+			return;
+		}
+		serializer.shutdownNow();
+		server.stop(1);
+		handlers.shutdown();
+		server = null;
+	}
+
+	/***
+	 * Method serializes every document from a new snapshot. A document whose bytes did not change keeps its ETag.
+	 * Called by the serializer thread once per interval, errors are reported and the next run tries again.
+	 * **/
+	public void refresh() {
+		try {
+			long start = System.nanoTime();
+			CityStateSnapshot snapshot = systems.getSnapshot();
+			city.update(serializeCity(snapshot));
+			trafficControlSystems.update(serializeTrafficControlSystems(snapshot));
+			trafficLightSystems.update(serializeTrafficLightSystems(snapshot));
+			metrics.update(serializeMetrics(snapshot));
+			lastSerializationNanos = System.nanoTime() - start;
+			serializations.incrementAndGet();
+		} catch (RuntimeException e) {
+			System.err.println("Status documents could not be serialized, the previous ones are served: " + e);
+		}
+	}
+
+	/*
+	 * Method writes the totals of the city
+	 */
+	private byte[] serializeCity(CityStateSnapshot snapshot) {
+		int[] tlsByState = new int[STATE_NAMES.length];
+		long[] vehicles = new long[CityStateStore.VEHICLE_CLASSES];
+		for (int tls = 0; tls < snapshot.getTrafficLightSystemCount(); tls++) {
+			tlsByState[snapshot.getTrafficLightSystemStateCode(tls)]++;
+			for (int vehicleClass = 0; vehicleClass < vehicles.length; vehicleClass++) {
+				vehicles[vehicleClass] += snapshot.getVehicleCount(tls, vehicleClass);
+			}
+		}
+		int[] lightsByState = new int[STATE_NAMES.length];
+		for (int light = 0; light < snapshot.getLightCount(); light++) {
+			lightsByState[snapshot.getLightStateCode(light)]++;
+		}
+		int tcsCount = 0;
+		int degraded = 0;
+		for (TrafficControlSystem tcs : systems) {
+			tcsCount++;
+			if (tcs.isDegraded()) {
+				degraded++;
+			}
+		}
+
+		StringBuilder json = new StringBuilder(512);
+		json.append("{\"version\":").append(snapshot.getVersion())
+			.append(",\"trafficControlSystems\":").append(tcsCount)
+			.append(",\"degradedTrafficControlSystems\":").append(degraded)
+			.append(",\"trafficLightSystems\":").append(snapshot.getTrafficLightSystemCount())
+			.append(",\"trafficLights\":").append(snapshot.getLightCount())
+			.append(",\"visualRecognitionSystems\":").append(snapshot.getVisualRecognitionSystemCount())
+			.append(",\"trafficLightSystemsByState\":");
+		appendByState(json, tlsByState);
+		json.append(",\"trafficLightsByState\":");
+		appendByState(json, lightsByState);
+		json.append(",\"vehicles\":{");
+		long total = 0;
+		for (int vehicleClass = 0; vehicleClass < vehicles.length; vehicleClass++) {
+			json.append('"').append(VEHICLE_CLASS_NAMES[vehicleClass]).append("\":").append(vehicles[vehicleClass]).append(',');
+			total += vehicles[vehicleClass];
+		}
+		json.append("\"total\":").append(total).append("}}");
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Method writes every Traffic Control System, its vehicles are summed from the snapshot
+	 */
+	private byte[] serializeTrafficControlSystems(CityStateSnapshot snapshot) {
+		StringBuilder json = new StringBuilder(1024);
+		json.append('[');
+		boolean first = true;
+		for (TrafficControlSystem tcs : systems) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			json.append("{\"id\":").append(tcs.getSystemID())
+				.append(",\"operative\":").append(tcs.isOperative())
+				.append(",\"cycleCount\":").append(tcs.getCycleCount())
+				.append(",\"cycleState\":");
+			appendString(json, tcs.getCurrentCycleState());
+			json.append(",\"degraded\":").append(tcs.isDegraded())
+				.append(",\"degradations\":").append(tcs.getDegradations())
+				.append(",\"restarts\":").append(tcs.getRestarts())
+				.append(",\"trafficLightSystems\":[");
+			long vehicles = 0;
+			boolean firstTls = true;
+			for (TrafficLightSystem tls : tcs.getTrafficLightSystems()) {
+				if (!firstTls) {
+					json.append(',');
+				}
+				firstTls = false;
+				json.append(tls.getSystemId());
+				int index = snapshot.indexOfTrafficLightSystem(tls.getSystemId());
+				if (index >= 0) {
+					vehicles += snapshot.getTotalVehicles(index);
+				}
+			}
+			json.append("],\"vehicles\":").append(vehicles).append('}');
+		}
+		json.append(']');
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Method writes every Traffic Light System of the snapshot
+	 */
+	private byte[] serializeTrafficLightSystems(CityStateSnapshot snapshot) {
+		int count = snapshot.getTrafficLightSystemCount();
+		StringBuilder json = new StringBuilder(64 + count * 128);
+		json.append('[');
+		for (int tls = 0; tls < count; tls++) {
+			if (tls > 0) {
+				json.append(',');
+			}
+			json.append("{\"id\":").append(snapshot.getTrafficLightSystemId(tls))
+				.append(",\"tcsId\":").append(snapshot.getTrafficControlSystemId(tls))
+				.append(",\"state\":\"").append(STATE_NAMES[snapshot.getTrafficLightSystemStateCode(tls)])
+				.append("\",\"vehicles\":{");
+			for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+				json.append('"').append(VEHICLE_CLASS_NAMES[vehicleClass]).append("\":")
+					.append(snapshot.getVehicleCount(tls, vehicleClass)).append(',');
+			}
+			json.append("\"total\":").append(snapshot.getTotalVehicles(tls))
+				.append("},\"anomalies\":").append(snapshot.getAnomalies(tls)).append('}');
+		}
+		json.append(']');
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Method writes the metrics of the Control Center
+	 */
+	private byte[] serializeMetrics(CityStateSnapshot snapshot) {
+		int[] tlsByState = new int[STATE_NAMES.length];
+		long[] vehicles = new long[CityStateStore.VEHICLE_CLASSES];
+		for (int tls = 0; tls < snapshot.getTrafficLightSystemCount(); tls++) {
+			tlsByState[snapshot.getTrafficLightSystemStateCode(tls)]++;
+			for (int vehicleClass = 0; vehicleClass < vehicles.length; vehicleClass++) {
+				vehicles[vehicleClass] += snapshot.getVehicleCount(tls, vehicleClass);
+			}
+		}
+		long now = System.currentTimeMillis();
+		int degraded = 0;
+		long degradations = 0;
+		long restarts = 0;
+		long cycles = 0;
+		int openBreakers = 0;
+		long breakerTrips = 0;
+		long implausibleScans = 0;
+		for (TrafficControlSystem tcs : systems) {
+			degraded += tcs.isDegraded() ? 1 : 0;
+			degradations += tcs.getDegradations();
+			restarts += tcs.getRestarts();
+			cycles += tcs.getCycleCount();
+			for (TrafficLightSystem tls : tcs.getTrafficLightSystems()) {
+				for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+					CameraCircuitBreaker breaker = vrs.getCircuitBreaker();
+					openBreakers += breaker.isClosed(now) ? 0 : 1;
+					breakerTrips += breaker.getTrips();
+					implausibleScans += breaker.getImplausibleScans();
+				}
+			}
+		}
+
+		StringBuilder text = new StringBuilder(2048);
+		appendMetric(text, "city_state_version", "gauge", "Version of the city state store", snapshot.getVersion());
+		text.append("# HELP traffic_light_systems Traffic Light Systems by state\n# TYPE traffic_light_systems gauge\n");
+		for (int state = 0; state < STATE_NAMES.length; state++) {
+			text.append("traffic_light_systems{state=\"").append(STATE_NAMES[state]).append("\"} ").append(tlsByState[state]).append('\n');
+		}
+		text.append("# HELP vehicles_counted Vehicles last counted by every VRS of the city\n# TYPE vehicles_counted gauge\n");
+		for (int vehicleClass = 0; vehicleClass < vehicles.length; vehicleClass++) {
+			text.append("vehicles_counted{class=\"").append(VEHICLE_CLASS_NAMES[vehicleClass]).append("\"} ")
+				.append(vehicles[vehicleClass]).append('\n');
+		}
+		appendMetric(text, "traffic_control_cycles_total", "counter", "Cycles run by every Traffic Control System", cycles);
+		appendMetric(text, "traffic_control_systems_degraded", "gauge", "Traffic Control Systems on fixed time control", degraded);
+		appendMetric(text, "traffic_control_degradations_total", "counter", "Times cycles degraded to fixed time control", degradations);
+		appendMetric(text, "traffic_control_restarts_total", "counter", "Cycles restarted by the watchdog", restarts);
+		appendMetric(text, "camera_breakers_open", "gauge", "Camera circuit breakers not closed", openBreakers);
+		appendMetric(text, "camera_breaker_trips_total", "counter", "Times a camera circuit breaker opened", breakerTrips);
+		appendMetric(text, "camera_implausible_scans_total", "counter", "Implausible camera scans rejected", implausibleScans);
+		StateChangePublisher publisher = StateChangePublisher.getInstance();
+		appendMetric(text, "state_changes_published_total", "counter", "Traffic Light System state changes published",
+				publisher.getPublished());
+		appendMetric(text, "state_change_subscribers", "gauge", "Subscribers of the state changes", publisher.getSubscriberCount());
+		CycleWatchdog watchdog = cycleWatchdog;
+		if (watchdog != null) {
+			appendMetric(text, "watchdog_overdue_cycles_total", "counter", "Cycle heartbeats missed", watchdog.getOverdueCycles());
+			appendMetric(text, "watchdog_stopped_systems_total", "counter", "Systems stopped by the watchdog",
+					watchdog.getStoppedSystems());
+		}
+		appendMetric(text, "status_requests_total", "counter", "Status requests served", requests.sum());
+		appendMetric(text, "status_not_modified_total", "counter", "Status requests answered with 304", notModified.sum());
+		appendMetric(text, "status_serialization_seconds", "gauge", "Time the last serialization of the documents took",
+				lastSerializationNanos / 1e9);
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Method appends a JSON object of counts by state name
+	 */
+	private static void appendByState(StringBuilder json, int[] counts) {
+		json.append('{');
+		for (int state = 0; state < counts.length; state++) {
+			json.append(state == 0 ? "\"" : ",\"").append(STATE_NAMES[state]).append("\":").append(counts[state]);
+		}
+		json.append('}');
+	}
+
+	/*
+	 * Method appends a JSON string, or null
+	 */
+	private static void appendString(StringBuilder json, String value) {
+		if (value == null) {
+			json.append("null");
+			return;
+		}
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		json.append('"');
+	}
+
+	/*
+	 * Method appends one metric with its help and type lines
+	 */
+	private static void appendMetric(StringBuilder text, String name, String type, String help, Object value) {
+		text.append("# HELP ").append(name).append(' ').append(help).append('\n')
+			.append("# TYPE ").append(name).append(' ').append(type).append('\n')
+			.append(name).append(' ').append(value).append('\n');
+	}
+
+	/*
+	 * Method compresses a document
+	 */
+	private static byte[] gzip(byte[] body) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+		try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(body);
+		} catch (IOException e) {
+			throw new IllegalStateException("In memory compression failed", e);   // never happens on a byte array
+		}
+		return bytes.toByteArray();
+	}
+
+	/*
+	 * Method tells whether an If-None-Match header lists the given ETag, weak validators compared weakly
+	 */
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Method tells whether a client takes gzip responses
+	 */
+	private static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+
+	/*
+	 * Bytes of one serialization of a document, never modified once built
+	 */
+	private static final class Document {
+		final byte[] body;
+		final byte[] gzipBody;            // null if the document is too small to compress
+		final String etag;
+		final String gzipEtag;            // the compressed bytes are another representation, with their own ETag
+
+		Document(byte[] body, String tag) {
+			this.body = body;
+			this.gzipBody = body.length >= GZIP_MIN_BYTES ? gzip(body) : null;
+			this.etag = "\"" + tag + "\"";
+			this.gzipEtag = "\"" + tag + "-gz\"";
+		}
+	}
+
+	/*
+	 * One path of the server with its current document
+	 */
+	private final class Endpoint implements HttpHandler {
+		final String path;
+		final String contentType;
+		volatile Document document;
+		long generation;                  // written by the serializer thread only
+
+		Endpoint(String path, String contentType) {
+			this.path = path;
+			this.contentType = contentType;
+		}
+
+		/*
+		 * Method replaces the document unless its bytes are the same
+		 */
+		void update(byte[] body) {
+			Document current = document;
+			if (current != null && Arrays.equals(current.body, body)) {
+				return;
+			}
+			document = new Document(body, etagPrefix + "-" + (++generation));
+		}
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				requests.increment();
+				Headers headers = exchange.getResponseHeaders();
+				if (!exchange.getRequestURI().getPath().equals(path)) {
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				String method = exchange.getRequestMethod();
+				boolean head = method.equals("HEAD");
+				if (!head && !method.equals("GET")) {
+					headers.set("Allow", "GET, HEAD");
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+
+				Document current = document;
+				boolean gzip = current.gzipBody != null && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+				String etag = gzip ? current.gzipEtag : current.etag;
+				headers.set("ETag", etag);
+				headers.set("Cache-Control", "no-cache");      // clients revalidate with If-None-Match
+				headers.set("Vary", "Accept-Encoding");
+				if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+					notModified.increment();
+					exchange.sendResponseHeaders(304, -1);
+					return;
+				}
+
+				byte[] body = gzip ? current.gzipBody : current.body;
+				headers.set("Content-Type", contentType);
+				if (gzip) {
+					headers.set("Content-Encoding", "gzip");
+				}
+				if (head) {
+					exchange.sendResponseHeaders(200, -1);
+					return;
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of requests served
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * Get number of requests answered with 304 Not Modified
+	 */
+	public long getNotModified() {
+		return notModified.sum();
+	}
+
+	/**
+	 * Get number of times the documents were serialized
+	 */
+	public long getSerializations() {
+		return serializations.get();
+	}
+
+	/**
+	 * Get time the last serialization of every document took, in nanoseconds
+	 */
+	public long getLastSerializationNanos() {
+		return lastSerializationNanos;
+	}
+
+	// setters
+
+	/**
+	 * Set watchdog whose counters are part of the metrics, null to leave them out
+	 */
+	public void setCycleWatchdog(CycleWatchdog cycleWatchdog) {
+		this.cycleWatchdog = cycleWatchdog;
+	}
+
+	@Override
+	public String toString() {
+		return "Status server: " + requests.sum() + " requests, " + notModified.sum() + " not modified, "
+				+ serializations.get() + " serializations";
+	}
+}
@@ -7,6 +7,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import cityStateStore.CityStateSnapshot;
+import cityStateStore.CityStateStore;
+import roadNetwork.RoadNetwork;
 import trafficControlSystem.TrafficControlSystem;
 
 /**
@@ -19,8 +22,8 @@ import trafficControlSystem.TrafficControlSystem;
 public class TCSystemsListManager implements Iterable<TrafficControlSystem>{
 
 	// vars
-	private static TCSystemsListManager instance;
     private List<TrafficControlSystem> trafficControlSystems;
+    private volatile RoadNetwork roadNetwork;          // adjacency of the intersections, null if not loaded
 
     // Pivate constructor
     private TCSystemsListManager() {
@@ -29,19 +32,31 @@ public class TCSystemsListManager implements Iterable<TrafficControlSystem>{
     
     
     /***
-     * Static method initialise an intance of TCSystemsListManger
+     * Static method returns the instance of TCSystemsListManger, created by class initialisation
+     * so the control loops calling it never take a monitor
      * **/
-    public static synchronized TCSystemsListManager getInstance() {
-        if (instance == null) {
-            instance = new TCSystemsListManager();
-        }
-        return instance;
+    public static TCSystemsListManager getInstance() {
+        return Holder.INSTANCE;
     }
 
     public List<TrafficControlSystem> getTrafficControlSystems() {
         return trafficControlSystems;
     }
     
+    /**
+     * Get road network linking the intersections of the Traffic Control Systems, null if not loaded
+     */
+    public RoadNetwork getRoadNetwork() {
+        return roadNetwork;
+    }
+    
+    /**
+     * Set road network linking the intersections, its node ids are the Traffic Control System ids
+     */
+    public void setRoadNetwork(RoadNetwork roadNetwork) {
+        this.roadNetwork = roadNetwork;
+    }
+    
     
     // helper methods
     
@@ -53,10 +68,41 @@ public class TCSystemsListManager implements Iterable<TrafficControlSystem>{
 	public void addTrafficContolSystem(TrafficControlSystem newTCS) {
 		trafficControlSystems.add(newTCS);   
 	}
+	
+	/***
+	 * Method adds the Traffic Control Systems of a topology in one go
+	 * 
+	 */
+	public void addTrafficControlSystems(List<TrafficControlSystem> systems) {
+		trafficControlSystems.addAll(systems);
+	}
+
+
+	/***
+	 * Method returns a consistent, immutable view of the state of every Traffic Light System
+	 * and the last vehicle counts of their Visual Recognition Systems.
+	 * 
+	 * The snapshot is taken without blocking the control threads. The store shares it with all 
+	 * callers until one of its stripes changes and then only copies the changed stripes again, 
+	 * so monitoring clients can poll it as often as they like.
+	 * 
+	 * @return the latest snapshot
+	 */
+	public CityStateSnapshot getSnapshot() {
+		return CityStateStore.getInstance().snapshot();
+	}
 
 
 	@Override
 	public Iterator<TrafficControlSystem> iterator() {
 		return trafficControlSystems.iterator();
 	}
+
+
+	/*
+	 * Holds the instance, created the first time getInstance is called
+	 */
+	private static final class Holder {
+		static final TCSystemsListManager INSTANCE = new TCSystemsListManager();
+	}
 }
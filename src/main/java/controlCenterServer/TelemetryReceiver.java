@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import trafficTelemetry.TelemetryAck;
+import trafficTelemetry.TelemetryBatch;
+import trafficTelemetry.TelemetryServiceGrpc;
+
+/**
+ * Class is the Control Center end of the telemetry streams opened by the Traffic Control Systems.
+ *
+ * Inbound flow control is manual: the next batch of a stream is only requested once the previous one
+ * has been processed, so a slow Control Center makes the transport window fill up and the
+ * Traffic Control Systems stop writing, instead of batches piling up in memory here.
+ */
+public class TelemetryReceiver extends TelemetryServiceGrpc.TelemetryServiceImplBase {
+
+	// vars
+	private final ConcurrentMap<Integer, TelemetryStats> statsByTcs;
+
+
+	/**
+	 * Initialises a receiver with no telemetry
+	 * **/
+	public TelemetryReceiver() {
+		this.statsByTcs = new ConcurrentHashMap<>();
+	}
+
+
+	/***
+	 * Method handles a telemetry stream of a Traffic Control System
+	 * **/
+	@Override
+	public StreamObserver<TelemetryBatch> streamTelemetry(StreamObserver<TelemetryAck> responseObserver) {
+		ServerCallStreamObserver<TelemetryAck> serverObserver = (ServerCallStreamObserver<TelemetryAck>) responseObserver;
+		serverObserver.disableAutoRequest();
+
+		// ask for the first batch once the call is ready
+		serverObserver.setOnReadyHandler(new Runnable() {
+			private boolean wasReady;
+
+			@Override
+			public void run() {
+				if (serverObserver.isReady() && !wasReady) {
+					wasReady = true;
+					serverObserver.request(1);
+				}
+			}
+		});
+
+		return new StreamObserver<TelemetryBatch>() {
+			private long batches;
+			private long records;
+			private long lastSequence = -1;
+
+			@Override
+			public void onNext(TelemetryBatch batch) {
+				statsByTcs.computeIfAbsent(batch.getTcsId(), TelemetryStats::new).add(batch);
+				batches++;
+				records += batch.getScansCount() + batch.getStateChangesCount() + batch.getAnomaliesCount();
+				lastSequence = Math.max(lastSequence, batch.getSequence());
+
+				serverObserver.request(1);     // processed, ready for the next batch
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				System.err.println("Telemetry stream closed with error: " + t.getMessage());
+			}
+
+			@Override
+			public void onCompleted() {
+				responseObserver.onNext(TelemetryAck.newBuilder()
+						.setBatches(batches)
+						.setRecords(records)
+						.setLastSequence(lastSequence)
+						.build());
+				responseObserver.onCompleted();
+			}
+		};
+	}
+
+
+	// getters
+
+	/**
+	 * Get telemetry received from a Traffic Control System, null if it never sent any
+	 */
+	public TelemetryStats getStats(int tcsId) {
+		return statsByTcs.get(tcsId);
+	}
+
+	/**
+	 * Get telemetry received from every Traffic Control System
+	 */
+	public Collection<TelemetryStats> getAllStats() {
+		return Collections.unmodifiableCollection(statsByTcs.values());
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import trafficTelemetry.ScanTotal;
+import trafficTelemetry.TelemetryBatch;
+
+/**
+ * Class holds the telemetry received from one Traffic Control System.
+ */
+public class TelemetryStats {
+
+	// vars
+	private final int tcsId;
+	private long batches;
+	private long scans;
+	private long stateChanges;
+	private long anomalies;
+	private long vehicles;
+	private long droppedRecords;      // dropped by the sender
+	private long missedBatches;       // sequence gaps
+	private long lastSequence;
+	private long lastReceivedMillis;
+
+
+	/**
+	 * Initialises the statistics of a Traffic Control System
+	 * **/
+	public TelemetryStats(int tcsId) {
+		this.tcsId = tcsId;
+		this.lastSequence = -1;
+	}
+
+
+	/***
+	 * Method adds a received batch to the statistics
+	 * **/
+	synchronized void add(TelemetryBatch batch) {
+		if (lastSequence >= 0 && batch.getSequence() > lastSequence + 1) {
+			missedBatches += batch.getSequence() - lastSequence - 1;
+		}
+		lastSequence = Math.max(lastSequence, batch.getSequence());
+		lastReceivedMillis = System.currentTimeMillis();
+
+		batches++;
+		scans += batch.getScansCount();
+		stateChanges += batch.getStateChangesCount();
+		anomalies += batch.getAnomaliesCount();
+		droppedRecords += batch.getDroppedRecords();
+		for (ScanTotal scan : batch.getScansList()) {
+			vehicles += scan.getCars() + scan.getTrucks() + scan.getBikes() + scan.getBuses();
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get ID of the Traffic Control System
+	 */
+	public int getTcsId() {
+		return tcsId;
+	}
+
+	/**
+	 * Get number of batches received
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Get number of scan totals received
+	 */
+	public synchronized long getScans() {
+		return scans;
+	}
+
+	/**
+	 * Get number of state changes received
+	 */
+	public synchronized long getStateChanges() {
+		return stateChanges;
+	}
+
+	/**
+	 * Get number of anomaly reports received
+	 */
+	public synchronized long getAnomalies() {
+		return anomalies;
+	}
+
+	/**
+	 * Get vehicles of all the scan totals received
+	 */
+	public synchronized long getVehicles() {
+		return vehicles;
+	}
+
+	/**
+	 * Get records the Traffic Control System dropped because the stream was not keeping up
+	 */
+	public synchronized long getDroppedRecords() {
+		return droppedRecords;
+	}
+
+	/**
+	 * Get batches never received, found from gaps in the sequence numbers
+	 */
+	public synchronized long getMissedBatches() {
+		return missedBatches;
+	}
+
+	/**
+	 * Get highest sequence number received, -1 if none was
+	 */
+	public synchronized long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * Get time the last batch was received, 0 if none was
+	 */
+	public synchronized long getLastReceivedMillis() {
+		return lastReceivedMillis;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TCS " + tcsId + ": " + batches + " batches, " + scans + " scans, " + stateChanges + " state changes, "
+				+ anomalies + " anomalies, " + vehicles + " vehicles, " + droppedRecords + " records dropped, "
+				+ missedBatches + " batches missed";
+	}
+}
@@ -0,0 +1,345 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cityStateStore.CityStateStore;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.TrafficLight;
+import trafficLightSystem.TrafficLightSystem;
+import visualRecognitionSystem.VisualRecognitionSystem;
+
+/**
+ * Class reads and writes the topology of a city: its Traffic Control Systems, their Traffic Light Systems and
+ * the lights and cameras of each, with their ids and the position of every light.
+ *
+ * The file is binary, in network byte order:
+ *
+ *     header    int magic "TOPO" | int version | u8 position count | positions as u16 length + UTF-8 bytes | int TCS count
+ *     TCS       int id | u8 TLS count, followed by its TLSs
+ *     TLS       int id | u8 light count, followed by its lights
+ *     light     int id | u8 position index | int VRS id, 0 for a light without camera
+ *
+ * Loading maps the file and parses it in place. A first pass checks the whole file, so a bad file registers nothing,
+ * a second one builds the systems without console output inside one CityStateStore update section,
+ * so readers of the store see the whole city appear at once.
+ */
+public final class TopologyFile {
+
+	// vars
+	private static final int MAGIC = 0x544F504F;     // "TOPO"
+	private static final int VERSION = 1;
+	private static final int NO_CAMERA = 0;
+	private static final int TLS_PER_TCS = 2;        // the control cycle alternates two Traffic Light Systems
+	private static final int MIN_TCS_BYTES = 5 + TLS_PER_TCS * (5 + 9);   // a TCS whose TLSs have one light each
+
+
+	/*
+	 * Class only holds static methods
+	 */
+	private TopologyFile() {
+	}
+
+
+	// helper methods
+
+	/***
+	 * Static method loads a topology file and builds its Traffic Control Systems, ready to run their cycles
+	 *
+	 * @return the Traffic Control Systems, in file order
+	 * @throws IllegalArgumentException if the file is not a valid topology or an id is used twice
+	 * **/
+	public static List<TrafficControlSystem> load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			String[] positions = readHeader(mapped);
+			int tcsCount = mapped.getInt();
+			int body = mapped.position();
+			int[] counts = check(mapped, tcsCount, positions.length);
+			CityStateStore.getInstance().reserve(tcsCount, counts[0], counts[1], counts[2]);
+			mapped.position(body);
+			return build(mapped, tcsCount, positions);
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Topology file " + file + " is truncated", e);
+		}
+	}
+
+	/*
+	 * Method reads the header up to the TCS count and returns the position names
+	 */
+	private static String[] readHeader(ByteBuffer in) {
+		if (in.getInt() != MAGIC) {
+			throw new IllegalArgumentException("Not a topology file");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported topology file version " + version);
+		}
+		String[] positions = new String[in.get() & 0xFF];
+		for (int i = 0; i < positions.length; i++) {
+			byte[] name = new byte[in.getShort() & 0xFFFF];
+			in.get(name);
+			positions[i] = new String(name, StandardCharsets.UTF_8);
+		}
+		return positions;
+	}
+
+	/*
+	 * Method walks the systems without building them, checking their structure and that no id is used twice
+	 *
+	 * @return numbers of lights, Traffic Light Systems and Visual Recognition Systems of the file
+	 */
+	private static int[] check(ByteBuffer in, int tcsCount, int positionCount) {
+		if (tcsCount < 0 || (long) tcsCount * MIN_TCS_BYTES > in.remaining()) {
+			throw new IllegalArgumentException("Topology file holds " + in.remaining() + " bytes, too few for "
+					+ tcsCount + " Traffic Control Systems");
+		}
+		CityStateStore store = CityStateStore.getInstance();
+		IdList tcsIds = new IdList(tcsCount);
+		IdList tlsIds = new IdList(tcsCount * TLS_PER_TCS);
+		IdList lightIds = new IdList(tcsCount * TLS_PER_TCS * 2);
+		IdList vrsIds = new IdList(tcsCount * TLS_PER_TCS * 2);
+
+		for (int t = 0; t < tcsCount; t++) {
+			int tcsId = in.getInt();
+			int tlsCount = in.get() & 0xFF;
+			tcsIds.add(tcsId);
+			if (store.indexOfTrafficControlSystem(tcsId) >= 0) {
+				throw new IllegalArgumentException("Traffic Control System " + tcsId + " is registered already");
+			}
+			if (tlsCount != TLS_PER_TCS) {
+				throw new IllegalArgumentException("Traffic Control System " + tcsId + " has " + tlsCount
+						+ " Traffic Light Systems, the control cycle needs " + TLS_PER_TCS);
+			}
+			for (int s = 0; s < tlsCount; s++) {
+				int tlsId = in.getInt();
+				int lightCount = in.get() & 0xFF;
+				tlsIds.add(tlsId);
+				if (lightCount == 0 || store.indexOfTrafficLightSystem(tlsId) >= 0) {
+					throw new IllegalArgumentException("Traffic Light System " + tlsId + " has no light or is registered already");
+				}
+				for (int l = 0; l < lightCount; l++) {
+					int lightId = in.getInt();
+					int position = in.get() & 0xFF;
+					int vrsId = in.getInt();
+					lightIds.add(lightId);
+					if (position >= positionCount || store.indexOfTrafficLight(lightId) >= 0) {
+						throw new IllegalArgumentException("Traffic Light " + lightId + " has an unknown position or is registered already");
+					}
+					if (vrsId != NO_CAMERA) {
+						vrsIds.add(vrsId);
+						if (store.indexOfVisualRecognitionSystem(vrsId) >= 0) {
+							throw new IllegalArgumentException("Visual Recognition System " + vrsId + " is registered already");
+						}
+					}
+				}
+			}
+		}
+		tcsIds.checkUnique("Traffic Control System");
+		tlsIds.checkUnique("Traffic Light System");
+		lightIds.checkUnique("Traffic Light");
+		vrsIds.checkUnique("Visual Recognition System");
+		return new int[] { lightIds.size, tlsIds.size, vrsIds.size };
+	}
+
+	/*
+	 * Method builds the systems of a checked file
+	 */
+	private static List<TrafficControlSystem> build(ByteBuffer in, int tcsCount, String[] positions) {
+		CityStateStore store = CityStateStore.getInstance();
+		List<TrafficControlSystem> systems = new ArrayList<>(tcsCount);
+		store.beginUpdate();
+		try {
+			for (int t = 0; t < tcsCount; t++) {
+				TrafficControlSystem tcs = new TrafficControlSystem(in.getInt());
+				int tlsCount = in.get() & 0xFF;
+				for (int s = 0; s < tlsCount; s++) {
+					TrafficLightSystem tls = new TrafficLightSystem(in.getInt(), tcs.getSystemID());
+					int lightCount = in.get() & 0xFF;
+					for (int l = 0; l < lightCount; l++) {
+						TrafficLight light = new TrafficLight(in.getInt(), tls.getSystemId(), positions[in.get() & 0xFF]);
+						tls.addTrafficLight(light);
+						int vrsId = in.getInt();
+						if (vrsId != NO_CAMERA) {
+							tls.addVisualRecognitionSystem(new VisualRecognitionSystem(vrsId, light.getTrafficLightID(), tls.getSystemId()));
+						}
+					}
+					tcs.addTrafficLightSystem(tls);
+				}
+				systems.add(tcs);
+			}
+		} finally {
+			store.endUpdate();
+		}
+		return systems;
+	}
+
+
+	/**
+	 * Ids of one kind read from a file. Duplicates are found by sorting them once, which reads memory
+	 * in order instead of probing a hash table for every id.
+	 */
+	private static final class IdList {
+
+		private int[] ids;
+		private int size;
+
+		IdList(int expectedSize) {
+			this.ids = new int[Math.max(16, expectedSize)];
+		}
+
+		void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size << 1);
+			}
+			ids[size++] = id;
+		}
+
+		/*
+		 * Method fails if an id was added twice
+		 */
+		void checkUnique(String kind) {
+			int[] sorted = Arrays.copyOf(ids, size);
+			Arrays.sort(sorted);
+			for (int i = 1; i < sorted.length; i++) {
+				if (sorted[i] == sorted[i - 1]) {
+					throw new IllegalArgumentException(kind + " id " + sorted[i] + " is used twice");
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Writes a topology file system by system: a TCS, then each of its TLSs followed by its lights
+	 */
+	public static final class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private final List<String> positions;
+		private final long tcsCountOffset;
+		private int tcsCount;
+		private int tlsLeft;             // of the current TCS
+		private int lightsLeft;          // of the current TLS
+
+		/**
+		 * Initialises a writer of a new file whose lights take their positions from the given names
+		 * **/
+		public Writer(Path file, List<String> positions) throws IOException {
+			if (positions.size() > 0xFF) {
+				throw new IllegalArgumentException("At most 255 positions");
+			}
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.buffer = ByteBuffer.allocate(64 * 1024);
+			this.positions = new ArrayList<>(positions);
+			buffer.putInt(MAGIC).putInt(VERSION).put((byte) positions.size());
+			for (String position : positions) {
+				byte[] name = position.getBytes(StandardCharsets.UTF_8);
+				buffer.putShort((short) name.length).put(name);
+			}
+			this.tcsCountOffset = buffer.position();
+			buffer.putInt(0);                // patched by close()
+		}
+
+		/***
+		 * Method starts a Traffic Control System of the given number of Traffic Light Systems
+		 * **/
+		public void beginTrafficControlSystem(int tcsId, int tlsCount) throws IOException {
+			checkComplete();
+			reserve(5);
+			buffer.putInt(tcsId).put((byte) tlsCount);
+			tlsLeft = tlsCount;
+			tcsCount++;
+		}
+
+		/***
+		 * Method starts a Traffic Light System of the current Traffic Control System
+		 * **/
+		public void beginTrafficLightSystem(int tlsId, int lightCount) throws IOException {
+			if (tlsLeft == 0 || lightsLeft > 0) {
+				throw new IllegalStateException("Traffic Light System " + tlsId + " does not fit the current Traffic Control System");
+			}
+			reserve(5);
+			buffer.putInt(tlsId).put((byte) lightCount);
+			tlsLeft--;
+			lightsLeft = lightCount;
+		}
+
+		/***
+		 * Method adds a light of the current Traffic Light System
+		 *
+		 * @param vrsId id of the camera of the light, 0 for none
+		 * **/
+		public void addTrafficLight(int lightId, String position, int vrsId) throws IOException {
+			int positionIndex = positions.indexOf(position);
+			if (positionIndex < 0) {
+				throw new IllegalArgumentException("Unknown position " + position);
+			}
+			if (lightsLeft == 0) {
+				throw new IllegalStateException("Traffic Light " + lightId + " does not fit the current Traffic Light System");
+			}
+			reserve(9);
+			buffer.putInt(lightId).put((byte) positionIndex).putInt(vrsId);
+			lightsLeft--;
+		}
+
+		/***
+		 * Method writes what is buffered, the number of Traffic Control Systems and closes the file
+		 * **/
+		@Override
+		public void close() throws IOException {
+			try {
+				checkComplete();
+				flush();
+				ByteBuffer count = ByteBuffer.allocate(4).putInt(0, tcsCount);
+				channel.write(count, tcsCountOffset);
+			} finally {
+				channel.close();
+			}
+		}
+
+		/*
+		 * Method fails if the current system is missing some of its declared parts
+		 */
+		private void checkComplete() {
+			if (tlsLeft > 0 || lightsLeft > 0) {
+				throw new IllegalStateException("The current system is missing Traffic Light Systems or lights");
+			}
+		}
+
+		/*
+		 * Method flushes the buffer if it has less than the given bytes left
+		 */
+		private void reserve(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		/*
+		 * Method writes the buffer to the file
+		 */
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
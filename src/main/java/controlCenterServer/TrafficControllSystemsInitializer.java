@@ -1,6 +1,9 @@
 package controlCenterServer;
 
+import java.util.ArrayList;
+import java.util.List;
 
+import controlLoops.ControlLoopThreads;
 import trafficControlSystem.TrafficControlSystem;
 
 
@@ -68,13 +71,21 @@ public class TrafficControllSystemsInitializer {
 	 * Method to initialize proccess of Traffic Control.
 	 * 
 	 * Iterates over the list of associated Traffic Control Systems
-	 * and request to start the cycle with apredifined initial state.
+	 * and request to start the cycle with apredifined initial state,
+	 * or with the state restored from a checkpoint.
+	 * 
+	 * Every Traffic Control System cycles on its own control loop thread, virtual in the virtual thread mode,
+	 * and the method returns once all of them have finished their cycles.
 	 */
 	public void startTrafficControlCycle() {
 		
+		List<Thread> cycles = new ArrayList<>();
 		for(TrafficControlSystem tcs : listOfTrafficControlSystems) {
-			tcs.startTrafficControlCycle("green");
+			String restoredState = tcs.getCurrentCycleState();
+			cycles.add(ControlLoopThreads.start("tcs-" + tcs.getSystemID(), 
+					() -> tcs.startTrafficControlCycle(restoredState != null ? restoredState : "green")));
 		}
+		ControlLoopThreads.joinAll(cycles);
 	}
 	
 }
@@ -0,0 +1,182 @@
+/**
+ *
+ */
+package controlLoops;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class starts the threads the control loops run on: the cycle of each Traffic Control System,
+ * the data collection of each Traffic Light System and of each of its Visual Recognition Systems.
+ *
+ * The loops keep their sequential style, sleeping through every phase and scan, so each one holds a thread
+ * while it waits. In PLATFORM mode those are operating system threads, which limits a Control Centre to a
+ * few thousand intersections. In VIRTUAL mode they are virtual threads, which give their carrier thread back
+ * while they sleep, so the number of intersections is only limited by memory.
+ *
+ * Virtual threads came with JDK 21. The project builds for JDK 17, so they are looked up by reflection
+ * and VIRTUAL mode is only available when the Control Centre runs on a JDK that has them.
+ *
+ * A virtual thread blocked inside a synchronized block or method keeps its carrier thread (it is pinned),
+ * so what the loops call while they run waits on java.util.concurrent locks, and the shared singletons they use
+ * are created by class initialisation instead of a synchronized getInstance. Set-up code run before the loops
+ * start, such as registering heartbeat slots, may still take a monitor.
+ *
+ * PLATFORM is the default, VIRTUAL is chosen at runtime with the controlLoops.virtual system property.
+ */
+public final class ControlLoopThreads {
+
+	// vars
+	public enum Mode { PLATFORM, VIRTUAL }
+
+	public static final String VIRTUAL_PROPERTY = "controlLoops.virtual";   // true to run the loops on virtual threads
+
+	private static final ThreadFactory VIRTUAL_FACTORY = virtualThreadFactory();   // null before JDK 21
+	private static final AtomicInteger started = new AtomicInteger();
+	private static volatile Mode mode = Mode.PLATFORM;
+
+
+	/*
+	 * Class only holds static methods
+	 */
+	private ControlLoopThreads() {
+	}
+
+
+	// helper methods
+
+	/***
+	 * Static method starts a control loop task on a thread of the current mode
+	 *
+	 * @param name name of the thread, for thread dumps
+	 * @return the thread started
+	 * **/
+	public static Thread start(String name, Runnable task) {
+		Thread thread = newThread(name, task);
+		thread.start();
+		return thread;
+	}
+
+	/***
+	 * Static method creates a control loop thread of the current mode without starting it,
+	 * so the caller can hand it work or ownership before it runs
+	 *
+	 * @param name name of the thread, for thread dumps
+	 * @return the thread, counted as started
+	 * **/
+	public static Thread newThread(String name, Runnable task) {
+		Thread thread;
+		if (mode == Mode.VIRTUAL) {
+			thread = VIRTUAL_FACTORY.newThread(task);
+			thread.setName(name);
+		} else {
+			thread = new Thread(task, name);
+		}
+		started.incrementAndGet();
+		return thread;
+	}
+
+	/***
+	 * Static method waits for the given threads to finish
+	 *
+	 * @return false if the current thread was interrupted before they all finished
+	 * **/
+	public static boolean joinAll(List<Thread> threads) {
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/***
+	 * Static method waits for the given threads to finish, for at most the given time
+	 *
+	 * @return false if they did not all finish in time
+	 * @throws InterruptedException if the current thread was interrupted while waiting
+	 * **/
+	public static boolean joinAll(List<Thread> threads, long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		for (Thread thread : threads) {
+			long leftMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (leftMillis <= 0) {
+				break;
+			}
+			thread.join(leftMillis);
+		}
+		for (Thread thread : threads) {
+			if (thread.isAlive()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Method looks up the virtual thread factory of JDK 21, Thread.ofVirtual().factory()
+	 */
+	private static ThreadFactory virtualThreadFactory() {
+		try {
+			Method ofVirtual = Thread.class.getMethod("ofVirtual");
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(ofVirtual.invoke(null));
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return null;     // virtual threads are not available in this JDK
+		}
+	}
+
+
+	// setters
+
+	/**
+	 * Set mode of the threads started from now on
+	 *
+	 * @throws UnsupportedOperationException if VIRTUAL is asked and the JDK has no virtual threads
+	 */
+	public static void setMode(Mode newMode) {
+		if (newMode == Mode.VIRTUAL && !isVirtualSupported()) {
+			throw new UnsupportedOperationException("Virtual threads need JDK 21 or later, running on "
+					+ System.getProperty("java.version"));
+		}
+		mode = newMode;
+	}
+
+
+	// getters
+
+	/**
+	 * Get mode of the threads started
+	 */
+	public static Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Get mode asked for with the controlLoops.virtual system property, PLATFORM unless it is true
+	 */
+	public static Mode getRequestedMode() {
+		return Boolean.getBoolean(VIRTUAL_PROPERTY) ? Mode.VIRTUAL : Mode.PLATFORM;
+	}
+
+	/**
+	 * Get whether the running JDK has virtual threads
+	 */
+	public static boolean isVirtualSupported() {
+		return VIRTUAL_FACTORY != null;
+	}
+
+	/**
+	 * Get number of control loop threads started so far
+	 */
+	public static int getStarted() {
+		return started.get();
+	}
+}
@@ -0,0 +1,190 @@
+/**
+ *
+ */
+package roadNetwork;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Class computes green wave offsets over the road network, so a platoon leaving a green intersection
+ * reaches the next one of its corridor as that one turns green.
+ *
+ * Corridors follow demand. Each intersection keeps its busiest outgoing road, and a road is coordinated
+ * when it is also the busiest of those entering its target, so every intersection has at most one coordinated
+ * road in and one out and the coordinated roads form disjoint chains. Along a chain the offset of an intersection is
+ * the offset of the previous one plus the travel time of the road between them, modulo the common cycle.
+ *
+ * Picking the roads is independent per intersection and runs in parallel over the CSR arrays,
+ * then the chains are walked in parallel, one task per corridor.
+ * Plans are computed by one thread at a time, the current plan can be read from any thread.
+ */
+public class GreenWaveCoordinator {
+
+	// vars
+	private final RoadNetwork network;
+	private final int cycleSeconds;
+	private double[] lastDemand;             // demand of the last plan, by edge
+	private volatile GreenWavePlan plan;
+
+
+	/**
+	 * Initialises a coordinator
+	 *
+	 * @param cycleSeconds length of the cycle all the intersections share
+	 * @throws IllegalArgumentException if the cycle is not positive
+	 * **/
+	public GreenWaveCoordinator(RoadNetwork network, int cycleSeconds) {
+		if (cycleSeconds <= 0) {
+			throw new IllegalArgumentException("Cycle length must be positive");
+		}
+		this.network = network;
+		this.cycleSeconds = cycleSeconds;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method computes the green wave plan for the given demand and makes it the current one
+	 *
+	 * @param demand vehicles per hour on each road, by edge
+	 * **/
+	public GreenWavePlan computePlan(double[] demand) {
+		if (demand.length != network.getEdgeCount()) {
+			throw new IllegalArgumentException("Demand has " + demand.length + " roads, the network " + network.getEdgeCount());
+		}
+		long start = System.nanoTime();
+		int n = network.getNodeCount();
+
+		// busiest road out of each node
+		int[] bestOut = new int[n];
+		IntStream.range(0, n).parallel().forEach(u -> {
+			int best = -1;
+			for (int e = network.getFirstOutEdge(u); e < network.getEndOutEdge(u); e++) {
+				if (demand[e] > 0 && (best < 0 || demand[e] > demand[best])) {
+					best = e;
+				}
+			}
+			bestOut[u] = best;
+		});
+
+		// coordinated road into each node: the busiest among the roads picked by their source
+		int[] coordinatedIn = new int[n];
+		IntStream.range(0, n).parallel().forEach(v -> {
+			int best = -1;
+			for (int p = network.getFirstInPosition(v); p < network.getEndInPosition(v); p++) {
+				int e = network.getInEdge(p);
+				if (bestOut[network.getSource(e)] == e && (best < 0 || demand[e] > demand[best])) {
+					best = e;
+				}
+			}
+			coordinatedIn[v] = best;
+		});
+		int[] coordinatedOut = new int[n];
+		IntStream.range(0, n).parallel().forEach(u -> {
+			int e = bestOut[u];
+			coordinatedOut[u] = e >= 0 && coordinatedIn[network.getTarget(e)] == e ? e : -1;
+		});
+
+		// walk every chain from its head, chains without a head are rings and are cut afterwards
+		float[] offsets = new float[n];
+		int[] corridorOf = new int[n];
+		Arrays.fill(corridorOf, -1);
+		int[] heads = IntStream.range(0, n).parallel().filter(v -> coordinatedIn[v] < 0).toArray();
+		IntStream.range(0, heads.length).parallel().forEach(c -> walkCorridor(heads[c], c, coordinatedOut, offsets, corridorOf));
+		int corridors = heads.length;
+		for (int v = 0; v < n; v++) {
+			if (corridorOf[v] < 0) {
+				walkCorridor(v, corridors++, coordinatedOut, offsets, corridorOf);
+			}
+		}
+
+		int coordinatedRoads = (int) IntStream.range(0, n).parallel().filter(u -> coordinatedOut[u] >= 0).count();
+		GreenWavePlan computed = new GreenWavePlan(network, cycleSeconds, offsets, corridorOf, corridors, coordinatedRoads,
+				System.nanoTime() - start);
+		this.lastDemand = demand.clone();
+		this.plan = computed;
+		return computed;
+	}
+
+	/***
+	 * Method computes a new plan only if the demand moved from the one of the current plan by more than the given share
+	 *
+	 * @param demand vehicles per hour on each road, by edge
+	 * @param threshold share of the total demand that has to move, 0.1 for 10%
+	 * @return the new plan, or the current one if demand did not shift enough
+	 * **/
+	public GreenWavePlan recomputeIfShifted(double[] demand, double threshold) {
+		double[] previous = lastDemand;
+		if (plan == null || previous == null || previous.length != demand.length) {
+			return computePlan(demand);
+		}
+		double moved = IntStream.range(0, demand.length).parallel().mapToDouble(e -> Math.abs(demand[e] - previous[e])).sum();
+		double total = Arrays.stream(previous).parallel().sum();
+		if (total == 0 ? moved > 0 : moved / total > threshold) {
+			return computePlan(demand);
+		}
+		return plan;
+	}
+
+	/***
+	 * Method spreads the vehicles counted at each intersection over the roads entering it,
+	 * a demand estimate for when only intersection counts are known
+	 *
+	 * @param vehiclesAt vehicles counted at an intersection, by node index
+	 * **/
+	public double[] demandFromCounts(IntUnaryOperator vehiclesAt) {
+		double[] demand = new double[network.getEdgeCount()];
+		IntStream.range(0, network.getNodeCount()).parallel().forEach(v -> {
+			int entering = network.getEndInPosition(v) - network.getFirstInPosition(v);
+			if (entering > 0) {
+				double share = (double) vehiclesAt.applyAsInt(v) / entering;
+				for (int p = network.getFirstInPosition(v); p < network.getEndInPosition(v); p++) {
+					demand[network.getInEdge(p)] = share;
+				}
+			}
+		});
+		return demand;
+	}
+
+	/*
+	 * Method sets the offsets of a corridor from its first node, stopping when it loops back on a ring
+	 */
+	private void walkCorridor(int head, int corridor, int[] coordinatedOut, float[] offsets, int[] corridorOf) {
+		int node = head;
+		float offset = 0;
+		while (true) {
+			offsets[node] = offset;
+			corridorOf[node] = corridor;
+			int e = coordinatedOut[node];
+			if (e < 0) {
+				return;
+			}
+			int next = network.getTarget(e);
+			if (next == head) {
+				return;              // ring cut at its first node
+			}
+			offset = (offset + network.getTravelSeconds(e)) % cycleSeconds;
+			node = next;
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get current plan, null if none was computed yet
+	 */
+	public GreenWavePlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Get road network the coordinator plans for
+	 */
+	public RoadNetwork getNetwork() {
+		return network;
+	}
+}
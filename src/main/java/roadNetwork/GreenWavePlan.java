@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package roadNetwork;
+
+/**
+ * Class holds the phase offsets of a green wave plan: for every intersection, the seconds after the start
+ * of the common cycle its coordinated green starts, and the corridor it belongs to.
+ *
+ * Instances are immutable, a new plan replaces the previous one as a whole.
+ */
+public final class GreenWavePlan {
+
+	// vars
+	private final RoadNetwork network;
+	private final int cycleSeconds;
+	private final float[] offsets;           // by node index
+	private final int[] corridorOf;          // by node index
+	private final int corridors;
+	private final int coordinatedRoads;
+	private final long computeNanos;
+
+
+	/*
+	 * Initialises a plan, built by the GreenWaveCoordinator
+	 */
+	GreenWavePlan(RoadNetwork network, int cycleSeconds, float[] offsets, int[] corridorOf, int corridors,
+			int coordinatedRoads, long computeNanos) {
+		this.network = network;
+		this.cycleSeconds = cycleSeconds;
+		this.offsets = offsets;
+		this.corridorOf = corridorOf;
+		this.corridors = corridors;
+		this.coordinatedRoads = coordinatedRoads;
+		this.computeNanos = computeNanos;
+	}
+
+
+	// getters
+
+	/**
+	 * Get offset of an intersection in seconds, -1 if it is not in the network
+	 */
+	public float getOffsetOf(int intersectionId) {
+		int node = network.indexOf(intersectionId);
+		return node < 0 ? -1 : offsets[node];
+	}
+
+	/**
+	 * Get offset of a node by index in seconds
+	 */
+	public float getOffset(int node) {
+		return offsets[node];
+	}
+
+	/**
+	 * Get corridor of a node by index
+	 */
+	public int getCorridor(int node) {
+		return corridorOf[node];
+	}
+
+	/**
+	 * Get length of the common cycle in seconds
+	 */
+	public int getCycleSeconds() {
+		return cycleSeconds;
+	}
+
+	/**
+	 * Get number of corridors, a corridor is a chain of intersections whose greens follow each other
+	 */
+	public int getCorridors() {
+		return corridors;
+	}
+
+	/**
+	 * Get number of road segments a green wave runs along
+	 */
+	public int getCoordinatedRoads() {
+		return coordinatedRoads;
+	}
+
+	/**
+	 * Get time taken to compute the plan in nanoseconds
+	 */
+	public long getComputeNanos() {
+		return computeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return corridors + " corridors over " + network.getNodeCount() + " intersections, " + coordinatedRoads
+				+ " roads coordinated on a " + cycleSeconds + " s cycle";
+	}
+}
@@ -0,0 +1,267 @@
+/**
+ *
+ */
+package roadNetwork;
+
+import java.util.Arrays;
+
+import cityStateStore.IntIndexMap;
+
+/**
+ * Class represents the road network of the city: intersections, each one run by a Traffic Control System,
+ * and the one way road segments between them with their travel time.
+ *
+ * It is an immutable graph in compressed sparse row form. Intersections have dense indexes,
+ * the roads leaving intersection i are the edges outOffsets[i] to outOffsets[i + 1] - 1 of the parallel edge arrays,
+ * and a second set of offsets lists the edges entering each intersection. A walk over the roads of an intersection
+ * reads consecutive ints, with no object per node or edge.
+ *
+ * Instances are built with a RoadNetwork.Builder.
+ */
+public final class RoadNetwork {
+
+	// vars
+	private final int[] nodeIds;             // intersection (TCS) id by index
+	private final IntIndexMap indexes;       // index by intersection id
+	private final int[] outOffsets;          // first edge leaving each node, nodeCount + 1 entries
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final float[] travelSeconds;
+	private final int[] inOffsets;           // first entry of each node in inEdges, nodeCount + 1 entries
+	private final int[] inEdges;             // edges entering each node
+
+
+	/*
+	 * Initialises a network from its arrays, built by the Builder
+	 */
+	private RoadNetwork(int[] nodeIds, IntIndexMap indexes, int[] outOffsets, int[] edgeSources, int[] edgeTargets,
+			float[] travelSeconds, int[] inOffsets, int[] inEdges) {
+		this.nodeIds = nodeIds;
+		this.indexes = indexes;
+		this.outOffsets = outOffsets;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.travelSeconds = travelSeconds;
+		this.inOffsets = inOffsets;
+		this.inEdges = inEdges;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns the index of an intersection, -1 if it is not in the network
+	 * **/
+	public int indexOf(int intersectionId) {
+		return indexes.get(intersectionId);
+	}
+
+	/***
+	 * Method returns the edge from one intersection to another by index, -1 if there is no such road
+	 * **/
+	public int edgeBetween(int from, int to) {
+		for (int e = outOffsets[from]; e < outOffsets[from + 1]; e++) {
+			if (edgeTargets[e] == to) {
+				return e;
+			}
+		}
+		return -1;
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of intersections
+	 */
+	public int getNodeCount() {
+		return nodeIds.length;
+	}
+
+	/**
+	 * Get number of road segments
+	 */
+	public int getEdgeCount() {
+		return edgeTargets.length;
+	}
+
+	/**
+	 * Get id of the intersection with the given index
+	 */
+	public int getNodeId(int node) {
+		return nodeIds[node];
+	}
+
+	/**
+	 * Get first edge leaving a node
+	 */
+	public int getFirstOutEdge(int node) {
+		return outOffsets[node];
+	}
+
+	/**
+	 * Get edge after the last one leaving a node
+	 */
+	public int getEndOutEdge(int node) {
+		return outOffsets[node + 1];
+	}
+
+	/**
+	 * Get first position of a node in the incoming edge list, see getInEdge
+	 */
+	public int getFirstInPosition(int node) {
+		return inOffsets[node];
+	}
+
+	/**
+	 * Get position after the last one of a node in the incoming edge list
+	 */
+	public int getEndInPosition(int node) {
+		return inOffsets[node + 1];
+	}
+
+	/**
+	 * Get edge at a position of the incoming edge list
+	 */
+	public int getInEdge(int position) {
+		return inEdges[position];
+	}
+
+	/**
+	 * Get node an edge leaves
+	 */
+	public int getSource(int edge) {
+		return edgeSources[edge];
+	}
+
+	/**
+	 * Get node an edge enters
+	 */
+	public int getTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * Get travel time of an edge in seconds
+	 */
+	public float getTravelSeconds(int edge) {
+		return travelSeconds[edge];
+	}
+
+	@Override
+	public String toString() {
+		return "Road network of " + getNodeCount() + " intersections and " + getEdgeCount() + " road segments";
+	}
+
+
+	/**
+	 * Builder collecting intersections and roads in any order before laying them out in CSR arrays
+	 */
+	public static final class Builder {
+
+		// vars
+		private int[] nodeIds = new int[16];
+		private int nodeCount;
+		private final IntIndexMap indexes = new IntIndexMap(16);
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private float[] seconds = new float[16];
+		private int edgeCount;
+
+		/***
+		 * Method adds an intersection, adding one already in the network does nothing
+		 * **/
+		public Builder addIntersection(int intersectionId) {
+			if (indexes.get(intersectionId) < 0) {
+				if (nodeCount == nodeIds.length) {
+					nodeIds = Arrays.copyOf(nodeIds, nodeCount * 2);
+				}
+				indexes.put(intersectionId, nodeCount);
+				nodeIds[nodeCount++] = intersectionId;
+			}
+			return this;
+		}
+
+		/***
+		 * Method adds a one way road segment, adding its intersections if needed
+		 *
+		 * @throws IllegalArgumentException if the travel time is not positive or the road is a loop
+		 * **/
+		public Builder addRoad(int fromId, int toId, float travelSeconds) {
+			if (!(travelSeconds > 0)) {
+				throw new IllegalArgumentException("Travel time must be positive");
+			}
+			if (fromId == toId) {
+				throw new IllegalArgumentException("Road from intersection " + fromId + " to itself");
+			}
+			addIntersection(fromId);
+			addIntersection(toId);
+			if (edgeCount == targets.length) {
+				sources = Arrays.copyOf(sources, edgeCount * 2);
+				targets = Arrays.copyOf(targets, edgeCount * 2);
+				seconds = Arrays.copyOf(seconds, edgeCount * 2);
+			}
+			sources[edgeCount] = indexes.get(fromId);
+			targets[edgeCount] = indexes.get(toId);
+			seconds[edgeCount] = travelSeconds;
+			edgeCount++;
+			return this;
+		}
+
+		/***
+		 * Method adds a road segment in each direction
+		 * **/
+		public Builder addTwoWayRoad(int firstId, int secondId, float travelSeconds) {
+			addRoad(firstId, secondId, travelSeconds);
+			return addRoad(secondId, firstId, travelSeconds);
+		}
+
+		/***
+		 * Method lays the network out in CSR arrays, with two counting sorts over the edges
+		 * **/
+		public RoadNetwork build() {
+			int n = nodeCount;
+			int m = edgeCount;
+
+			int[] outOffsets = offsetsOf(sources, n, m);
+			int[] edgeSources = new int[m];
+			int[] edgeTargets = new int[m];
+			float[] travelSeconds = new float[m];
+			int[] next = Arrays.copyOf(outOffsets, n);
+			for (int e = 0; e < m; e++) {
+				int slot = next[sources[e]]++;
+				edgeSources[slot] = sources[e];
+				edgeTargets[slot] = targets[e];
+				travelSeconds[slot] = seconds[e];
+			}
+
+			int[] inOffsets = offsetsOf(edgeTargets, n, m);
+			int[] inEdges = new int[m];
+			next = Arrays.copyOf(inOffsets, n);
+			for (int e = 0; e < m; e++) {
+				inEdges[next[edgeTargets[e]]++] = e;
+			}
+
+			IntIndexMap nodeIndexes = new IntIndexMap(n);
+			for (int i = 0; i < n; i++) {
+				nodeIndexes.put(nodeIds[i], i);
+			}
+			return new RoadNetwork(Arrays.copyOf(nodeIds, n), nodeIndexes, outOffsets, edgeSources, edgeTargets,
+					travelSeconds, inOffsets, inEdges);
+		}
+
+		/*
+		 * Method returns the prefix sums of the number of edges per node
+		 */
+		private static int[] offsetsOf(int[] nodeOfEdge, int n, int m) {
+			int[] offsets = new int[n + 1];
+			for (int e = 0; e < m; e++) {
+				offsets[nodeOfEdge[e] + 1]++;
+			}
+			for (int i = 0; i < n; i++) {
+				offsets[i + 1] += offsets[i];
+			}
+			return offsets;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import java.util.Random;
+
+import cityStateStore.IntIndexMap;
+import trafficAnalytics.TrafficQuery;
+import trafficAnalytics.TrafficQueryEngine;
+import trafficDataStore.TimeSeriesStore;
+
+/**
+ * Class holds the demand of a corridor of Traffic Control Systems, second by second:
+ * the vehicles entering the corridor at its first intersection and the vehicles arriving from the side street
+ * of each intersection, plus the travel time between consecutive intersections.
+ *
+ * A single Traffic Control System is a corridor of one intersection.
+ * Rates are in vehicles per second, one value per second of the horizon.
+ */
+public final class CorridorDemand {
+
+	// vars
+	private final int[] tcsIds;
+	private final int[] travelSeconds;        // from intersection i to i + 1
+	private final float[] mainEntry;          // by second
+	private final float[][] side;             // by intersection, then second
+
+
+	/**
+	 * Initialises a demand
+	 *
+	 * @throws IllegalArgumentException if the arrays do not match
+	 * **/
+	public CorridorDemand(int[] tcsIds, int[] travelSeconds, float[] mainEntry, float[][] side) {
+		if (tcsIds.length == 0 || travelSeconds.length != tcsIds.length - 1 || side.length != tcsIds.length) {
+			throw new IllegalArgumentException("A corridor of " + tcsIds.length + " intersections needs "
+					+ (tcsIds.length - 1) + " travel times and " + tcsIds.length + " side demands");
+		}
+		for (float[] rates : side) {
+			if (rates.length != mainEntry.length) {
+				throw new IllegalArgumentException("All demands must cover the same horizon");
+			}
+		}
+		for (int seconds : travelSeconds) {
+			if (seconds <= 0) {
+				throw new IllegalArgumentException("Travel times must be positive");
+			}
+		}
+		this.tcsIds = tcsIds.clone();
+		this.travelSeconds = travelSeconds.clone();
+		this.mainEntry = mainEntry;
+		this.side = side;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Static method generates a demand whose rates drift slowly around the given means, with Poisson like noise
+	 * **/
+	public static CorridorDemand synthetic(int[] tcsIds, int[] travelSeconds, int horizonSeconds,
+			double mainRate, double sideRate, long seed) {
+		Random random = new Random(seed);
+		float[] mainEntry = new float[horizonSeconds];
+		float[][] side = new float[tcsIds.length][horizonSeconds];
+		for (int t = 0; t < horizonSeconds; t++) {
+			double drift = 1 + 0.3 * Math.sin(2 * Math.PI * t / horizonSeconds);
+			mainEntry[t] = (float) Math.max(0, mainRate * drift * (1 + 0.5 * random.nextGaussian()));
+			for (int i = 0; i < tcsIds.length; i++) {
+				side[i][t] = (float) Math.max(0, sideRate * (2 - drift) * (1 + 0.5 * random.nextGaussian()));
+			}
+		}
+		return new CorridorDemand(tcsIds, travelSeconds, mainEntry, side);
+	}
+
+	/***
+	 * Static method builds the demand of a corridor from the vehicle counts recorded in a store.
+	 *
+	 * The counts of each bucket are spread evenly over its seconds.
+	 *
+	 * @param from start of the recorded range, aligned on the bucket length
+	 * @param to end of the recorded range
+	 * @param bucketSeconds length of the buckets read, must divide the partitions of the store
+	 * @param mainEntryVrsIds VRSs counting the vehicles entering the corridor
+	 * @param sideVrsIds VRSs counting the side street of each intersection
+	 * **/
+	public static CorridorDemand fromHistory(TimeSeriesStore store, long from, long to, int bucketSeconds,
+			int[] tcsIds, int[] travelSeconds, int[] mainEntryVrsIds, int[][] sideVrsIds) {
+		int horizonSeconds = (int) ((to - from) / 1000);
+		float[] mainEntry = new float[horizonSeconds];
+		float[][] side = new float[tcsIds.length][horizonSeconds];
+
+		// group 0 is the corridor entry, group 1 + i the side street of intersection i
+		IntIndexMap groups = new IntIndexMap(16);
+		int seriesCount = mainEntryVrsIds.length;
+		for (int vrsId : mainEntryVrsIds) {
+			groups.put(vrsId, 0);
+		}
+		for (int i = 0; i < sideVrsIds.length; i++) {
+			for (int vrsId : sideVrsIds[i]) {
+				groups.put(vrsId, 1 + i);
+				seriesCount++;
+			}
+		}
+		int[] seriesIds = new int[seriesCount];
+		int next = 0;
+		for (int vrsId : mainEntryVrsIds) {
+			seriesIds[next++] = vrsId;
+		}
+		for (int[] ids : sideVrsIds) {
+			for (int vrsId : ids) {
+				seriesIds[next++] = vrsId;
+			}
+		}
+
+		TrafficQuery query = new TrafficQuery(from, to)
+				.setSeriesIds(seriesIds)
+				.setIntervalMillis(bucketSeconds * 1000L)
+				.setGroupOf(groups::get);
+		new TrafficQueryEngine().aggregate(store, query, (groupId, bucketStart, samples, sum, max) -> {
+			float[] rates = groupId == 0 ? mainEntry : side[groupId - 1];
+			int first = (int) Math.max(0, (bucketStart - from) / 1000);
+			int last = Math.min(horizonSeconds, first + bucketSeconds);
+			float rate = (float) sum / bucketSeconds;
+			for (int t = first; t < last; t++) {
+				rates[t] += rate;
+			}
+		});
+		return new CorridorDemand(tcsIds, travelSeconds, mainEntry, side);
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of intersections of the corridor
+	 */
+	public int getIntersections() {
+		return tcsIds.length;
+	}
+
+	/**
+	 * Get id of the Traffic Control System of an intersection
+	 */
+	public int getTcsId(int intersection) {
+		return tcsIds[intersection];
+	}
+
+	/**
+	 * Get travel time from an intersection to the next one in seconds
+	 */
+	public int getTravelSeconds(int intersection) {
+		return travelSeconds[intersection];
+	}
+
+	/**
+	 * Get number of seconds the demand covers
+	 */
+	public int getHorizonSeconds() {
+		return mainEntry.length;
+	}
+
+	/**
+	 * Get vehicles entering the corridor in a second
+	 */
+	public float getMainEntry(int second) {
+		return mainEntry[second];
+	}
+
+	/**
+	 * Get vehicles arriving from the side street of an intersection in a second
+	 */
+	public float getSide(int intersection, int second) {
+		return side[intersection][second];
+	}
+
+	/**
+	 * Get average rate entering the corridor in vehicles per second
+	 */
+	public double getMeanMainRate() {
+		return mean(mainEntry);
+	}
+
+	/**
+	 * Get average rate of the side street of an intersection in vehicles per second
+	 */
+	public double getMeanSideRate(int intersection) {
+		return mean(side[intersection]);
+	}
+
+	/*
+	 * Method returns the mean of rates
+	 */
+	private static double mean(float[] rates) {
+		double total = 0;
+		for (float rate : rates) {
+			total += rate;
+		}
+		return rates.length == 0 ? 0 : total / rates.length;
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+/**
+ * Enum lists the kinds of day signal plans are scheduled for, traffic on each follows its own daily pattern.
+ */
+public enum DayType {
+	WEEKDAY,
+	SATURDAY,
+	SUNDAY;      // and public holidays
+
+	/***
+	 * Static method returns the day type of a date
+	 * **/
+	public static DayType of(LocalDate date) {
+		DayOfWeek day = date.getDayOfWeek();
+		if (day == DayOfWeek.SATURDAY) {
+			return SATURDAY;
+		}
+		return day == DayOfWeek.SUNDAY ? SUNDAY : WEEKDAY;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class holds the signal plans of a Traffic Control System for every day type and time of day slot.
+ *
+ * The schedule is a lookup table of one short per (day type, 15 minute slot), the index of the plan of the slot
+ * in an array of the distinct plans, so finding the plan of a time is one array read whatever the number of plans.
+ * Instances are immutable, a new schedule replaces the previous one as a whole.
+ *
+ * In a schedule file every line starts a plan at a time of a day type, and the plan lasts until the next line
+ * of the same day type or the end of the day, so the lines of a day type are written in time order:
+ *
+ *     WEEKDAY 07:00 2012 23 11 3 0
+ *
+ * is day type, start time and the plan as written by SignalPlan.toLine().
+ */
+public final class PlanSchedule {
+
+	// vars
+	public static final int SLOT_MINUTES = 15;
+	public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+	private static final short NO_PLAN = -1;
+
+	private final int tcsId;
+	private final SignalPlan[] plans;        // distinct plans
+	private final short[] table;             // plan index by day type * SLOTS_PER_DAY + slot
+
+
+	/*
+	 * Initialises a schedule from its table
+	 */
+	private PlanSchedule(int tcsId, SignalPlan[] plans, short[] table) {
+		this.tcsId = tcsId;
+		this.plans = plans;
+		this.table = table;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns the plan of a day type and slot, null if none is scheduled
+	 * **/
+	public SignalPlan planAt(DayType dayType, int slot) {
+		short index = table[dayType.ordinal() * SLOTS_PER_DAY + slot];
+		return index == NO_PLAN ? null : plans[index];
+	}
+
+	/***
+	 * Static method returns the slot of a time of day
+	 * **/
+	public static int slotOf(LocalTime time) {
+		return (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+	}
+
+	/***
+	 * Static method reads a schedule file, lines starting with # are comments
+	 *
+	 * @throws IllegalArgumentException if a line is not valid or holds a plan of another Traffic Control System
+	 * **/
+	public static PlanSchedule load(int tcsId, Path file) throws IOException {
+		return parse(tcsId, Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	/***
+	 * Static method builds a schedule from the lines of a schedule file
+	 *
+	 * @throws IllegalArgumentException if a line is not valid or holds a plan of another Traffic Control System
+	 * **/
+	public static PlanSchedule parse(int tcsId, List<String> lines) {
+		short[] table = new short[DayType.values().length * SLOTS_PER_DAY];
+		Arrays.fill(table, NO_PLAN);
+		List<SignalPlan> plans = new ArrayList<>();
+
+		for (String line : lines) {
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				continue;
+			}
+			String[] fields = trimmed.split("\\s+", 3);
+			if (fields.length != 3) {
+				throw new IllegalArgumentException("A schedule line needs a day type, a start time and a plan: " + line);
+			}
+			DayType dayType = DayType.valueOf(fields[0]);
+			int firstSlot;
+			try {
+				firstSlot = slotOf(LocalTime.parse(fields[1]));
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("Invalid start time in schedule line: " + line, e);
+			}
+			SignalPlan plan = SignalPlan.parse(fields[2]);
+			if (plan.getTcsId() != tcsId) {
+				throw new IllegalArgumentException("Plan of Traffic Control System " + plan.getTcsId()
+						+ " in the schedule of " + tcsId);
+			}
+
+			// plans are kept once however many slots use them
+			int index = plans.indexOf(plan);
+			if (index < 0) {
+				index = plans.size();
+				plans.add(plan);
+			}
+			// the plan runs to the end of the day, a later line of the day type overwrites the slots after it
+			int base = dayType.ordinal() * SLOTS_PER_DAY;
+			Arrays.fill(table, base + firstSlot, base + SLOTS_PER_DAY, (short) index);
+		}
+		return new PlanSchedule(tcsId, plans.toArray(new SignalPlan[0]), table);
+	}
+
+
+	// getters
+
+	/**
+	 * Get id of the Traffic Control System of the schedule
+	 */
+	public int getTcsId() {
+		return tcsId;
+	}
+
+	/**
+	 * Get number of distinct plans of the schedule
+	 */
+	public int getPlanCount() {
+		return plans.length;
+	}
+}
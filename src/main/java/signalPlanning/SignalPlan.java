@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class holds the signal plan of a Traffic Control System: the green of each of its two Traffic Light Systems,
+ * the yellow after each green and the offset of the cycle start against the common clock of a corridor.
+ *
+ * The cycle is mainGreen + yellow + sideGreen + yellow. The main phase is the green of the first TLS,
+ * the one running on the corridor, the side phase the green of the second one.
+ *
+ * Instances are immutable and compared by value. A plan is written as one line of text, so plans computed offline
+ * can be saved to a file and loaded into the controllers.
+ */
+public final class SignalPlan {
+
+	// vars
+	public static final int MIN_GREEN_SECONDS = 4;      // safety minimum of a green
+	public static final int MIN_YELLOW_SECONDS = 2;
+
+	private final int tcsId;
+	private final int mainGreenSeconds;
+	private final int sideGreenSeconds;
+	private final int yellowSeconds;
+	private final int offsetSeconds;
+
+
+	/**
+	 * Initialises a plan
+	 *
+	 * @throws IllegalArgumentException if a green or the yellow is below its minimum, or the offset is outside the cycle
+	 * **/
+	public SignalPlan(int tcsId, int mainGreenSeconds, int sideGreenSeconds, int yellowSeconds, int offsetSeconds) {
+		if (mainGreenSeconds < MIN_GREEN_SECONDS || sideGreenSeconds < MIN_GREEN_SECONDS) {
+			throw new IllegalArgumentException("Greens must last at least " + MIN_GREEN_SECONDS + " seconds");
+		}
+		if (yellowSeconds < MIN_YELLOW_SECONDS) {
+			throw new IllegalArgumentException("Yellow must last at least " + MIN_YELLOW_SECONDS + " seconds");
+		}
+		this.tcsId = tcsId;
+		this.mainGreenSeconds = mainGreenSeconds;
+		this.sideGreenSeconds = sideGreenSeconds;
+		this.yellowSeconds = yellowSeconds;
+		int cycle = getCycleSeconds();
+		if (offsetSeconds < 0 || offsetSeconds >= cycle) {
+			throw new IllegalArgumentException("Offset must be within the cycle of " + cycle + " seconds");
+		}
+		this.offsetSeconds = offsetSeconds;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns the plan as one line of text: TCS id, main green, side green, yellow and offset
+	 * **/
+	public String toLine() {
+		return tcsId + " " + mainGreenSeconds + " " + sideGreenSeconds + " " + yellowSeconds + " " + offsetSeconds;
+	}
+
+	/***
+	 * Static method reads a plan written by toLine()
+	 *
+	 * @throws IllegalArgumentException if the line is not a valid plan
+	 * **/
+	public static SignalPlan parse(String line) {
+		String[] fields = line.trim().split("\\s+");
+		if (fields.length != 5) {
+			throw new IllegalArgumentException("A signal plan has 5 fields, found " + fields.length + ": " + line);
+		}
+		try {
+			return new SignalPlan(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+					Integer.parseInt(fields[3]), Integer.parseInt(fields[4]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid signal plan: " + line, e);
+		}
+	}
+
+	/***
+	 * Static method writes plans to a file, one per line
+	 * **/
+	public static void save(Path file, List<SignalPlan> plans) throws IOException {
+		List<String> lines = new ArrayList<>();
+		lines.add("# tcs main_green side_green yellow offset");
+		for (SignalPlan plan : plans) {
+			lines.add(plan.toLine());
+		}
+		Files.write(file, lines, StandardCharsets.UTF_8);
+	}
+
+	/***
+	 * Static method reads the plans of a file written by save(), lines starting with # are comments
+	 * **/
+	public static List<SignalPlan> load(Path file) throws IOException {
+		List<SignalPlan> plans = new ArrayList<>();
+		for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			if (!line.trim().isEmpty() && !line.startsWith("#")) {
+				plans.add(parse(line));
+			}
+		}
+		return plans;
+	}
+
+
+	// getters
+
+	/**
+	 * Get id of the Traffic Control System the plan is for
+	 */
+	public int getTcsId() {
+		return tcsId;
+	}
+
+	/**
+	 * Get green of the first Traffic Light System in seconds
+	 */
+	public int getMainGreenSeconds() {
+		return mainGreenSeconds;
+	}
+
+	/**
+	 * Get green of the second Traffic Light System in seconds
+	 */
+	public int getSideGreenSeconds() {
+		return sideGreenSeconds;
+	}
+
+	/**
+	 * Get yellow after each green in seconds
+	 */
+	public int getYellowSeconds() {
+		return yellowSeconds;
+	}
+
+	/**
+	 * Get start of the cycle against the common clock in seconds
+	 */
+	public int getOffsetSeconds() {
+		return offsetSeconds;
+	}
+
+	/**
+	 * Get cycle length in seconds
+	 */
+	public int getCycleSeconds() {
+		return mainGreenSeconds + sideGreenSeconds + 2 * yellowSeconds;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof SignalPlan)) {
+			return false;
+		}
+		SignalPlan plan = (SignalPlan) other;
+		return tcsId == plan.tcsId && mainGreenSeconds == plan.mainGreenSeconds && sideGreenSeconds == plan.sideGreenSeconds
+				&& yellowSeconds == plan.yellowSeconds && offsetSeconds == plan.offsetSeconds;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(tcsId, mainGreenSeconds, sideGreenSeconds, yellowSeconds, offsetSeconds);
+	}
+
+	@Override
+	public String toString() {
+		return "TCS " + tcsId + ": cycle " + getCycleSeconds() + " s, greens " + mainGreenSeconds + "/" + sideGreenSeconds
+				+ " s, yellow " + yellowSeconds + " s, offset " + offsetSeconds + " s";
+	}
+}
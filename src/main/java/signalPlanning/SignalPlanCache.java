@@ -0,0 +1,214 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class keeps the plan schedules of the Traffic Control Systems and answers which plan a system runs now.
+ *
+ * Schedules live in a directory, one file per system named <tcs id>.plans (see PlanSchedule). A bounded number
+ * of them is kept in memory: the ones asked for recently stay resident, the least recently used are evicted
+ * when a new one is loaded over the limit.
+ *
+ * A lookup never blocks the caller. A resident schedule answers with one table read; a schedule not resident
+ * is loaded on a background thread and the lookup returns null meanwhile, so the controller keeps its current plan
+ * for one more cycle. A new schedule is published with one map write and is picked up whole by the next lookup.
+ * A system with no schedule file, or an invalid one, gets an empty schedule, so it is not loaded again on every lookup.
+ */
+public class SignalPlanCache {
+
+	// vars
+	private final Path directory;
+	private final int capacity;                           // schedules kept in memory
+	private final ZoneId zone;
+	private final Map<Integer, Resident> resident;        // by TCS id
+	private final Set<Integer> loading;                   // TCS ids being loaded
+	private final ExecutorService loader;
+	private final LongAdder hits;
+	private final LongAdder misses;
+
+
+	/**
+	 * Initialises a cache over the schedules of a directory
+	 *
+	 * @param capacity number of schedules kept in memory
+	 * @param zone time zone of the schedules
+	 * **/
+	public SignalPlanCache(Path directory, int capacity, ZoneId zone) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.directory = directory;
+		this.capacity = capacity;
+		this.zone = zone;
+		this.resident = new ConcurrentHashMap<>();
+		this.loading = ConcurrentHashMap.newKeySet();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.loader = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "signal-plan-loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns the plan a Traffic Control System runs at the given time
+	 *
+	 * @param timestamp time in milliseconds since epoch
+	 * @return the plan, or null if the system has no plan for that time or its schedule is being loaded
+	 * **/
+	public SignalPlan planFor(int tcsId, long timestamp) {
+		Resident entry = resident.get(tcsId);
+		if (entry == null) {
+			misses.increment();
+			requestLoad(tcsId);
+			return null;
+		}
+		hits.increment();
+		entry.lastUsed = System.currentTimeMillis();
+		LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+		return entry.schedule.planAt(DayType.of(time.toLocalDate()), PlanSchedule.slotOf(time.toLocalTime()));
+	}
+
+	/***
+	 * Method returns whether the schedule of a Traffic Control System is in memory,
+	 * a null plan from planFor() then means the system has no plan for that time
+	 * **/
+	public boolean isResident(int tcsId) {
+		return resident.containsKey(tcsId);
+	}
+
+	/***
+	 * Method makes a schedule the one of its Traffic Control System, replacing any previous one
+	 * **/
+	public void publish(PlanSchedule schedule) {
+		resident.put(schedule.getTcsId(), new Resident(schedule, System.currentTimeMillis()));
+		evictColdSchedules();
+	}
+
+	/***
+	 * Method reloads the schedule of a Traffic Control System from its file in the background,
+	 * after the file was replaced with new plans
+	 * **/
+	public void reload(int tcsId) {
+		requestLoad(tcsId);
+	}
+
+	/***
+	 * Method stops the loader thread
+	 * **/
+	public void close() {
+		loader.shutdown();
+		try {
+			loader.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Method loads a schedule on the loader thread, unless it is being loaded already
+	 */
+	private void requestLoad(int tcsId) {
+		if (!loading.add(tcsId)) {
+			return;
+		}
+		loader.execute(() -> {
+			try {
+				Path file = scheduleFile(tcsId);
+				publish(Files.exists(file) ? PlanSchedule.load(tcsId, file)
+						: PlanSchedule.parse(tcsId, Collections.<String>emptyList()));
+			} catch (IllegalArgumentException e) {
+				System.err.println("Signal plans of Traffic Control System " + tcsId + " are invalid, it runs without: " + e.getMessage());
+				publish(PlanSchedule.parse(tcsId, Collections.<String>emptyList()));
+			} catch (IOException e) {
+				System.err.println("Signal plans of Traffic Control System " + tcsId + " could not be loaded: " + e.getMessage());
+			} finally {
+				loading.remove(tcsId);
+			}
+		});
+	}
+
+	/*
+	 * Method evicts the least recently used schedules over the capacity
+	 */
+	private void evictColdSchedules() {
+		int excess = resident.size() - capacity;
+		if (excess <= 0) {
+			return;
+		}
+		List<Map.Entry<Integer, Resident>> entries = new ArrayList<>(resident.entrySet());
+		entries.sort((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed));
+		for (int i = 0; i < excess && i < entries.size(); i++) {
+			Map.Entry<Integer, Resident> cold = entries.get(i);
+			resident.remove(cold.getKey(), cold.getValue());
+		}
+	}
+
+	/*
+	 * Method returns the schedule file of a Traffic Control System
+	 */
+	private Path scheduleFile(int tcsId) {
+		return directory.resolve(tcsId + ".plans");
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of schedules in memory
+	 */
+	public int getResidentCount() {
+		return resident.size();
+	}
+
+	/**
+	 * Get number of lookups answered from memory
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Get number of lookups of a schedule not in memory
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+
+	/**
+	 * Schedule in memory and the last time it was asked for
+	 */
+	private static final class Resident {
+
+		private final PlanSchedule schedule;
+		private volatile long lastUsed;
+
+		Resident(PlanSchedule schedule, long lastUsed) {
+			this.schedule = schedule;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
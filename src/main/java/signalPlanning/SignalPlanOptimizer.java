@@ -0,0 +1,362 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class searches the signal plans of a corridor that minimise the delay of its demand.
+ *
+ * A plan is scored by simulating the corridor second by second with a queue per approach: vehicles join the queue
+ * of their approach and leave it at the saturation flow while it is green, and vehicles leaving an intersection
+ * on the main road reach the next one after the travel time between them. The delay of a plan is the sum over
+ * every second of the vehicles queued, in vehicle seconds.
+ *
+ * The search tries every cycle length in a range. For each one it starts from greens split by demand
+ * and offsets following the travel times, then improves one intersection at a time, trying every green split
+ * and offset for it while the others stay fixed. The candidates of a step are scored in parallel by fork/join tasks
+ * that build each candidate from its index, so a step allocates nothing per candidate but its simulation buffers.
+ */
+public class SignalPlanOptimizer {
+
+	// vars
+	private static final int LEAF_CANDIDATES = 8;       // candidates scored by a task without splitting
+	private static final int GREEN_STEP_SECONDS = 2;
+	private static final int OFFSET_STEP_SECONDS = 5;
+	private static final int ROUNDS = 2;                // passes over the intersections per cycle length
+
+	private final ForkJoinPool pool;
+	private final double saturationFlow;                // vehicles an approach clears per second of green
+	private final int yellowSeconds;
+	private final int minCycleSeconds;
+	private final int maxCycleSeconds;
+	private final int cycleStepSeconds;
+	private final LongAdder evaluations;
+
+
+	/**
+	 * Initialises an optimizer on the common fork/join pool
+	 *
+	 * @param saturationFlow vehicles an approach clears per second of green
+	 * @param yellowSeconds yellow after each green
+	 * @param minCycleSeconds shortest cycle tried
+	 * @param maxCycleSeconds longest cycle tried
+	 * @param cycleStepSeconds step between the cycle lengths tried
+	 * @throws IllegalArgumentException if a value is not valid
+	 * **/
+	public SignalPlanOptimizer(double saturationFlow, int yellowSeconds, int minCycleSeconds, int maxCycleSeconds,
+			int cycleStepSeconds) {
+		this(ForkJoinPool.commonPool(), saturationFlow, yellowSeconds, minCycleSeconds, maxCycleSeconds, cycleStepSeconds);
+	}
+
+	/**
+	 * Initialises an optimizer running its evaluations on the given pool
+	 * **/
+	public SignalPlanOptimizer(ForkJoinPool pool, double saturationFlow, int yellowSeconds, int minCycleSeconds,
+			int maxCycleSeconds, int cycleStepSeconds) {
+		if (!(saturationFlow > 0)) {
+			throw new IllegalArgumentException("Saturation flow must be positive");
+		}
+		if (yellowSeconds < SignalPlan.MIN_YELLOW_SECONDS) {
+			throw new IllegalArgumentException("Yellow must last at least " + SignalPlan.MIN_YELLOW_SECONDS + " seconds");
+		}
+		if (minCycleSeconds < 2 * (SignalPlan.MIN_GREEN_SECONDS + yellowSeconds) || maxCycleSeconds < minCycleSeconds
+				|| cycleStepSeconds <= 0) {
+			throw new IllegalArgumentException("Cycle range must fit two minimum greens and be ordered");
+		}
+		this.pool = pool;
+		this.saturationFlow = saturationFlow;
+		this.yellowSeconds = yellowSeconds;
+		this.minCycleSeconds = minCycleSeconds;
+		this.maxCycleSeconds = maxCycleSeconds;
+		this.cycleStepSeconds = cycleStepSeconds;
+		this.evaluations = new LongAdder();
+	}
+
+
+	/***********************  SEARCH ******************/
+
+	/***
+	 * Method searches the plans of the corridor with the least delay
+	 * **/
+	public Result optimize(CorridorDemand demand) {
+		long start = System.nanoTime();
+		long evaluationsBefore = evaluations.sum();
+		int n = demand.getIntersections();
+
+		SignalPlan[] best = null;
+		double bestDelay = Double.MAX_VALUE;
+		for (int cycle = minCycleSeconds; cycle <= maxCycleSeconds; cycle += cycleStepSeconds) {
+			SignalPlan[] plans = initialPlans(demand, cycle);
+			double delay = evaluate(demand, plans);
+
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int i = 0; i < n; i++) {
+					int greens = (greenRange(cycle) / GREEN_STEP_SECONDS) + 1;
+					int offsets = i == 0 ? 1 : (cycle + OFFSET_STEP_SECONDS - 1) / OFFSET_STEP_SECONDS;  // the first one is the reference
+					Candidate found = pool.invoke(new CandidateTask(demand, plans, i, cycle, offsets, 0, greens * offsets));
+					if (found.delay < delay) {
+						delay = found.delay;
+						plans[i] = candidatePlan(demand, i, cycle, offsets, found.index);
+					}
+				}
+			}
+			if (delay < bestDelay) {
+				bestDelay = delay;
+				best = plans;
+			}
+		}
+
+		SignalPlan[] baseline = fixedPlans(demand, minCycleSeconds);
+		return new Result(best, bestDelay, evaluate(demand, baseline), evaluations.sum() - evaluationsBefore,
+				System.nanoTime() - start);
+	}
+
+	/***
+	 * Method simulates the corridor under the given plans and returns the delay in vehicle seconds
+	 * **/
+	public double evaluate(CorridorDemand demand, SignalPlan[] plans) {
+		evaluations.increment();
+		int n = demand.getIntersections();
+		int horizon = demand.getHorizonSeconds();
+		double[] mainQueue = new double[n];
+		double[] sideQueue = new double[n];
+		float[][] inTransit = new float[n][];           // main road vehicles travelling to intersection i, ring buffers
+		for (int i = 1; i < n; i++) {
+			inTransit[i] = new float[demand.getTravelSeconds(i - 1)];
+		}
+		double delay = 0;
+
+		for (int t = 0; t < horizon; t++) {
+			double arriving = demand.getMainEntry(t);
+			for (int i = 0; i < n; i++) {
+				if (i > 0) {
+					float[] ring = inTransit[i];
+					int slot = t % ring.length;
+					double reached = ring[slot];
+					ring[slot] = (float) arriving;   // leaves i - 1 now, reaches i after the travel time
+					arriving = reached;
+				}
+				SignalPlan plan = plans[i];
+				int position = Math.floorMod(t - plan.getOffsetSeconds(), plan.getCycleSeconds());
+				int sideStart = plan.getMainGreenSeconds() + plan.getYellowSeconds();
+
+				double main = mainQueue[i] + arriving;
+				double left = 0;
+				if (position < plan.getMainGreenSeconds()) {
+					left = Math.min(main, saturationFlow);
+					main -= left;
+				}
+				double side = sideQueue[i] + demand.getSide(i, t);
+				if (position >= sideStart && position < sideStart + plan.getSideGreenSeconds()) {
+					side -= Math.min(side, saturationFlow);
+				}
+				mainQueue[i] = main;
+				sideQueue[i] = side;
+				delay += main + side;
+				arriving = left;                      // main road vehicles going on to the next intersection
+			}
+		}
+		return delay;
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method returns the seconds of a cycle the main green can move within
+	 */
+	private int greenRange(int cycle) {
+		return cycle - 2 * yellowSeconds - 2 * SignalPlan.MIN_GREEN_SECONDS;
+	}
+
+	/*
+	 * Method builds the plan of candidate index of an intersection: green split first, then offset
+	 */
+	private SignalPlan candidatePlan(CorridorDemand demand, int intersection, int cycle, int offsets, int index) {
+		int mainGreen = SignalPlan.MIN_GREEN_SECONDS + (index / offsets) * GREEN_STEP_SECONDS;
+		int sideGreen = cycle - 2 * yellowSeconds - mainGreen;
+		int offset = (index % offsets) * OFFSET_STEP_SECONDS;
+		return new SignalPlan(demand.getTcsId(intersection), mainGreen, sideGreen, yellowSeconds, offset);
+	}
+
+	/*
+	 * Method returns the starting plans of a cycle length: greens split by the ratio of demand to saturation flow,
+	 * offsets adding up the travel times so the corridor starts as a green wave
+	 */
+	private SignalPlan[] initialPlans(CorridorDemand demand, int cycle) {
+		int n = demand.getIntersections();
+		SignalPlan[] plans = new SignalPlan[n];
+		int offset = 0;
+		for (int i = 0; i < n; i++) {
+			double mainRate = demand.getMeanMainRate();
+			double sideRate = demand.getMeanSideRate(i);
+			double share = mainRate + sideRate > 0 ? mainRate / (mainRate + sideRate) : 0.5;
+			int green = cycle - 2 * yellowSeconds;
+			int mainGreen = (int) Math.round(green * share);
+			mainGreen = Math.max(SignalPlan.MIN_GREEN_SECONDS, Math.min(green - SignalPlan.MIN_GREEN_SECONDS, mainGreen));
+			plans[i] = new SignalPlan(demand.getTcsId(i), mainGreen, green - mainGreen, yellowSeconds, offset);
+			if (i + 1 < n) {
+				offset = (offset + demand.getTravelSeconds(i)) % cycle;
+			}
+		}
+		return plans;
+	}
+
+	/*
+	 * Method returns plans like the fixed cycle of the controllers: even greens, no coordination
+	 */
+	private SignalPlan[] fixedPlans(CorridorDemand demand, int cycle) {
+		SignalPlan[] plans = new SignalPlan[demand.getIntersections()];
+		int green = cycle - 2 * yellowSeconds;
+		for (int i = 0; i < plans.length; i++) {
+			plans[i] = new SignalPlan(demand.getTcsId(i), green / 2, green - green / 2, yellowSeconds, 0);
+		}
+		return plans;
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of plans evaluated by this optimizer so far
+	 */
+	public long getEvaluations() {
+		return evaluations.sum();
+	}
+
+
+	/**
+	 * Best candidate of a range: its index and delay
+	 */
+	private static final class Candidate {
+
+		private final int index;
+		private final double delay;
+
+		Candidate(int index, double delay) {
+			this.index = index;
+			this.delay = delay;
+		}
+	}
+
+
+	/**
+	 * Task scoring the candidates of one intersection in an index range, splitting it in halves while it is large
+	 */
+	private final class CandidateTask extends RecursiveTask<Candidate> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CorridorDemand demand;
+		private final SignalPlan[] plans;       // plans of the other intersections, never written
+		private final int intersection;
+		private final int cycle;
+		private final int offsets;
+		private final int from;
+		private final int to;
+
+		CandidateTask(CorridorDemand demand, SignalPlan[] plans, int intersection, int cycle, int offsets, int from, int to) {
+			this.demand = demand;
+			this.plans = plans;
+			this.intersection = intersection;
+			this.cycle = cycle;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Candidate compute() {
+			if (to - from <= LEAF_CANDIDATES) {
+				SignalPlan[] candidate = plans.clone();
+				int bestIndex = -1;
+				double bestDelay = Double.MAX_VALUE;
+				for (int index = from; index < to; index++) {
+					candidate[intersection] = candidatePlan(demand, intersection, cycle, offsets, index);
+					double delay = evaluate(demand, candidate);
+					if (delay < bestDelay) {
+						bestDelay = delay;
+						bestIndex = index;
+					}
+				}
+				return new Candidate(bestIndex, bestDelay);
+			}
+			int middle = (from + to) >>> 1;
+			CandidateTask left = new CandidateTask(demand, plans, intersection, cycle, offsets, from, middle);
+			CandidateTask right = new CandidateTask(demand, plans, intersection, cycle, offsets, middle, to);
+			left.fork();
+			Candidate fromRight = right.compute();
+			Candidate fromLeft = left.join();
+			return fromLeft.delay <= fromRight.delay ? fromLeft : fromRight;
+		}
+	}
+
+
+	/**
+	 * Outcome of a search: the best plans, their delay against the fixed cycle, and the search effort
+	 */
+	public static final class Result {
+
+		// vars
+		private final SignalPlan[] plans;
+		private final double delay;
+		private final double baselineDelay;
+		private final long evaluations;
+		private final long elapsedNanos;
+
+		Result(SignalPlan[] plans, double delay, double baselineDelay, long evaluations, long elapsedNanos) {
+			this.plans = plans;
+			this.delay = delay;
+			this.baselineDelay = baselineDelay;
+			this.evaluations = evaluations;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		// getters
+
+		/**
+		 * Get best plans, by intersection of the corridor
+		 */
+		public SignalPlan[] getPlans() {
+			return plans.clone();
+		}
+
+		/**
+		 * Get delay of the best plans in vehicle seconds
+		 */
+		public double getDelay() {
+			return delay;
+		}
+
+		/**
+		 * Get delay of even greens on the shortest cycle without coordination, in vehicle seconds
+		 */
+		public double getBaselineDelay() {
+			return baselineDelay;
+		}
+
+		/**
+		 * Get number of plans evaluated
+		 */
+		public long getEvaluations() {
+			return evaluations;
+		}
+
+		/**
+		 * Get time the search took in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("delay %.0f veh.s against %.0f veh.s fixed (%.1f%% less), %d plans evaluated in %.2f s",
+					delay, baselineDelay, 100 * (1 - delay / baselineDelay), evaluations, elapsedNanos / 1e9);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package trafficAnalytics;
+
+/**
+ * Callback receiving the aggregated rows of a TrafficQuery as they are computed.
+ *
+ * The engine never calls a consumer from two threads at once.
+ */
+@FunctionalInterface
+public interface BucketConsumer {
+
+	/***
+	 * Method receives the aggregate of one group for one bucket
+	 *
+	 * @param groupId group the series were mapped to
+	 * @param bucketStart start of the bucket in milliseconds since epoch
+	 * @param samples number of samples kept in the bucket
+	 * @param sum sum of the samples
+	 * @param max largest sample
+	 * **/
+	void accept(int groupId, long bucketStart, long samples, long sum, int max);
+}
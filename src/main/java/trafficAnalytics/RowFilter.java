@@ -0,0 +1,26 @@
+/**
+ *
+ */
+package trafficAnalytics;
+
+import trafficDataStore.SeriesBlock;
+
+/**
+ * Filter of the raw samples returned by TrafficQueryEngine.scan().
+ *
+ * mayMatch() is evaluated on the block summary first, blocks it rejects are never decoded.
+ */
+public interface RowFilter {
+
+	/***
+	 * Method checks, from its summary only, if any sample of the block could match
+	 * **/
+	boolean mayMatch(SeriesBlock block);
+
+	/***
+	 * Method checks if a decoded sample matches
+	 *
+	 * @param values value of every column of the sample
+	 * **/
+	boolean matches(int[] values);
+}
@@ -0,0 +1,149 @@
+/**
+ *
+ */
+package trafficAnalytics;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import trafficDataStore.TimeSeriesStore;
+
+/**
+ * Class describes an aggregate query over a TimeSeriesStore: which series, which column,
+ * which time range, how samples are bucketed and grouped, and which samples are kept.
+ *
+ * The filters are pushed down to the segments: series not selected are never read,
+ * and blocks whose summary shows they can not match are skipped without being decoded.
+ */
+public class TrafficQuery {
+
+	// vars
+	private final long from;
+	private final long to;
+	private int column;
+	private int[] seriesIds;           // sorted, null means every series
+	private int minValue;
+	private long intervalMillis;
+	private IntUnaryOperator groupOf;
+
+	/**
+	 * Initialises a query over the range [from, to) summing all columns in one bucket per hour,
+	 * one group per series
+	 * **/
+	public TrafficQuery(long from, long to) {
+		if (to < from) {
+			throw new IllegalArgumentException("Query range ends before it starts");
+		}
+		this.from = from;
+		this.to = to;
+		this.column = TimeSeriesStore.ALL_COLUMNS;
+		this.seriesIds = null;
+		this.minValue = 0;
+		this.intervalMillis = 60 * 60 * 1000L;
+		this.groupOf = IntUnaryOperator.identity();
+	}
+
+
+	// setters
+
+	/**
+	 * Set column aggregated, or TimeSeriesStore.ALL_COLUMNS
+	 */
+	public TrafficQuery setColumn(int column) {
+		this.column = column;
+		return this;
+	}
+
+	/**
+	 * Set series (VRS or TLS IDs) read by the query, null for all of them
+	 */
+	public TrafficQuery setSeriesIds(int... seriesIds) {
+		if (seriesIds == null) {
+			this.seriesIds = null;
+		} else {
+			this.seriesIds = seriesIds.clone();
+			Arrays.sort(this.seriesIds);
+		}
+		return this;
+	}
+
+	/**
+	 * Set smallest sample value kept, samples below it are filtered out
+	 */
+	public TrafficQuery setMinValue(int minValue) {
+		this.minValue = minValue;
+		return this;
+	}
+
+	/**
+	 * Set length of the buckets, it must divide the partition length of the store
+	 */
+	public TrafficQuery setIntervalMillis(long intervalMillis) {
+		if (intervalMillis <= 0) {
+			throw new IllegalArgumentException("Interval must be positive");
+		}
+		this.intervalMillis = intervalMillis;
+		return this;
+	}
+
+	/**
+	 * Set function mapping a series ID to the group it is aggregated into,
+	 * for example a VRS ID to the ID of its Traffic Light System
+	 */
+	public TrafficQuery setGroupOf(IntUnaryOperator groupOf) {
+		this.groupOf = groupOf;
+		return this;
+	}
+
+
+	// getters
+
+	/**
+	 * Get start of the range, inclusive
+	 */
+	public long getFrom() {
+		return from;
+	}
+
+	/**
+	 * Get end of the range, exclusive
+	 */
+	public long getTo() {
+		return to;
+	}
+
+	/**
+	 * Get column aggregated
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * Get sorted series IDs read by the query, null for all
+	 */
+	int[] getSeriesIds() {
+		return seriesIds;
+	}
+
+	/**
+	 * Get smallest sample value kept
+	 */
+	public int getMinValue() {
+		return minValue;
+	}
+
+	/**
+	 * Get length of the buckets
+	 */
+	public long getIntervalMillis() {
+		return intervalMillis;
+	}
+
+	/**
+	 * Get function mapping a series ID to its group
+	 */
+	public IntUnaryOperator getGroupOf() {
+		return groupOf;
+	}
+}
@@ -0,0 +1,313 @@
+/**
+ *
+ */
+package trafficAnalytics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntUnaryOperator;
+
+import cityStateStore.IntIndexMap;
+import trafficDataStore.Partition;
+import trafficDataStore.RowConsumer;
+import trafficDataStore.SampleConsumer;
+import trafficDataStore.SegmentFile;
+import trafficDataStore.SeriesBlock;
+import trafficDataStore.TimeSeriesStore;
+
+/**
+ * Class runs analytical queries over the history kept by a TimeSeriesStore (vehicle counts, phase history)
+ * in parallel on a ForkJoinPool, without going through the live CityStateStore.
+ *
+ * - The unit of work is a time partition of the store: its sealed segments plus, for the current one,
+ *   the blocks not yet sealed. Partitions are split between the workers of the pool.
+ * - Buckets never cross a partition boundary, so every (group, bucket) row is complete when its partition is done
+ *   and is streamed to the consumer right away instead of being merged at the end.
+ * - Filters are pushed down: series outside the query are looked up, not scanned, blocks outside the range
+ *   or whose maximum is below the minimum value are skipped, and blocks inside one bucket are answered
+ *   from their summary without being decoded.
+ *
+ * Rows of different partitions reach the consumer in no particular order, one call at a time.
+ */
+public class TrafficQueryEngine {
+
+	// vars
+	private final ForkJoinPool pool;
+
+
+	/**
+	 * Initialises an engine running on the common ForkJoinPool
+	 * **/
+	public TrafficQueryEngine() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Initialises an engine running on the given pool
+	 * **/
+	public TrafficQueryEngine(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+
+	/***********************  QUERIES ******************/
+
+	/***
+	 * Method aggregates the samples selected by the query into (group, bucket) rows: number of samples, sum and max
+	 *
+	 * @param store store to read
+	 * @param query series, column, range, filter, bucket length and grouping of the query
+	 * @param consumer receives every non empty row as soon as its partition is done
+	 * **/
+	public void aggregate(TimeSeriesStore store, TrafficQuery query, BucketConsumer consumer) {
+		checkColumn(store, query.getColumn());
+		long interval = query.getIntervalMillis();
+		if (store.getPartitionMillis() % interval != 0) {
+			throw new IllegalArgumentException("Interval of " + interval + " ms does not divide the partitions of "
+					+ store.getPartitionMillis() + " ms");
+		}
+
+		List<Partition> partitions = store.partitions(query.getFrom(), query.getTo());
+		if (partitions.isEmpty()) {
+			return;
+		}
+		ReentrantLock consumerLock = new ReentrantLock();
+		pool.invoke(new PartitionTask(partitions, 0, partitions.size(),
+				partition -> aggregatePartition(partition, query, consumer, consumerLock)));
+	}
+
+	/***
+	 * Method passes to the consumer every sample in the range [from, to) matching the filter, with all its columns
+	 *
+	 * @param filter row filter, its block test is applied before decoding
+	 * @param consumer receives the matching samples one call at a time, in no particular order
+	 * **/
+	public void scan(TimeSeriesStore store, long from, long to, RowFilter filter, RowConsumer consumer) {
+		List<Partition> partitions = store.partitions(from, to);
+		if (partitions.isEmpty()) {
+			return;
+		}
+		ReentrantLock consumerLock = new ReentrantLock();
+		RowConsumer matching = (seriesId, timestamp, values) -> {
+			if (filter.matches(values)) {
+				consumerLock.lock();
+				try {
+					consumer.accept(seriesId, timestamp, values);
+				} finally {
+					consumerLock.unlock();
+				}
+			}
+		};
+
+		pool.invoke(new PartitionTask(partitions, 0, partitions.size(), partition -> {
+			for (SegmentFile segment : partition.getSegments()) {
+				for (int i = 0; i < segment.getSeriesCount(); i++) {
+					SeriesBlock block = segment.blockAt(i);
+					if (block.overlaps(from, to) && filter.mayMatch(block)) {
+						block.forEachRow(from, to, matching);
+					}
+				}
+			}
+			for (SeriesBlock block : partition.getActiveBlocks()) {
+				if (block.overlaps(from, to) && filter.mayMatch(block)) {
+					block.forEachRow(from, to, matching);
+				}
+			}
+		}));
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method aggregates one partition and streams its rows
+	 */
+	private static void aggregatePartition(Partition partition, TrafficQuery query, BucketConsumer consumer,
+			ReentrantLock consumerLock) {
+		long from = Math.max(query.getFrom(), partition.getStart());
+		long to = Math.min(query.getTo(), partition.getEnd());
+		if (to <= from) {
+			return;
+		}
+		PartitionAggregate aggregate = new PartitionAggregate(query, partition.getStart(),
+				(int) ((partition.getEnd() - partition.getStart()) / query.getIntervalMillis()), from, to);
+
+		int[] seriesIds = query.getSeriesIds();
+		for (SegmentFile segment : partition.getSegments()) {
+			if (seriesIds == null) {
+				for (int i = 0; i < segment.getSeriesCount(); i++) {
+					aggregate.add(segment.blockAt(i));
+				}
+			} else {
+				for (int seriesId : seriesIds) {
+					SeriesBlock block = segment.find(seriesId);
+					if (block != null) {
+						aggregate.add(block);
+					}
+				}
+			}
+		}
+		for (SeriesBlock block : partition.getActiveBlocks()) {
+			if (seriesIds == null || Arrays.binarySearch(seriesIds, block.getSeriesId()) >= 0) {
+				aggregate.add(block);
+			}
+		}
+
+		consumerLock.lock();
+		try {
+			aggregate.emit(consumer);
+		} finally {
+			consumerLock.unlock();
+		}
+	}
+
+	/*
+	 * Method checks the column exists in the store
+	 */
+	private static void checkColumn(TimeSeriesStore store, int column) {
+		if (column != TimeSeriesStore.ALL_COLUMNS && (column < 0 || column >= store.getColumnCount())) {
+			throw new IllegalArgumentException("Column " + column + " is not in the store");
+		}
+	}
+
+
+	/*
+	 * Work on one partition
+	 */
+	private interface PartitionWork {
+		void run(Partition partition);
+	}
+
+	/*
+	 * Task splitting a range of partitions in halves until one partition is left
+	 */
+	private static final class PartitionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Partition> partitions;
+		private final int start;
+		private final int end;
+		private final PartitionWork work;
+
+		PartitionTask(List<Partition> partitions, int start, int end, PartitionWork work) {
+			this.partitions = partitions;
+			this.start = start;
+			this.end = end;
+			this.work = work;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start == 1) {
+				work.run(partitions.get(start));
+				return;
+			}
+			int middle = (start + end) >>> 1;
+			invokeAll(new PartitionTask(partitions, start, middle, work),
+					new PartitionTask(partitions, middle, end, work));
+		}
+	}
+
+	/*
+	 * Per (group, bucket) counters of one partition, kept in primitive arrays, one row of buckets per group
+	 */
+	private static final class PartitionAggregate implements SampleConsumer {
+		private final int column;
+		private final int minValue;
+		private final long interval;
+		private final IntUnaryOperator groupOf;
+		private final long partitionStart;
+		private final int buckets;
+		private final long from;
+		private final long to;
+
+		private final IntIndexMap groupSlots = new IntIndexMap(64);
+		private int[] groupIds = new int[16];
+		private long[][] samples = new long[16][];
+		private long[][] sums = new long[16][];
+		private int[][] maxes = new int[16][];
+		private int groups;
+
+		private int slot;           // slot of the block being decoded
+
+		PartitionAggregate(TrafficQuery query, long partitionStart, int buckets, long from, long to) {
+			this.column = query.getColumn();
+			this.minValue = query.getMinValue();
+			this.interval = query.getIntervalMillis();
+			this.groupOf = query.getGroupOf();
+			this.partitionStart = partitionStart;
+			this.buckets = buckets;
+			this.from = from;
+			this.to = to;
+		}
+
+		void add(SeriesBlock block) {
+			if (!block.overlaps(from, to) || block.getMax(column) < minValue) {
+				return;             // pushdown: no sample can be selected
+			}
+			slot = slotOf(groupOf.applyAsInt(block.getSeriesId()));
+
+			int firstBucket = bucketOf(block.getMinTimestamp());
+			if (minValue <= 0 && column != TimeSeriesStore.ALL_COLUMNS && block.isCoveredBy(from, to)
+					&& firstBucket == bucketOf(block.getMaxTimestamp())) {
+				// the whole block falls in one bucket, its summary is the answer
+				samples[slot][firstBucket] += block.getCount();
+				sums[slot][firstBucket] += block.getSum(column);
+				maxes[slot][firstBucket] = Math.max(maxes[slot][firstBucket], block.getMax(column));
+				return;
+			}
+			block.forEach(column, from, to, this);
+		}
+
+		@Override
+		public void accept(long timestamp, int count) {
+			if (count < minValue) {
+				return;
+			}
+			int bucket = bucketOf(timestamp);
+			samples[slot][bucket]++;
+			sums[slot][bucket] += count;
+			if (count > maxes[slot][bucket]) {
+				maxes[slot][bucket] = count;
+			}
+		}
+
+		void emit(BucketConsumer consumer) {
+			for (int g = 0; g < groups; g++) {
+				for (int b = 0; b < buckets; b++) {
+					if (samples[g][b] > 0) {
+						consumer.accept(groupIds[g], partitionStart + b * interval, samples[g][b], sums[g][b],
+								maxes[g][b]);
+					}
+				}
+			}
+		}
+
+		private int bucketOf(long timestamp) {
+			return (int) ((timestamp - partitionStart) / interval);
+		}
+
+		private int slotOf(int groupId) {
+			int found = groupSlots.get(groupId);
+			if (found >= 0) {
+				return found;
+			}
+			if (groups == groupIds.length) {
+				int capacity = groups << 1;
+				groupIds = Arrays.copyOf(groupIds, capacity);
+				samples = Arrays.copyOf(samples, capacity);
+				sums = Arrays.copyOf(sums, capacity);
+				maxes = Arrays.copyOf(maxes, capacity);
+			}
+			groupIds[groups] = groupId;
+			samples[groups] = new long[buckets];
+			sums[groups] = new long[buckets];
+			maxes[groups] = new int[buckets];
+			groupSlots.put(groupId, groups);
+			return groups++;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package trafficAnalytics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import cityStateStore.CityStateStore;
+import trafficDataStore.PhaseHistoryStore;
+import trafficDataStore.RowConsumer;
+import trafficDataStore.SeriesBlock;
+import trafficDataStore.VehicleCountStore;
+
+/**
+ * Class holds the traffic reports of the Control Center built on the TrafficQueryEngine.
+ */
+public class TrafficReports {
+
+	// vars
+	private final TrafficQueryEngine engine;
+
+
+	/**
+	 * Initialises the reports over the given engine
+	 * **/
+	public TrafficReports(TrafficQueryEngine engine) {
+		this.engine = engine;
+	}
+
+
+	/***
+	 * Method finds, for every Traffic Light System, the interval with the most vehicles
+	 * counted by its Visual Recognition Systems in the range [from, to)
+	 *
+	 * @param intervalMillis length of the intervals compared, it must divide the store partitions
+	 * @return peak interval per TLS ID
+	 * **/
+	public Map<Integer, PeakInterval> peakIntervalPerTrafficLightSystem(VehicleCountStore store, long from, long to,
+			long intervalMillis) {
+		CityStateStore city = CityStateStore.getInstance();
+		TrafficQuery query = new TrafficQuery(from, to)
+				.setColumn(VehicleCountStore.ALL_CLASSES)
+				.setIntervalMillis(intervalMillis)
+				.setGroupOf(city::trafficLightSystemIdOf);
+
+		// the consumer is never called concurrently
+		Map<Integer, PeakInterval> peaks = new HashMap<>();
+		engine.aggregate(store, query, (tlsId, bucketStart, samples, sum, max) -> {
+			PeakInterval peak = peaks.get(tlsId);
+			if (peak == null || sum > peak.getVehicles()
+					|| (sum == peak.getVehicles() && bucketStart < peak.getStart())) {
+				peaks.put(tlsId, new PeakInterval(tlsId, bucketStart, sum));
+			}
+		});
+		return peaks;
+	}
+
+	/***
+	 * Method streams the cycles in the range [from, to) where a Traffic Light System was given red
+	 * while it had at least the given number of vehicles waiting
+	 *
+	 * @param consumer receives the TLS ID, start of the cycle and the STATE and VEHICLES columns
+	 * **/
+	public void starvedCycles(PhaseHistoryStore store, long from, long to, int minVehicles, RowConsumer consumer) {
+		engine.scan(store, from, to, new RowFilter() {
+
+			@Override
+			public boolean mayMatch(SeriesBlock block) {
+				return block.getMax(PhaseHistoryStore.STATE) >= CityStateStore.STATE_RED
+						&& block.getMax(PhaseHistoryStore.VEHICLES) >= minVehicles;
+			}
+
+			@Override
+			public boolean matches(int[] values) {
+				return values[PhaseHistoryStore.STATE] == CityStateStore.STATE_RED
+						&& values[PhaseHistoryStore.VEHICLES] >= minVehicles;
+			}
+		}, consumer);
+	}
+
+
+	/**
+	 * Interval with the most vehicles of a Traffic Light System
+	 */
+	public static final class PeakInterval {
+
+		// vars
+		private final int trafficLightSystemId;
+		private final long start;
+		private final long vehicles;
+
+		PeakInterval(int trafficLightSystemId, long start, long vehicles) {
+			this.trafficLightSystemId = trafficLightSystemId;
+			this.start = start;
+			this.vehicles = vehicles;
+		}
+
+		// getters
+
+		public int getTrafficLightSystemId() {
+			return trafficLightSystemId;
+		}
+
+		public long getStart() {
+			return start;
+		}
+
+		public long getVehicles() {
+			return vehicles;
+		}
+
+		@Override
+		public String toString() {
+			return "TLS " + trafficLightSystemId + " peak of " + vehicles + " vehicles at " + start;
+		}
+	}
+}
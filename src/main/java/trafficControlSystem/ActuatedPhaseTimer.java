@@ -0,0 +1,192 @@
+/**
+ *
+ */
+package trafficControlSystem;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class computes the phase lengths of a traffic control cycle from the vehicles counted in the last observation window,
+ * instead of taking them from the scan configuration alone.
+ *
+ * The green phase lasts long enough to clear the vehicles counted at the Traffic Light System getting it,
+ * at the saturation flow of the intersection, bounded by a safety minimum and maximum. The yellow phase keeps
+ * its relation with the green one: green plus the extra seconds of the configuration.
+ *
+ * Every green phase run is reported with its planned (static), actuated and achieved (measured) length,
+ * and totals are kept so the time saved or added by actuation can be read at any time.
+ */
+public class ActuatedPhaseTimer {
+
+	// vars
+	private final int minGreenSeconds;
+	private final int maxGreenSeconds;
+	private final double saturationFlow;       // vehicles cleared per second of green
+	private final ReentrantLock statsLock;
+	private long phases;
+	private long plannedSeconds;
+	private long actuatedSeconds;
+	private long achievedMillis;
+	private long clearedVehicles;
+
+
+	/**
+	 * Initialises a timer
+	 *
+	 * @param minGreenSeconds safety minimum of a green phase
+	 * @param maxGreenSeconds maximum of a green phase, so the crossing traffic is never starved
+	 * @param saturationFlow vehicles a Traffic Light System clears per second of green
+	 * @throws IllegalArgumentException if the bounds or the flow are not valid
+	 * **/
+	public ActuatedPhaseTimer(int minGreenSeconds, int maxGreenSeconds, double saturationFlow) {
+		if (minGreenSeconds <= 0 || maxGreenSeconds < minGreenSeconds) {
+			throw new IllegalArgumentException("Green phase bounds must be positive and ordered");
+		}
+		if (!(saturationFlow > 0)) {
+			throw new IllegalArgumentException("Saturation flow must be positive");
+		}
+		this.minGreenSeconds = minGreenSeconds;
+		this.maxGreenSeconds = maxGreenSeconds;
+		this.saturationFlow = saturationFlow;
+		this.statsLock = new ReentrantLock();
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method computes the phase lengths of a cycle
+	 *
+	 * @param plannedGreenSeconds green length the scan configuration gives
+	 * @param vehicles vehicles counted at the Traffic Light System getting the green, negative if there is no count yet
+	 * @param yellowExtraSeconds seconds the yellow phase lasts over the green one
+	 * **/
+	public PhasePlan plan(int plannedGreenSeconds, int vehicles, int yellowExtraSeconds) {
+		int green;
+		if (vehicles < 0) {
+			green = plannedGreenSeconds;     // first cycle, nothing counted yet
+		} else {
+			green = (int) Math.ceil(vehicles / saturationFlow);
+		}
+		green = Math.max(minGreenSeconds, Math.min(maxGreenSeconds, green));
+		return new PhasePlan(plannedGreenSeconds, green, green + yellowExtraSeconds, Math.max(vehicles, 0));
+	}
+
+	/***
+	 * Method reports a green phase that has run and adds it to the totals
+	 *
+	 * @param tlsId Traffic Light System that had the green
+	 * @param plan plan of the phase
+	 * @param achievedMillis measured length of the phase
+	 * **/
+	public void recordGreen(int tlsId, PhasePlan plan, long achievedMillis) {
+		long cleared = Math.min(plan.getVehicles(), (long) (achievedMillis / 1000.0 * saturationFlow));
+		statsLock.lock();
+		try {
+			phases++;
+			plannedSeconds += plan.getPlannedGreenSeconds();
+			actuatedSeconds += plan.getGreenSeconds();
+			this.achievedMillis += achievedMillis;
+			clearedVehicles += cleared;
+		} finally {
+			statsLock.unlock();
+		}
+		System.out.printf("Green phase of TLS %d: planned %d s, actuated %d s for %d vehicles, achieved %.2f s%n",
+				tlsId, plan.getPlannedGreenSeconds(), plan.getGreenSeconds(), plan.getVehicles(), achievedMillis / 1000.0);
+	}
+
+	/***
+	 * Method returns a summary of the green phases run so far
+	 * **/
+	public String report() {
+		statsLock.lock();
+		try {
+			if (phases == 0) {
+				return "No green phase run yet";
+			}
+			double hours = achievedMillis / 3_600_000.0;
+			return String.format("%d green phases: planned %d s, actuated %d s, achieved %.1f s, %d vehicles cleared (%.0f per green hour)",
+					phases, plannedSeconds, actuatedSeconds, achievedMillis / 1000.0, clearedVehicles,
+					hours > 0 ? clearedVehicles / hours : 0.0);
+		} finally {
+			statsLock.unlock();
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get safety minimum of a green phase in seconds
+	 */
+	public int getMinGreenSeconds() {
+		return minGreenSeconds;
+	}
+
+	/**
+	 * Get maximum of a green phase in seconds
+	 */
+	public int getMaxGreenSeconds() {
+		return maxGreenSeconds;
+	}
+
+	/**
+	 * Get vehicles cleared per second of green
+	 */
+	public double getSaturationFlow() {
+		return saturationFlow;
+	}
+
+
+	/**
+	 * Phase lengths of one cycle
+	 */
+	public static final class PhasePlan {
+
+		// vars
+		private final int plannedGreenSeconds;
+		private final int greenSeconds;
+		private final int yellowSeconds;
+		private final int vehicles;
+
+		/**
+		 * Initialises a plan
+		 * **/
+		public PhasePlan(int plannedGreenSeconds, int greenSeconds, int yellowSeconds, int vehicles) {
+			this.plannedGreenSeconds = plannedGreenSeconds;
+			this.greenSeconds = greenSeconds;
+			this.yellowSeconds = yellowSeconds;
+			this.vehicles = vehicles;
+		}
+
+		// getters
+
+		/**
+		 * Get green length the scan configuration gives
+		 */
+		public int getPlannedGreenSeconds() {
+			return plannedGreenSeconds;
+		}
+
+		/**
+		 * Get green length to run
+		 */
+		public int getGreenSeconds() {
+			return greenSeconds;
+		}
+
+		/**
+		 * Get yellow length to run
+		 */
+		public int getYellowSeconds() {
+			return yellowSeconds;
+		}
+
+		/**
+		 * Get vehicles the green is sized for
+		 */
+		public int getVehicles() {
+			return vehicles;
+		}
+	}
+}
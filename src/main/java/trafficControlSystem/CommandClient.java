@@ -0,0 +1,181 @@
+/**
+ *
+ */
+package trafficControlSystem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.Channel;
+import io.grpc.stub.StreamObserver;
+import trafficCommands.CommandReply;
+import trafficCommands.CommandServiceGrpc;
+import trafficCommands.ConfigAck;
+import trafficCommands.ConfigBatch;
+import trafficCommands.Register;
+import trafficCommands.VrsConfig;
+import visualRecognitionSystem.VisualRecognitionConfig.ScanSettings;
+
+/**
+ * Class is the Traffic Control System end of the command stream opened with the Control Center.
+ *
+ * It registers the Traffic Control System, applies every configuration batch pushed down the stream
+ * and answers each one with an acknowledgement, so reconfiguring the city takes one round trip per stream.
+ */
+public class CommandClient {
+
+	// vars
+	private final TrafficControlSystem tcs;
+	private final CommandServiceGrpc.CommandServiceStub stub;
+	private final ReentrantLock sendLock;      // the request stream is not thread safe
+	private StreamObserver<CommandReply> replies;
+	private volatile boolean open;
+
+
+	/**
+	 * Initialises a client for the given Traffic Control System
+	 * **/
+	public CommandClient(TrafficControlSystem tcs, Channel channel) {
+		this.tcs = tcs;
+		this.stub = CommandServiceGrpc.newStub(channel);
+		this.sendLock = new ReentrantLock();
+	}
+
+
+	/***
+	 * Method opens the command stream and registers the Traffic Control System with the version it runs
+	 * **/
+	public void start() {
+		sendLock.lock();
+		try {
+			replies = stub.openCommandStream(new StreamObserver<ConfigBatch>() {
+
+				@Override
+				public void onNext(ConfigBatch batch) {
+					send(CommandReply.newBuilder().setAck(apply(tcs, batch)).build());
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					open = false;
+					System.err.println("Command stream of Traffic Control System " + tcs.getSystemID() + " failed: " + t.getMessage());
+				}
+
+				@Override
+				public void onCompleted() {
+					close();
+				}
+			});
+			open = true;
+			replies.onNext(CommandReply.newBuilder()
+					.setRegister(Register.newBuilder()
+							.setTcsId(tcs.getSystemID())
+							.setAppliedVersion(tcs.getConfiguration().getVersion()))
+					.build());
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/***
+	 * Method closes the command stream
+	 * **/
+	public void close() {
+		sendLock.lock();
+		try {
+			if (open) {
+				open = false;
+				replies.onCompleted();
+			}
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+
+	// helper methods
+
+	/***
+	 * Static method applies a configuration batch to a Traffic Control System and builds its acknowledgement.
+	 * A batch already applied is acknowledged again, so a batch resent after a reconnection is harmless.
+	 * A batch older than the configuration the system runs is not applied, the acknowledgement says which one it runs.
+	 * **/
+	public static ConfigAck apply(TrafficControlSystem tcs, ConfigBatch batch) {
+		ConfigAck.Builder ack = ConfigAck.newBuilder()
+				.setTcsId(tcs.getSystemID())
+				.setVersion(batch.getVersion());
+		try {
+			TrafficControlConfig config = toConfiguration(batch);
+			if (tcs.applyConfiguration(config)) {
+				System.out.println("Traffic Control System " + tcs.getSystemID() + " applied configuration " + config);
+			}
+			long running = tcs.getConfiguration().getVersion();
+			ack.setRunningVersion(running).setApplied(running == batch.getVersion());
+			if (running != batch.getVersion()) {
+				ack.setError("Configuration version " + batch.getVersion() + " is older than the running version " + running);
+			}
+
+		} catch (IllegalArgumentException e) {
+			ack.setApplied(false).setError(e.getMessage()).setRunningVersion(tcs.getConfiguration().getVersion());
+		}
+		return ack.build();
+	}
+
+	/***
+	 * Static method converts a configuration batch into a Traffic Control System configuration
+	 *
+	 * @throws IllegalArgumentException if the batch holds an invalid value
+	 * **/
+	public static TrafficControlConfig toConfiguration(ConfigBatch batch) {
+		Map<Integer, ScanSettings> overrides = new HashMap<>();
+		for (VrsConfig vrs : batch.getVrsOverridesList()) {
+			overrides.put(vrs.getVrsId(), new ScanSettings(vrs.getNumOfScans(), vrs.getScanLengthSeconds()));
+		}
+		return new TrafficControlConfig(batch.getVersion(),
+				batch.getNumOfScans(),
+				batch.getScanLengthSeconds(),
+				batch.hasPhaseTimings() ? batch.getPhaseTimings().getYellowPhaseExtraSeconds()
+						: TrafficControlConfig.DEFAULT_YELLOW_PHASE_EXTRA_SECONDS,
+				toStrategy(batch.getStrategyValue()),
+				overrides);
+	}
+
+	/*
+	 * Method maps the strategy of a batch to the Traffic Control System strategy
+	 */
+	private static ControlStrategy toStrategy(int strategyValue) {
+		switch (strategyValue) {
+		case 0:
+			return ControlStrategy.TRAFFIC_DENSITY;
+		case 1:
+			return ControlStrategy.FIXED_TIME;
+		default:
+			throw new IllegalArgumentException("Unknown control strategy " + strategyValue);
+		}
+	}
+
+	/*
+	 * Method writes a reply to the stream if it is still open
+	 */
+	private void send(CommandReply reply) {
+		sendLock.lock();
+		try {
+			if (open) {
+				replies.onNext(reply);
+			}
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get whether the command stream is open
+	 */
+	public boolean isOpen() {
+		return open;
+	}
+}
@@ -0,0 +1,13 @@
+/**
+ *
+ */
+package trafficControlSystem;
+
+/**
+ * Strategy a Traffic Control System uses to pick the Traffic Light System that gets the next green.
+ */
+public enum ControlStrategy {
+
+	TRAFFIC_DENSITY,    // the TLS with more vehicles gets the green
+	FIXED_TIME          // the TLSs take turns, whatever the traffic
+}
@@ -0,0 +1,375 @@
+/**
+ *
+ */
+package trafficControlSystem;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.grpc.Channel;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import trafficTelemetry.Anomaly;
+import trafficTelemetry.LightState;
+import trafficTelemetry.ScanTotal;
+import trafficTelemetry.StateChange;
+import trafficTelemetry.TelemetryAck;
+import trafficTelemetry.TelemetryBatch;
+import trafficTelemetry.TelemetryServiceGrpc;
+
+/**
+ * Class streams the telemetry of one Traffic Control System to the Control Center over gRPC:
+ * scan totals, state changes and anomalies, batched into TelemetryBatch messages.
+ *
+ * Flow control:
+ * - Records are added to the open batch, which is sealed when it holds MAX_RECORDS_PER_BATCH records
+ *   or every FLUSH_INTERVAL_IN_MILLIS.
+ * - Sealed batches are only written while the stream is ready, so the transport never buffers more
+ *   than its flow control window. The rest wait in a queue drained by the stream's onReady handler.
+ * - When the queue is full the oldest batch is dropped and its records are reported in the next batch,
+ *   recording never blocks the Traffic Control cycle.
+ * - When the stream fails, for instance because the Control Center restarted, a new stream is opened
+ *   every RECONNECT_INTERVAL_IN_MILLIS and the queued batches are sent on it. Batches already written
+ *   to the failed stream may be lost, the Control Center sees them as a sequence gap.
+ */
+public class TelemetryClient {
+
+	// vars
+	public static final int MAX_RECORDS_PER_BATCH = 256;
+	public static final int MAX_QUEUED_BATCHES = 64;
+	public static final long FLUSH_INTERVAL_IN_MILLIS = 500;
+	public static final long RECONNECT_INTERVAL_IN_MILLIS = 1000;
+
+	private final int tcsId;
+	private final TelemetryServiceGrpc.TelemetryServiceStub stub;
+	private final ReentrantLock lock;               // guards the batches and the request stream, which is not thread safe
+	private final ArrayDeque<TelemetryBatch> queue;  // sealed batches waiting for the stream to be ready
+	private final CountDownLatch finished;
+	private ScheduledExecutorService flusher;
+
+	private ClientCallStreamObserver<TelemetryBatch> requestStream;   // null while no stream is open
+	private TelemetryBatch.Builder openBatch;
+	private int openRecords;
+	private long nextSequence;
+	private long droppedRecords;                     // not yet reported to the Control Center
+	private long totalDroppedRecords;
+	private boolean closing;
+	private boolean completed;
+	private long reconnects;
+	private volatile TelemetryAck ack;
+	private volatile Throwable failure;
+
+
+	/**
+	 * Initialises a client sending the telemetry of the given Traffic Control System over the channel.
+	 * The channel can be a localhost or an in-process channel.
+	 * **/
+	public TelemetryClient(int tcsId, Channel channel) {
+		this.tcsId = tcsId;
+		this.stub = TelemetryServiceGrpc.newStub(channel).withWaitForReady();   // a reopened stream waits for the Control Center
+		this.lock = new ReentrantLock();
+		this.queue = new ArrayDeque<>();
+		this.finished = new CountDownLatch(1);
+		this.openBatch = newBatch();
+	}
+
+
+	/***
+	 * Method opens the telemetry stream and starts sealing batches periodically
+	 * **/
+	public void start() {
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "telemetry-flusher-" + tcsId);
+			thread.setDaemon(true);
+			return thread;
+		});
+		openStream();
+		flusher.scheduleAtFixedRate(this::flush, FLUSH_INTERVAL_IN_MILLIS, FLUSH_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/*
+	 * Method opens a new telemetry stream, the queued batches are written once it is ready
+	 */
+	private void openStream() {
+		lock.lock();
+		try {
+			if (completed) {
+				return;
+			}
+			stub.streamTelemetry(new ClientResponseObserver<TelemetryBatch, TelemetryAck>() {
+				private ClientCallStreamObserver<TelemetryBatch> stream;
+
+				@Override
+				public void beforeStart(ClientCallStreamObserver<TelemetryBatch> stream) {
+					this.stream = stream;
+					requestStream = stream;
+					stream.setOnReadyHandler(TelemetryClient.this::drain);
+				}
+
+				@Override
+				public void onNext(TelemetryAck value) {
+					ack = value;
+				}
+
+				@Override
+				public void onError(Throwable t) {
+					failure = t;
+					streamFailed(stream, t);
+				}
+
+				@Override
+				public void onCompleted() {
+					finished.countDown();
+				}
+			});
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Method forgets a failed stream and opens a new one after RECONNECT_INTERVAL_IN_MILLIS.
+	 * A stream completed by close() is not reopened.
+	 */
+	private void streamFailed(ClientCallStreamObserver<TelemetryBatch> stream, Throwable t) {
+		lock.lock();
+		try {
+			if (requestStream != stream) {
+				return;
+			}
+			requestStream = null;
+			if (completed) {
+				finished.countDown();       // failed while completing, nothing left to send on it
+				return;
+			}
+			reconnects++;
+		} finally {
+			lock.unlock();
+		}
+		System.err.println("Telemetry stream of Traffic Control System " + tcsId + " failed, reconnecting: " + t.getMessage());
+		try {
+			flusher.schedule(this::openStream, RECONNECT_INTERVAL_IN_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// the client is closed
+		}
+	}
+
+
+	/***********************  RECORDS ******************/
+
+	/***
+	 * Method records the vehicles counted by a Visual Recognition System and the version of the configuration it used
+	 * **/
+	public void recordScan(int vrsId, long timestamp, long configVersion, int cars, int trucks, int bikes, int buses) {
+		lock.lock();
+		try {
+			openBatch.addScans(ScanTotal.newBuilder()
+					.setVrsId(vrsId)
+					.setTimestampMillis(timestamp)
+					.setConfigVersion(configVersion)
+					.setCars(cars)
+					.setTrucks(trucks)
+					.setBikes(bikes)
+					.setBuses(buses));
+			recordAdded();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method records the new state of a Traffic Light System
+	 *
+	 * @param stateCode CityStateStore state code
+	 * **/
+	public void recordStateChange(int tlsId, long timestamp, int stateCode) {
+		lock.lock();
+		try {
+			openBatch.addStateChanges(StateChange.newBuilder()
+					.setTlsId(tlsId)
+					.setTimestampMillis(timestamp)
+					.setState(LightState.forNumber(stateCode)));
+			recordAdded();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method records the anomalies reported by a Visual Recognition System
+	 * **/
+	public void recordAnomalies(int vrsId, long timestamp, int count) {
+		lock.lock();
+		try {
+			openBatch.addAnomalies(Anomaly.newBuilder()
+					.setVrsId(vrsId)
+					.setTimestampMillis(timestamp)
+					.setCount(count));
+			recordAdded();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method seals the open batch, if it holds any record, and sends what the stream accepts
+	 * **/
+	public void flush() {
+		lock.lock();
+		try {
+			if (openRecords > 0) {
+				sealOpenBatch();
+			}
+			drain();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method sends the pending records, completes the stream and waits for the Control Center acknowledgement.
+	 * A failed stream is still reopened until the timeout elapses.
+	 *
+	 * @return the acknowledgement, or null if the stream failed or the timeout elapsed
+	 * **/
+	public TelemetryAck close(long timeout, TimeUnit unit) throws InterruptedException {
+		lock.lock();
+		try {
+			closing = true;
+		} finally {
+			lock.unlock();
+		}
+		flush();                    // the stream is completed once the queue is drained
+		boolean acknowledged = finished.await(timeout, unit);
+		if (flusher != null) {
+			flusher.shutdownNow();
+		}
+		lock.lock();
+		try {
+			if (!acknowledged && requestStream != null) {
+				requestStream.cancel("Telemetry client closed", null);
+			}
+			completed = true;
+		} finally {
+			lock.unlock();
+		}
+		return acknowledged ? ack : null;
+	}
+
+
+	// helper methods
+
+	/*
+	 * Method seals the open batch once it is full, the lock must be held
+	 */
+	private void recordAdded() {
+		if (++openRecords >= MAX_RECORDS_PER_BATCH) {
+			sealOpenBatch();
+			drain();
+		}
+	}
+
+	/*
+	 * Method moves the open batch to the queue, dropping the oldest batch if the queue is full.
+	 * The lock must be held.
+	 */
+	private void sealOpenBatch() {
+		if (queue.size() >= MAX_QUEUED_BATCHES) {
+			TelemetryBatch oldest = queue.poll();
+			int lost = oldest.getScansCount() + oldest.getStateChangesCount() + oldest.getAnomaliesCount();
+			droppedRecords += lost + oldest.getDroppedRecords();    // the drops it was reporting are reported again
+			totalDroppedRecords += lost;
+		}
+		queue.add(openBatch.setDroppedRecords(droppedRecords).build());
+		droppedRecords = 0;
+		openBatch = newBatch();
+		openRecords = 0;
+	}
+
+	/*
+	 * Method writes queued batches while the stream is ready, then completes it if the client is closing.
+	 * Called by the stream when it becomes ready again.
+	 */
+	private void drain() {
+		lock.lock();
+		try {
+			if (requestStream == null || completed) {
+				return;
+			}
+			while (!queue.isEmpty() && requestStream.isReady()) {
+				requestStream.onNext(queue.poll());
+			}
+			if (closing && queue.isEmpty()) {
+				completed = true;
+				requestStream.onCompleted();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Method starts a new batch with the next sequence number
+	 */
+	private TelemetryBatch.Builder newBatch() {
+		return TelemetryBatch.newBuilder().setTcsId(tcsId).setSequence(nextSequence++);
+	}
+
+
+	// getters
+
+	/**
+	 * Get ID of the Traffic Control System
+	 */
+	public int getTcsId() {
+		return tcsId;
+	}
+
+	/**
+	 * Get number of sealed batches waiting for the stream
+	 */
+	public int getQueuedBatches() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get number of records dropped because the stream was not keeping up
+	 */
+	public long getDroppedRecords() {
+		lock.lock();
+		try {
+			return totalDroppedRecords;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get number of times a failed stream was opened again
+	 */
+	public long getReconnects() {
+		lock.lock();
+		try {
+			return reconnects;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get error the last failed stream failed with, null if no stream failed
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ */
+package trafficControlSystem;
+
+import java.util.Collections;
+import java.util.Map;
+
+import visualRecognitionSystem.VisualRecognitionConfig;
+import visualRecognitionSystem.VisualRecognitionConfig.ScanSettings;
+
+/**
+ * Class holds the configuration of a Traffic Control System: scans of its Visual Recognition Systems,
+ * phase timings and control strategy.
+ *
+ * Instances are immutable, a new configuration replaces the previous one as a whole
+ * so a running cycle never sees half of an update. The scan part is the VisualRecognitionConfig
+ * published to the Visual Recognition Systems.
+ */
+public final class TrafficControlConfig {
+
+	// vars
+	public static final int DEFAULT_YELLOW_PHASE_EXTRA_SECONDS = 2;
+
+	private final VisualRecognitionConfig visualRecognition;
+	private final int yellowPhaseExtraSeconds;
+	private final ControlStrategy strategy;
+
+
+	/**
+	 * Initialises a configuration
+	 *
+	 * @param version version of the configuration, 0 for one not pushed by the Control Center
+	 * @param vrsOverrides scan settings of the Visual Recognition Systems that do not use the default ones, by VRS id
+	 * @throws IllegalArgumentException if a scan count, scan length or phase timing is not valid
+	 * **/
+	public TrafficControlConfig(long version, int numOfScans, int scanLengthInSeconds, int yellowPhaseExtraSeconds,
+			ControlStrategy strategy, Map<Integer, ScanSettings> vrsOverrides) {
+		this(new VisualRecognitionConfig(version, numOfScans, scanLengthInSeconds, vrsOverrides),
+				yellowPhaseExtraSeconds, strategy);
+	}
+
+	/**
+	 * Initialises a configuration from its scan part, the version is the one of the scan part
+	 * **/
+	public TrafficControlConfig(VisualRecognitionConfig visualRecognition, int yellowPhaseExtraSeconds, ControlStrategy strategy) {
+		if (yellowPhaseExtraSeconds < 0) {
+			throw new IllegalArgumentException("Yellow phase extra seconds can not be negative");
+		}
+		this.visualRecognition = visualRecognition;
+		this.yellowPhaseExtraSeconds = yellowPhaseExtraSeconds;
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Initialises a configuration with the default phase timings and strategy, and no per VRS settings
+	 * **/
+	public TrafficControlConfig(long version, int numOfScans, int scanLengthInSeconds) {
+		this(version, numOfScans, scanLengthInSeconds, DEFAULT_YELLOW_PHASE_EXTRA_SECONDS,
+				ControlStrategy.TRAFFIC_DENSITY, Collections.<Integer, ScanSettings>emptyMap());
+	}
+
+
+	// getters
+
+	/**
+	 * Get version of the configuration
+	 */
+	public long getVersion() {
+		return visualRecognition.getVersion();
+	}
+
+	/**
+	 * Get scan configuration published to the Visual Recognition Systems
+	 */
+	public VisualRecognitionConfig getVisualRecognitionConfig() {
+		return visualRecognition;
+	}
+
+	/**
+	 * Get number of traffic scans of each Visual Recognition System per cycle
+	 */
+	public int getNumOfScans() {
+		return visualRecognition.getNumOfTrafficScans();
+	}
+
+	/**
+	 * Get length in seconds of each traffic scan
+	 */
+	public int getScanLengthInSeconds() {
+		return visualRecognition.getScanLengthInSeconds();
+	}
+
+	/**
+	 * Get seconds the yellow phase lasts over the green phase
+	 */
+	public int getYellowPhaseExtraSeconds() {
+		return yellowPhaseExtraSeconds;
+	}
+
+	/**
+	 * Get strategy picking the Traffic Light System of the next green
+	 */
+	public ControlStrategy getStrategy() {
+		return strategy;
+	}
+
+	@Override
+	public String toString() {
+		return visualRecognition + ", yellow +" + yellowPhaseExtraSeconds + " s, " + strategy;
+	}
+
+}
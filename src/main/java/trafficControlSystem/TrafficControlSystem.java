@@ -5,18 +5,29 @@ package trafficControlSystem;
 
 import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
+import signalPlanning.SignalPlan;
+import signalPlanning.SignalPlanCache;
+
+import cityStateStore.CityStateStore;
+import cityStateStore.IdAllocator;
 import controlCenterServer.TCSystemsListManager;
+import controlLoops.ControlLoopThreads;
+import trafficDataStore.PhaseHistoryStore;
+import trafficLightSystem.CycleHeartbeats;
+import trafficLightSystem.StateChangePublisher;
 import trafficLightSystem.StateRecord;
 import trafficLightSystem.TrafficLight;
 import trafficLightSystem.TrafficLightSystem;
 import visualRecognitionSystem.TrafficDataCollector;
+import visualRecognitionSystem.VisualRecognitionConfig;
 import visualRecognitionSystem.VisualRecognitionSystem;
 
 /**
@@ -31,29 +42,98 @@ import visualRecognitionSystem.VisualRecognitionSystem;
 public class TrafficControlSystem {
 	
 	    // vars
-		private int systemID = 2012;
+		private static final long COLLECTION_GRACE_MILLIS = 2000;   // time to collect the data after the last scan
+		public static final int COMPONENT_IDS_PER_TLS = 5;          // a TLS, its two lights and their two VRSs
+		private final int systemID;
 		private TrafficLightSystem tls1;
 		private TrafficLightSystem tls2;
-		private boolean isOperative;
-		private int numOfVisualRecognitionScans;
-		private int lengthOfVRScans;     // in nanoseconds
+		private volatile boolean isOperative;        // read by the cycle thread
+		private final AtomicReference<TrafficControlConfig> config;   // replaced as a whole, read once per cycle
+		// scan part of the configuration, shared by all the VRSs of this TCS
+		private final AtomicReference<VisualRecognitionConfig> vrsConfig;
 		private int trafficCycleLoops;
-		private int cycleCount;
+		private volatile int cycleCount;
 		private int maxCycles;
+		private volatile String currentCycleState;   // predefined state the running cycle started with
+		private boolean resumeRestoredCycle;         // next cycle re-runs the cycle interrupted before a restart
 		// list holds the traffic light systems that are controlled by this Traffic Control System
 		private List<TrafficLightSystem> listOfTrafficLightSystems;  
 		
 		// list holds the history of the Traffic Light Sytems with a "green" state
 		private List<StateRecord> tlsStateHistory;
+		private final ReentrantLock historyLock;     // guards the history, read by checkpoints while cycles run
+		
+		// total vehicles reported by each TLS in the last data analysis, by TLS id
+		private volatile Map<Integer, Integer> lastTlsVehicleCounts;
+		
+		// streams scan totals, state changes and anomalies to the Control Center, null when not connected
+		private volatile TelemetryClient telemetry;
+		
+		// receives the configurations pushed by the Control Center, null when not connected
+		private volatile CommandClient commands;
+		
+		// phase lengths and offset computed offline, null to derive the phases from the scan configuration
+		private volatile SignalPlan signalPlan;
+		private volatile SignalPlan defaultPlan;     // plan set by hand, run when the schedule has none
+		private volatile boolean offsetPending;      // next cycle waits for the offset of a new plan
+		private volatile SignalPlanCache planCache;  // time of day plans, null to keep the plan set by hand
+		
+		// sizes the phases from the vehicles counted, null to size them from the scan configuration only
+		private volatile ActuatedPhaseTimer phaseTimer;
+		private ActuatedPhaseTimer.PhasePlan currentPhasePlan;   // plan of the running cycle, null if not actuated
+		private ActuatedPhaseTimer.PhasePlan greenPhasePlan;     // plan of the green showing now, reported when it ends
+		private String greenPhaseState;
+		private long greenStartNanos;
+		
+		// next cycle decision pre-computed from the forecasts of the TLSs before the data is collected
+		private volatile Map<Integer, Integer> forecastTlsVehicleCounts;   // empty if the TLSs have no forecast yet
+		private volatile int predictedGreenTlsId;
+		private volatile int forecastsConfirmed;
+		private volatile int forecastsAdjusted;
+		
+		// progress stamped at every phase for the cycle watchdog, null when not watched
+		private volatile CycleHeartbeats heartbeats;
+		private int heartbeatSlot;
+		private volatile Thread cycleThread;         // thread running the cycles, replaced when the cycle is restarted
+		// cycles open on the stack of each thread, a restarted thread counts its own
+		private final ThreadLocal<int[]> cycleDepth = ThreadLocal.withInitial(() -> new int[1]);
+		private volatile int restarts;
+		private int firstComponentId;                    // first known id of the TLSs, lights and VRSs, 0 to hand out new ids
+		private volatile boolean restarting;             // the restarted cycles run the fallback until one is analysed
+		private SignalPlan restartPlan;                  // plan and timer to restore once the restarted cycles recovered
+		private ActuatedPhaseTimer restartTimer;
+		private SignalPlan restartFallback;
+		
+		// fixed time control while the circuit breaker of a camera is open, adaptive control resumes once they all close
+		private volatile SignalPlan fixedTimeFallback;   // plan of the degraded cycles, null to keep the current phases
+		private volatile boolean degraded;
+		private SignalPlan adaptivePlan;                 // plan and timer to restore when the cameras recover
+		private ActuatedPhaseTimer adaptiveTimer;
+		private volatile int degradations;
 			   
 	    
 		/**
-		 * Constructor to initialise Traffic Control System object
+		 * Constructor to initialise Traffic Control System object with a new id
 		 * **/
 		public TrafficControlSystem() {
+			this(IdAllocator.getInstance().nextId());
+		}
+		
+		/**
+		 * Constructor to initialise a Traffic Control System with the given id
+		 * **/
+		public TrafficControlSystem(int systemID) {
+			IdAllocator.getInstance().claim(systemID);   // never handed out to another system
+			this.systemID = systemID;
 			this.isOperative = true;
 			this.listOfTrafficLightSystems = new ArrayList<>();
 			this.tlsStateHistory = new ArrayList<>();
+			this.historyLock = new ReentrantLock();
+			this.lastTlsVehicleCounts = Collections.emptyMap();
+			this.forecastTlsVehicleCounts = Collections.emptyMap();
+			this.predictedGreenTlsId = -1;
+			this.config = new AtomicReference<>(new TrafficControlConfig(0, 1, 1));
+			this.vrsConfig = new AtomicReference<>(config.get().getVisualRecognitionConfig());
 			this.trafficCycleLoops = 0;
 			this.cycleCount = 0;
 			this.maxCycles = 3;
@@ -88,13 +168,15 @@ public class TrafficControlSystem {
 			
 			try {
 			    // Initialize the first Traffic Light System and its components
-			    tls1 = new TrafficLightSystem();
+			    int firstId = firstComponentId;
+			    tls1 = firstId != 0 ? new TrafficLightSystem(firstId, this.systemID) : new TrafficLightSystem(this.systemID);
 			    if (!tls1.isOperative()) {
 			         throw new Exception("Traffic Light System 1 is not operative and could not be initialized.");
 			    }
 			    
 			    listOfTrafficLightSystems.add(tls1); // Add TLS 1 to the list
-			    tls1.initTLSComponents(); // Initialise associated components
+			    tls1.initTLSComponents(firstId != 0 ? firstId + 1 : 0); // Initialise associated components
+			    shareConfiguration(tls1);
 			    
 			    } catch (Exception e) {
 			        System.err.println("Error initializing Traffic Light System 1: " + e.getMessage());
@@ -108,61 +190,107 @@ public class TrafficControlSystem {
 		public void initializeTLS2() {
 			try {
 		        // Initialise the second Traffic Light System and its components
-		        tls2 = new TrafficLightSystem();
+		        int firstId = firstComponentId != 0 ? firstComponentId + COMPONENT_IDS_PER_TLS : 0;
+		        tls2 = firstId != 0 ? new TrafficLightSystem(firstId, this.systemID) : new TrafficLightSystem(this.systemID);
 		        if (!tls2.isOperative()) {
 		            throw new Exception("Traffic Light System 2 is not operative and could not be initialized.");
 		        }
 		        listOfTrafficLightSystems.add(tls2); // Add TLS 2 to the list
-		        tls2.initTLSComponents(); // Initialise associated components
+		        tls2.initTLSComponents(firstId != 0 ? firstId + 1 : 0); // Initialise associated components
+		        shareConfiguration(tls2);
 		        
 		    } catch (Exception e) {
 		        System.err.println("Error initializing Traffic Light System 2: " + e.getMessage());
 		    }
 		}
          
+		/***
+		 * Method adds a Traffic Light System built elsewhere, as loaded from a topology file.
+		 * The first two systems added are the two the control cycle alternates.
+		 * ***/
+		public void addTrafficLightSystem(TrafficLightSystem tls) {
+			if (tls1 == null) {
+				tls1 = tls;
+			} else if (tls2 == null) {
+				tls2 = tls;
+			}
+			listOfTrafficLightSystems.add(tls);
+			shareConfiguration(tls);
+		}
+         
          /**
-         * Method Configures the visual recognition parameters for all associated Visual Recognition Systems.
-         * 
-         * It uses Executor to asynchronously configure of all VRS instances.
-         * Using a fixed thread pool to improve performance and reduce configuration time.
+         * Method Configures the visual recognition parameters for all associated Visual Recognition Systems,
+         * keeping the version, phase timings and strategy of the current configuration.
          * 
-         * - The method logs the successful configuration of each VRS for tracking and verification purposes.
-         * - If the thread pool does not terminate within a specified timeout, it attempts to shut down immediately to release resources.
+         * The configuration is swapped once and handed to each VRS as one immutable object,
+         * a reference set per VRS rather than a VRS by VRS update on a thread pool.
          * 
-         * @param scanFrequency The frequency at which each VRS should perform scans.
-         * @param scanResolution The resolution or detail level each VRS should use for scans.
+         * @param numOfScans The number of traffic scans of each VRS per cycle.
+         * @param scanLengthInSeconds The length of each traffic scan.
          */
          public void configAllVisualRecognitionSystems(int numOfScans, int scanLengthInSeconds) {
-        	 
-        	     this.numOfVisualRecognitionScans = numOfScans;
-        	     this.lengthOfVRScans = scanLengthInSeconds;    // in  seconds
-        	 
-        	     // Create a thread pool with as many threads as there are VRS instances
-             ExecutorService executor = Executors.newFixedThreadPool(listOfTrafficLightSystems.size());
-             
-             try {
-            	     // Iterate over the list of TLSs associated
-                 for (TrafficLightSystem tls : listOfTrafficLightSystems) {
-                	    // Iterate over the list of VRSs associated to each TLS
-                     for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
-                         executor.submit(() -> {
-                             vrs.setNumOfTrafficScans(numOfScans);
-                             vrs.setScanTime(scanLengthInSeconds);
-                             System.out.println("Successfully configured VRS " + vrs.getSYSTEMID() + " in TLS " + tls.getSystemId());
-                         });
-                     }
-                 }
-             } finally {
-                 executor.shutdown();
-                 try {
-                     if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-                         executor.shutdownNow();
-                     }
-                 } catch (InterruptedException ie) {
-                     executor.shutdownNow();
-                     Thread.currentThread().interrupt();
-                 }
-             }
+        	     TrafficControlConfig current;
+        	     TrafficControlConfig next;
+        	     do {
+        	    	     current = config.get();
+        	    	     next = new TrafficControlConfig(current.getVersion(), numOfScans, scanLengthInSeconds,
+        	    	    		 current.getYellowPhaseExtraSeconds(), current.getStrategy(), Collections.emptyMap());
+        	     } while (!config.compareAndSet(current, next));
+        	     publishConfiguration();
+         }
+         
+         /**
+          * Method applies a configuration pushed by the Control Center.
+          * 
+          * @param newConfig the configuration
+          * @return false if this Traffic Control System already runs that version or a newer one, nothing changes then
+          * **/
+         public boolean applyConfiguration(TrafficControlConfig newConfig) {
+        	     TrafficControlConfig current;
+        	     do {
+        	    	     current = config.get();
+        	    	     if (newConfig.getVersion() <= current.getVersion()) {
+        	    	    	     return false;
+        	    	     }
+        	     } while (!config.compareAndSet(current, newConfig));
+        	     publishConfiguration();
+        	     return true;
+         }
+         
+         /**
+          * Method makes every Visual Recognition System adapt the length of its scans to the traffic it sees,
+          * within the given bounds. The observation window of each cycle, and so the cycle timing, does not change.
+          * 
+          * @param referenceRate vehicles per second at which the configured scan length is kept
+          * **/
+         public void enableAdaptiveScans(int minScanMillis, int maxScanMillis, double referenceRate) {
+        	     for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+        	    	     for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+        	    	    	     vrs.enableAdaptiveScans(minScanMillis, maxScanMillis, referenceRate);
+        	    	     }
+        	     }
+         }
+         
+         /*
+          * Method publishes the scan part of the current configuration to every Visual Recognition System.
+          * The function reads the current configuration again on each retry, so when two updates race
+          * the VRSs always end up with the scan part of the one that won the configuration swap.
+          */
+         private void publishConfiguration() {
+        	     VisualRecognitionConfig published = vrsConfig.updateAndGet(previous -> config.get().getVisualRecognitionConfig());
+        	     for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+        	    	     shareConfiguration(tls);
+        	     }
+        	     System.out.println("Traffic Control System " + systemID + " published VRS configuration " + published);
+         }
+         
+         /*
+          * Method hands the configuration published by this TCS to the VRSs of a Traffic Light System
+          */
+         private void shareConfiguration(TrafficLightSystem tls) {
+        	     for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+        	    	     vrs.useConfiguration(vrsConfig.get());     // read at each set, racing publishes end on the winner
+        	     }
          }
          
          
@@ -177,6 +305,36 @@ public class TrafficControlSystem {
 		 * ***/
 		public void startTrafficControlCycle(String state) {
 			
+			if (!claimCycle()) {
+				return;      // a restarted cycle took over, the stale one stops here
+			}
+			int[] depth = cycleDepth.get();
+			depth[0]++;   // the next cycle is started from inside the current one
+			try {
+				this.runTrafficControlCycle(state);
+			} finally {
+				if (--depth[0] == 0 && cycleThread == Thread.currentThread()) {
+					this.endCycles();
+				}
+			}
+		}
+		
+		/*
+		 * Method runs one cycle, the next one is started from the analysis of its data
+		 */
+		private void runTrafficControlCycle(String state) {
+			
+			// a system taken out of operation, for maintenance or moved to another Control Center worker, stops cycling
+			if (!isOperative) {
+				System.out.println("Traffic Control System " + systemID + " is not operative, its cycles stop.");
+				return;
+			}
+			
+			if (resumeRestoredCycle) {
+				resumeRestoredCycle = false;   // re-run the interrupted cycle with the same cycle number
+				cycleCount -= 1;
+			}
+			
 			// Check if the cycle limit has been reached
 	        if (cycleCount >= maxCycles) {
 	            System.out.println("Reached the maximum number of cycles.");
@@ -188,17 +346,55 @@ public class TrafficControlSystem {
 			 * Those 2 extra seconds a safe time to collect and analize the data from 
 			 * the Visual Recognition system and state the set cycle based on that data.
 			 * */				
-			int cycleTimeInSeconds = (this.lengthOfVRScans * this.numOfVisualRecognitionScans) + 4;
+			TrafficControlConfig cycleConfig = this.config.get();   // a configuration pushed meanwhile applies from the next cycle
+			int cycleTimeInSeconds = (cycleConfig.getScanLengthInSeconds() * cycleConfig.getNumOfScans()) + 4;
 					     
             int greenPhaseLength = cycleTimeInSeconds - 4;  // green state length is equal to the cycle time less 2 seconds
-            int yellowPhaseLength = greenPhaseLength + 2 ; // Yellow phase lasts for 2 seconds, and another 2 seconds remains before changin state
+            int yellowPhaseLength = greenPhaseLength + cycleConfig.getYellowPhaseExtraSeconds(); // Yellow phase lasts for 2 seconds by default, and another 2 seconds remains before changin state
             
+            // a signal plan replaces the phase lengths derived from the scan configuration,
+            // the time of day plan is looked up at every cycle start so a new slot takes effect on the next cycle
+            this.switchToScheduledPlan();
+            SignalPlan plan = signalPlan;
+            this.beat(CycleHeartbeats.CYCLE_START, plan != null && offsetPending ? plan.getCycleSeconds() * 1000L : 0);
+            if (plan != null) {
+            	    greenPhaseLength = state.equals("green") ? plan.getMainGreenSeconds() : plan.getSideGreenSeconds();
+            	    yellowPhaseLength = plan.getYellowSeconds();
+            	    this.waitForOffset(plan);
+            }
+            
+            // actuated timing: size the phases from the vehicles counted at the TLS getting the green
+            ActuatedPhaseTimer timer = phaseTimer;
+            if (timer != null) {
+            	    int greenTlsId = state.equals("green") ? tls1.getSystemId() : tls2.getSystemId();
+            	    currentPhasePlan = timer.plan(greenPhaseLength, lastTlsVehicleCounts.getOrDefault(greenTlsId, -1),
+            	    		cycleConfig.getYellowPhaseExtraSeconds());
+            	    greenPhaseLength = currentPhasePlan.getGreenSeconds();
+            	    yellowPhaseLength = plan != null ? plan.getYellowSeconds() : currentPhasePlan.getYellowSeconds();
+            } else {
+            	    currentPhasePlan = null;
+            }
+            
+            // the data deciding the next cycle is collected after the green phase, forecast it now
+            this.precomputeNextCycle(System.currentTimeMillis() + greenPhaseLength * 1000L,
+            		cycleConfig.getScanLengthInSeconds() * cycleConfig.getNumOfScans());
+            
+            this.currentCycleState = state;
             System.out.println("\nStart Traffic Controll Cycle " + (cycleCount += 1)  + " with the initial predifined state...");
+            this.recordCyclePhases(state);
 
-	          	initGreenPhase(state, greenPhaseLength);     // green phase        	
+	          	if (!initGreenPhase(state, greenPhaseLength)) {     // green phase
+	          		this.reportInterruptedCycle();
+	          		return;
+	          	}
 	            
 	          	/** Once the new state is updated, add StateRecord object to list */
-	            tlsStateHistory.add(new StateRecord(tls1.getSystemId(), state));  
+	            historyLock.lock();
+	            try {
+	            	tlsStateHistory.add(new StateRecord(tls1.getSystemId(), state));
+	            } finally {
+	            	historyLock.unlock();
+	            }
 	            
 	          	initYellowPhase( state,  yellowPhaseLength);   // yellow phase  
 	          	initTransitToNextCycle(state);                     // transit to netx cycle
@@ -210,9 +406,16 @@ public class TrafficControlSystem {
 		 * 
 		 * @param state
 		 * @param greenPhaseLength
+		 * @return false if the phase was cut short by an interrupt, or the cycles moved to another thread
 		 * **/
-		public void initGreenPhase(String state, int greenPhaseLength) {
+		public boolean initGreenPhase(String state, int greenPhaseLength) {
+			if (!this.beat(CycleHeartbeats.GREEN, greenPhaseLength * 1000L)) {
+				return false;
+			}
 			this.updateTrafficLightState(state, state.equals("green") ? "red" : "green");
+			greenPhasePlan = currentPhasePlan;     // the green lasts until the next state change, which reports it
+			greenPhaseState = state;
+			greenStartNanos = System.nanoTime();
 			        
 	        System.out.println("\nGREEN PHASE");
             System.out.println("\nTraffic light System 1 state: " + "light 1 " + tls1.getTlA().getState() + "; light 2 " + tls1.getTlB().getState());      
@@ -221,12 +424,200 @@ public class TrafficControlSystem {
 			try {
 				Thread.sleep((greenPhaseLength ) * 1000);
 				
-			    this.startVRSDataCollection(); // start process of traffic data collection
+			    List<Thread> collections = this.startVRSDataCollection(); // start process of traffic data collection
+			    long collectionMillis = this.getCollectionWindowMillis() + COLLECTION_GRACE_MILLIS;
+			    if (!this.beat(CycleHeartbeats.COLLECTING, collectionMillis)) {
+			    	    return false;
+			    }
+			    if (!ControlLoopThreads.joinAll(collections, collectionMillis)) {
+			    	    System.err.println("Traffic Control System " + systemID + " data collection overran "
+			    	    		+ collectionMillis + " ms, the counts so far are analysed");
+			    }
 		        this.analizeTrafficData();     // start data analysing process
+		        return true;
 		     
 			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				Thread.currentThread().interrupt();   // the watchdog found the phase overrunning, or the system is being stopped
+				return false;
+			}
+		}
+		
+		/*
+		 * Method reports a cycle ended by an interrupt. The interrupt is left set so every cycle up the stack
+		 * ends too; the watchdog restarts the cycles on a new thread once their heartbeat is overdue.
+		 */
+		private void reportInterruptedCycle() {
+			if (cycleThread != Thread.currentThread() || !isOperative || !Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			System.err.println("Traffic Control System " + systemID + " cycle " + cycleCount + " was interrupted, its control loop ends");
+		}
+		
+		/***
+		 * Method restarts the cycles on a new control loop thread, when the watchdog finds them stalled or overrunning.
+		 * 
+		 * The new cycles run the given fixed time plan, without actuated timing, so they do not depend on the
+		 * data collection that may have hung. Once a restarted cycle reaches its traffic analysis the plan and
+		 * timer of before the restart are given back. The interrupted cycle is run again with the same cycle number.
+		 * The new thread owns the cycles before it starts, the stale thread is interrupted and stops
+		 * at its next phase if it ever wakes up.
+		 * 
+		 * @param fallbackPlan fixed time plan of the restarted cycles, null to keep the current plan
+		 * **/
+		public void restartCycle(SignalPlan fallbackPlan) {
+			Thread stale = cycleThread;
+			String state = currentCycleState != null ? currentCycleState : "green";
+			restarts++;
+			if (!restarting) {             // a restart of the restarted cycles keeps the plan of before the first one
+				restartPlan = signalPlan;
+				restartTimer = phaseTimer;
+				restarting = true;
+			}
+			restartFallback = fallbackPlan;
+			this.setPhaseTimer(null);
+			if (fallbackPlan != null) {
+				this.usePlan(fallbackPlan);
+			}
+			resumeRestoredCycle = cycleCount > 0;
+			Thread restarted = ControlLoopThreads.newThread("tcs-" + systemID + "-restart-" + restarts,
+					() -> startTrafficControlCycle(state));
+			cycleThread = restarted;
+			restarted.start();
+			if (stale != null) {
+				stale.interrupt();
+			}
+		}
+		
+		/*
+		 * Method gives back the plan and timer the cycles ran before the watchdog restarted them,
+		 * once a restarted cycle completed its green phase and data collection
+		 */
+		private void endRestart() {
+			if (!restarting) {
+				return;
+			}
+			if (restartFallback != null && restartFallback.equals(signalPlan)) {
+				this.usePlan(restartPlan);   // a plan set by hand meanwhile is kept
+			}
+			this.setPhaseTimer(restartTimer);
+			restartPlan = null;
+			restartTimer = null;
+			restartFallback = null;
+			restarting = false;
+			System.out.println("Traffic Control System " + systemID + " recovered from its restart, it resumes its plan");
+		}
+		
+		/*
+		 * Method makes the current thread the one running the cycles if none is,
+		 * false if the cycles were restarted on another thread
+		 */
+		private boolean claimCycle() {
+			Thread owner = cycleThread;
+			if (owner == null) {
+				cycleThread = Thread.currentThread();
+				return true;
+			}
+			return owner == Thread.currentThread();
+		}
+		
+		/*
+		 * Method stamps the heartbeat of a phase about to start, if the cycles are watched
+		 * 
+		 * @return false if the current thread no longer runs the cycles or was interrupted, the phase must not start then
+		 */
+		private boolean beat(int phase, long expectedMillis) {
+			Thread owner = cycleThread;
+			if (owner != null && owner != Thread.currentThread()) {
+				return false;
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				return false;     // the interrupt is left set, it ends the control loop
+			}
+			CycleHeartbeats watched = heartbeats;
+			if (watched != null) {
+				watched.beat(heartbeatSlot, phase, expectedMillis);
+			}
+			return true;
+		}
+		
+		/*
+		 * Method marks the cycles as finished. The watchdog stops watching them once they ran all their cycles
+		 * or the system was stopped, cycles ending early leave their heartbeat to go overdue so they are restarted.
+		 */
+		private void endCycles() {
+			CycleHeartbeats watched = heartbeats;
+			if (watched != null && (!isOperative || cycleCount >= maxCycles)) {
+				watched.idle(heartbeatSlot);
+			}
+			cycleThread = null;
+		}
+		
+		/*
+		 * Method switches to the plan the cache schedules for now, if it is another one.
+		 * A slot without plan runs the plan set by hand. The lookup never blocks: while the schedule
+		 * is being loaded the current plan is kept. While degraded or restarted the cycles keep their
+		 * fallback plan, the schedule applies again once they recovered.
+		 */
+		private void switchToScheduledPlan() {
+			SignalPlanCache cache = planCache;
+			if (cache == null || degraded || restarting) {
+				return;
+			}
+			SignalPlan scheduled = cache.planFor(systemID, System.currentTimeMillis());
+			if (scheduled == null) {
+				if (!cache.isResident(systemID)) {
+					return;
+				}
+				scheduled = defaultPlan;      // no plan scheduled for this slot
+			}
+			if (!Objects.equals(scheduled, signalPlan)) {
+				System.out.println("Traffic Control System " + systemID + " switches to "
+						+ (scheduled != null ? "scheduled plan " + scheduled : "the phases of its scan configuration"));
+				this.usePlan(scheduled);
+			}
+		}
+		
+		/*
+		 * Method makes the cycles run a plan from the next cycle on, without changing the plan set by hand
+		 */
+		private void usePlan(SignalPlan plan) {
+			this.signalPlan = plan;
+			this.offsetPending = plan != null;
+		}
+		
+		/*
+		 * Method holds the first cycle run under a new signal plan until its offset on the common clock,
+		 * so the intersections of a corridor start their greens in the order the plan set
+		 */
+		private void waitForOffset(SignalPlan plan) {
+			if (!offsetPending) {
+				return;
+			}
+			offsetPending = false;
+			long cycleMillis = plan.getCycleSeconds() * 1000L;
+			long waitMillis = Math.floorMod(plan.getOffsetSeconds() * 1000L - System.currentTimeMillis(), cycleMillis);
+			try {
+				Thread.sleep(waitMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		/*
+		 * Method reports the planned, actuated and achieved length of the green phase that is ending, if actuated.
+		 * Called by the state change ending it, so the achieved length covers the data collection the green waited on.
+		 */
+		private void reportGreenPhase() {
+			long start = greenStartNanos;
+			if (start == 0) {
+				return;
+			}
+			greenStartNanos = 0;
+			ActuatedPhaseTimer timer = phaseTimer;
+			ActuatedPhaseTimer.PhasePlan plan = greenPhasePlan;
+			if (timer != null && plan != null) {
+				timer.recordGreen(greenPhaseState.equals("green") ? tls1.getSystemId() : tls2.getSystemId(), plan,
+						(System.nanoTime() - start) / 1_000_000);
 			}
 		}
 		
@@ -237,6 +628,9 @@ public class TrafficControlSystem {
 		 * @param greenPhaseLength
 		 * **/
 		public void initYellowPhase(String state, int yellowPhaseLength) {
+			if (!this.beat(CycleHeartbeats.YELLOW, yellowPhaseLength * 1000L)) {
+				return;
+			}
 			
 			updateTrafficLightState(state.equals("green") ? "yellow" : "red", state.equals("green") ? "red" : "yellow");
 			
@@ -248,8 +642,8 @@ public class TrafficControlSystem {
 				Thread.sleep(yellowPhaseLength * 1000);
 				
 			} catch (InterruptedException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
+				Thread.currentThread().interrupt();     // the transit does not start, the control loop ends
+				System.err.println("Traffic Control System " + systemID + " yellow phase cut short");
 			}
 
 		}
@@ -261,6 +655,9 @@ public class TrafficControlSystem {
 		 * @param the current state
 		 * **/
 		private void initTransitToNextCycle(String state) {
+			if (!this.beat(CycleHeartbeats.TRANSIT, 0)) {
+				return;
+			}
 			
 			updateTrafficLightState(state.equals("green") ? "red" : "green", state.equals("green") ? "green" : "red");
 			
@@ -269,12 +666,63 @@ public class TrafficControlSystem {
 		
 		
 		/**
-		 * Method responsible for updating the state of Traffic Light Systems for each pahse of the cycle
+		 * Method responsible for updating the state of Traffic Light Systems for each pahse of the cycle.
+		 * 
+		 * Both systems are updated inside one system update section of the store, so snapshot readers 
+		 * see either the previous phase or the new one, never a half applied phase.
+		 * The changes are published to the subscribers of the StateChangePublisher once the section ended.
 		 * ***/
 		public void updateTrafficLightState(String stateForTls1, String stateForTls2) {
-			   tls1.updateLightsState(stateForTls1);
-		       tls2.updateLightsState(stateForTls2);
+			   CityStateStore store = CityStateStore.getInstance();
+			   this.reportGreenPhase();
+			   
+			   int previousTls1;
+			   int previousTls2;
+			   int section = store.beginSystemUpdate(tls1.getIndex());    // both systems are in the stripe of this TCS
+			   try {
+				   previousTls1 = tls1.updateLightsState(stateForTls1);
+				   previousTls2 = tls2.updateLightsState(stateForTls2);
+			   } finally {
+				   store.endSystemUpdate(section);
+			   }
+			   this.publishStateChange(tls1, previousTls1, CityStateStore.encodeState(stateForTls1));
+			   this.publishStateChange(tls2, previousTls2, CityStateStore.encodeState(stateForTls2));
 		       System.out.println("\nUpdated states - TLS1: " + stateForTls1 + ", TLS2: " + stateForTls2);    
+		       
+		       TelemetryClient client = telemetry;
+		       if (client != null) {
+		    	       long now = System.currentTimeMillis();
+		    	       client.recordStateChange(tls1.getSystemId(), now, CityStateStore.encodeState(stateForTls1));
+		    	       client.recordStateChange(tls2.getSystemId(), now, CityStateStore.encodeState(stateForTls2));
+		       }
+		}
+		
+		
+		/*
+		 * Method publishes the change of state of a Traffic Light System, if its state changed
+		 */
+		private void publishStateChange(TrafficLightSystem tls, int previousCode, int stateCode) {
+			if (stateCode != previousCode) {
+				StateChangePublisher.getInstance().publish(tls.getIndex(), tls.getSystemId(), previousCode, stateCode);
+			}
+		}
+		
+		
+		/**
+		 * Method records the state each Traffic Light System gets for the new cycle in the phase history,
+		 * with the vehicles it reported in the analysis that led to it.
+		 * ***/
+		private void recordCyclePhases(String stateForTls1) {
+			PhaseHistoryStore history = PhaseHistoryStore.getInstance();
+			if (history == null) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			String stateForTls2 = stateForTls1.equals("green") ? "red" : "green";
+			Map<Integer, Integer> counts = lastTlsVehicleCounts;
+			
+			history.record(tls1.getSystemId(), now, CityStateStore.encodeState(stateForTls1), counts.getOrDefault(tls1.getSystemId(), 0));
+			history.record(tls2.getSystemId(), now, CityStateStore.encodeState(stateForTls2), counts.getOrDefault(tls2.getSystemId(), 0));
 		}
 		
 		
@@ -282,58 +730,216 @@ public class TrafficControlSystem {
 		
 		
 		/**
-		 * Method start procces of traffic data collection of All Visual Recognition Systems
+		 * Method start procces of traffic data collection of All Visual Recognition Systems,
+		 * each TLS starts its VRSs from its own control loop thread
+		 * 
+		 * @return the threads of the TLSs, each one ends when the collections of its VRSs are over
 		 * **/
-		public void startVRSDataCollection() {
-			
-			// Create a thread pool with as many threads as there are TLS instances
-	        ExecutorService executor = Executors.newFixedThreadPool(listOfTrafficLightSystems.size());
+		public List<Thread> startVRSDataCollection() {
 			
+			 List<Thread> collections = new ArrayList<>(listOfTrafficLightSystems.size());
 	         // Iterates through the list of TLSs associated to this TCS
 			 for ( TrafficLightSystem tls :  listOfTrafficLightSystems) {
-				 executor.submit(() -> {
+				 collections.add(ControlLoopThreads.start("tls-" + tls.getSystemId() + "-collection", () -> {
 	               tls.startVRDataCollection(); //VRS are initialized and begin data collection.
-				 });
+				 }));
 	        }
-			// Shutdown the executor after starting all tasks
-		        executor.shutdown();
+			 return collections;
+		}
+		
+		/*
+		 * Method returns the longest time a VRS of this system observes the intersection for in a data collection
+		 */
+		private long getCollectionWindowMillis() {
+			long window = 0;
+			for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+				for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+					window = Math.max(window, vrs.getCollectionWindowMillis());
+				}
+			}
+			return window;
 		}
 		
 		/**
 		 * Method starts the process of traffic data analysing, and reports detailing the traffic data collected 
 		 * by all Visual Recognition Systems (VRS) within each Traffic Light System (TLS).
 		 * 
-		 * It retrieves the data collected from each VRS associated to each of the TLS,
+		 * It retrieves the total of each TLS, which the CityStateStore rolls up from its VRSs as they scan,
 		 * and stores data in a key-value structure Map<TLS_id, totalOfVehicles> to then pass it into compareTLSTrafficData()
 		 * 
+		 * While the circuit breaker of a camera is open the counts are not trusted: the Traffic Light Systems
+		 * take turns on the fixed time plan, without waiting on the camera.
+		 * 
 		 * **/
 		public void analizeTrafficData() {
 			
+			this.endRestart();
+			if (!this.camerasTrusted()) {
+				lastTlsVehicleCounts = Collections.emptyMap();
+				setNextCycle(tls1.getSystemId(), "green".equals(currentCycleState) ? "red" : "green");
+				return;
+			}
+			
 		    Map<Integer, Integer> tlsVehicleCounts = new HashMap<>(); // map to store the total vehicles collected for each TLS id
-                   
-			int totalVehicles = 0;
 			
 			    // loop through the list of Traffic Light Systems
 				for(TrafficLightSystem tls : listOfTrafficLightSystems) {
+					int totalVehicles = tls.getTotalVehicles();   // total of the VRSs of this TLS only
 					System.out.println("Traffic Light System " + tls.getSystemId() + "**REPORT**");
-					
-					// loop through the list of Visual Recognition Ssystems associated to each TLS and retrieve total vehicles count
-					for(VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
-
-			            totalVehicles += vrs.getTotalVehicles();   // grab total vehicle count in current VRS
-			             
-						System.out.println("VRS " + vrs.getSYSTEMID() + "**Total vehicles last scan: **");
-						System.out.println("Total vehicles " + vrs.getTotalVehicles());
-					}
-					
+					System.out.println("Total vehicles last scan " + totalVehicles + " (cars " + tls.getVehicleCount(CityStateStore.CARS)
+							+ ", trucks " + tls.getVehicleCount(CityStateStore.TRUCKS) + ", bikes " + tls.getVehicleCount(CityStateStore.BIKES)
+							+ ", buses " + tls.getVehicleCount(CityStateStore.BUSES) + ")");
 					
 			       tlsVehicleCounts.put(tls.getSystemId(), totalVehicles);  // Store total vehicles count in map
 				}
 				 
+				lastTlsVehicleCounts = tlsVehicleCounts;  // kept for the phase history of the next cycle
+				this.reportScanTelemetry();
 				compareTLSTrafficData(tlsVehicleCounts);  // compare data retrieved
 		}
 		
 		
+		/*
+		 * Method checks the circuit breakers of the cameras of this intersection, degrading to fixed time control
+		 * when one is open and resuming adaptive control once they all closed
+		 * 
+		 * @return true if the counts of every camera can be used
+		 */
+		private boolean camerasTrusted() {
+			long now = System.currentTimeMillis();
+			List<Integer> failing = null;
+			for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+				for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+					if (!vrs.getCircuitBreaker().isClosed(now)) {
+						if (failing == null) {
+							failing = new ArrayList<>();
+						}
+						failing.add(vrs.getSYSTEMID());
+					}
+				}
+			}
+			if (failing == null) {
+				if (degraded) {
+					this.resumeAdaptiveControl();
+				}
+				return true;
+			}
+			if (!degraded) {
+				this.degradeToFixedTime(failing);
+			}
+			return false;
+		}
+		
+		/*
+		 * Method switches the cycles to the fixed time plan, keeping the plan and timer of adaptive control
+		 */
+		private void degradeToFixedTime(List<Integer> failingCameras) {
+			degradations++;
+			adaptivePlan = signalPlan;
+			adaptiveTimer = phaseTimer;
+			this.setPhaseTimer(null);
+			SignalPlan fallback = fixedTimeFallback;
+			if (fallback != null) {
+				this.usePlan(fallback);
+			}
+			degraded = true;
+			System.out.println("Traffic Control System " + systemID + " degrades to fixed time control, circuit breaker open for VRS "
+					+ failingCameras);
+		}
+		
+		/*
+		 * Method gives the cycles back the plan and timer they ran before degrading
+		 */
+		private void resumeAdaptiveControl() {
+			if (fixedTimeFallback != null && fixedTimeFallback.equals(signalPlan)) {
+				this.usePlan(adaptivePlan);   // a plan set by hand meanwhile is kept
+			}
+			this.setPhaseTimer(adaptiveTimer);
+			adaptivePlan = null;
+			adaptiveTimer = null;
+			degraded = false;
+			System.out.println("Traffic Control System " + systemID + " resumes adaptive control, its cameras recovered");
+		}
+		
+		
+		/**
+		 * Method pre-computes the likely next cycle decision from the forecasts of the Traffic Light Systems,
+		 * so when the data arrives it is only confirmed or adjusted, and a missing data collection still has a decision.
+		 * 
+		 * @param windowStart time the data collection deciding the next cycle starts
+		 * @param windowSeconds length of that data collection
+		 * **/
+		private void precomputeNextCycle(long windowStart, int windowSeconds) {
+			Map<Integer, Integer> forecast = new HashMap<>();
+			for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+				int vehicles = tls.forecastVehicles(windowStart, windowSeconds);
+				if (vehicles < 0) {     // no scan yet, nothing to forecast from
+					forecastTlsVehicleCounts = Collections.emptyMap();
+					predictedGreenTlsId = -1;
+					return;
+				}
+				forecast.put(tls.getSystemId(), vehicles);
+			}
+			forecastTlsVehicleCounts = forecast;
+			predictedGreenTlsId = forecast.size() >= 2 ? greenTlsOf(forecast) : -1;
+		}
+		
+		/*
+		 * Method returns the Traffic Light System with more traffic, the first one on a tie
+		 */
+		private int greenTlsOf(Map<Integer, Integer> tlsVehicleCounts) {
+			Integer[] tlsIds = tlsVehicleCounts.keySet().toArray(new Integer[0]);
+			return tlsVehicleCounts.get(tlsIds[0]) >= tlsVehicleCounts.get(tlsIds[1]) ? tlsIds[0] : tlsIds[1];
+		}
+		
+		/*
+		 * Method checks the decision taken with fresh data against the pre-computed one
+		 */
+		private void confirmForecast(int greenTlsId) {
+			int predicted = predictedGreenTlsId;
+			if (predicted < 0) {
+				return;
+			}
+			if (predicted == greenTlsId) {
+				forecastsConfirmed++;
+				System.out.println("Forecast confirmed: TLS " + greenTlsId + " gets the next green");
+			} else {
+				forecastsAdjusted++;
+				System.out.println("Forecast adjusted: TLS " + greenTlsId + " gets the next green, forecast was TLS " + predicted);
+			}
+		}
+		
+		
+		/**
+		 * Method sends the vehicles counted and the anomalies found by every Visual Recognition System 
+		 * to the Control Center, if the telemetry stream is connected.
+		 * **/
+		private void reportScanTelemetry() {
+			TelemetryClient client = telemetry;
+			if (client == null) {
+				return;
+			}
+			CityStateStore store = CityStateStore.getInstance();
+			long now = System.currentTimeMillis();
+			
+			for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+				for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+					int index = vrs.getIndex();
+					client.recordScan(vrs.getSYSTEMID(), now, vrs.getConfigVersion(),
+							store.getVehicleCount(index, CityStateStore.CARS),
+							store.getVehicleCount(index, CityStateStore.TRUCKS),
+							store.getVehicleCount(index, CityStateStore.BIKES),
+							store.getVehicleCount(index, CityStateStore.BUSES));
+					
+					int anomalies = store.getAnomalies(index);
+					if (anomalies > 0) {
+						client.recordAnomalies(vrs.getSYSTEMID(), now, anomalies);
+					}
+				}
+			}
+		}
+		
+		
 		/**
 		 * Method compares the traffic data of each of the Traffic Ligth Systems, 
 		 * and sets the next state of the Traffic Light Systems for the next traffic control cycle.
@@ -344,12 +950,22 @@ public class TrafficControlSystem {
 		 * */
 		public void compareTLSTrafficData(Map<Integer, Integer> tlsVehicleCounts) {
 			
-			// check if  hashmap is empty or null
+			// check if  hashmap is empty or null, fall back on the forecast if there is one
+		    if ((tlsVehicleCounts == null || tlsVehicleCounts.isEmpty()) && forecastTlsVehicleCounts.size() >= 2) {
+		    	    System.out.println("No traffic data available, the next cycle is decided on the forecast.");
+		    	    tlsVehicleCounts = forecastTlsVehicleCounts;
+		    }
 		    if (tlsVehicleCounts == null || tlsVehicleCounts.isEmpty()) {
 		        System.out.println("No traffic data available to compare.");
 		        return;
 		    }
 		    
+		    // fixed time strategy: the Traffic Light Systems take turns whatever the traffic
+		    if (config.get().getStrategy() == ControlStrategy.FIXED_TIME) {
+		    	    setNextCycle(tls1.getSystemId(), "green".equals(currentCycleState) ? "red" : "green");
+		    	    return;
+		    }
+		    
 		    // store the Traffic Systems id form the map into an array
 		    Integer[] tlsIds = tlsVehicleCounts.keySet().toArray(new Integer[0]);
 		    
@@ -360,6 +976,8 @@ public class TrafficControlSystem {
 		    Integer vehiclesCountTLS1 = tlsVehicleCounts.get(tlsIds[0]);
 	        Integer vehiclesCountTLS2 = tlsVehicleCounts.get(tlsIds[1]);
 	        
+	        this.confirmForecast(greenTlsOf(tlsVehicleCounts));
+	        
 	        if(vehiclesCountTLS1 >= vehiclesCountTLS2) {
 	        	    setNextCycle(tls1id, "green");
 	        }else {
@@ -375,16 +993,23 @@ public class TrafficControlSystem {
 		* **/
 		public void setNextCycle(int nextTLSId, String nextState) {
 		
-			     int tlsStateHistorySize = tlsStateHistory.size();
+			     StateRecord currentRecord = null;
+			     StateRecord lastRecord = null;
+			     historyLock.lock();
+			     try {
+			    	 int tlsStateHistorySize = tlsStateHistory.size();
+			    	 if (tlsStateHistorySize >= 2) {
+			    		 currentRecord = tlsStateHistory.get(tlsStateHistorySize - 1);
+			    		 lastRecord = tlsStateHistory.get(tlsStateHistorySize - 2);
+			    	 }
+			     } finally {
+			    	 historyLock.unlock();
+			     }
 			     
 				// check if states history has more than 1 records stored
-				if(tlsStateHistory.size() >= 2) {
+				if(currentRecord != null) {
 					
-					// grab values of the last Traffic Light System with a green state 
-			        StateRecord currentRecord = tlsStateHistory.get(tlsStateHistorySize - 1);
-					
-					// grab values of the last Traffic Light System with a green state 
-			        StateRecord lastRecord = tlsStateHistory.get(tlsStateHistorySize - 2);
+					// currentRecord and lastRecord hold the last two Traffic Light Systems with a green state
 					
 			        // Preventing three consecutive green states for the same TLS
 					if(currentRecord.getState().equals("green") && currentRecord.getTLSID() == lastRecord.getTLSID() &&
@@ -408,6 +1033,40 @@ public class TrafficControlSystem {
 				
 		
 
+		/***
+		 * Method restores the controller state saved by a checkpoint.
+		 * 
+		 * Must be called before the cycle is started, the next call to startTrafficControlCycle() 
+		 * carries on from the restored cycle count and history.
+		 * A run that had already finished its cycles is not resumed, the next run starts from the predefined state.
+		 * 
+		 * The interrupted cycle is run again from its start with its restored state, not from the phase and 
+		 * time left it had. This is deliberate: the phases are timed by sleeps of the thread that died, so the time 
+		 * left is unknown, and the cycle start is the only point where the lights are known to agree with the phase 
+		 * order. Rerunning it gives the running direction one more full green at most, it never skips a yellow.
+		 * 
+		 * @param cycleCount number of cycles already run
+		 * @param cycleState predefined state of the cycle that was running
+		 * @param history records of the Traffic Light Systems with a "green" state
+		 * **/
+		public void restoreControllerState(int cycleCount, String cycleState, List<StateRecord> history) {
+			if (cycleCount >= maxCycles) {
+				return;
+			}
+			this.cycleCount = cycleCount;
+			this.currentCycleState = cycleState;
+			this.resumeRestoredCycle = cycleState != null && cycleCount > 0;   // the interrupted cycle is run again from its start
+			
+			historyLock.lock();
+			try {
+				tlsStateHistory.clear();
+				tlsStateHistory.addAll(history);
+			} finally {
+				historyLock.unlock();
+			}
+		}
+		
+		
 		// setters
 		
 		/**
@@ -431,6 +1090,28 @@ public class TrafficControlSystem {
 			this.isOperative = status;
 		}
 		
+		/**
+		 * Set first id of the Traffic Light Systems, lights and VRSs initTrafficLightSystems() builds, so they keep
+		 * their ids across restarts. Each TLS takes COMPONENT_IDS_PER_TLS ids in a row, 0 hands out new ids.
+		 * */
+		public void setFirstComponentId(int firstComponentId) {
+			this.firstComponentId = firstComponentId;
+		}
+		
+		/**
+		 * Set client streaming the telemetry to the Control Center, null to stop reporting
+		 * */
+		public void setTelemetryClient(TelemetryClient telemetry) {
+			this.telemetry = telemetry;
+		}
+		
+		/**
+		 * Set client of the command stream opened with the Control Center, null when not connected
+		 * */
+		public void setCommandClient(CommandClient commands) {
+			this.commands = commands;
+		}
+		
 		
 		
 		// getters
@@ -462,6 +1143,179 @@ public class TrafficControlSystem {
 		public boolean isOperative() {
 			return isOperative;
 		}
+		
+		/**
+		 * Get vehicles of one class last counted by the VRSs of all Traffic Light Systems of this system,
+		 * as rolled up by the CityStateStore
+		 * */
+		public int getVehicleCount(int vehicleClass) {
+			CityStateStore store = CityStateStore.getInstance();
+			int index = store.indexOfTrafficControlSystem(systemID);
+			return index < 0 ? 0 : store.getTrafficControlSystemVehicleCount(index, vehicleClass);
+		}
+		
+		/**
+		 * Get vehicles of all classes last counted by the VRSs of all Traffic Light Systems of this system
+		 * */
+		public int getTotalVehicles() {
+			CityStateStore store = CityStateStore.getInstance();
+			int index = store.indexOfTrafficControlSystem(systemID);
+			return index < 0 ? 0 : store.getTrafficControlSystemTotalVehicles(index);
+		}
+		
+		/**
+		 * Set signal plan giving the phase lengths and offset of the cycles, null to derive the phases 
+		 * from the scan configuration. It applies from the next cycle, which starts at the offset of the plan.
+		 * */
+		public void setSignalPlan(SignalPlan signalPlan) {
+			this.defaultPlan = signalPlan;
+			this.usePlan(signalPlan);
+		}
+		
+		/**
+		 * Set registry the cycles and the data collections of the Traffic Light Systems stamp their heartbeats in.
+		 * Called once the Traffic Light Systems are initialised, before the cycles start.
+		 * */
+		public void setHeartbeats(CycleHeartbeats heartbeats) {
+			this.heartbeatSlot = heartbeats.register(CycleHeartbeats.CYCLE, systemID);
+			for (TrafficLightSystem tls : listOfTrafficLightSystems) {
+				tls.setHeartbeats(heartbeats);
+			}
+			this.heartbeats = heartbeats;
+		}
+		
+		/**
+		 * Set fixed time plan the cycles run while the circuit breaker of a camera is open,
+		 * null to keep the current phases without actuated timing
+		 * */
+		public void setFixedTimeFallback(SignalPlan fixedTimeFallback) {
+			this.fixedTimeFallback = fixedTimeFallback;
+		}
+		
+		/**
+		 * Get whether the cycles run on fixed time because the circuit breaker of a camera is open
+		 * */
+		public boolean isDegraded() {
+			return degraded;
+		}
+		
+		/**
+		 * Get number of times the cycles degraded to fixed time control
+		 * */
+		public int getDegradations() {
+			return degradations;
+		}
+		
+		/**
+		 * Get number of times the cycles were restarted by the watchdog
+		 * */
+		public int getRestarts() {
+			return restarts;
+		}
+		
+		/**
+		 * Set cache of time of day plans looked up at every cycle start, null to keep the plan set by hand
+		 * */
+		public void setPlanCache(SignalPlanCache planCache) {
+			this.planCache = planCache;
+		}
+		
+		/**
+		 * Get signal plan of the cycles, null if the phases are derived from the scan configuration
+		 * */
+		public SignalPlan getSignalPlan() {
+			return signalPlan;
+		}
+		
+		/**
+		 * Set timer sizing the phases from the vehicles counted, null to size them from the scan configuration only.
+		 * It applies from the next cycle.
+		 * */
+		public void setPhaseTimer(ActuatedPhaseTimer phaseTimer) {
+			this.phaseTimer = phaseTimer;
+		}
+		
+		/**
+		 * Get timer sizing the phases from the vehicles counted, null if phases are not actuated
+		 * */
+		public ActuatedPhaseTimer getPhaseTimer() {
+			return phaseTimer;
+		}
+		
+		/**
+		 * Get current configuration
+		 * */
+		public TrafficControlConfig getConfiguration() {
+			return config.get();
+		}
+		
+		/**
+		 * Get scan configuration currently published to the Visual Recognition Systems
+		 * */
+		public VisualRecognitionConfig getVisualRecognitionConfig() {
+			return vrsConfig.get();
+		}
+		
+		/**
+		 * Get number of next cycle decisions the fresh data took as forecast
+		 * */
+		public int getForecastsConfirmed() {
+			return forecastsConfirmed;
+		}
+		
+		/**
+		 * Get number of next cycle decisions the fresh data changed from the forecast
+		 * */
+		public int getForecastsAdjusted() {
+			return forecastsAdjusted;
+		}
+		
+		/**
+		 * Get number of cycles run so far
+		 * */
+		public int getCycleCount() {
+			return cycleCount;
+		}
+		
+		/**
+		 * Get predefined state the running cycle started with, null if no cycle started yet
+		 * */
+		public String getCurrentCycleState() {
+			return currentCycleState;
+		}
+		
+		/**
+		 * Get a copy of the history of the Traffic Light Sytems with a "green" state
+		 * */
+		public List<StateRecord> getStateHistory() {
+			historyLock.lock();
+			try {
+				return new ArrayList<>(tlsStateHistory);
+			} finally {
+				historyLock.unlock();
+			}
+		}
+		
+		/**
+		 * Get list of Traffic Light Systems controlled by this Traffic Control System
+		 * */
+		public List<TrafficLightSystem> getTrafficLightSystems() {
+			return listOfTrafficLightSystems;
+		}
+		
+		/**
+		 * Get client streaming the telemetry to the Control Center, null when not connected
+		 * */
+		public TelemetryClient getTelemetryClient() {
+			return telemetry;
+		}
+		
+		/**
+		 * Get client of the command stream opened with the Control Center, null when not connected
+		 * */
+		public CommandClient getCommandClient() {
+			return commands;
+		}
 
 	/**
 	 * @param args
@@ -0,0 +1,84 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Class is a growable byte array the vehicle count blocks are encoded into.
+ *
+ * Appends only ever write past the current length, so a reader that captured
+ * the array and its length can keep decoding that prefix while new samples are appended.
+ */
+final class ByteArrayBuilder {
+
+	// vars
+	private byte[] bytes;
+	private int length;
+
+	/**
+	 * Initialises a builder with the given initial capacity
+	 * **/
+	ByteArrayBuilder(int capacity) {
+		this.bytes = new byte[capacity];
+		this.length = 0;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method appends an unsigned varint
+	 * **/
+	void writeVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte) value;
+	}
+
+	/***
+	 * Method appends a signed value as a zigzag varint
+	 * **/
+	void writeSignedVarLong(long value) {
+		writeVarLong(VarInts.zigZag(value));
+	}
+
+	/***
+	 * Method copies the encoded bytes into the buffer
+	 * **/
+	void writeTo(ByteBuffer buffer) {
+		buffer.put(bytes, 0, length);
+	}
+
+	/***
+	 * Method returns a read only view of the first n bytes.
+	 * The array may be replaced by later appends, but never the bytes already written.
+	 * **/
+	ByteBuffer view(int n) {
+		return ByteBuffer.wrap(bytes, 0, n).slice().asReadOnlyBuffer();
+	}
+
+	/*
+	 * Method grows the array so that n more bytes fit
+	 */
+	private void ensureCapacity(int n) {
+		if (length + n > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, length + n));
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of bytes written
+	 */
+	int length() {
+		return length;
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class gives a consistent view of one time partition of a TimeSeriesStore:
+ * the segment files sealed for it plus the blocks still in memory, of the current partition
+ * or of a partition waiting to be sealed.
+ *
+ * A sample is in exactly one of them, the view is taken under the write lock of the store.
+ */
+public final class Partition {
+
+	// vars
+	private final long start;
+	private final long end;
+	private final List<SegmentFile> segments;
+	private final List<SeriesBlock> activeBlocks;
+
+	/**
+	 * Initialises a partition view
+	 * **/
+	Partition(long start, long end, List<SegmentFile> segments, List<SeriesBlock> activeBlocks) {
+		this.start = start;
+		this.end = end;
+		this.segments = Collections.unmodifiableList(segments);
+		this.activeBlocks = Collections.unmodifiableList(activeBlocks);
+	}
+
+
+	// getters
+
+	/**
+	 * Get start of the partition in milliseconds since epoch
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * Get end of the partition, exclusive
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Get sealed segment files of the partition
+	 */
+	public List<SegmentFile> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Get blocks not yet sealed, empty unless this is the current partition or it is waiting to be sealed
+	 */
+	public List<SeriesBlock> getActiveBlocks() {
+		return activeBlocks;
+	}
+}
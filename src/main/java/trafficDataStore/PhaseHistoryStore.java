@@ -0,0 +1,80 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Class keeps the state every Traffic Light System was given at the start of each Traffic Control cycle,
+ * together with the vehicles it had reported when that decision was made.
+ *
+ * One series per TLS ID, two columns per sample:
+ * - STATE: the CityStateStore state code the TLS got for the cycle.
+ * - VEHICLES: vehicles reported by the TLS in the analysis that preceded the cycle.
+ */
+public class PhaseHistoryStore extends TimeSeriesStore {
+
+	// vars
+	public static final int STATE = 0;
+	public static final int VEHICLES = 1;
+	private static final String SEGMENT_PREFIX = "phases-";
+
+	private static volatile PhaseHistoryStore instance;     // read without a lock by the control loops
+
+	/*
+	 * Initialises a store over the given directory
+	 */
+	private PhaseHistoryStore(Path directory, long partitionMillis) throws IOException {
+		super(directory, SEGMENT_PREFIX, 2, partitionMillis);
+	}
+
+	/***
+	 * Static method opens the store kept in the given directory and makes it the shared instance
+	 *
+	 * @param directory directory of the segment files
+	 * @param partitionMillis length of a time partition, one segment file is sealed per partition
+	 * @throws IOException if the directory or a segment could not be read
+	 * **/
+	public static synchronized PhaseHistoryStore open(Path directory, long partitionMillis) throws IOException {
+		instance = new PhaseHistoryStore(directory, partitionMillis);
+		return instance;
+	}
+
+	/***
+	 * Static method returns the shared store, or null if no store has been opened.
+	 * It takes no monitor, so control loops on virtual threads are never pinned here.
+	 * **/
+	public static PhaseHistoryStore getInstance() {
+		return instance;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method records the state a TLS got for a new cycle
+	 *
+	 * @param tlsId ID of the Traffic Light System
+	 * @param timestamp start of the cycle in milliseconds since epoch
+	 * @param stateCode CityStateStore state code given to the TLS
+	 * @param vehicles vehicles the TLS reported before the decision
+	 * **/
+	public void record(int tlsId, long timestamp, int stateCode, int vehicles) {
+		append(tlsId, timestamp, stateCode, vehicles, 0, 0);
+	}
+
+	/***
+	 * Method seals the pending partitions, releases the segment files and closes the shared store
+	 * **/
+	@Override
+	public void close() throws IOException {
+		super.close();
+		synchronized (PhaseHistoryStore.class) {
+			if (instance == this) {
+				instance = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+/**
+ * Callback receiving whole samples of a series, all columns at once.
+ */
+@FunctionalInterface
+public interface RowConsumer {
+
+	/***
+	 * Method receives one sample
+	 *
+	 * @param seriesId ID of the series (VRS or TLS ID) the sample belongs to
+	 * @param timestamp time of the sample in milliseconds since epoch
+	 * @param values value of every column, the array is reused and must not be kept
+	 * **/
+	void accept(int seriesId, long timestamp, int[] values);
+}
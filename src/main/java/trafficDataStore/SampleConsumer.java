@@ -0,0 +1,19 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+/**
+ * Callback receiving the samples of a vehicle count series, one call per traffic scan.
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+
+	/***
+	 * Method receives the vehicles counted by one traffic scan
+	 *
+	 * @param timestamp time of the scan in milliseconds since epoch
+	 * @param count vehicles counted
+	 * **/
+	void accept(long timestamp, int count);
+}
@@ -0,0 +1,247 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Class represents a sealed, read only segment file holding the blocks
+ * of every series (VRS or TLS) of a TimeSeriesStore for one time partition.
+ *
+ * Layout:
+ * - Header: magic, format version, number of value columns, partition start, partition end, number of series.
+ * - Index: one fixed size entry per series, sorted by series ID:
+ *   series ID, sample count, min and max timestamp, data offset, length of each column,
+ *   sum and max of each column.
+ * - Data: the encoded columns of every series, in index order.
+ *
+ * The file is memory mapped and the index is binary searched in place, so opening
+ * a segment and finding a series allocates nothing but the returned block.
+ */
+public class SegmentFile {
+
+	// vars
+	private static final int MAGIC = 0x54534547;   // "TSEG"
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8 + 4;
+
+	private final Path path;
+	private final int columns;
+	private final int entryBytes;
+	private final long partitionStart;
+	private final long partitionEnd;
+	private final int seriesCount;
+	private final ByteBuffer buffer;
+
+	/*
+	 * Initialises a segment over its mapped file
+	 */
+	private SegmentFile(Path path, ByteBuffer buffer) throws IOException {
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("File " + path + " is not a time series segment");
+		}
+		this.path = path;
+		this.buffer = buffer;
+		this.columns = buffer.getInt(8);
+		this.entryBytes = entryBytes(columns);
+		this.partitionStart = buffer.getLong(12);
+		this.partitionEnd = buffer.getLong(20);
+		this.seriesCount = buffer.getInt(28);
+	}
+
+
+	/***
+	 * Method opens an existing segment file
+	 * **/
+	public static SegmentFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			mapped.order(ByteOrder.BIG_ENDIAN);
+			return new SegmentFile(path, mapped);
+		}
+	}
+
+	/***
+	 * Method writes the given series, sorted by series ID, as a new segment file and opens it.
+	 * The file is written next to its final name and moved in place once complete.
+	 * **/
+	static SegmentFile write(Path path, int columns, long partitionStart, long partitionEnd, List<SeriesWriter> series)
+			throws IOException {
+
+		long dataOffset = HEADER_BYTES + (long) entryBytes(columns) * series.size();
+		long size = dataOffset;
+		for (SeriesWriter writer : series) {
+			size += writer.encodedLength();
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Segment " + path + " would exceed 2 GB, use a shorter partition length");
+		}
+
+		ByteBuffer content = ByteBuffer.allocate((int) size);
+		content.putInt(MAGIC);
+		content.putInt(FORMAT_VERSION);
+		content.putInt(columns);
+		content.putLong(partitionStart);
+		content.putLong(partitionEnd);
+		content.putInt(series.size());
+
+		long offset = dataOffset;
+		for (SeriesWriter writer : series) {
+			writer.writeIndexEntry(content, offset);
+			offset += writer.encodedLength();
+		}
+		for (SeriesWriter writer : series) {
+			writer.writeData(content);
+		}
+		content.flip();
+
+		Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (content.hasRemaining()) {
+				channel.write(content);
+			}
+			channel.force(true);
+		}
+		Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return open(path);
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method finds the block of the given series, or returns null if the series has no samples in this segment
+	 * **/
+	public SeriesBlock find(int seriesId) {
+		int low = 0;
+		int high = seriesCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midId = buffer.getInt(entryOffset(mid));
+			if (midId < seriesId) {
+				low = mid + 1;
+			} else if (midId > seriesId) {
+				high = mid - 1;
+			} else {
+				return blockAt(mid);
+			}
+		}
+		return null;
+	}
+
+	/***
+	 * Method decodes the index entry at the given position into a block
+	 * **/
+	public SeriesBlock blockAt(int position) {
+		int entry = entryOffset(position);
+
+		int seriesId = buffer.getInt(entry);
+		int count = buffer.getInt(entry + 4);
+		long minTimestamp = buffer.getLong(entry + 8);
+		long maxTimestamp = buffer.getLong(entry + 16);
+		int offset = (int) buffer.getLong(entry + 24);
+		int timestampBytes = buffer.getInt(entry + 32);
+
+		int cursor = entry + 36;
+		int[] valueBytes = new int[columns];
+		for (int c = 0; c < columns; c++, cursor += 4) {
+			valueBytes[c] = buffer.getInt(cursor);
+		}
+		long[] sums = new long[columns];
+		for (int c = 0; c < columns; c++, cursor += 8) {
+			sums[c] = buffer.getLong(cursor);
+		}
+		int[] maxes = new int[columns];
+		for (int c = 0; c < columns; c++, cursor += 4) {
+			maxes[c] = buffer.getInt(cursor);
+		}
+
+		ByteBuffer timestamps = slice(offset, timestampBytes);
+		offset += timestampBytes;
+		ByteBuffer[] values = new ByteBuffer[columns];
+		for (int c = 0; c < columns; c++) {
+			values[c] = slice(offset, valueBytes[c]);
+			offset += valueBytes[c];
+		}
+		return new SeriesBlock(seriesId, count, minTimestamp, maxTimestamp, sums, maxes, timestamps, values);
+	}
+
+	/*
+	 * Method returns the file offset of an index entry
+	 */
+	private int entryOffset(int position) {
+		return HEADER_BYTES + position * entryBytes;
+	}
+
+	/*
+	 * Method returns the size of an index entry for the given number of value columns
+	 */
+	private static int entryBytes(int columns) {
+		return 4 + 4 + 8 + 8 + 8 + 4 + columns * (4 + 8 + 4);
+	}
+
+	/*
+	 * Method returns an independent view over a region of the file
+	 */
+	private ByteBuffer slice(int offset, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset).limit(offset + length);
+		return view.slice();
+	}
+
+	/***
+	 * Method checks if the segment partition overlaps the range [from, to)
+	 * **/
+	public boolean overlaps(long from, long to) {
+		return partitionStart < to && partitionEnd > from;
+	}
+
+
+	// getters
+
+	/**
+	 * Get path of the segment file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Get start of the time partition, inclusive
+	 */
+	public long getPartitionStart() {
+		return partitionStart;
+	}
+
+	/**
+	 * Get end of the time partition, exclusive
+	 */
+	public long getPartitionEnd() {
+		return partitionEnd;
+	}
+
+	/**
+	 * Get number of value columns of every series
+	 */
+	public int getColumnCount() {
+		return columns;
+	}
+
+	/**
+	 * Get number of series in the segment
+	 */
+	public int getSeriesCount() {
+		return seriesCount;
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class represents the samples of one series (one VRS or one TLS) within one time partition.
+ *
+ * The block is stored in columns:
+ * - Timestamps: the first one as a varint, the second as a zigzag delta, the rest as zigzag delta of delta.
+ *   Scans and cycles run at a fixed pace, so most timestamps take a single 0 byte.
+ * - One varint column per value, for example one per vehicle class.
+ *
+ * The block also keeps the count, time range, sum and maximum of each column,
+ * so aggregate queries covering the whole block never decode it and
+ * filters can skip blocks that can not match.
+ */
+public class SeriesBlock {
+
+	// vars
+	private final int seriesId;
+	private final int count;
+	private final long minTimestamp;
+	private final long maxTimestamp;
+	private final long[] sums;
+	private final int[] maxes;
+	private final ByteBuffer timestamps;
+	private final ByteBuffer[] values;
+
+	/**
+	 * Initialises a block over already encoded columns
+	 * **/
+	SeriesBlock(int seriesId, int count, long minTimestamp, long maxTimestamp, long[] sums, int[] maxes,
+			ByteBuffer timestamps, ByteBuffer[] values) {
+		this.seriesId = seriesId;
+		this.count = count;
+		this.minTimestamp = minTimestamp;
+		this.maxTimestamp = maxTimestamp;
+		this.sums = sums;
+		this.maxes = maxes;
+		this.timestamps = timestamps;
+		this.values = values;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method checks if any sample of the block may fall in the range [from, to)
+	 * **/
+	public boolean overlaps(long from, long to) {
+		return count > 0 && minTimestamp < to && maxTimestamp >= from;
+	}
+
+	/***
+	 * Method checks if every sample of the block falls in the range [from, to)
+	 * **/
+	public boolean isCoveredBy(long from, long to) {
+		return minTimestamp >= from && maxTimestamp < to;
+	}
+
+	/***
+	 * Method decodes the block and passes every sample of one column in the range [from, to) to the consumer.
+	 *
+	 * @param column column index, or TimeSeriesStore.ALL_COLUMNS for the sum of all columns
+	 * **/
+	public void forEach(int column, long from, long to, SampleConsumer consumer) {
+		if (!overlaps(from, to)) {
+			return;
+		}
+
+		ByteBuffer ts = timestamps.duplicate();
+		ByteBuffer single = column == TimeSeriesStore.ALL_COLUMNS ? null : values[column].duplicate();
+		ByteBuffer[] all = single == null ? duplicates() : null;
+
+		long timestamp = 0;
+		long delta = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0) {
+				timestamp = VarInts.readVarLong(ts);
+			} else if (i == 1) {
+				delta = VarInts.readSignedVarLong(ts);
+				timestamp += delta;
+			} else {
+				delta += VarInts.readSignedVarLong(ts);
+				timestamp += delta;
+			}
+
+			int value;
+			if (single != null) {
+				value = (int) VarInts.readVarLong(single);
+			} else {
+				value = 0;
+				for (ByteBuffer columnValues : all) {
+					value += (int) VarInts.readVarLong(columnValues);
+				}
+			}
+
+			if (timestamp >= from && timestamp < to) {
+				consumer.accept(timestamp, value);
+			}
+		}
+	}
+
+	/***
+	 * Method decodes the block and passes every sample in the range [from, to), with all its columns, to the consumer.
+	 * The values array is reused between samples.
+	 * **/
+	public void forEachRow(long from, long to, RowConsumer consumer) {
+		if (!overlaps(from, to)) {
+			return;
+		}
+
+		ByteBuffer ts = timestamps.duplicate();
+		ByteBuffer[] columns = duplicates();
+		int[] row = new int[columns.length];
+
+		long timestamp = 0;
+		long delta = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0) {
+				timestamp = VarInts.readVarLong(ts);
+			} else if (i == 1) {
+				delta = VarInts.readSignedVarLong(ts);
+				timestamp += delta;
+			} else {
+				delta += VarInts.readSignedVarLong(ts);
+				timestamp += delta;
+			}
+			for (int c = 0; c < columns.length; c++) {
+				row[c] = (int) VarInts.readVarLong(columns[c]);
+			}
+
+			if (timestamp >= from && timestamp < to) {
+				consumer.accept(seriesId, timestamp, row);
+			}
+		}
+	}
+
+	/*
+	 * Method duplicates every value column so decoding does not move the shared positions
+	 */
+	private ByteBuffer[] duplicates() {
+		ByteBuffer[] copies = new ByteBuffer[values.length];
+		for (int c = 0; c < values.length; c++) {
+			copies[c] = values[c].duplicate();
+		}
+		return copies;
+	}
+
+
+	// getters
+
+	/**
+	 * Get ID of the series (VRS or TLS ID) the block belongs to
+	 */
+	public int getSeriesId() {
+		return seriesId;
+	}
+
+	/**
+	 * Get number of samples in the block
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Get number of value columns
+	 */
+	public int getColumnCount() {
+		return values.length;
+	}
+
+	/**
+	 * Get time of the earliest sample
+	 */
+	public long getMinTimestamp() {
+		return minTimestamp;
+	}
+
+	/**
+	 * Get time of the latest sample
+	 */
+	public long getMaxTimestamp() {
+		return maxTimestamp;
+	}
+
+	/**
+	 * Get sum of all samples of a column, or of all columns
+	 */
+	public long getSum(int column) {
+		if (column != TimeSeriesStore.ALL_COLUMNS) {
+			return sums[column];
+		}
+		long total = 0;
+		for (long sum : sums) {
+			total += sum;
+		}
+		return total;
+	}
+
+	/**
+	 * Get largest sample of a column.
+	 * For all columns together it is an upper bound, the sum of each column maximum.
+	 */
+	public int getMax(int column) {
+		if (column != TimeSeriesStore.ALL_COLUMNS) {
+			return maxes[column];
+		}
+		int bound = 0;
+		for (int max : maxes) {
+			bound += max;
+		}
+		return bound;
+	}
+}
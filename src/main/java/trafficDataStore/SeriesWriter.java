@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class encodes one series (the samples of one VRS or TLS) for the active time partition.
+ *
+ * Not thread safe, the TimeSeriesStore serialises appends.
+ */
+final class SeriesWriter {
+
+	// vars
+	private static final int INITIAL_COLUMN_BYTES = 64;
+
+	final int seriesId;
+	private int count;
+	private long minTimestamp;
+	private long maxTimestamp;
+	private long lastTimestamp;
+	private long lastDelta;
+	private final long[] sums;
+	private final int[] maxes;
+
+	// objects
+	private final ByteArrayBuilder timestamps;
+	private final ByteArrayBuilder[] values;
+
+	/**
+	 * Initialises an empty series with the given number of value columns
+	 * **/
+	SeriesWriter(int seriesId, int columns) {
+		this.seriesId = seriesId;
+		this.minTimestamp = Long.MAX_VALUE;
+		this.maxTimestamp = Long.MIN_VALUE;
+		this.sums = new long[columns];
+		this.maxes = new int[columns];
+		this.timestamps = new ByteArrayBuilder(INITIAL_COLUMN_BYTES);
+		this.values = new ByteArrayBuilder[columns];
+		for (int c = 0; c < columns; c++) {
+			values[c] = new ByteArrayBuilder(INITIAL_COLUMN_BYTES);
+		}
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method appends one sample, values past the number of columns are ignored.
+	 * Values are expected to be non negative counts or codes.
+	 * **/
+	void append(long timestamp, int v0, int v1, int v2, int v3) {
+		if (count == 0) {
+			timestamps.writeVarLong(timestamp);
+		} else {
+			long delta = timestamp - lastTimestamp;
+			timestamps.writeSignedVarLong(count == 1 ? delta : delta - lastDelta);
+			lastDelta = delta;
+		}
+		lastTimestamp = timestamp;
+		minTimestamp = Math.min(minTimestamp, timestamp);
+		maxTimestamp = Math.max(maxTimestamp, timestamp);
+
+		appendValue(0, v0);
+		appendValue(1, v1);
+		appendValue(2, v2);
+		appendValue(3, v3);
+		count++;
+	}
+
+	/*
+	 * Method appends one column value and updates the column summary
+	 */
+	private void appendValue(int column, int value) {
+		if (column < values.length) {
+			values[column].writeVarLong(value);
+			sums[column] += value;
+			maxes[column] = Math.max(maxes[column], value);
+		}
+	}
+
+	/***
+	 * Method returns a block over the samples appended so far.
+	 * The block keeps decoding correctly while more samples are appended.
+	 * **/
+	SeriesBlock toBlock() {
+		ByteBuffer[] valueViews = new ByteBuffer[values.length];
+		for (int c = 0; c < values.length; c++) {
+			valueViews[c] = values[c].view(values[c].length());
+		}
+		return new SeriesBlock(seriesId, count, minTimestamp, maxTimestamp, sums.clone(), maxes.clone(),
+				timestamps.view(timestamps.length()), valueViews);
+	}
+
+	/***
+	 * Method returns the number of bytes the encoded columns take
+	 * **/
+	int encodedLength() {
+		int length = timestamps.length();
+		for (ByteArrayBuilder column : values) {
+			length += column.length();
+		}
+		return length;
+	}
+
+	/***
+	 * Method writes the index entry of the series, see SegmentFile for the layout
+	 * **/
+	void writeIndexEntry(ByteBuffer index, long dataOffset) {
+		index.putInt(seriesId);
+		index.putInt(count);
+		index.putLong(minTimestamp);
+		index.putLong(maxTimestamp);
+		index.putLong(dataOffset);
+		index.putInt(timestamps.length());
+		for (ByteArrayBuilder column : values) {
+			index.putInt(column.length());
+		}
+		for (long sum : sums) {
+			index.putLong(sum);
+		}
+		for (int max : maxes) {
+			index.putInt(max);
+		}
+	}
+
+	/***
+	 * Method writes the encoded columns
+	 * **/
+	void writeData(ByteBuffer data) {
+		timestamps.writeTo(data);
+		for (ByteArrayBuilder column : values) {
+			column.writeTo(data);
+		}
+	}
+}
@@ -0,0 +1,669 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+import cityStateStore.IntIndexMap;
+
+/**
+ * Class is an embedded, time partitioned store of compressed series of small integer samples,
+ * one series per VRS or TLS ID. It is the base of the VehicleCountStore and the PhaseHistoryStore.
+ *
+ * - Samples are grouped by series ID into compressed blocks (see SeriesBlock for the encoding).
+ * - Time is split in partitions (one hour by default). Samples of the current partition are kept in memory,
+ *   when the partition is over its blocks are sealed into one segment file per partition.
+ *   Sealing runs on a background thread, so the thread appending samples never waits on the disk.
+ *   A partition that fails to seal stays in memory and is sealed again with the next one.
+ * - Range queries read the sealed segments through memory mapped files, and the current partition
+ *   and the partitions waiting to be sealed from memory.
+ *   Aggregates over blocks fully inside the range are answered from the block summaries without decoding.
+ *
+ * A late sample of a partition waiting to be sealed is added to it, or to a new pending partition
+ * of the same start if that one is being written. Only samples of a partition already sealed are dropped.
+ */
+public class TimeSeriesStore {
+
+	// vars
+	public static final int ALL_COLUMNS = -1;                       // column meaning all columns summed together
+	public static final int MAX_COLUMNS = 4;
+	public static final long DEFAULT_PARTITION_MILLIS = 60 * 60 * 1000L;
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	private final Path directory;
+	private final String segmentPrefix;
+	private final int columns;
+	private final long partitionMillis;
+	private final ReentrantLock writeLock;
+	private final List<SegmentFile> segments;       // sealed segments, read without locking
+	private final List<PendingPartition> sealing;   // partitions waiting to be sealed, oldest first, guarded by the write lock
+	private final ExecutorService sealer;
+
+	private long activeStart;
+	private IntIndexMap activeIndexes;               // series ID -> position in activeSeries
+	private List<SeriesWriter> activeSeries;
+	private long droppedSamples;
+
+
+	/**
+	 * Initialises a store over the segment files of the given directory whose name starts with the prefix.
+	 * Existing segment files are opened, the directory is created if needed.
+	 *
+	 * @param directory directory of the segment files
+	 * @param segmentPrefix prefix of the segment file names, several stores can share a directory
+	 * @param columns number of value columns of every sample, at most MAX_COLUMNS
+	 * @param partitionMillis length of a time partition, one segment file is sealed per partition
+	 * @throws IOException if the directory or a segment could not be read
+	 * **/
+	protected TimeSeriesStore(Path directory, String segmentPrefix, int columns, long partitionMillis) throws IOException {
+		if (partitionMillis <= 0) {
+			throw new IllegalArgumentException("Partition length must be positive");
+		}
+		if (columns < 1 || columns > MAX_COLUMNS) {
+			throw new IllegalArgumentException("A series holds between 1 and " + MAX_COLUMNS + " columns");
+		}
+		this.directory = directory;
+		this.segmentPrefix = segmentPrefix;
+		this.columns = columns;
+		this.partitionMillis = partitionMillis;
+		this.writeLock = new ReentrantLock();
+		this.segments = new CopyOnWriteArrayList<>();
+		this.sealing = new ArrayList<>();
+		this.activeStart = Long.MIN_VALUE;
+		this.activeIndexes = new IntIndexMap(64);
+		this.activeSeries = new ArrayList<>();
+
+		Files.createDirectories(directory);
+		List<SegmentFile> existing = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, segmentPrefix + "*" + SEGMENT_SUFFIX)) {
+			for (Path file : files) {
+				SegmentFile segment = SegmentFile.open(file);
+				if (segment.getColumnCount() != columns) {
+					throw new IOException("Segment " + file + " holds " + segment.getColumnCount()
+							+ " columns, expected " + columns);
+				}
+				existing.add(segment);
+			}
+		}
+		existing.sort(Comparator.comparingLong(SegmentFile::getPartitionStart));
+		segments.addAll(existing);
+
+		this.sealer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, segmentPrefix + "sealer");
+			thread.setDaemon(true);      // a partition not sealed at exit is lost, as the current one
+			return thread;
+		});
+	}
+
+
+	/***********************  INGEST ******************/
+
+	/***
+	 * Method appends one sample to a series, values past the number of columns are ignored
+	 *
+	 * @param seriesId ID of the series (VRS or TLS ID)
+	 * @param timestamp time of the sample in milliseconds since epoch
+	 * **/
+	protected void append(int seriesId, long timestamp, int v0, int v1, int v2, int v3) {
+		long partition = Math.floorDiv(timestamp, partitionMillis) * partitionMillis;
+
+		writeLock.lock();
+		try {
+			if (partition < activeStart) {
+				PendingPartition pending = pendingPartition(partition);
+				if (pending == null) {
+					droppedSamples++;        // its partition is already sealed
+				} else {
+					seriesOf(pending.indexes, pending.series, seriesId).append(timestamp, v0, v1, v2, v3);
+				}
+				return;
+			}
+			if (partition != activeStart) {
+				if (detachActivePartition()) {
+					sealer.execute(this::sealInBackground);
+				}
+				activeStart = partition;
+			}
+			seriesOf(activeIndexes, activeSeries, seriesId).append(timestamp, v0, v1, v2, v3);
+
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/*
+	 * Method returns the series of the given ID in a partition, adding it if the partition holds no sample of it yet
+	 */
+	private SeriesWriter seriesOf(IntIndexMap indexes, List<SeriesWriter> series, int seriesId) {
+		int position = indexes.get(seriesId);
+		if (position >= 0) {
+			return series.get(position);
+		}
+		SeriesWriter writer = new SeriesWriter(seriesId, columns);
+		indexes.put(seriesId, series.size());
+		series.add(writer);
+		return writer;
+	}
+
+	/*
+	 * Method returns the pending partition a late sample of the given partition goes to, the write lock must be held.
+	 * A partition being written by the sealing thread takes no more samples, and a partition that never had a sample
+	 * has no pending partition yet: a new pending partition of that start is queued for them.
+	 * Returns null if the partition is sealed.
+	 */
+	private PendingPartition pendingPartition(long partition) {
+		for (int i = sealing.size() - 1; i >= 0; i--) {
+			PendingPartition pending = sealing.get(i);
+			if (pending.start == partition) {
+				return pending.writing ? queueLatePartition(partition) : pending;
+			}
+		}
+		for (SegmentFile segment : segments) {
+			if (segment.getPartitionStart() == partition) {
+				return null;
+			}
+		}
+		return queueLatePartition(partition);
+	}
+
+	/*
+	 * Method queues a new pending partition for late samples, sealed after the partitions queued before it
+	 */
+	private PendingPartition queueLatePartition(long partition) {
+		PendingPartition late = new PendingPartition(partition, new IntIndexMap(64), new ArrayList<>());
+		sealing.add(late);
+		sealer.execute(this::sealInBackground);
+		return late;
+	}
+
+	/***
+	 * Method seals the samples of the current partition, and of every partition waiting to be sealed, into segment files.
+	 * Samples arriving later for the same partition go to a new segment file.
+	 *
+	 * @throws IOException if a partition could not be sealed, its samples stay in memory
+	 * **/
+	public void flush() throws IOException {
+		writeLock.lock();
+		try {
+			detachActivePartition();
+		} finally {
+			writeLock.unlock();
+		}
+
+		Future<Void> sealed = sealer.submit(() -> {
+			sealPending();
+			return null;
+		});
+		try {
+			sealed.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Error sealing time series segment", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while sealing time series segments", e);
+		}
+	}
+
+	/***
+	 * Method seals the pending samples and stops the sealing thread.
+	 * Segment files are released once no query holds them any more, the store must not be used after.
+	 * **/
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			sealer.shutdown();
+			segments.clear();       // memory maps are unmapped when their buffers are collected
+		}
+	}
+
+	/*
+	 * Method moves the series of the active partition to the partitions waiting to be sealed, the write lock must be held.
+	 * Returns false if the active partition holds no samples.
+	 */
+	private boolean detachActivePartition() {
+		if (activeSeries.isEmpty()) {
+			return false;
+		}
+		sealing.add(new PendingPartition(activeStart, activeIndexes, activeSeries));
+
+		activeIndexes = new IntIndexMap(Math.max(64, activeSeries.size()));
+		activeSeries = new ArrayList<>(activeSeries.size());
+		return true;
+	}
+
+	/*
+	 * Method seals the partitions waiting to be sealed, reporting a failure instead of throwing it
+	 */
+	private void sealInBackground() {
+		try {
+			sealPending();
+		} catch (IOException e) {
+			System.err.println("Error sealing time series segment, samples kept in memory: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Method writes the partitions waiting to be sealed to new segment files, oldest first.
+	 * Runs on the sealing thread only, the segment file is written without holding the write lock.
+	 */
+	private void sealPending() throws IOException {
+		while (true) {
+			PendingPartition pending;
+			writeLock.lock();
+			try {
+				if (sealing.isEmpty()) {
+					return;
+				}
+				pending = sealing.get(0);
+				pending.writing = true;      // late samples of its partition go to a new pending partition
+			} finally {
+				writeLock.unlock();
+			}
+
+			SegmentFile segment;
+			try {
+				List<SeriesWriter> series = new ArrayList<>(pending.series);
+				series.sort((a, b) -> Integer.compare(a.seriesId, b.seriesId));
+				segment = SegmentFile.write(nextSegmentPath(pending.start), columns, pending.start,
+						pending.start + partitionMillis, series);
+			} catch (IOException | RuntimeException e) {
+				writeLock.lock();
+				try {
+					pending.writing = false;     // kept in memory, it takes late samples again until the next attempt
+				} finally {
+					writeLock.unlock();
+				}
+				throw e;
+			}
+
+			writeLock.lock();
+			try {
+				segments.add(segment);      // queries see the partition either pending or sealed, never both
+				sealing.remove(0);
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Method returns a free file name for a segment of the given partition
+	 */
+	private Path nextSegmentPath(long partitionStart) {
+		for (int sequence = 0; ; sequence++) {
+			Path path = directory.resolve(segmentPrefix + partitionStart + "-" + sequence + SEGMENT_SUFFIX);
+			if (!Files.exists(path)) {
+				return path;
+			}
+		}
+	}
+
+
+	/***********************  QUERIES ******************/
+
+	/***
+	 * Method passes every sample of a series in the range [from, to) to the consumer
+	 *
+	 * @param column column index, or ALL_COLUMNS
+	 * **/
+	public void forEachSample(int seriesId, int column, long from, long to, SampleConsumer consumer) {
+		for (SeriesBlock block : blocksOf(seriesId, from, to)) {
+			block.forEach(column, from, to, consumer);
+		}
+	}
+
+	/***
+	 * Method sums the samples of a series in the range [from, to)
+	 * **/
+	public long sum(int seriesId, int column, long from, long to) {
+		long total = 0;
+		for (SeriesBlock block : blocksOf(seriesId, from, to)) {
+			if (block.isCoveredBy(from, to)) {
+				total += block.getSum(column);    // answered from the block summary
+			} else {
+				LongAccumulator partial = new LongAccumulator();
+				block.forEach(column, from, to, partial);
+				total += partial.sum;
+			}
+		}
+		return total;
+	}
+
+	/***
+	 * Method returns the largest sample of a series in the range [from, to), 0 if there are no samples
+	 * **/
+	public int max(int seriesId, int column, long from, long to) {
+		int max = 0;
+		for (SeriesBlock block : blocksOf(seriesId, from, to)) {
+			if (column != ALL_COLUMNS && block.isCoveredBy(from, to)) {
+				max = Math.max(max, block.getMax(column));
+			} else if (block.getMax(column) > max) {    // skip blocks that can not raise the maximum
+				LongAccumulator partial = new LongAccumulator();
+				block.forEach(column, from, to, partial);
+				max = (int) Math.max(max, partial.max);
+			}
+		}
+		return max;
+	}
+
+	/***
+	 * Method returns the given percentile (nearest rank, 0 < percentile <= 100) of the samples
+	 * of a series in the range [from, to), 0 if there are no samples
+	 * **/
+	public int percentile(int seriesId, int column, long from, long to, double percentile) {
+		if (to <= from) {
+			return 0;
+		}
+		int[] perInterval = percentilePerInterval(seriesId, column, from, to, to - from, percentile);
+		return perInterval.length == 0 ? 0 : perInterval[0];
+	}
+
+	/***
+	 * Method sums the samples of a series per interval of the range [from, to)
+	 *
+	 * @return one sum per interval, the first interval starting at from
+	 * **/
+	public long[] sumPerInterval(int seriesId, int column, long from, long to, long intervalMillis) {
+		long[] sums = new long[intervals(from, to, intervalMillis)];
+		forEachSample(seriesId, column, from, to,
+				(timestamp, count) -> sums[(int) ((timestamp - from) / intervalMillis)] += count);
+		return sums;
+	}
+
+	/***
+	 * Method returns the largest sample of a series per interval of the range [from, to)
+	 * **/
+	public int[] maxPerInterval(int seriesId, int column, long from, long to, long intervalMillis) {
+		int[] maxes = new int[intervals(from, to, intervalMillis)];
+		forEachSample(seriesId, column, from, to, (timestamp, count) -> {
+			int bucket = (int) ((timestamp - from) / intervalMillis);
+			maxes[bucket] = Math.max(maxes[bucket], count);
+		});
+		return maxes;
+	}
+
+	/***
+	 * Method returns the given percentile of the samples of a series per interval of the range [from, to)
+	 *
+	 * Samples are packed as (interval, value) into longs and sorted once,
+	 * which leaves the values of every interval sorted next to each other.
+	 * **/
+	public int[] percentilePerInterval(int seriesId, int column, long from, long to, long intervalMillis,
+			double percentile) {
+		if (percentile <= 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile must be in (0, 100]: " + percentile);
+		}
+		int[] result = new int[intervals(from, to, intervalMillis)];
+		LongList samples = new LongList();
+		forEachSample(seriesId, column, from, to,
+				(timestamp, count) -> samples.add(((timestamp - from) / intervalMillis) << 32 | count));
+
+		long[] packed = samples.toSortedArray();
+		int start = 0;
+		while (start < packed.length) {
+			int bucket = (int) (packed[start] >>> 32);
+			int end = start;
+			while (end < packed.length && (int) (packed[end] >>> 32) == bucket) {
+				end++;
+			}
+			int rank = (int) Math.ceil(percentile / 100.0 * (end - start));
+			result[bucket] = (int) packed[start + Math.max(rank, 1) - 1];
+			start = end;
+		}
+		return result;
+	}
+
+	/*
+	 * Method returns the blocks of a series that may hold samples in the range [from, to).
+	 * Segments whose partition is outside the range are skipped without reading them.
+	 */
+	private List<SeriesBlock> blocksOf(int seriesId, long from, long to) {
+		List<SegmentFile> sealed;
+		List<SeriesBlock> blocks = new ArrayList<>();
+
+		writeLock.lock();     // a partition sealed meanwhile is neither missed nor read twice
+		try {
+			sealed = new ArrayList<>(segments);
+			for (PendingPartition pending : sealing) {
+				SeriesBlock block = pending.find(seriesId);
+				if (block != null && block.overlaps(from, to)) {
+					blocks.add(block);
+				}
+			}
+			int position = activeIndexes.get(seriesId);
+			SeriesBlock active = position < 0 ? null : activeSeries.get(position).toBlock();
+			if (active != null && active.overlaps(from, to)) {
+				blocks.add(active);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+
+		List<SeriesBlock> sealedBlocks = new ArrayList<>();
+		for (SegmentFile segment : sealed) {
+			if (segment.overlaps(from, to)) {
+				SeriesBlock block = segment.find(seriesId);
+				if (block != null && block.overlaps(from, to)) {
+					sealedBlocks.add(block);
+				}
+			}
+		}
+		sealedBlocks.addAll(blocks);
+		return sealedBlocks;
+	}
+
+	/***
+	 * Method returns the partitions holding samples in the range [from, to), oldest first.
+	 * The view is taken under the write lock so a partition sealed meanwhile is neither missed nor read twice.
+	 * **/
+	public List<Partition> partitions(long from, long to) {
+		TreeMap<Long, List<SegmentFile>> sealed = new TreeMap<>();
+		TreeMap<Long, List<SeriesBlock>> inMemory = new TreeMap<>();
+
+		writeLock.lock();
+		try {
+			for (SegmentFile segment : segments) {
+				if (segment.overlaps(from, to)) {
+					sealed.computeIfAbsent(segment.getPartitionStart(), key -> new ArrayList<>()).add(segment);
+				}
+			}
+			for (PendingPartition pending : sealing) {
+				if (pending.start < to && pending.start + partitionMillis > from) {
+					inMemory.computeIfAbsent(pending.start, key -> new ArrayList<>()).addAll(pending.blocks());
+				}
+			}
+			if (!activeSeries.isEmpty() && activeStart < to && activeStart + partitionMillis > from) {
+				List<SeriesBlock> active = inMemory.computeIfAbsent(activeStart, key -> new ArrayList<>());
+				for (SeriesWriter series : activeSeries) {
+					active.add(series.toBlock());
+				}
+			}
+		} finally {
+			writeLock.unlock();
+		}
+
+		for (Long start : inMemory.keySet()) {
+			sealed.putIfAbsent(start, new ArrayList<>());
+		}
+		List<Partition> partitions = new ArrayList<>(sealed.size());
+		for (Map.Entry<Long, List<SegmentFile>> entry : sealed.entrySet()) {
+			long partitionStart = entry.getKey();
+			partitions.add(new Partition(partitionStart, partitionStart + partitionMillis, entry.getValue(),
+					inMemory.getOrDefault(partitionStart, Collections.<SeriesBlock>emptyList())));
+		}
+		return partitions;
+	}
+
+	/*
+	 * Method returns the number of intervals needed to cover [from, to)
+	 */
+	private static int intervals(long from, long to, long intervalMillis) {
+		if (intervalMillis <= 0 || to < from) {
+			throw new IllegalArgumentException("Invalid range or interval");
+		}
+		return (int) ((to - from + intervalMillis - 1) / intervalMillis);
+	}
+
+
+	// getters
+
+	/**
+	 * Get list of sealed segments, oldest partition first
+	 */
+	public List<SegmentFile> getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Get the current, not yet sealed, block of a series or null if it has no samples in the current partition
+	 */
+	public SeriesBlock getActiveBlock(int seriesId) {
+		writeLock.lock();
+		try {
+			int position = activeIndexes.get(seriesId);
+			return position < 0 ? null : activeSeries.get(position).toBlock();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Get blocks of the current partition, one per series
+	 */
+	public List<SeriesBlock> getActiveBlocks() {
+		writeLock.lock();
+		try {
+			List<SeriesBlock> blocks = new ArrayList<>(activeSeries.size());
+			for (SeriesWriter series : activeSeries) {
+				blocks.add(series.toBlock());
+			}
+			return blocks;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Get start of the current partition, Long.MIN_VALUE before the first sample
+	 */
+	public long getActivePartitionStart() {
+		writeLock.lock();
+		try {
+			return activeStart;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Get number of value columns of every sample
+	 */
+	public int getColumnCount() {
+		return columns;
+	}
+
+	/**
+	 * Get length of a time partition in milliseconds
+	 */
+	public long getPartitionMillis() {
+		return partitionMillis;
+	}
+
+	/**
+	 * Get number of samples dropped because their partition was already sealed
+	 */
+	public long getDroppedSamples() {
+		writeLock.lock();
+		try {
+			return droppedSamples;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+
+	/*
+	 * Samples of a partition waiting to be sealed, late samples are appended to them until the sealing thread writes them
+	 */
+	private static final class PendingPartition {
+		final long start;
+		final IntIndexMap indexes;
+		final List<SeriesWriter> series;
+		boolean writing;             // being written by the sealing thread, guarded by the write lock
+
+		PendingPartition(long start, IntIndexMap indexes, List<SeriesWriter> series) {
+			this.start = start;
+			this.indexes = indexes;
+			this.series = series;
+		}
+
+		SeriesBlock find(int seriesId) {
+			int position = indexes.get(seriesId);
+			return position < 0 ? null : series.get(position).toBlock();
+		}
+
+		List<SeriesBlock> blocks() {
+			List<SeriesBlock> blocks = new ArrayList<>(series.size());
+			for (SeriesWriter writer : series) {
+				blocks.add(writer.toBlock());
+			}
+			return blocks;
+		}
+	}
+
+	/*
+	 * Consumer keeping the sum and max of the samples it receives
+	 */
+	private static final class LongAccumulator implements SampleConsumer {
+		long sum;
+		long max;
+
+		@Override
+		public void accept(long timestamp, int count) {
+			sum += count;
+			max = Math.max(max, count);
+		}
+	}
+
+	/*
+	 * Growable list of primitive longs
+	 */
+	private static final class LongList {
+		private long[] values = new long[256];
+		private int size;
+
+		void add(long value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size << 1);
+			}
+			values[size++] = value;
+		}
+
+		long[] toSortedArray() {
+			long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+}
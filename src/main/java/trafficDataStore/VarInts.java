@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class groups the variable length integer helpers used by the vehicle count blocks.
+ *
+ * - Varints store 7 bits per byte, so the small counts and deltas of a traffic scan take a single byte.
+ * - ZigZag maps signed deltas to unsigned values (0, -1, 1, -2 ... to 0, 1, 2, 3 ...)
+ *   so negative deltas stay short too.
+ */
+public final class VarInts {
+
+	// Private constructor, static helper class
+	private VarInts() {
+	}
+
+	/***
+	 * Method maps a signed value to its zigzag encoding
+	 * **/
+	public static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/***
+	 * Method maps a zigzag encoded value back to its signed value
+	 * **/
+	public static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/***
+	 * Method reads an unsigned varint from the buffer position
+	 * **/
+	public static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	/***
+	 * Method reads a zigzag encoded varint from the buffer position
+	 * **/
+	public static long readSignedVarLong(ByteBuffer buffer) {
+		return unZigZag(readVarLong(buffer));
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import cityStateStore.CityStateStore;
+
+/**
+ * Class keeps the per scan vehicle counts of every Visual Recognition System,
+ * instead of overwriting them every cycle.
+ *
+ * One series per VRS ID, one column per vehicle class (the CityStateStore vehicle classes),
+ * a sample of the 4 classes takes about 5 bytes.
+ */
+public class VehicleCountStore extends TimeSeriesStore {
+
+	// vars
+	public static final int ALL_CLASSES = ALL_COLUMNS;      // vehicle class meaning all classes together
+	private static final String SEGMENT_PREFIX = "counts-";
+
+	private static volatile VehicleCountStore instance;     // read without a lock by the control loops
+
+	/*
+	 * Initialises a store over the given directory
+	 */
+	private VehicleCountStore(Path directory, long partitionMillis) throws IOException {
+		super(directory, SEGMENT_PREFIX, CityStateStore.VEHICLE_CLASSES, partitionMillis);
+	}
+
+	/***
+	 * Static method opens the store kept in the given directory and makes it the shared instance
+	 *
+	 * @param directory directory of the segment files
+	 * @param partitionMillis length of a time partition, one segment file is sealed per partition
+	 * @throws IOException if the directory or a segment could not be read
+	 * **/
+	public static synchronized VehicleCountStore open(Path directory, long partitionMillis) throws IOException {
+		instance = new VehicleCountStore(directory, partitionMillis);
+		return instance;
+	}
+
+	/***
+	 * Static method returns the shared store, or null if no store has been opened.
+	 * It takes no monitor, so control loops on virtual threads are never pinned here.
+	 * **/
+	public static VehicleCountStore getInstance() {
+		return instance;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method records the vehicles counted by one traffic scan of a VRS
+	 *
+	 * @param vrsId ID of the Visual Recognition System
+	 * @param timestamp time of the scan in milliseconds since epoch
+	 * **/
+	public void record(int vrsId, long timestamp, int cars, int trucks, int bikes, int buses) {
+		append(vrsId, timestamp, cars, trucks, bikes, buses);
+	}
+
+	/***
+	 * Method seals the pending partitions, releases the segment files and closes the shared store
+	 * **/
+	@Override
+	public void close() throws IOException {
+		super.close();
+		synchronized (VehicleCountStore.class) {
+			if (instance == this) {
+				instance = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ *
+ */
+package trafficLightSystem;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Class holds the heartbeats of the control loops: every Traffic Control System cycle and every
+ * VRS data collection stamps its progress here at each phase, with the time the next stamp is due.
+ *
+ * A loop owns one slot, registered once. A heartbeat is three ordered writes into primitive arrays
+ * and never takes a lock, so stamping costs the loops next to nothing. The deadline is written last,
+ * a reader that sees a deadline also sees the stamp and phase written with it.
+ *
+ * The registry only records, a CycleWatchdog scans the slots and decides what an overdue loop means.
+ */
+public class CycleHeartbeats {
+
+	// loop kinds
+	public static final int CYCLE = 0;             // Traffic Control System cycle
+	public static final int COLLECTION = 1;        // VRS data collection
+
+	// phases
+	public static final int IDLE = 0;              // not running, never overdue
+	public static final int CYCLE_START = 1;
+	public static final int GREEN = 2;
+	public static final int YELLOW = 3;
+	public static final int TRANSIT = 4;
+	public static final int COLLECTING = 5;
+
+	private static final String[] PHASE_NAMES = { "idle", "cycle start", "green", "yellow", "transit", "collecting" };
+	private static final long NEVER = Long.MAX_VALUE;
+
+	// vars
+	private final long graceNanos;
+	private final AtomicInteger slotCount;
+	private final int[] kinds;
+	private final int[] ownerIds;
+	private final AtomicLongArray stamps;          // time of the last heartbeat, System.nanoTime()
+	private final AtomicLongArray deadlines;       // time the next heartbeat is due, NEVER when idle
+	private final AtomicIntegerArray phases;
+	private final AtomicReferenceArray<Thread> threads;   // thread of the last heartbeat
+
+
+	/**
+	 * Initialises a registry
+	 *
+	 * @param capacity number of loops that can register
+	 * @param graceMillis time a loop may run over the length it announced before it is overdue
+	 * **/
+	public CycleHeartbeats(int capacity, long graceMillis) {
+		if (capacity <= 0 || graceMillis < 0) {
+			throw new IllegalArgumentException("Capacity must be positive and grace not negative");
+		}
+		this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMillis);
+		this.slotCount = new AtomicInteger();
+		this.kinds = new int[capacity];
+		this.ownerIds = new int[capacity];
+		this.stamps = new AtomicLongArray(capacity);
+		this.deadlines = new AtomicLongArray(capacity);
+		this.phases = new AtomicIntegerArray(capacity);
+		this.threads = new AtomicReferenceArray<>(capacity);
+		for (int slot = 0; slot < capacity; slot++) {
+			deadlines.set(slot, NEVER);
+		}
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method gives a loop its slot, idle until its first heartbeat. Loops register when they are set up,
+	 * not while they run.
+	 *
+	 * @param kind CYCLE or COLLECTION
+	 * @param ownerId id of the Traffic Control System or VRS running the loop
+	 * @return the slot to stamp
+	 * @throws IllegalStateException if every slot is taken
+	 * **/
+	public synchronized int register(int kind, int ownerId) {
+		int slot = slotCount.get();
+		if (slot == kinds.length) {
+			throw new IllegalStateException("All " + kinds.length + " heartbeat slots are taken");
+		}
+		kinds[slot] = kind;
+		ownerIds[slot] = ownerId;
+		stamps.set(slot, System.nanoTime());
+		slotCount.set(slot + 1);      // publishes the slot to the watchdog
+		return slot;
+	}
+
+	/***
+	 * Method stamps the progress of a loop entering a phase
+	 *
+	 * @param expectedMillis time the phase should take, the next heartbeat is due by then plus the grace
+	 * **/
+	public void beat(int slot, int phase, long expectedMillis) {
+		Thread current = Thread.currentThread();
+		if (threads.getPlain(slot) != current) {
+			threads.setRelease(slot, current);
+		}
+		long now = System.nanoTime();
+		phases.setRelease(slot, phase);
+		stamps.setRelease(slot, now);
+		deadlines.setRelease(slot, now + TimeUnit.MILLISECONDS.toNanos(expectedMillis) + graceNanos);
+	}
+
+	/***
+	 * Method marks a loop as not running, it is not watched until its next heartbeat
+	 * **/
+	public void idle(int slot) {
+		phases.setRelease(slot, IDLE);
+		stamps.setRelease(slot, System.nanoTime());
+		deadlines.setRelease(slot, NEVER);
+	}
+
+	/***
+	 * Method tells whether a loop missed its heartbeat at the given time
+	 * **/
+	public boolean isOverdue(int slot, long nowNanos) {
+		long deadline = deadlines.getAcquire(slot);
+		return deadline != NEVER && nowNanos - deadline > 0;
+	}
+
+	/***
+	 * Static method returns the name of a phase
+	 * **/
+	public static String phaseName(int phase) {
+		return PHASE_NAMES[phase];
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of slots that can be registered
+	 */
+	public int getCapacity() {
+		return kinds.length;
+	}
+
+	/**
+	 * Get number of slots registered
+	 */
+	public int getSlotCount() {
+		return slotCount.get();
+	}
+
+	/**
+	 * Get kind of the loop of a slot, CYCLE or COLLECTION
+	 */
+	public int getKind(int slot) {
+		return kinds[slot];
+	}
+
+	/**
+	 * Get id of the system running the loop of a slot
+	 */
+	public int getOwnerId(int slot) {
+		return ownerIds[slot];
+	}
+
+	/**
+	 * Get phase of the last heartbeat of a slot
+	 */
+	public int getPhase(int slot) {
+		return phases.getAcquire(slot);
+	}
+
+	/**
+	 * Get time of the last heartbeat of a slot, System.nanoTime()
+	 */
+	public long getStamp(int slot) {
+		return stamps.getAcquire(slot);
+	}
+
+	/**
+	 * Get time the next heartbeat of a slot is due, System.nanoTime(), Long.MAX_VALUE when idle
+	 */
+	public long getDeadline(int slot) {
+		return deadlines.getAcquire(slot);
+	}
+
+	/**
+	 * Get thread of the last heartbeat of a slot, null before the first one
+	 */
+	public Thread getThread(int slot) {
+		return threads.getAcquire(slot);
+	}
+}
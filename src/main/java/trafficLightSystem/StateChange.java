@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package trafficLightSystem;
+
+import cityStateStore.CityStateStore;
+
+/**
+ * Class represents a change of state of a Traffic Light System, as streamed by the StateChangePublisher.
+ *
+ * Events are deltas: each one carries one system and the state it changed from and to, as seen by its subscriber.
+ * A conflated event stands for every change a slow subscriber missed on that system, it carries the latest state.
+ */
+public final class StateChange {
+
+	// vars
+	private final int tlsId;
+	private final int tlsIndex;
+	private final int previousState;    // state code the subscriber last saw, STATE_NONE before its first event
+	private final int newState;
+	private final long sequence;        // order of the change among all the changes published
+	private final long timestamp;       // time of the change in milliseconds since epoch
+	private final boolean conflated;
+
+
+	/**
+	 * Initialises a state change
+	 * **/
+	public StateChange(int tlsId, int tlsIndex, int previousState, int newState, long sequence, long timestamp,
+			boolean conflated) {
+		this.tlsId = tlsId;
+		this.tlsIndex = tlsIndex;
+		this.previousState = previousState;
+		this.newState = newState;
+		this.sequence = sequence;
+		this.timestamp = timestamp;
+		this.conflated = conflated;
+	}
+
+
+	// getters
+
+	/**
+	 * Get id of the Traffic Light System
+	 */
+	public int getTlsId() {
+		return tlsId;
+	}
+
+	/**
+	 * Get dense index of the Traffic Light System in the CityStateStore
+	 */
+	public int getTlsIndex() {
+		return tlsIndex;
+	}
+
+	/**
+	 * Get state code the subscriber saw before, CityStateStore.STATE_NONE if none
+	 */
+	public int getPreviousState() {
+		return previousState;
+	}
+
+	/**
+	 * Get state code of the system after the change
+	 */
+	public int getNewState() {
+		return newState;
+	}
+
+	/**
+	 * Get order of the change among all the changes published
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Get time of the change in milliseconds since epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Get whether the event stands for several changes the subscriber fell behind on
+	 */
+	public boolean isConflated() {
+		return conflated;
+	}
+
+	@Override
+	public String toString() {
+		return "TLS " + tlsId + " " + CityStateStore.decodeState(previousState) + " -> " + CityStateStore.decodeState(newState)
+				+ " #" + sequence + (conflated ? " (conflated)" : "");
+	}
+}
@@ -0,0 +1,492 @@
+/**
+ *
+ */
+package trafficLightSystem;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class streams the state changes of the Traffic Light Systems to dashboards and downstream systems,
+ * as a java.util.concurrent.Flow publisher of StateChange events.
+ *
+ * Publishing never waits on a subscriber and does not depend on how many there are. A change is written
+ * into a ring shared by all the subscribers, and into the latest state kept for its system. That takes a few
+ * atomic writes. A dispatcher thread wakes the subscribers, at most every millisecond, and each one is drained
+ * on the executor, as far as it requested.
+ *
+ * Each subscriber reads the ring from its own position, and may fall at most bufferCapacity changes behind.
+ * A subscriber further behind is not buffered any more, its changes are conflated. It gets one event for each
+ * system that changed while it was behind, with the latest state of that system, then reads the ring again
+ * from where the conflation ended. A new subscriber starts with a conflated event for every system, the current
+ * state of the city, then gets the changes.
+ */
+public class StateChangePublisher implements Flow.Publisher<StateChange> {
+
+	// vars
+	private static final int DEFAULT_RING_SIZE = 1 << 16;
+	private static final int DEFAULT_BUFFER_CAPACITY = 1024;
+	private static final long IN_PROGRESS = -1;             // sequence of a slot being written
+	private static final int PAGE_BITS = 12;                // latest states are kept in pages of 4096 systems
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+	private static final int MAX_PAGES = 4096;              // up to 16M Traffic Light Systems
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long DISPATCH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);   // latency bound of the deliveries
+
+
+	private final int mask;
+	private final int bufferCapacity;
+	private final Executor executor;
+	private final AtomicLong head;                  // sequence of the next change
+	private final AtomicLongArray published;        // sequence of the change in a ring slot, IN_PROGRESS while written
+	private final AtomicLongArray payloads;         // tls index, previous and new state of the change in a ring slot
+	private final AtomicIntegerArray tlsIds;
+	private final AtomicLongArray timestamps;
+	private final AtomicReferenceArray<Page> pages; // latest state of every system, by tls index
+	private final AtomicInteger highestIndex;       // highest tls index published
+	private final CopyOnWriteArrayList<ChangeSubscription> subscriptions;
+	private final Thread dispatcher;
+	private volatile boolean dispatcherIdle;
+	private volatile boolean closed;
+
+
+	/**
+	 * Initialises a publisher delivering on the common pool with the default ring and buffer
+	 * **/
+	public StateChangePublisher() {
+		this(DEFAULT_RING_SIZE, DEFAULT_BUFFER_CAPACITY, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Initialises a publisher
+	 *
+	 * @param ringSize changes kept for the subscribers to read, a power of 2
+	 * @param bufferCapacity changes a subscriber may fall behind before they are conflated, at most half the ring
+	 * @param executor runs the deliveries to the subscribers
+	 * @throws IllegalArgumentException if the sizes are not valid
+	 * **/
+	public StateChangePublisher(int ringSize, int bufferCapacity, Executor executor) {
+		if (ringSize <= 0 || Integer.bitCount(ringSize) != 1) {
+			throw new IllegalArgumentException("Ring size must be a power of 2");
+		}
+		if (bufferCapacity <= 0 || bufferCapacity > ringSize / 2) {
+			throw new IllegalArgumentException("Buffer capacity must be positive and at most half the ring");
+		}
+		this.mask = ringSize - 1;
+		this.bufferCapacity = bufferCapacity;
+		this.executor = executor;
+		this.head = new AtomicLong();
+		this.published = new AtomicLongArray(ringSize);
+		this.payloads = new AtomicLongArray(ringSize);
+		this.tlsIds = new AtomicIntegerArray(ringSize);
+		this.timestamps = new AtomicLongArray(ringSize);
+		for (int slot = 0; slot < ringSize; slot++) {
+			published.set(slot, slot - (long) ringSize);   // no change written yet
+		}
+		this.pages = new AtomicReferenceArray<>(MAX_PAGES);
+		this.highestIndex = new AtomicInteger(-1);
+		this.subscriptions = new CopyOnWriteArrayList<>();
+		this.dispatcher = new Thread(this::dispatch, "state-change-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	/**
+	 * Static method returns the publisher of the Traffic Light Systems of the Control Center
+	 * **/
+	public static StateChangePublisher getInstance() {
+		return Holder.INSTANCE;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method publishes a change of state of a Traffic Light System. Called on the control path, it never blocks.
+	 *
+	 * @param tlsIndex dense index of the system in the CityStateStore
+	 * @param previousState state code before the change
+	 * @param newState state code after the change
+	 * **/
+	public void publish(int tlsIndex, int tlsId, int previousState, int newState) {
+		long now = System.currentTimeMillis();
+		long sequence = head.getAndIncrement();
+		int slot = (int) sequence & mask;
+		published.setPlain(slot, IN_PROGRESS);      // ordered by the release below, a reader of the lapped change sees it is gone
+		payloads.setRelease(slot, (long) tlsIndex << 4 | previousState << 2 | newState);
+		tlsIds.setRelease(slot, tlsId);
+		timestamps.setRelease(slot, now);
+		page(tlsIndex).record(tlsIndex & (PAGE_SIZE - 1), tlsId, sequence, newState, now);
+		int highest = highestIndex.get();
+		while (tlsIndex > highest && !highestIndex.compareAndSet(highest, tlsIndex)) {
+			highest = highestIndex.get();
+		}
+		published.set(slot, sequence);              // written, volatile so the idle check below sees a dispatcher about to park
+		
+		if (dispatcherIdle) {
+			LockSupport.unpark(dispatcher);
+		}
+	}
+
+	/***
+	 * Method adds a subscriber, it gets the current state of every system first
+	 * **/
+	@Override
+	public void subscribe(Flow.Subscriber<? super StateChange> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Subscriber is null");
+		}
+		ChangeSubscription subscription = new ChangeSubscription(subscriber);
+		subscriptions.add(subscription);
+		subscriber.onSubscribe(subscription);
+		if (closed) {
+			subscription.signal();       // completes it
+		}
+	}
+
+	/***
+	 * Method stops publishing, every subscriber gets the changes it requested and is completed
+	 * **/
+	public void close() {
+		closed = true;
+		LockSupport.unpark(dispatcher);
+		for (ChangeSubscription subscription : subscriptions) {
+			subscription.signal();
+		}
+	}
+
+	/*
+	 * Method wakes the subscribers when changes are published, run by the dispatcher thread.
+	 * It only wakes them for changes fully written, at most once per DISPATCH_INTERVAL_NANOS while changes
+	 * keep coming, so a burst of changes costs the control path no wake up at all.
+	 */
+	private void dispatch() {
+		long next = 0;
+		while (!closed) {
+			long written = writtenFrontier(next);
+			if (written == next) {
+				dispatcherIdle = true;            // publishers wake the dispatcher from now on
+				if (published.get((int) next & mask) != next && !closed) {
+					LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+				}
+				dispatcherIdle = false;
+				continue;
+			}
+			next = written;
+			for (ChangeSubscription subscription : subscriptions) {
+				subscription.signal();
+			}
+			LockSupport.parkNanos(this, DISPATCH_INTERVAL_NANOS);
+		}
+	}
+
+	/*
+	 * Method returns the sequence of the first change from the given one on that is still being written,
+	 * every change before it is in the ring and in the latest states
+	 */
+	private long writtenFrontier(long from) {
+		long current = head.get();
+		long sequence = Math.max(from, current - published.length());
+		while (sequence < current && published.get((int) sequence & mask) == sequence) {
+			sequence++;
+		}
+		return sequence;
+	}
+
+	/*
+	 * Method returns the page of latest states holding a system, creating it on its first change
+	 */
+	private Page page(int tlsIndex) {
+		int number = tlsIndex >>> PAGE_BITS;
+		Page page = pages.get(number);
+		if (page == null) {
+			page = new Page();
+			if (!pages.compareAndSet(number, null, page)) {
+				page = pages.get(number);
+			}
+		}
+		return page;
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of changes published
+	 */
+	public long getPublished() {
+		return head.get();
+	}
+
+	/**
+	 * Get number of subscribers
+	 */
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+
+	/*
+	 * Class holds the latest state of PAGE_SIZE systems
+	 */
+	private static final class Page {
+		private final AtomicLongArray latest = new AtomicLongArray(PAGE_SIZE);       // (sequence + 1) << 2 | state, 0 if none
+		private final AtomicIntegerArray tlsIds = new AtomicIntegerArray(PAGE_SIZE);
+		private final AtomicLongArray timestamps = new AtomicLongArray(PAGE_SIZE);
+
+		/*
+		 * Method keeps a change unless a later one of the same system is already kept
+		 */
+		private void record(int offset, int tlsId, long sequence, int state, long timestamp) {
+			long entry = (sequence + 1) << 2 | state;
+			tlsIds.setRelease(offset, tlsId);
+			timestamps.setRelease(offset, timestamp);
+			long current = latest.get(offset);
+			while (current < entry && !latest.compareAndSet(offset, current, entry)) {
+				current = latest.get(offset);
+			}
+		}
+	}
+
+
+	/*
+	 * Class is the subscription of one subscriber: its position in the ring, its demand,
+	 * and the state it last saw of each system, which the events are deltas from
+	 */
+	private final class ChangeSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super StateChange> subscriber;
+		private final AtomicLong demand;
+		private final AtomicInteger pending;      // signals not drained yet, one drain runs at a time
+		private volatile boolean cancelled;
+		// owned by the drain
+		private long cursor;                      // sequence of the next change to read from the ring
+		private boolean conflating;
+		private long conflateFrom;                // changes in [conflateFrom, conflateTo) are conflated
+		private long conflateTo;
+		private int scanIndex;                    // next tls index the conflation looks at
+		private byte[] lastSeen;                  // state code by tls index
+		private boolean completed;
+		private long conflations;
+
+		private ChangeSubscription(Flow.Subscriber<? super StateChange> subscriber) {
+			this.subscriber = subscriber;
+			this.demand = new AtomicLong();
+			this.pending = new AtomicInteger();
+			this.lastSeen = new byte[0];
+			startConflation(0, writtenFrontier(0));      // the current state of every system first
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancel();
+				subscriber.onError(new IllegalArgumentException("Requested " + n + " changes, must be positive"));
+				return;
+			}
+			long current = demand.get();
+			while (current != Long.MAX_VALUE && !demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n)) {
+				current = demand.get();
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			subscriptions.remove(this);
+		}
+
+		/*
+		 * Method schedules a drain unless one is running, which then drains again
+		 */
+		private void signal() {
+			if (pending.getAndIncrement() == 0) {
+				try {
+					executor.execute(this::drain);
+				} catch (RuntimeException e) {
+					pending.set(0);
+					cancel();
+					subscriber.onError(e);
+				}
+			}
+		}
+
+		/*
+		 * Method delivers the changes available, as far as the subscriber requested
+		 */
+		private void drain() {
+			int missed = pending.get();
+			while (true) {
+				long requested = demand.get();
+				long emitted = 0;
+				StateChange change;
+				while (!cancelled && emitted < requested && (change = poll()) != null) {
+					try {
+						subscriber.onNext(change);
+					} catch (RuntimeException e) {
+						cancel();
+						subscriber.onError(e);
+						return;
+					}
+					emitted++;
+				}
+				if (emitted > 0 && requested != Long.MAX_VALUE) {
+					demand.addAndGet(-emitted);
+				}
+				if (closed && !cancelled && !completed && isDrained()) {
+					completed = true;
+					subscriptions.remove(this);
+					subscriber.onComplete();
+				}
+				missed = pending.addAndGet(-missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		/*
+		 * Method returns the next change for the subscriber, null if there is none yet
+		 */
+		private StateChange poll() {
+			while (true) {
+				if (conflating) {
+					StateChange change = nextConflated();
+					if (change != null) {
+						return change;
+					}
+					conflating = false;
+					cursor = conflateTo;
+				}
+				long written = head.get();
+				if (cursor >= written) {
+					return null;
+				}
+				if (written - cursor > bufferCapacity) {
+					if (!conflateBehind()) {
+						return null;
+					}
+					continue;
+				}
+				int slot = (int) cursor & mask;
+				long sequence = published.get(slot);
+				if (sequence != cursor) {
+					if (sequence == IN_PROGRESS || sequence < cursor) {
+						return null;                 // still being written
+					}
+					if (!conflateBehind()) {
+						return null;
+					}
+					continue;
+				}
+				long payload = payloads.getAcquire(slot);
+				int tlsId = tlsIds.getAcquire(slot);
+				long timestamp = timestamps.getAcquire(slot);
+				if (published.get(slot) != cursor) {     // overwritten while read
+					if (!conflateBehind()) {
+						return null;
+					}
+					continue;
+				}
+				cursor++;
+				int tlsIndex = (int) (payload >>> 4);
+				int state = (int) payload & 3;
+				int previous = see(tlsIndex, state);
+				if (previous != state) {             // not already delivered by a conflation
+					return new StateChange(tlsId, tlsIndex, previous, state, cursor - 1, timestamp, false);
+				}
+			}
+		}
+
+		/*
+		 * Method conflates the changes the subscriber fell behind on, up to the first one still being written
+		 *
+		 * @return false if the next change is still being written, there is nothing to conflate yet
+		 */
+		private boolean conflateBehind() {
+			long to = writtenFrontier(cursor);
+			if (to == cursor) {
+				return false;
+			}
+			startConflation(cursor, to);
+			conflations++;
+			return true;
+		}
+
+		/*
+		 * Method starts conflating the changes of a window into the latest state of each system
+		 */
+		private void startConflation(long from, long to) {
+			conflating = true;
+			conflateFrom = from;
+			conflateTo = to;
+			scanIndex = 0;
+		}
+
+		/*
+		 * Method returns the latest state of the next system that changed in the conflated window, null when done.
+		 * A system that changed again after the window is left to the ring, which has its later changes in order.
+		 */
+		private StateChange nextConflated() {
+			int highest = highestIndex.get();
+			while (scanIndex <= highest) {
+				int tlsIndex = scanIndex++;
+				Page page = pages.get(tlsIndex >>> PAGE_BITS);
+				if (page == null) {
+					scanIndex = (tlsIndex >>> PAGE_BITS) + 1 << PAGE_BITS;
+					continue;
+				}
+				int offset = tlsIndex & (PAGE_SIZE - 1);
+				long entry = page.latest.get(offset);
+				long sequence = (entry >>> 2) - 1;
+				if (entry == 0 || sequence < conflateFrom || sequence >= conflateTo) {
+					continue;
+				}
+				int state = (int) entry & 3;
+				int previous = see(tlsIndex, state);
+				if (previous != state) {
+					return new StateChange(page.tlsIds.get(offset), tlsIndex, previous, state, sequence,
+							page.timestamps.get(offset), true);
+				}
+			}
+			return null;
+		}
+
+		/*
+		 * Method records the state the subscriber is told of a system and returns the one it knew
+		 */
+		private int see(int tlsIndex, int state) {
+			if (tlsIndex >= lastSeen.length) {
+				lastSeen = Arrays.copyOf(lastSeen, Math.max(tlsIndex + 1, lastSeen.length * 2));
+			}
+			int previous = lastSeen[tlsIndex];
+			lastSeen[tlsIndex] = (byte) state;
+			return previous;
+		}
+
+		/*
+		 * Method tells whether the subscriber got every change published
+		 */
+		private boolean isDrained() {
+			return !conflating && cursor >= writtenFrontier(cursor);
+		}
+	}
+
+
+	/*
+	 * Holds the shared instance, created by class initialisation the first time getInstance is called
+	 */
+	private static final class Holder {
+		static final StateChangePublisher INSTANCE = new StateChangePublisher();
+	}
+}
@@ -11,9 +11,11 @@ package trafficLightSystem;
 public class StateRecord {
 
 	// vars
-	private static int tlsID;
-	private static String state;
-	private static StateRecord instance;
+	// Instance fields, each record keeps its own state. They were static, so every record of the history
+	// returned the values of the last one created, which broke the three-greens check of the TCS and
+	// made the history impossible to checkpoint.
+	private int tlsID;
+	private String state;
 	
 	
 	//constructor
@@ -50,7 +52,7 @@ public class StateRecord {
 	 * @param tlsID the tlsID to set
 	 */
 	public void setTLSID(int tlsID) {
-		StateRecord.tlsID = tlsID;
+		this.tlsID = tlsID;
 	}
 
 	/**
@@ -59,7 +61,7 @@ public class StateRecord {
 	 * @param state the state to set
 	 */
 	public void setState(String state) {
-		StateRecord.state = state;
+		this.state = state;
 	}
 	
 	
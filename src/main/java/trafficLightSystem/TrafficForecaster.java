@@ -0,0 +1,185 @@
+/**
+ *
+ */
+package trafficLightSystem;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.locks.ReentrantLock;
+
+import visualRecognitionSystem.ScanListener;
+
+/**
+ * Class forecasts the traffic of a Traffic Light System from the scans of its Visual Recognition Systems.
+ *
+ * It is an additive Holt-Winters model of the arrival rate seen by one camera (vehicles per second):
+ * a level, a damped trend and a time of day seasonal term in 15 minute slots. Each scan updates it
+ * in constant time and memory, so it can run on the collector threads and be read at any moment.
+ *
+ * Scans of the VRSs of the system all feed the same model, the forecast of the system
+ * is the forecast rate of one camera times the number of cameras.
+ */
+public class TrafficForecaster implements ScanListener {
+
+	// vars
+	public static final int SLOT_MINUTES = 15;
+	private static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+	private static final long SLOT_MILLIS = SLOT_MINUTES * 60_000L;
+	private static final long DAY_MILLIS = 24 * 60 * 60_000L;
+
+	private final double levelSmoothing;      // alpha
+	private final double trendSmoothing;      // beta
+	private final double seasonSmoothing;     // gamma
+	private final double trendDamping;        // phi, how much of the trend carries to each further scan
+	private final long utcOffsetMillis;       // offset of the local time of day, fixed at construction
+	private double[] season;                  // rate over the level, by slot of the day, from the first scan on
+	private final ReentrantLock lock;
+	private double level;
+	private double trend;
+	private double scanMillis;                // smoothed length of a scan, the step of the trend
+	private long lastTimestamp;               // time of the last scan observed
+	private long observations;
+
+
+	/**
+	 * Initialises a forecaster with the default smoothing
+	 * **/
+	public TrafficForecaster() {
+		this(0.3, 0.05, 0.1, 0.9);
+	}
+
+	/**
+	 * Initialises a forecaster
+	 *
+	 * @param levelSmoothing weight of the last scan in the level
+	 * @param trendSmoothing weight of the last change of level in the trend
+	 * @param seasonSmoothing weight of the last scan in the seasonal term of its slot
+	 * @param trendDamping share of the trend kept for each further scan of the forecast, below 1
+	 * @throws IllegalArgumentException if a weight is not in (0, 1]
+	 * **/
+	public TrafficForecaster(double levelSmoothing, double trendSmoothing, double seasonSmoothing, double trendDamping) {
+		checkWeight(levelSmoothing);
+		checkWeight(trendSmoothing);
+		checkWeight(seasonSmoothing);
+		if (!(trendDamping > 0 && trendDamping < 1)) {
+			throw new IllegalArgumentException("Trend damping must be in (0, 1)");
+		}
+		this.levelSmoothing = levelSmoothing;
+		this.trendSmoothing = trendSmoothing;
+		this.seasonSmoothing = seasonSmoothing;
+		this.trendDamping = trendDamping;
+		this.utcOffsetMillis = ZoneId.systemDefault().getRules().getOffset(Instant.now()).getTotalSeconds() * 1000L;
+		this.lock = new ReentrantLock();
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method updates the model with one scan of a Visual Recognition System
+	 * **/
+	@Override
+	public void onScan(int vrsId, long timestamp, int vehicles, int scanMillis) {
+		observe(timestamp, vehicles, scanMillis);
+	}
+
+	/***
+	 * Method updates the model with one scan
+	 *
+	 * @param timestamp time of the scan in milliseconds since epoch
+	 * @param vehicles vehicles counted
+	 * @param scanMillis length of the scan
+	 * **/
+	public void observe(long timestamp, int vehicles, int scanMillis) {
+		if (scanMillis <= 0) {
+			return;
+		}
+		double rate = vehicles * 1000.0 / scanMillis;
+		int slot = slotOf(timestamp);
+
+		lock.lock();
+		try {
+			if (observations == 0) {
+				season = new double[SLOTS_PER_DAY];    // systems never watched by a camera do not pay for it
+				level = rate;
+				trend = 0;
+				this.scanMillis = scanMillis;
+			} else {
+				double seasonal = season[slot];
+				double previousLevel = level;
+				level = levelSmoothing * (rate - seasonal) + (1 - levelSmoothing) * (level + trendDamping * trend);
+				trend = trendSmoothing * (level - previousLevel) + (1 - trendSmoothing) * trendDamping * trend;
+				season[slot] = seasonSmoothing * (rate - level) + (1 - seasonSmoothing) * seasonal;
+				this.scanMillis += 0.1 * (scanMillis - this.scanMillis);
+			}
+			lastTimestamp = Math.max(lastTimestamp, timestamp);
+			observations++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method forecasts the arrival rate one camera sees at the given time, in vehicles per second
+	 *
+	 * @return the forecast rate, or -1 if no scan was observed yet
+	 * **/
+	public double forecastRate(long timestamp) {
+		lock.lock();
+		try {
+			if (observations == 0) {
+				return -1;
+			}
+			// damped trend summed over the scans between the last one and the forecast time
+			double steps = Math.max(0, timestamp - lastTimestamp) / scanMillis;
+			double trendShare = trendDamping * (1 - Math.pow(trendDamping, steps)) / (1 - trendDamping);
+			return Math.max(0, level + trendShare * trend + season[slotOf(timestamp)]);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method forecasts the vehicles the given cameras count over a window starting at the given time
+	 *
+	 * @return the forecast vehicles, or -1 if no scan was observed yet
+	 * **/
+	public int forecastVehicles(long windowStart, int windowSeconds, int cameras) {
+		double rate = forecastRate(windowStart + windowSeconds * 500L);   // rate at the middle of the window
+		if (rate < 0) {
+			return -1;
+		}
+		return (int) Math.round(rate * windowSeconds * cameras);
+	}
+
+	/*
+	 * Method returns the slot of the day of a time
+	 */
+	private int slotOf(long timestamp) {
+		return (int) (Math.floorMod(timestamp + utcOffsetMillis, DAY_MILLIS) / SLOT_MILLIS);
+	}
+
+	/*
+	 * Method checks a smoothing weight
+	 */
+	private static void checkWeight(double weight) {
+		if (!(weight > 0 && weight <= 1)) {
+			throw new IllegalArgumentException("Smoothing weights must be in (0, 1]");
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of scans observed
+	 */
+	public long getObservations() {
+		lock.lock();
+		try {
+			return observations;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -3,35 +3,62 @@
  */
 package trafficLightSystem;
 
+import cityStateStore.CityStateStore;
+import cityStateStore.IdAllocator;
+
 
 /**
+ * Class represents a Traffic Light.
  * 
+ * The light state lives in the CityStateStore, this object is a view over 
+ * the light's slot in the store through its dense index.
  */
 public class TrafficLight {
 
 	// vars
-	private static int nextSystemID = 804;
 	private int trafficLightID;
 	private int trafficLightSystemID;   // Traffic Light System id the VRS is associated to
-	private String state;
+	private int index;                  // dense index of the light in the CityStateStore
 	private String position;
 	private boolean status;
 	
+	// objects
+	private final CityStateStore store;
+	
 	// default constructor
 	public TrafficLight(int trafficLightSystemID) {
 		//this.state = state;
 		this.status = true;
-		this.trafficLightID = ++nextSystemID;    // auto increment id
+		this.trafficLightID = IdAllocator.getInstance().nextId();
 		this.trafficLightSystemID = trafficLightSystemID;   // Traffic Light System id the TL is associated to
 		this.position = "";
+		this.store = CityStateStore.getInstance();
+		this.index = store.registerTrafficLight(trafficLightID, trafficLightSystemID);
+	}
+	
+	
+	/**
+	 * Initialises a Traffic Light with a known id, as loaded from a topology file
+	 * **/
+	public TrafficLight(int trafficLightID, int trafficLightSystemID, String position) {
+		this.status = true;
+		this.trafficLightID = trafficLightID;
+		this.trafficLightSystemID = trafficLightSystemID;
+		this.position = position;
+		this.store = CityStateStore.getInstance();
+		this.index = store.registerTrafficLight(trafficLightID, trafficLightSystemID);
+		IdAllocator.getInstance().claim(trafficLightID);   // never handed out to another system
 	}
 	
 	
 	public TrafficLight(String state) {
 
-		this.state = state;
 		this.status = true;
-		this.trafficLightID = ++nextSystemID;    // auto increment id
+		this.trafficLightID = IdAllocator.getInstance().nextId();
+		this.position = "";
+		this.store = CityStateStore.getInstance();
+		this.index = store.registerTrafficLight(trafficLightID, 0);
+		this.setState(state);
 	}
 
 
@@ -42,7 +69,7 @@ public class TrafficLight {
 	 * Set TL state
 	 */
 	public void setState(String state) {
-		this.state = state;
+		store.setLightState(index, CityStateStore.encodeState(state));
 	}
 	
 	/**
@@ -76,11 +103,18 @@ public class TrafficLight {
 		return trafficLightID;
 	}
 	
+	/**
+	 * Get dense index of the TL in the CityStateStore
+	 */
+	public int getIndex() {
+		return index;
+	}
+	
 	/**
 	 * Get TL state
 	 */
 	public String getState() {
-		return state;
+		return CityStateStore.decodeState(store.getLightState(index));
 	}
 	
 	/**
@@ -5,21 +5,25 @@ package trafficLightSystem;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+import cityStateStore.CityStateStore;
+import cityStateStore.IdAllocator;
+import controlLoops.ControlLoopThreads;
 import visualRecognitionSystem.VisualRecognitionSystem;
 
 
 /**
+ * Class represents a Traffic Light System, the pair of Traffic Lights of an intersection
+ * and the Visual Recognition Systems watching them.
  * 
+ * The system state lives in the CityStateStore, this object is a view over 
+ * the system's slot in the store through its dense index.
  */
 public class TrafficLightSystem {
 	
 	// vars
-	private static int nextSystemID = 304;
 	private int systemID;
-	private String state;
+	private int index;                 // dense index of the system in the CityStateStore
 	private List<TrafficLight> trafficLights;
 	private List<VisualRecognitionSystem> visualRecognitionSystems;
 	
@@ -28,6 +32,13 @@ public class TrafficLightSystem {
 	private VisualRecognitionSystem vrsA;
 	private VisualRecognitionSystem vrsB;
 	private boolean operative;
+	
+	private volatile CycleHeartbeats heartbeats;   // collections stamped for the cycle watchdog, null when not watched
+	private int[] collectionSlots;                 // heartbeat slot of each VRS, in list order
+	
+	// objects
+	private final CityStateStore store;
+	private final TrafficForecaster forecaster;   // fed by the scans of the VRSs of the system
 
 	
 
@@ -36,11 +47,36 @@ public class TrafficLightSystem {
 	 * and the pair of traffic lights that compose this system
 	 * ***/
 	public TrafficLightSystem() {
-		this.systemID = ++nextSystemID;   // auto increment id
+		this(0);
+	}
+	
+	/***
+	 * Constructor to initialise a new Object Traffic Light System
+	 * associated to the given Traffic Control System
+	 * ***/
+	public TrafficLightSystem(int trafficControlSystemID) {
+		this.systemID = IdAllocator.getInstance().nextId();
 		this.operative = true;
-		this.state = "";
 		this.trafficLights = new ArrayList<>();
 		this.visualRecognitionSystems = new ArrayList<>();
+		this.store = CityStateStore.getInstance();
+		this.index = store.registerTrafficLightSystem(systemID, trafficControlSystemID);
+		this.forecaster = new TrafficForecaster();
+	}
+
+	/***
+	 * Constructor to initialise a Traffic Light System with a known id, as loaded from a topology file.
+	 * Its lights and VRSs are added afterwards, or built with known ids by initTLSComponents(firstId).
+	 * ***/
+	public TrafficLightSystem(int systemID, int trafficControlSystemID) {
+		this.systemID = systemID;
+		this.operative = true;
+		this.trafficLights = new ArrayList<>();
+		this.visualRecognitionSystems = new ArrayList<>();
+		this.store = CityStateStore.getInstance();
+		this.index = store.registerTrafficLightSystem(systemID, trafficControlSystemID);
+		this.forecaster = new TrafficForecaster();
+		IdAllocator.getInstance().claim(systemID);   // never handed out to another system
 	}
 
 	/**
@@ -58,6 +94,15 @@ public class TrafficLightSystem {
      * indicating what went wrong during the process.
      */
 	public void initTLSComponents() throws Exception {
+		this.initTLSComponents(0);
+	}
+	
+	/**
+	 * Method initialises the components of a Traffic Light System with known ids, so they keep them across restarts
+	 * 
+	 * @param firstId id of the first light, the second light and the two VRSs take the next ids, 0 hands out new ids
+	 */
+	public void initTLSComponents(int firstId) throws Exception {
 		
 		Thread.sleep(500);
 		System.out.println("\n***Initialiting Traffic Light System " + this.getSystemId() + "***");
@@ -66,8 +111,8 @@ public class TrafficLightSystem {
 		
 		try {
 			// Init 2 traffic lights
-			tlA = new TrafficLight(this.systemID);
-			tlB = new TrafficLight(this.systemID);
+			tlA = firstId != 0 ? new TrafficLight(firstId, this.systemID, "") : new TrafficLight(this.systemID);
+			tlB = firstId != 0 ? new TrafficLight(firstId + 1, this.systemID, "") : new TrafficLight(this.systemID);
 			
 			
 			System.out.println("Traffic Light with id " + tlA.getTrafficLightID() + " " + tlA.getPosition() +
@@ -80,8 +125,12 @@ public class TrafficLightSystem {
 			Thread.sleep(500);
 			
 			// Init 2 visual recognition systems associated to each traffic light
-			vrsA = new VisualRecognitionSystem(tlA.getTrafficLightID(), this.systemID);
-		    vrsB = new VisualRecognitionSystem(tlB.getTrafficLightID(), this.systemID);
+			vrsA = firstId != 0 ? new VisualRecognitionSystem(firstId + 2, tlA.getTrafficLightID(), this.systemID)
+					: new VisualRecognitionSystem(tlA.getTrafficLightID(), this.systemID);
+		    vrsB = firstId != 0 ? new VisualRecognitionSystem(firstId + 3, tlB.getTrafficLightID(), this.systemID)
+		    		: new VisualRecognitionSystem(tlB.getTrafficLightID(), this.systemID);
+		    vrsA.setScanListener(forecaster);
+		    vrsB.setScanListener(forecaster);
 			
 			System.out.println("Visual Recognition System with id " + vrsA.getTrafficLightID() + " " + tlA.getPosition() +
 	    	    	   " associated with Traffic Light " + tlA.getTrafficLightID() + " is up and running");
@@ -115,6 +164,19 @@ public class TrafficLightSystem {
 		return systemID;
 	}
 	
+	/**
+	 * Set registry the data collections of the VRSs stamp their heartbeats in, each VRS gets its slot.
+	 * Called once the VRSs are added, before the cycles start.
+	 * */
+	public void setHeartbeats(CycleHeartbeats heartbeats) {
+		int[] slots = new int[visualRecognitionSystems.size()];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = heartbeats.register(CycleHeartbeats.COLLECTION, visualRecognitionSystems.get(i).getSYSTEMID());
+		}
+		this.collectionSlots = slots;
+		this.heartbeats = heartbeats;
+	}
+	
 	/**
 	 * Get Traffic Light System status
 	 * */
@@ -140,7 +202,28 @@ public class TrafficLightSystem {
 	 * Get Traffic Light System state
 	 * */
 	public String getState() {
-		return this.state;
+		return CityStateStore.decodeState(store.getTrafficLightSystemState(index));
+	}
+	
+	/**
+	 * Get dense index of the Traffic Light System in the CityStateStore
+	 * */
+	public int getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Get vehicles of one class last counted by the VRSs of this system, as rolled up by the CityStateStore
+	 * */
+	public int getVehicleCount(int vehicleClass) {
+		return store.getTrafficLightSystemVehicleCount(index, vehicleClass);
+	}
+	
+	/**
+	 * Get vehicles of all classes last counted by the VRSs of this system
+	 * */
+	public int getTotalVehicles() {
+		return store.getTrafficLightSystemTotalVehicles(index);
 	}
 
 	/**
@@ -164,16 +247,29 @@ public class TrafficLightSystem {
 		return visualRecognitionSystems;
 	}
    
+	/**
+	 * Get traffic forecaster of the system
+	 * **/
+   public TrafficForecaster getForecaster() {
+	   return forecaster;
+   }
+   
    
 	// helper methods
 	
 	
 	/***
-	 * Method adds a new traffic light to the list of associated TL to this system
+	 * Method adds a new traffic light to the list of associated TL to this system,
+	 * the first two are lights A and B
 	 * **/
 	public void addTrafficLight(TrafficLight tl) {
 
 		this.trafficLights.add(tl);
+		if (tlA == null) {
+			tlA = tl;
+		} else if (tlB == null) {
+			tlB = tl;
+		}
 	}
 	
 	
@@ -183,39 +279,80 @@ public class TrafficLightSystem {
 	public void addVisualRecognitionSystem(VisualRecognitionSystem vrs) {
 
 		this.visualRecognitionSystems.add(vrs);
+		vrs.setScanListener(forecaster);
+	}
+	
+	/***
+	 * Method forecasts the vehicles all the VRSs of the system count over a window
+	 * 
+	 * @param windowStart start of the window in milliseconds since epoch
+	 * @param windowSeconds length of the window
+	 * @return the forecast vehicles, or -1 if no scan was taken yet
+	 * **/
+	public int forecastVehicles(long windowStart, int windowSeconds) {
+		return forecaster.forecastVehicles(windowStart, windowSeconds, visualRecognitionSystems.size());
 	}
 	
 	/***
-	 * Method updates the state of both traffic lights of the system
+	 * Method updates the state of the traffic lights of the system.
+	 * 
+	 * The writes are grouped in one system update section of the store, 
+	 * so readers never see the system and its lights disagree.
+	 * The caller publishes the change once its own update section ended.
+	 * 
+	 * @return state code the system had before the update
 	 * */
-		public void updateLightsState(String newState) {
-			this.state = newState;          // update Traffic Light System state 
+		public int updateLightsState(String newState) {
+			int stateCode = CityStateStore.encodeState(newState);
+			int previousCode;
 			
-			this.tlA.setState(newState);    // update state traffic Light A
-			this.tlB.setState(newState);    // update state traffic Light B
+			int section = store.beginSystemUpdate(index);
+			try {
+				previousCode = store.getTrafficLightSystemState(index);
+				store.setTrafficLightSystemState(index, stateCode);   // update Traffic Light System state 
+				
+				for (TrafficLight tl : trafficLights) {
+					tl.setState(newState);      // update state of every traffic light, A and B included
+				}
+			} finally {
+				store.endSystemUpdate(section);
+			}
+			return previousCode;
 		};
 		
 
 	/***
-    * Method to start traffic data collection cycle
+    * Method to start traffic data collection cycle.
+    * Each VRS collects on its own control loop thread, a virtual one in the virtual thread mode,
+    * stamping a heartbeat for the length of its observation window when the system is watched.
+    * The method returns once every VRS finished its collection.
     * **/
 	public void startVRDataCollection() {
 		
-		// Create a thread pool with as many threads as there are VRS instances
-        ExecutorService executor = Executors.newFixedThreadPool(visualRecognitionSystems.size());
-        
+		CycleHeartbeats watched = this.heartbeats;
+		List<Thread> collections = new ArrayList<>(visualRecognitionSystems.size());
+		
 		    // Iterates over the list of Visual Recognition Systems associated to this Traffic Light System
-			for(VisualRecognitionSystem vrs : this.visualRecognitionSystems) {
-				 executor.submit(() -> {
-		                vrs.startDataCollectorCycle();
+			for(int i = 0; i < visualRecognitionSystems.size(); i++) {
+				 VisualRecognitionSystem vrs = visualRecognitionSystems.get(i);
+				 int slot = watched != null ? collectionSlots[i] : -1;
+				 collections.add(ControlLoopThreads.start("vrs-" + vrs.getSYSTEMID() + "-collection", () -> {
+					    if (slot >= 0) {
+					    	    watched.beat(slot, CycleHeartbeats.COLLECTING, vrs.getCollectionWindowMillis());
+					    }
+					    try {
+					    	    vrs.startDataCollectorCycle();
+					    } finally {
+					    	    if (slot >= 0) {
+					    	    	    watched.idle(slot);
+					    	    }
+					    }
 		                System.out.println("Data collection finished...");
-		            });
+		            }));
 
 		        System.out.println("Data collection started...");
 			}
-			
-			// Shutdown the executor after starting all tasks
-	        executor.shutdown();
+			ControlLoopThreads.joinAll(collections);     // the Traffic Control System waits on this thread for the counts
 	}
 	
 	
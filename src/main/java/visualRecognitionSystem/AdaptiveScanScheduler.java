@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+/**
+ * Class picks the length of the next traffic scan of a Visual Recognition System from the traffic it has seen.
+ *
+ * It keeps an exponentially weighted mean and variance of the arrival rate (vehicles per second).
+ * When the rate or its variance rise above the reference rate the scans get shorter, so the collector samples
+ * the intersection more often; when traffic is quiet they get longer, so an idle camera takes few scans.
+ * The length always stays within the configured bounds and changes by at most a factor of 2 per scan,
+ * so one odd scan does not make the schedule swing.
+ *
+ * A scheduler belongs to one data collector and is only used by the thread running its cycles.
+ */
+public class AdaptiveScanScheduler {
+
+	// vars
+	public static final double DEFAULT_SMOOTHING = 0.3;
+	private static final double MAX_STEP = 2.0;          // largest factor between two consecutive scan lengths
+
+	private final int minScanMillis;
+	private final int maxScanMillis;
+	private final double referenceRate;                  // vehicles per second scanned at the base length
+	private final double smoothing;                      // weight of the last scan in the averages
+	private double meanRate;
+	private double rateVariance;
+	private boolean warm;                                // at least one scan observed
+	private int lastScanMillis;
+
+
+	/**
+	 * Initialises a scheduler
+	 *
+	 * @param minScanMillis shortest scan, used under heavy or erratic traffic
+	 * @param maxScanMillis longest scan, used at an idle intersection
+	 * @param referenceRate arrival rate, in vehicles per second, at which the configured scan length is kept
+	 * @throws IllegalArgumentException if the bounds or the rate are not valid
+	 * **/
+	public AdaptiveScanScheduler(int minScanMillis, int maxScanMillis, double referenceRate) {
+		this(minScanMillis, maxScanMillis, referenceRate, DEFAULT_SMOOTHING);
+	}
+
+	/**
+	 * Initialises a scheduler with the given weight of the last scan in the averages, between 0 and 1
+	 * **/
+	public AdaptiveScanScheduler(int minScanMillis, int maxScanMillis, double referenceRate, double smoothing) {
+		if (minScanMillis <= 0 || maxScanMillis < minScanMillis) {
+			throw new IllegalArgumentException("Scan bounds must be positive and ordered");
+		}
+		if (!(referenceRate > 0)) {
+			throw new IllegalArgumentException("Reference rate must be positive");
+		}
+		if (!(smoothing > 0 && smoothing <= 1)) {
+			throw new IllegalArgumentException("Smoothing must be in (0, 1]");
+		}
+		this.minScanMillis = minScanMillis;
+		this.maxScanMillis = maxScanMillis;
+		this.referenceRate = referenceRate;
+		this.smoothing = smoothing;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns the length of the next scan.
+	 *
+	 * The base length is scaled by the reference rate over the demand, the mean rate plus one standard deviation.
+	 * Before the first scan the base length is used.
+	 *
+	 * @param baseScanMillis scan length of the configuration
+	 * **/
+	public int nextScanMillis(int baseScanMillis) {
+		double target;
+		if (!warm) {
+			target = baseScanMillis;
+		} else {
+			double demand = meanRate + Math.sqrt(rateVariance);
+			target = demand > 0 ? baseScanMillis * referenceRate / demand : maxScanMillis;
+			if (lastScanMillis > 0) {
+				target = Math.max(lastScanMillis / MAX_STEP, Math.min(lastScanMillis * MAX_STEP, target));
+			}
+		}
+		lastScanMillis = (int) Math.max(minScanMillis, Math.min(maxScanMillis, Math.round(target)));
+		return lastScanMillis;
+	}
+
+	/***
+	 * Method feeds the vehicles counted by a scan into the averages
+	 *
+	 * @param vehicles vehicles counted by the scan
+	 * @param scanMillis length of the scan
+	 * **/
+	public void observe(int vehicles, int scanMillis) {
+		if (scanMillis <= 0) {
+			return;
+		}
+		double rate = vehicles * 1000.0 / scanMillis;
+		if (!warm) {
+			meanRate = rate;
+			rateVariance = 0;
+			warm = true;
+			return;
+		}
+		// incremental exponentially weighted mean and variance
+		double diff = rate - meanRate;
+		double increment = smoothing * diff;
+		meanRate += increment;
+		rateVariance = (1 - smoothing) * (rateVariance + diff * increment);
+	}
+
+	/***
+	 * Method forgets the traffic seen so far
+	 * **/
+	public void reset() {
+		warm = false;
+		meanRate = 0;
+		rateVariance = 0;
+		lastScanMillis = 0;
+	}
+
+
+	// getters
+
+	/**
+	 * Get shortest scan length in milliseconds
+	 */
+	public int getMinScanMillis() {
+		return minScanMillis;
+	}
+
+	/**
+	 * Get longest scan length in milliseconds
+	 */
+	public int getMaxScanMillis() {
+		return maxScanMillis;
+	}
+
+	/**
+	 * Get smoothed arrival rate in vehicles per second
+	 */
+	public double getMeanRate() {
+		return meanRate;
+	}
+
+	/**
+	 * Get standard deviation of the arrival rate in vehicles per second
+	 */
+	public double getRateDeviation() {
+		return Math.sqrt(rateVariance);
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class is the circuit breaker of the camera of one Visual Recognition System. It tells the Traffic Control System
+ * whether the counts of the camera can be trusted to decide the next cycle.
+ *
+ * - CLOSED: the camera reports plausible scans, its counts are used.
+ * - OPEN: the camera timed out or reported implausible scans too many times in a row, its counts are not used.
+ *   Every further failure keeps it open for another openMillis.
+ * - HALF_OPEN: the camera was quiet for openMillis, its next scans are probes. Enough plausible ones in a row
+ *   close the breaker, a single failure opens it again.
+ *
+ * A timeout is a data collector cycle that ends with no scan, because the camera stopped reporting or the cycle was
+ * interrupted. An implausible scan has a negative count, a length that is not positive, more vehicles than a camera
+ * can see in its length or a time too far ahead of the clock of the Control Center. Implausible scans are rejected,
+ * they never reach the counters.
+ */
+public class CameraCircuitBreaker {
+
+	// vars
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private static final long MAX_CLOCK_SKEW_MILLIS = 60_000;    // a scan stamped further ahead is implausible
+
+	private final int failureThreshold;        // failures in a row opening the breaker
+	private final long openMillis;             // time an open breaker waits before probing the camera
+	private final int probeSuccesses;          // plausible scans in a row closing a half open breaker
+	private final double maxVehiclesPerSecond; // most vehicles of all classes a camera can see per second
+	private final ReentrantLock lock;
+	private State state;
+	private int consecutiveFailures;
+	private int consecutiveSuccesses;
+	private long openedAt;                     // time of the last failure while open, milliseconds since epoch
+	private long timeouts;
+	private long implausibleScans;
+	private long trips;                        // times the breaker opened
+
+
+	/**
+	 * Initialises a breaker with the default thresholds: 3 failures in a row open it for 30 seconds,
+	 * 3 plausible scans in a row close it, a camera sees at most 50 vehicles per second
+	 * **/
+	public CameraCircuitBreaker() {
+		this(3, 30_000, 3, 50.0);
+	}
+
+	/**
+	 * Initialises a breaker
+	 *
+	 * @param failureThreshold failures in a row opening the breaker
+	 * @param openMillis time an open breaker waits before probing the camera
+	 * @param probeSuccesses plausible scans in a row closing a half open breaker
+	 * @param maxVehiclesPerSecond most vehicles of all classes a camera can see per second
+	 * @throws IllegalArgumentException if a threshold is not positive
+	 * **/
+	public CameraCircuitBreaker(int failureThreshold, long openMillis, int probeSuccesses, double maxVehiclesPerSecond) {
+		if (failureThreshold <= 0 || openMillis <= 0 || probeSuccesses <= 0 || !(maxVehiclesPerSecond > 0)) {
+			throw new IllegalArgumentException("Circuit breaker thresholds must be positive");
+		}
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+		this.probeSuccesses = probeSuccesses;
+		this.maxVehiclesPerSecond = maxVehiclesPerSecond;
+		this.lock = new ReentrantLock();
+		this.state = State.CLOSED;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method checks a scan of the camera and records it as a success or a failure
+	 *
+	 * @param timestamp end of the scan in milliseconds since epoch
+	 * @param now current time in milliseconds since epoch
+	 * @return true if the scan is plausible and its counts can be added, false if it must be dropped
+	 * **/
+	public boolean checkScan(long timestamp, long now, int cars, int trucks, int bikes, int buses, int scanMillis) {
+		boolean plausible = isPlausible(timestamp, now, cars, trucks, bikes, buses, scanMillis);
+		lock.lock();
+		try {
+			if (plausible) {
+				recordSuccess(now);
+			} else {
+				implausibleScans++;
+				recordFailure(now);
+			}
+		} finally {
+			lock.unlock();
+		}
+		return plausible;
+	}
+
+	/***
+	 * Method records a data collector cycle that ended with no scan
+	 *
+	 * @param now current time in milliseconds since epoch
+	 * **/
+	public void recordTimeout(long now) {
+		lock.lock();
+		try {
+			timeouts++;
+			recordFailure(now);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/***
+	 * Method tells whether the counts of the camera can be used at the given time
+	 * **/
+	public boolean isClosed(long now) {
+		return getState(now) == State.CLOSED;
+	}
+
+	/*
+	 * Method records a plausible scan, the lock is held
+	 */
+	private void recordSuccess(long now) {
+		switch (stateAt(now)) {
+		case CLOSED:
+			consecutiveFailures = 0;
+			break;
+		case HALF_OPEN:
+			if (++consecutiveSuccesses >= probeSuccesses) {
+				state = State.CLOSED;
+				consecutiveFailures = 0;
+				consecutiveSuccesses = 0;
+			}
+			break;
+		case OPEN:
+			break;       // the camera is not probed before openMillis without failures
+		}
+	}
+
+	/*
+	 * Method records a failure, the lock is held
+	 */
+	private void recordFailure(long now) {
+		State current = stateAt(now);
+		if (current == State.CLOSED && ++consecutiveFailures < failureThreshold) {
+			return;
+		}
+		if (current != State.OPEN) {
+			trips++;
+		}
+		state = State.OPEN;
+		openedAt = now;
+		consecutiveSuccesses = 0;
+	}
+
+	/*
+	 * Method returns the state at the given time, moving an open breaker to half open once openMillis passed.
+	 * The lock is held.
+	 */
+	private State stateAt(long now) {
+		if (state == State.OPEN && now - openedAt >= openMillis) {
+			state = State.HALF_OPEN;
+			consecutiveSuccesses = 0;
+		}
+		return state;
+	}
+
+	/*
+	 * Method tells whether a scan could have been seen by a camera
+	 */
+	private boolean isPlausible(long timestamp, long now, int cars, int trucks, int bikes, int buses, int scanMillis) {
+		if (scanMillis <= 0 || cars < 0 || trucks < 0 || bikes < 0 || buses < 0) {
+			return false;
+		}
+		if (timestamp - now > MAX_CLOCK_SKEW_MILLIS) {
+			return false;
+		}
+		long vehicles = (long) cars + trucks + bikes + buses;
+		return vehicles <= Math.ceil(maxVehiclesPerSecond * scanMillis / 1000.0);
+	}
+
+
+	// getters
+
+	/**
+	 * Get state of the breaker at the given time
+	 */
+	public State getState(long now) {
+		lock.lock();
+		try {
+			return stateAt(now);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get number of data collector cycles that ended with no scan
+	 */
+	public long getTimeouts() {
+		lock.lock();
+		try {
+			return timeouts;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get number of implausible scans rejected
+	 */
+	public long getImplausibleScans() {
+		lock.lock();
+		try {
+			return implausibleScans;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get number of times the breaker opened
+	 */
+	public long getTrips() {
+		lock.lock();
+		try {
+			return trips;
+		} finally {
+			lock.unlock();
+		}
+	}
+}
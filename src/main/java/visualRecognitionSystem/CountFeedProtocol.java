@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Class defines the binary frames camera processes send to the Control Center camera feed server.
+ *
+ * Every frame is a 2 byte unsigned body length followed by the body, whose first byte is the message type.
+ * A scan count message, type SCAN_COUNTS, is 27 bytes in network byte order:
+ *
+ *     u16 body length (25) | u8 type | i32 VRS id | i64 timestamp millis | u16 cars | u16 trucks | u16 bikes | u16 buses | i32 scan millis
+ *
+ * Receivers skip messages of a type they do not know, so new types can be added without breaking older servers.
+ */
+public final class CountFeedProtocol {
+
+	// vars
+	public static final int HEADER_BYTES = 2;
+	public static final int MAX_BODY_BYTES = 1024;
+	public static final byte SCAN_COUNTS = 1;
+	public static final int SCAN_BODY_BYTES = 1 + 4 + 8 + 4 * 2 + 4;
+	public static final int SCAN_FRAME_BYTES = HEADER_BYTES + SCAN_BODY_BYTES;
+	private static final int MAX_COUNT = 0xFFFF;
+
+
+	/*
+	 * Class only holds constants and static methods
+	 */
+	private CountFeedProtocol() {
+	}
+
+
+	// helper methods
+
+	/***
+	 * Static method writes a scan count message at the position of a buffer
+	 *
+	 * @throws IllegalArgumentException if a count is negative or above 65535
+	 * @throws java.nio.BufferOverflowException if the buffer has less than SCAN_FRAME_BYTES remaining
+	 * **/
+	public static void putScanCounts(ByteBuffer out, int vrsId, long timestamp, int cars, int trucks, int bikes,
+			int buses, int scanMillis) {
+		if ((cars | trucks | bikes | buses) < 0 || Math.max(Math.max(cars, trucks), Math.max(bikes, buses)) > MAX_COUNT) {
+			throw new IllegalArgumentException("Vehicle counts must be between 0 and " + MAX_COUNT);
+		}
+		out.putShort((short) SCAN_BODY_BYTES)
+			.put(SCAN_COUNTS)
+			.putInt(vrsId)
+			.putLong(timestamp)
+			.putShort((short) cars)
+			.putShort((short) trucks)
+			.putShort((short) bikes)
+			.putShort((short) buses)
+			.putInt(scanMillis);
+	}
+}
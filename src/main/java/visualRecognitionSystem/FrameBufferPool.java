@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Class holds a fixed set of frames backed by direct buffers, handed out to the camera readers and given back
+ * once the frame was detected.
+ *
+ * Direct buffers are filled by the channel read without a copy through the Java heap, and the frames are reused,
+ * so the ingestion of a frame allocates nothing. A reader that finds the pool empty waits for a frame to come back,
+ * which bounds the memory of the pipeline and slows the readers down to the pace of detection.
+ */
+public class FrameBufferPool {
+
+	// vars
+	private final BlockingQueue<CameraFrame> free;
+	private final int capacity;
+	private final int frameBytes;
+
+
+	/**
+	 * Initialises a pool of frames of up to frameBytes bytes each
+	 * **/
+	public FrameBufferPool(int capacity, int frameBytes) {
+		if (capacity <= 0 || frameBytes <= 0) {
+			throw new IllegalArgumentException("Capacity and frame size must be positive");
+		}
+		this.capacity = capacity;
+		this.frameBytes = frameBytes;
+		this.free = new ArrayBlockingQueue<>(capacity);
+		for (int i = 0; i < capacity; i++) {
+			free.add(new CameraFrame(ByteBuffer.allocateDirect(frameBytes)));
+		}
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method takes a frame from the pool, waiting for one to be released if none is free
+	 *
+	 * @return a cleared frame
+	 * **/
+	public CameraFrame acquire() throws InterruptedException {
+		CameraFrame frame = free.take();
+		frame.getBuffer().clear();
+		return frame;
+	}
+
+	/***
+	 * Method gives a frame back to the pool
+	 * **/
+	public void release(CameraFrame frame) {
+		free.offer(frame);
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of frames of the pool
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Get number of frames free now
+	 */
+	public int getAvailable() {
+		return free.size();
+	}
+
+	/**
+	 * Get largest frame a buffer of the pool holds in bytes
+	 */
+	public int getFrameBytes() {
+		return frameBytes;
+	}
+
+
+	/**
+	 * Frame of the pool: a direct buffer and the camera whose frame it holds now
+	 */
+	public static final class CameraFrame {
+
+		private final ByteBuffer buffer;
+		private int camera;
+
+		CameraFrame(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Get buffer of the frame
+		 */
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		/**
+		 * Get index of the camera whose frame the buffer holds
+		 */
+		public int getCamera() {
+			return camera;
+		}
+
+		/**
+		 * Set index of the camera whose frame the buffer holds
+		 */
+		public void setCamera(int camera) {
+			this.camera = camera;
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cityStateStore.CityStateStore;
+import visualRecognitionSystem.FrameBufferPool.CameraFrame;
+
+/**
+ * Class feeds Visual Recognition Systems with the vehicles detected in the raw frames of their cameras.
+ *
+ * A camera is a file or a named pipe of raw grayscale frames, width x height bytes each, one after the other.
+ * Every camera has a reader thread, which mostly waits on its channel, reading each frame straight into a direct
+ * buffer of a FrameBufferPool. Filled frames are queued to one detection thread running the VehicleDetector of
+ * each camera, and every framesPerScan frames the counts of a camera are reported to its VRS as one scan.
+ *
+ * Frames are never copied, buffers and queue slots are reused and the detectors work in place, so the pipeline
+ * allocates nothing per frame and one core of detection serves as many cameras as its frame rate allows.
+ */
+public class FrameIngestionPipeline {
+
+	// vars
+	private final FrameBufferPool pool;
+	private final BlockingQueue<CameraFrame> ready;      // frames read, waiting for detection
+	private final CameraFrame endOfStreams;              // queued once all the readers are done
+	private final int scanMillis;
+	private final List<Camera> cameras;
+	private final AtomicInteger activeReaders;
+	private final List<Thread> threads;
+	private volatile long framesDetected;                // written by the detection thread only
+	private volatile long vehiclesDetected;
+
+
+	/**
+	 * Initialises a pipeline
+	 *
+	 * @param poolFrames frames in flight between the readers and the detection thread
+	 * @param maxFrameBytes size of the largest camera frame
+	 * @param scanMillis video time of one scan reported to a VRS
+	 * **/
+	public FrameIngestionPipeline(int poolFrames, int maxFrameBytes, int scanMillis) {
+		if (scanMillis <= 0) {
+			throw new IllegalArgumentException("Scan length must be positive");
+		}
+		this.pool = new FrameBufferPool(poolFrames, maxFrameBytes);
+		this.ready = new ArrayBlockingQueue<>(poolFrames + 1);
+		this.endOfStreams = new CameraFrame(ByteBuffer.allocate(0));
+		this.scanMillis = scanMillis;
+		this.cameras = new ArrayList<>();
+		this.activeReaders = new AtomicInteger();
+		this.threads = new ArrayList<>();
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method adds a camera to the pipeline, before it starts
+	 *
+	 * @param source file or named pipe of raw frames of the size of the detector
+	 * @param framesPerSecond frame rate of the camera
+	 * @param loop whether a file starts again from its first frame at its end
+	 * @param vrs Visual Recognition System the detected vehicles are reported to, it stops simulating counts
+	 * @throws IllegalArgumentException if the frames of the detector do not fit the pool
+	 * **/
+	public void addCamera(Path source, VehicleDetector detector, int framesPerSecond, boolean loop,
+			VisualRecognitionSystem vrs) {
+		if (detector.getFrameBytes() > pool.getFrameBytes()) {
+			throw new IllegalArgumentException("Frames of " + detector.getFrameBytes() + " bytes do not fit buffers of "
+					+ pool.getFrameBytes());
+		}
+		if (!threads.isEmpty()) {
+			throw new IllegalStateException("Cameras must be added before the pipeline starts");
+		}
+		int framesPerScan = Math.max(1, framesPerSecond * scanMillis / 1000);
+		cameras.add(new Camera(cameras.size(), source, detector, framesPerScan, loop, vrs));
+		vrs.setCameraFed(true);
+	}
+
+	/***
+	 * Method starts a reader thread per camera and the detection thread
+	 * **/
+	public void start() {
+		activeReaders.set(cameras.size());
+		for (Camera camera : cameras) {
+			threads.add(startThread("frame-reader-" + camera.index, () -> read(camera)));
+		}
+		threads.add(startThread("frame-detector", this::detect));
+	}
+
+	/***
+	 * Method waits until every camera reached the end of its frames and the last frame was detected
+	 * **/
+	public void awaitCompletion() throws InterruptedException {
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	/***
+	 * Method stops reading and detecting, the VRSs go back to simulated counts
+	 * **/
+	public void stop() {
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+		for (Camera camera : cameras) {
+			camera.vrs.setCameraFed(false);
+		}
+	}
+
+	/*
+	 * Method starts a daemon thread
+	 */
+	private static Thread startThread(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/*
+	 * Method reads the frames of a camera into pooled buffers and queues them for detection
+	 */
+	private void read(Camera camera) {
+		int frameBytes = camera.detector.getFrameBytes();
+		try (FileChannel channel = FileChannel.open(camera.source, StandardOpenOption.READ)) {
+			while (!Thread.currentThread().isInterrupted()) {
+				CameraFrame frame = pool.acquire();
+				ByteBuffer buffer = frame.getBuffer();
+				buffer.limit(frameBytes);
+				if (!readFrame(channel, buffer, camera.loop)) {
+					pool.release(frame);
+					break;
+				}
+				buffer.flip();
+				frame.setCamera(camera.index);
+				ready.put(frame);
+			}
+		} catch (IOException e) {
+			System.err.println("Camera " + camera.source + " of VRS " + camera.vrs.getSYSTEMID() + " failed: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (activeReaders.decrementAndGet() == 0) {
+				ready.offer(endOfStreams);
+			}
+		}
+	}
+
+	/*
+	 * Method fills a buffer with one frame, returns false at the end of the stream
+	 */
+	private static boolean readFrame(FileChannel channel, ByteBuffer buffer, boolean loop) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				if (loop && buffer.position() == 0 && channel.size() > 0) {
+					channel.position(0);    // a file played again from its first frame
+					continue;
+				}
+				return false;               // a partial last frame is dropped
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Method runs the detector of the camera of every queued frame and reports the scans to the VRSs
+	 */
+	private void detect() {
+		try {
+			while (true) {
+				CameraFrame frame = ready.take();
+				if (frame == endOfStreams) {
+					break;
+				}
+				Camera camera = cameras.get(frame.getCamera());
+				int vehicles = camera.detector.detect(frame.getBuffer());
+				pool.release(frame);
+				framesDetected++;
+				vehiclesDetected += vehicles;
+				if (++camera.framesInScan == camera.framesPerScan) {
+					camera.reportScan(scanMillis);
+				}
+			}
+			// the scans cut short by the end of the streams
+			for (Camera camera : cameras) {
+				if (camera.framesInScan > 0) {
+					camera.reportScan(scanMillis * camera.framesInScan / camera.framesPerScan);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of frames detected
+	 */
+	public long getFramesDetected() {
+		return framesDetected;
+	}
+
+	/**
+	 * Get number of vehicles detected over all the cameras
+	 */
+	public long getVehiclesDetected() {
+		return vehiclesDetected;
+	}
+
+	/**
+	 * Get pool of the frame buffers
+	 */
+	public FrameBufferPool getPool() {
+		return pool;
+	}
+
+
+	/**
+	 * Camera of the pipeline and the scan it is counting
+	 */
+	private static final class Camera {
+
+		private final int index;
+		private final Path source;
+		private final VehicleDetector detector;
+		private final int framesPerScan;
+		private final boolean loop;
+		private final VisualRecognitionSystem vrs;
+		private final int[] counts = new int[CityStateStore.VEHICLE_CLASSES];
+		private int framesInScan;                 // touched by the detection thread only
+
+		Camera(int index, Path source, VehicleDetector detector, int framesPerScan, boolean loop, VisualRecognitionSystem vrs) {
+			this.index = index;
+			this.source = source;
+			this.detector = detector;
+			this.framesPerScan = framesPerScan;
+			this.loop = loop;
+			this.vrs = vrs;
+		}
+
+		/*
+		 * Method reports the vehicles of the scan to the VRS and starts the next scan
+		 */
+		void reportScan(int millis) {
+			detector.drainCounts(counts);
+			vrs.reportDetectedVehicles(counts[CityStateStore.CARS], counts[CityStateStore.TRUCKS],
+					counts[CityStateStore.BIKES], counts[CityStateStore.BUSES], millis);
+			framesInScan = 0;
+		}
+	}
+}
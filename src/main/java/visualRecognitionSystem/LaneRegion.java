@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+/**
+ * Class holds the detection zone of one lane in the frames of a camera: a rectangle of pixels vehicles
+ * drive through, like an inductive loop painted on the image.
+ *
+ * The zone should be longer than the longest vehicle and shorter than the gap between two vehicles,
+ * so it holds at most one vehicle of the lane at a time.
+ */
+public final class LaneRegion {
+
+	// vars
+	private final int left;
+	private final int top;
+	private final int right;           // exclusive
+	private final int bottom;          // exclusive
+
+
+	/**
+	 * Initialises a zone from its top left corner and its size in pixels
+	 *
+	 * @throws IllegalArgumentException if the zone is empty
+	 * **/
+	public LaneRegion(int left, int top, int width, int height) {
+		if (left < 0 || top < 0 || width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("A lane region needs a non negative corner and a positive size");
+		}
+		this.left = left;
+		this.top = top;
+		this.right = left + width;
+		this.bottom = top + height;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method tells whether the zone lies inside frames of the given size
+	 * **/
+	public boolean fits(int frameWidth, int frameHeight) {
+		return right <= frameWidth && bottom <= frameHeight;
+	}
+
+
+	// getters
+
+	/**
+	 * Get first column of the zone
+	 */
+	public int getLeft() {
+		return left;
+	}
+
+	/**
+	 * Get first row of the zone
+	 */
+	public int getTop() {
+		return top;
+	}
+
+	/**
+	 * Get column after the last one of the zone
+	 */
+	public int getRight() {
+		return right;
+	}
+
+	/**
+	 * Get row after the last one of the zone
+	 */
+	public int getBottom() {
+		return bottom;
+	}
+
+	@Override
+	public String toString() {
+		return "[" + left + "," + top + " - " + right + "," + bottom + ")";
+	}
+}
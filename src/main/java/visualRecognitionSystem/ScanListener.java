@@ -0,0 +1,24 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+/**
+ * Callback receiving every traffic scan of a Visual Recognition System as soon as it is taken.
+ *
+ * It is called on the thread running the data collector cycle, so it must be quick and thread safe
+ * when several VRSs share a listener.
+ */
+@FunctionalInterface
+public interface ScanListener {
+
+	/***
+	 * Method receives the vehicles counted by one traffic scan
+	 *
+	 * @param vrsId VRS that took the scan
+	 * @param timestamp time of the scan in milliseconds since epoch
+	 * @param vehicles vehicles counted, all classes
+	 * @param scanMillis length of the scan
+	 * **/
+	void onScan(int vrsId, long timestamp, int vehicles, int scanMillis);
+}
@@ -7,6 +7,9 @@ import java.sql.Time;
 import java.time.LocalTime;
 import java.util.Random;
 
+import cityStateStore.CityStateStore;
+import trafficDataStore.VehicleCountStore;
+
 /**
  * * Class simulates the monitoring of traffic flow by counting and recognising various types of vehicles 
  * - cars, trucks, bikes, and buses - passing through the control point within specified time intervals.
@@ -29,34 +32,46 @@ import java.util.Random;
  * Usage:
  * 
  * This class is designed to be instantiated for each traffic control point ( traffic light ) where data collection is necessary. 
+ * The counters are kept in the CityStateStore columns of the VRS owning this collector.
+ * 
+ * With an AdaptiveScanScheduler the collector still observes the intersection for numOfTrafficScans x scanLengthInSeconds,
+ * so the cycle timing of the Traffic Control System does not change, but splits that window into more, shorter scans 
+ * under heavy traffic and fewer, longer ones when traffic is quiet.
+ * 
+ * When a camera feeds the collector through a FrameIngestionPipeline the counts are the vehicles detected in
+ * its frames instead of simulated ones, the collector cycle then only waits for the observation window.
+ * 
+ * Every scan goes through the CameraCircuitBreaker of the collector first: implausible scans are dropped
+ * before they reach the counters, and a collector cycle that ends with no scan counts as a timeout.
  * 
  */
 public class TrafficDataCollector {
 	
 	private int scanLengthInSeconds;
 	private int numOfTrafficScans;
-	private int totalVehicles;
-	private int carCounter;
-	private int truckCounter;
-	private int bikeCounter;
-	private int busCounter;
-	private int anomalies;
-	private Random randomNumber;
+	private int vrsId;                // id of the VRS owning this collector
+	private int vrsIndex;             // dense index of the VRS owning this collector
+	private int scansTaken;           // scans of the last collector cycle
+	private volatile AdaptiveScanScheduler scheduler;   // null for the fixed scan schedule
+	private volatile ScanListener listener;            // told of every scan, null if nobody listens
+	private volatile boolean cameraFed;                // counts come from detected frames, not from the simulation
+	private volatile int detectedScans;                // scans reported by the camera, written by the detection thread only
+	private Random randomNumber;                       // created by the first simulated scan
+	private final CameraCircuitBreaker breaker;        // tells whether the counts of this camera can be trusted
+	private CityStateStore store;
 	
 	/**
-	 * Initialises a new TrafficDataCollector object with default values.
+	 * Initialises a new TrafficDataCollector object with default values,
+	 * writing its counters to the CityStateStore slot of the given VRS.
 	 * **/
-	public TrafficDataCollector() {
+	public TrafficDataCollector(int vrsId, int vrsIndex) {
 		
 		this.numOfTrafficScans = 0;
 		this.scanLengthInSeconds = 0;
-		this.totalVehicles = 0;
-		this.bikeCounter = 0;
-		this.carCounter = 0;
-		this.truckCounter = 0;
-		this.busCounter = 0;
-		this.anomalies = 0;
-		this.randomNumber = new Random();
+		this.vrsId = vrsId;
+		this.vrsIndex = vrsIndex;
+		this.store = CityStateStore.getInstance();
+		this.breaker = new CameraCircuitBreaker();
 	}
 	
 	// helper methods
@@ -70,25 +85,52 @@ public class TrafficDataCollector {
 	 * Logic uses a while loop to keep rack the number of scans, and uses Thread.sleep to delay every scan 2 seconds.
 	 * This way it simulates a real word scenario to schedule a traffic scan  for n seconds 
 	 * per n number of times to complete a traffic scan cycle where would be more appropriate to use a timer.
+	 * 
+	 * A cycle that ends with no scan, or interrupted, is a timeout of the camera.
 	 * **/
 	public void startDataCollector(int numOfTrafficScans, int scanLengthInSeconds) {
+		this.collect(numOfTrafficScans, scanLengthInSeconds);
+		if (scansTaken == 0 || Thread.currentThread().isInterrupted()) {
+			breaker.recordTimeout(System.currentTimeMillis());
+		}
+	}
+	
+	/*
+	 * Method runs one collector cycle
+	 */
+	private void collect(int numOfTrafficScans, int scanLengthInSeconds) {
 		
 		this.numOfTrafficScans = numOfTrafficScans;    // reset numOfTrafficScans value
 		this.scanLengthInSeconds = scanLengthInSeconds;         // reset scanTime value
         
-		carCounter = 0;
-		truckCounter = 0;
-		bikeCounter = 0;
-		busCounter = 0;
+		store.resetVehicleCounts(vrsIndex);
 		
+		if (cameraFed) {
+			waitForDetectedScans(numOfTrafficScans * scanLengthInSeconds * 1000);
+			return;
+		}
+		
+		AdaptiveScanScheduler adaptive = this.scheduler;
+		if (adaptive != null) {
+			collectAdaptively(adaptive, numOfTrafficScans * scanLengthInSeconds * 1000, scanLengthInSeconds * 1000);
+			return;
+		}
+		
+		this.scansTaken = 0;
 		while(numOfTrafficScans > 0) {
 			try {
 				Thread.sleep(scanLengthInSeconds * 1000);    // delay traffic scan n seconds
 				
-				this.carCounter += getRandomNumber();
-				this.truckCounter += getRandomNumber();
-				this.bikeCounter += getRandomNumber();
-				this.busCounter += getRandomNumber();
+				int cars = getRandomNumber();
+				int trucks = getRandomNumber();
+				int bikes = getRandomNumber();
+				int buses = getRandomNumber();
+				long now = System.currentTimeMillis();
+				if (breaker.checkScan(now, now, cars, trucks, bikes, buses, scanLengthInSeconds * 1000)) {
+					store.addVehicleCounts(vrsIndex, cars, trucks, bikes, buses);
+					recordScan(now, cars, trucks, bikes, buses, scanLengthInSeconds * 1000);      // keep the scan in the vehicle count history
+					scansTaken++;
+				}
 
 	        //    System.out.println("Cycle: " + numOfTrafficScans + " - Cars: " + carCounter + ", Trucks: " + truckCounter + ", Bikes: " + bikeCounter + ", Buses: " + busCounter);
 
@@ -104,6 +146,96 @@ public class TrafficDataCollector {
 	}
 	
 	
+	/*
+	 * Method fills the observation window with scans whose length the scheduler picks after each one.
+	 * Counts are simulated in proportion to the scan length, so the vehicles seen over the window do not depend
+	 * on how many scans it was split into.
+	 */
+	private void collectAdaptively(AdaptiveScanScheduler adaptive, int windowMillis, int baseScanMillis) {
+		int elapsed = 0;
+		int scans = 0;
+		
+		while (elapsed < windowMillis) {
+			int scanMillis = Math.min(adaptive.nextScanMillis(baseScanMillis), windowMillis - elapsed);
+			try {
+				Thread.sleep(scanMillis);
+			} catch (InterruptedException e) {
+				System.err.println("Error occurred while collecting traffic data: " + e.getMessage());
+				Thread.currentThread().interrupt();
+				break;
+			}
+			double scale = (double) scanMillis / baseScanMillis;
+			int cars = scaled(scale);
+			int trucks = scaled(scale);
+			int bikes = scaled(scale);
+			int buses = scaled(scale);
+			long now = System.currentTimeMillis();
+			if (breaker.checkScan(now, now, cars, trucks, bikes, buses, scanMillis)) {
+				store.addVehicleCounts(vrsIndex, cars, trucks, bikes, buses);
+				recordScan(now, cars, trucks, bikes, buses, scanMillis);
+				adaptive.observe(cars + trucks + bikes + buses, scanMillis);
+				scans++;
+			}
+			
+			elapsed += scanMillis;
+		}
+		this.scansTaken = scans;
+	}
+	
+	/*
+	 * Method lets the camera report its scans for the observation window
+	 */
+	private void waitForDetectedScans(int windowMillis) {
+		int scansBefore = detectedScans;
+		try {
+			Thread.sleep(windowMillis);
+		} catch (InterruptedException e) {
+			System.err.println("Error occurred while collecting traffic data: " + e.getMessage());
+			Thread.currentThread().interrupt();
+		}
+		this.scansTaken = detectedScans - scansBefore;
+	}
+	
+	/***
+	 * Method adds the vehicles a camera detected during a scan to the counters and the vehicle count history.
+	 * Called by the single thread feeding the camera counts, a FrameIngestionPipeline or a camera feed server.
+	 * An implausible scan is dropped.
+	 * 
+	 * @param timestamp end of the scan in milliseconds since epoch
+	 * **/
+	public void recordDetectedScan(long timestamp, int cars, int trucks, int bikes, int buses, int scanMillis) {
+		if (!breaker.checkScan(timestamp, System.currentTimeMillis(), cars, trucks, bikes, buses, scanMillis)) {
+			return;
+		}
+		store.addVehicleCounts(vrsIndex, cars, trucks, bikes, buses);
+		recordScan(timestamp, cars, trucks, bikes, buses, scanMillis);
+		detectedScans++;
+	}
+	
+	/*
+	 * Method simulates the vehicles of one class counted by a scan of the given fraction of the base scan length
+	 */
+	private int scaled(double scale) {
+		return (int) Math.round(getRandomNumber() * scale);
+	}
+	
+	
+	/***
+	 * Method appends the counts of a traffic scan that ended at the given time to the vehicle count history,
+	 * if a history store is open, and passes them to the scan listener
+	 * **/
+	private void recordScan(long now, int cars, int trucks, int bikes, int buses, int scanMillis) {
+		VehicleCountStore history = VehicleCountStore.getInstance();
+		if (history != null) {
+			history.record(vrsId, now, cars, trucks, bikes, buses);
+		}
+		ScanListener scanListener = listener;
+		if (scanListener != null) {
+			scanListener.onScan(vrsId, now, cars + trucks + bikes + buses, scanMillis);
+		}
+	}
+	
+	
 	/***
 	 * Method generates a random number.
 	 * 
@@ -111,11 +243,22 @@ public class TrafficDataCollector {
 	 * **/
 	private int getRandomNumber() {
 		
-		int ranNumOfVehicles = randomNumber.nextInt(10);  // generate a random number between 0 and 20
+		int ranNumOfVehicles = random().nextInt(10);  // generate a random number between 0 and 20
 		return ranNumOfVehicles;
 	}
 	
 	
+	/*
+	 * Method returns the random generator of the simulation, camera fed collectors never create one
+	 */
+	private Random random() {
+		if (randomNumber == null) {
+			randomNumber = new Random();
+		}
+		return randomNumber;
+	}
+	
+	
 	/***
 	 * Method detects any traffic anomalies such as;
 	 * 
@@ -125,8 +268,9 @@ public class TrafficDataCollector {
 	public int getAnomalies() {
 		
 		int[] chancesArray = new int[] { 0, 0, 1};          // array of possible anomalies during traffic scan
-		int randomNum = randomNumber.nextInt(chancesArray.length);
-		anomalies = chancesArray[randomNum];
+		int randomNum = random().nextInt(chancesArray.length);
+		int anomalies = chancesArray[randomNum];
+		store.setAnomalies(vrsIndex, anomalies);
 		if (anomalies==1) {
 			System.out.println("ALERT !! " + anomalies + " anomalies encountered. "
 					+ "Please check camera for anomalies and turn off alert "
@@ -147,11 +291,11 @@ public class TrafficDataCollector {
 	 **/
 	 public void printVehiclesCount() {
 		String str = "";
-		str += "\nCars " + carCounter;
-		str += "\nTrucks " + truckCounter;
-		str += "\nBikes " + bikeCounter;
-		str += "\nBuses " + busCounter;
-		str += "\nTraffic anomalies " + anomalies;
+		str += "\nCars " + getCarCounter();
+		str += "\nTrucks " + getTruckCounter();
+		str += "\nBikes " + getBikeCounter();
+		str += "\nBuses " + getBusCounter();
+		str += "\nTraffic anomalies " + store.getAnomalies(vrsIndex);
 		System.out.println(str);
 	}
 	
@@ -169,7 +313,7 @@ public class TrafficDataCollector {
 	 * Set setCycleTime
 	 */
 	public void setBusCounter(int busCounter) {
-		this.busCounter = busCounter;
+		store.setVehicleCount(vrsIndex, CityStateStore.BUSES, busCounter);
 	}
 
 	/**
@@ -179,25 +323,47 @@ public class TrafficDataCollector {
 		this.numOfTrafficScans = numOfCycles;
 	}
 	
+	/**
+	 * Set scheduler picking the length of each scan, null to go back to the fixed schedule.
+	 * It applies from the next collector cycle.
+	 */
+	public void setScheduler(AdaptiveScanScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
+	/**
+	 * Set whether a camera feeds the counters, so the collector cycle stops simulating them
+	 */
+	public void setCameraFed(boolean cameraFed) {
+		this.cameraFed = cameraFed;
+	}
+	
+	/**
+	 * Set listener told of every scan, null for none
+	 */
+	public void setScanListener(ScanListener listener) {
+		this.listener = listener;
+	}
+	
 	/**
 	 * Set carCounter
 	 */
 	public void setCarCounter(int carCounter) {
-		this.carCounter = carCounter;
+		store.setVehicleCount(vrsIndex, CityStateStore.CARS, carCounter);
 	}
 	
 	/**
 	 * Set truckCounter
 	 */
 	public void setTruckCounter(int truckCounter) {
-		this.truckCounter = truckCounter;
+		store.setVehicleCount(vrsIndex, CityStateStore.TRUCKS, truckCounter);
 	}
 	
 	/**
 	 * Set bikeCounter
 	 */
 	public void setBikeCounter(int bikeCounter) {
-		this.bikeCounter = bikeCounter;
+		store.setVehicleCount(vrsIndex, CityStateStore.BIKES, bikeCounter);
 	}
 
 	
@@ -218,32 +384,53 @@ public class TrafficDataCollector {
 		return scanLengthInSeconds;
 	}
 
+	/**
+	 * Get number of scans taken by the last collector cycle
+	 */
+	public int getScansTaken() {
+		return scansTaken;
+	}
+	
+	/**
+	 * Get circuit breaker of the camera
+	 */
+	public CameraCircuitBreaker getCircuitBreaker() {
+		return breaker;
+	}
+	
+	/**
+	 * Get scheduler picking the length of each scan, null for the fixed schedule
+	 */
+	public AdaptiveScanScheduler getScheduler() {
+		return scheduler;
+	}
+
 	/**
 	 * Get getBusCounter
 	 */
 	public int getBusCounter() {
-		return this.busCounter;
+		return store.getVehicleCount(vrsIndex, CityStateStore.BUSES);
 	}
 
 	/**
 	 * Get getCarCounter
 	 */
 	public int getCarCounter() {
-		return this.carCounter;
+		return store.getVehicleCount(vrsIndex, CityStateStore.CARS);
 	}
 
 	/**
 	 * Get getTruckCounter
 	 */
 	public int getTruckCounter() {
-		return this.truckCounter;
+		return store.getVehicleCount(vrsIndex, CityStateStore.TRUCKS);
 	}
 
 	/**
 	 * Get getBikeCounter
 	 */
 	public int getBikeCounter() {
-		return this.bikeCounter;
+		return store.getVehicleCount(vrsIndex, CityStateStore.BIKES);
 	}
 
 
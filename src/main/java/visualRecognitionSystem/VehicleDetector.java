@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import cityStateStore.CityStateStore;
+
+/**
+ * Class counts the vehicles driving through the lane zones of one camera from its raw grayscale frames.
+ *
+ * Detection is CPU only:
+ * - Background subtraction: a running average of every zone pixel is kept, a pixel further from it than
+ *   a threshold is foreground. Only background pixels update the average, so a vehicle does not fade into it
+ *   while it drives through.
+ * - Blob counting: the foreground pixels of each zone are grouped into 4-connected blobs, blobs smaller than
+ *   minBlobArea are noise. A vehicle is counted when a blob leaves the zone, classified by the largest blob seen
+ *   since the zone was last empty: bike below carArea, car below truckArea, then bus if at least three times
+ *   as long as wide and truck otherwise.
+ *
+ * All the working memory is allocated by the constructor and frames are read in place from their buffer,
+ * so detecting a frame allocates nothing. An instance keeps the state of one camera and is not thread safe.
+ */
+public class VehicleDetector {
+
+	// vars
+	private static final int FOREGROUND_THRESHOLD = 30;     // grey levels from the background
+	private static final int BACKGROUND_SHIFT = 4;          // background learns 1/16 of the difference per frame
+	private static final byte BACKGROUND = 0;
+	private static final byte FOREGROUND = 1;
+	private static final byte VISITED = 2;
+
+	private final int width;
+	private final int height;
+	private final LaneRegion[] lanes;
+	private final int minBlobArea;
+	private final int carArea;
+	private final int truckArea;
+
+	private final int[] background;          // running average by pixel, fixed point with BACKGROUND_SHIFT bits
+	private final byte[] mask;               // foreground mask of the zones
+	private final int[] stack;               // pixels waiting in the blob fill
+	private final int[] blobsInZone;         // by lane, blobs of the last frame
+	private final int[] largestArea;         // by lane, largest blob since the zone was empty
+	private final int[] largestLength;
+	private final int[] largestWidth;
+	private final int[] vehicleCounts;       // by vehicle class of the CityStateStore
+	private boolean learned;                 // background initialised from a first frame
+
+	// blob of the last fill
+	private int blobArea;
+	private int blobMinX;
+	private int blobMaxX;
+	private int blobMinY;
+	private int blobMaxY;
+
+
+	/**
+	 * Initialises a detector for frames of the given size
+	 *
+	 * @param lanes detection zones, one per lane
+	 * @param minBlobArea smallest blob taken as a vehicle, in pixels
+	 * @param carArea smallest blob taken as a car rather than a bike, in pixels
+	 * @param truckArea smallest blob taken as a truck or bus rather than a car, in pixels
+	 * @throws IllegalArgumentException if a zone is outside the frame or the areas are not increasing
+	 * **/
+	public VehicleDetector(int width, int height, LaneRegion[] lanes, int minBlobArea, int carArea, int truckArea) {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException("Frame size must be positive");
+		}
+		for (LaneRegion lane : lanes) {
+			if (!lane.fits(width, height)) {
+				throw new IllegalArgumentException("Lane region " + lane + " is outside the " + width + "x" + height + " frame");
+			}
+		}
+		if (minBlobArea <= 0 || carArea <= minBlobArea || truckArea <= carArea) {
+			throw new IllegalArgumentException("Blob areas must be positive and increasing");
+		}
+		this.width = width;
+		this.height = height;
+		this.lanes = lanes.clone();
+		this.minBlobArea = minBlobArea;
+		this.carArea = carArea;
+		this.truckArea = truckArea;
+		this.background = new int[width * height];
+		this.mask = new byte[width * height];
+		this.stack = new int[width * height];
+		this.blobsInZone = new int[lanes.length];
+		this.largestArea = new int[lanes.length];
+		this.largestLength = new int[lanes.length];
+		this.largestWidth = new int[lanes.length];
+		this.vehicleCounts = new int[CityStateStore.VEHICLE_CLASSES];
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method detects one frame and adds the vehicles that left a zone to the counts
+	 *
+	 * @param frame width x height grey levels row by row, from position 0; the buffer position is not changed
+	 * @return vehicles counted in this frame
+	 * @throws IllegalArgumentException if the frame is too short
+	 * **/
+	public int detect(ByteBuffer frame) {
+		if (frame.limit() < width * height) {
+			throw new IllegalArgumentException("Frame of " + frame.limit() + " bytes, " + width * height + " expected");
+		}
+		if (!learned) {
+			learnBackground(frame);
+			learned = true;
+			return 0;
+		}
+		int counted = 0;
+		for (int lane = 0; lane < lanes.length; lane++) {
+			counted += detectLane(frame, lane);
+		}
+		return counted;
+	}
+
+	/***
+	 * Method copies the counts into an array indexed by the vehicle classes of the CityStateStore and resets them
+	 * **/
+	public void drainCounts(int[] into) {
+		System.arraycopy(vehicleCounts, 0, into, 0, vehicleCounts.length);
+		Arrays.fill(vehicleCounts, 0);
+	}
+
+	/*
+	 * Method takes the zones of a frame as the starting background
+	 */
+	private void learnBackground(ByteBuffer frame) {
+		for (LaneRegion lane : lanes) {
+			for (int y = lane.getTop(); y < lane.getBottom(); y++) {
+				int row = y * width;
+				for (int x = lane.getLeft(); x < lane.getRight(); x++) {
+					background[row + x] = (frame.get(row + x) & 0xFF) << BACKGROUND_SHIFT;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Method subtracts the background of a zone, counts its blobs and returns the vehicles that left it
+	 */
+	private int detectLane(ByteBuffer frame, int lane) {
+		LaneRegion zone = lanes[lane];
+
+		// background subtraction
+		for (int y = zone.getTop(); y < zone.getBottom(); y++) {
+			int row = y * width;
+			for (int x = zone.getLeft(); x < zone.getRight(); x++) {
+				int pixel = row + x;
+				int grey = frame.get(pixel) & 0xFF;
+				int average = background[pixel];
+				if (Math.abs(grey - (average >> BACKGROUND_SHIFT)) > FOREGROUND_THRESHOLD) {
+					mask[pixel] = FOREGROUND;
+				} else {
+					mask[pixel] = BACKGROUND;
+					background[pixel] = average + (grey - (average >> BACKGROUND_SHIFT));
+				}
+			}
+		}
+
+		// blob counting
+		int blobs = 0;
+		for (int y = zone.getTop(); y < zone.getBottom(); y++) {
+			int row = y * width;
+			for (int x = zone.getLeft(); x < zone.getRight(); x++) {
+				if (mask[row + x] != FOREGROUND) {
+					continue;
+				}
+				fillBlob(zone, row + x);
+				if (blobArea < minBlobArea) {
+					continue;
+				}
+				blobs++;
+				if (blobArea > largestArea[lane]) {
+					int blobWidth = blobMaxX - blobMinX + 1;
+					int blobHeight = blobMaxY - blobMinY + 1;
+					largestArea[lane] = blobArea;
+					largestLength[lane] = Math.max(blobWidth, blobHeight);
+					largestWidth[lane] = Math.min(blobWidth, blobHeight);
+				}
+			}
+		}
+
+		// a blob fewer than in the last frame is a vehicle that left the zone
+		int left = Math.max(0, blobsInZone[lane] - blobs);
+		if (left > 0) {
+			vehicleCounts[classOf(lane)] += left;
+		}
+		if (blobs == 0) {
+			largestArea[lane] = 0;
+		}
+		blobsInZone[lane] = blobs;
+		return left;
+	}
+
+	/*
+	 * Method marks the 4-connected foreground pixels of a zone reachable from a pixel as visited
+	 * and keeps the area and bounds of the blob
+	 */
+	private void fillBlob(LaneRegion zone, int start) {
+		int size = 0;
+		stack[size++] = start;
+		mask[start] = VISITED;
+		blobArea = 0;
+		blobMinX = Integer.MAX_VALUE;
+		blobMaxX = -1;
+		blobMinY = Integer.MAX_VALUE;
+		blobMaxY = -1;
+
+		while (size > 0) {
+			int pixel = stack[--size];
+			int x = pixel % width;
+			int y = pixel / width;
+			blobArea++;
+			blobMinX = Math.min(blobMinX, x);
+			blobMaxX = Math.max(blobMaxX, x);
+			blobMinY = Math.min(blobMinY, y);
+			blobMaxY = Math.max(blobMaxY, y);
+
+			if (x > zone.getLeft() && mask[pixel - 1] == FOREGROUND) {
+				mask[pixel - 1] = VISITED;
+				stack[size++] = pixel - 1;
+			}
+			if (x + 1 < zone.getRight() && mask[pixel + 1] == FOREGROUND) {
+				mask[pixel + 1] = VISITED;
+				stack[size++] = pixel + 1;
+			}
+			if (y > zone.getTop() && mask[pixel - width] == FOREGROUND) {
+				mask[pixel - width] = VISITED;
+				stack[size++] = pixel - width;
+			}
+			if (y + 1 < zone.getBottom() && mask[pixel + width] == FOREGROUND) {
+				mask[pixel + width] = VISITED;
+				stack[size++] = pixel + width;
+			}
+		}
+	}
+
+	/*
+	 * Method returns the vehicle class of the largest blob seen in a zone
+	 */
+	private int classOf(int lane) {
+		int area = largestArea[lane];
+		if (area < carArea) {
+			return CityStateStore.BIKES;
+		}
+		if (area < truckArea) {
+			return CityStateStore.CARS;
+		}
+		return largestLength[lane] >= 3 * largestWidth[lane] ? CityStateStore.BUSES : CityStateStore.TRUCKS;
+	}
+
+
+	// getters
+
+	/**
+	 * Get frame width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get frame height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get bytes of one frame
+	 */
+	public int getFrameBytes() {
+		return width * height;
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class holds the scan configuration of the Visual Recognition Systems of a Traffic Control System:
+ * the number and length of the traffic scans, and the VRSs that use their own.
+ *
+ * Instances are immutable and versioned. A Traffic Control System publishes a new configuration to all its VRSs
+ * by swapping one shared reference, a collector reads the reference once per cycle so it always runs
+ * with one whole configuration and can tell which version it used.
+ */
+public final class VisualRecognitionConfig {
+
+	// vars
+	public static final VisualRecognitionConfig UNCONFIGURED = new VisualRecognitionConfig(0, new ScanSettings(),
+			Collections.<Integer, ScanSettings>emptyMap());
+
+	private final long version;
+	private final ScanSettings defaults;
+	private final Map<Integer, ScanSettings> overrides;     // by VRS id
+
+
+	/**
+	 * Initialises a configuration
+	 *
+	 * @param version version of the configuration
+	 * @param numOfTrafficScans number of traffic scans per cycle
+	 * @param scanLengthInSeconds length of each traffic scan
+	 * @param overrides scan settings of the VRSs that do not use the default ones, by VRS id
+	 * @throws IllegalArgumentException if a number or length of scans is not positive
+	 * **/
+	public VisualRecognitionConfig(long version, int numOfTrafficScans, int scanLengthInSeconds,
+			Map<Integer, ScanSettings> overrides) {
+		this(version, new ScanSettings(numOfTrafficScans, scanLengthInSeconds),
+				Collections.unmodifiableMap(new HashMap<>(overrides)));
+	}
+
+	/*
+	 * Initialises a configuration from its parts
+	 */
+	private VisualRecognitionConfig(long version, ScanSettings defaults, Map<Integer, ScanSettings> overrides) {
+		this.version = version;
+		this.defaults = defaults;
+		this.overrides = overrides;
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method returns the scan settings of a Visual Recognition System
+	 * **/
+	public ScanSettings settingsOf(int vrsId) {
+		ScanSettings settings = overrides.get(vrsId);
+		return settings != null ? settings : defaults;
+	}
+
+	/***
+	 * Method returns a copy of this configuration, same version, where the given VRS uses its own scan settings
+	 * **/
+	public VisualRecognitionConfig withOverride(int vrsId, ScanSettings settings) {
+		Map<Integer, ScanSettings> next = new HashMap<>(overrides);
+		next.put(vrsId, settings);
+		return new VisualRecognitionConfig(version, defaults, Collections.unmodifiableMap(next));
+	}
+
+
+	// getters
+
+	/**
+	 * Get version of the configuration
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get default number of traffic scans per cycle
+	 */
+	public int getNumOfTrafficScans() {
+		return defaults.getNumOfTrafficScans();
+	}
+
+	/**
+	 * Get default length in seconds of each traffic scan
+	 */
+	public int getScanLengthInSeconds() {
+		return defaults.getScanLengthInSeconds();
+	}
+
+	/**
+	 * Get scan settings of the VRSs that do not use the default ones, by VRS id
+	 */
+	public Map<Integer, ScanSettings> getOverrides() {
+		return overrides;
+	}
+
+	@Override
+	public String toString() {
+		return "version " + version + ": " + getNumOfTrafficScans() + " scans of " + getScanLengthInSeconds() + " s, "
+				+ overrides.size() + " VRS overrides";
+	}
+
+
+	/**
+	 * Number and length of the traffic scans of a Visual Recognition System
+	 */
+	public static final class ScanSettings {
+
+		// vars
+		private final int numOfTrafficScans;
+		private final int scanLengthInSeconds;
+
+		/**
+		 * Initialises scan settings
+		 *
+		 * @throws IllegalArgumentException if the number or length of scans is not positive
+		 * **/
+		public ScanSettings(int numOfTrafficScans, int scanLengthInSeconds) {
+			if (numOfTrafficScans <= 0 || scanLengthInSeconds <= 0) {
+				throw new IllegalArgumentException("Number and length of scans must be positive");
+			}
+			this.numOfTrafficScans = numOfTrafficScans;
+			this.scanLengthInSeconds = scanLengthInSeconds;
+		}
+
+		/*
+		 * Initialises scan settings without checking them
+		 */
+		private ScanSettings(int numOfTrafficScans, int scanLengthInSeconds, boolean unchecked) {
+			this.numOfTrafficScans = numOfTrafficScans;
+			this.scanLengthInSeconds = scanLengthInSeconds;
+		}
+
+		/***
+		 * Method returns settings where one value may still be unset (0), as set one at a time on a VRS not configured yet
+		 *
+		 * @throws IllegalArgumentException if a value is negative or both are unset
+		 * **/
+		static ScanSettings partial(int numOfTrafficScans, int scanLengthInSeconds) {
+			if (numOfTrafficScans < 0 || scanLengthInSeconds < 0 || numOfTrafficScans + scanLengthInSeconds == 0) {
+				throw new IllegalArgumentException("Number and length of scans can not be negative");
+			}
+			return new ScanSettings(numOfTrafficScans, scanLengthInSeconds, true);
+		}
+
+		/*
+		 * Initialises the settings of a VRS not configured yet
+		 */
+		private ScanSettings() {
+			this.numOfTrafficScans = 0;
+			this.scanLengthInSeconds = 0;
+		}
+
+		// getters
+
+		public int getNumOfTrafficScans() {
+			return numOfTrafficScans;
+		}
+
+		public int getScanLengthInSeconds() {
+			return scanLengthInSeconds;
+		}
+	}
+}
@@ -8,6 +8,11 @@
 	import java.sql.Time;
 	import java.time.LocalTime;
 	import java.util.Random;
+	import java.util.concurrent.atomic.AtomicReference;
+
+	import cityStateStore.CityStateStore;
+	import cityStateStore.IdAllocator;
+	import visualRecognitionSystem.VisualRecognitionConfig.ScanSettings;
 
 	
 	 /*
@@ -15,6 +20,9 @@
 	 * It encapsulates the configuration of visual recognition processes and interacts with the TrafficDataCollector 
 	 * to initiate data collection cycles.
 	 * This system is associated with a specific traffic control point(traffic light) by traffic Light ID.
+	 * Its vehicle counters live in the CityStateStore, reached through the dense index of the VRS.
+	 * Its scan configuration is an immutable VisualRecognitionConfig behind a reference the VRSs of a
+	 * Traffic Control System share, so one swap of the reference reconfigures all of them.
 	 * 
 	 * Responsibilities:
 	 * - Configuring visual recognition parameters such as the number of traffic scans and the duration of each scan.
@@ -29,29 +37,27 @@
 	public class VisualRecognitionSystem {
 		
 		// vars
-		private static int nextSystemId = 9022;
-		
 		private int systemID;
 		private int trafficLightID;
 		private int trafficLightSystemID;
-		private int totalVehicles;
-		private int numOfTrafficScans;
-		private int scanLengthInSeconds;
-		private int anomalies;
+		private int index;                           // dense index of the VRS in the CityStateStore
+		private final AtomicReference<VisualRecognitionConfig> config;      // last one published by the TCS
+		private volatile OwnSettings ownSettings;    // set on this VRS alone, until a newer configuration is published
+		private volatile long lastConfigVersion;     // version used by the last data collector cycle
 
 		// objects
+		private final CityStateStore store;
 		private TrafficDataCollector tdc;            // data collector
 		
 		// constructors
 		
 		public VisualRecognitionSystem() {
-			this.systemID = ++nextSystemId;  // auto increment id
+			this.systemID = IdAllocator.getInstance().nextId();
 			this.trafficLightSystemID = 0;   // Traffic Light System id the VRS is associated to
-			this.numOfTrafficScans = 0;
-			this.totalVehicles = 0;
-			this.scanLengthInSeconds = 0;
-			this.anomalies = 0;
-			this.tdc = new TrafficDataCollector();   // instantiate a Traffic Data Collector object
+			this.config = new AtomicReference<>(VisualRecognitionConfig.UNCONFIGURED);
+			this.store = CityStateStore.getInstance();
+			this.index = store.registerVisualRecognitionSystem(systemID, 0, 0);
+			this.tdc = new TrafficDataCollector(systemID, index);   // instantiate a Traffic Data Collector object
 		};
 		
 		
@@ -59,14 +65,28 @@
 		 * Initialises a new VisualRecognitionSystem object with custom parameters
 		 * **/
 		public VisualRecognitionSystem(int trafficLightId, int trafficLightSystemID) {
-			this.systemID = ++nextSystemId;  // auto increment id
+			this.systemID = IdAllocator.getInstance().nextId();
 			this.trafficLightSystemID = trafficLightSystemID;   // Traffic Light System id the VRS is associated to
 			this.trafficLightID = trafficLightId;   // Traffic Light System id the VRS is associated to
-			this.numOfTrafficScans = 0;
-			this.totalVehicles = 0;
-			this.scanLengthInSeconds = 0;
-			this.anomalies = 0;
-			this.tdc = new TrafficDataCollector();   // instantiate a Traffic Data Collector object
+			this.config = new AtomicReference<>(VisualRecognitionConfig.UNCONFIGURED);
+			this.store = CityStateStore.getInstance();
+			this.index = store.registerVisualRecognitionSystem(systemID, trafficLightId, trafficLightSystemID);
+			this.tdc = new TrafficDataCollector(systemID, index);   // instantiate a Traffic Data Collector object
+		}
+		
+
+		/**
+		 * Initialises a VisualRecognitionSystem with a known id, as loaded from a topology file
+		 * **/
+		public VisualRecognitionSystem(int systemID, int trafficLightId, int trafficLightSystemID) {
+			this.systemID = systemID;
+			this.trafficLightSystemID = trafficLightSystemID;
+			this.trafficLightID = trafficLightId;
+			this.config = new AtomicReference<>(VisualRecognitionConfig.UNCONFIGURED);
+			this.store = CityStateStore.getInstance();
+			this.index = store.registerVisualRecognitionSystem(systemID, trafficLightId, trafficLightSystemID);
+			this.tdc = new TrafficDataCollector(systemID, index);
+			IdAllocator.getInstance().claim(systemID);   // never handed out to another system
 		}
 		
 
@@ -77,6 +97,7 @@
 		 */
 		public void setTrafficLightID(int trafficLightID) {
 			this.trafficLightID = trafficLightID;
+			store.setVisualRecognitionSystemLight(index, trafficLightID);
 		}
 
 		/**
@@ -90,15 +111,55 @@
 		* Set number of micro traffic scans
 		*/
 	    public void setNumOfTrafficScans(int numOfTrafficScans) {
-		   this.numOfTrafficScans = numOfTrafficScans;
+		   useOwnSettings(ScanSettings.partial(numOfTrafficScans, settings().getScanLengthInSeconds()));
 	    }
 
 		/**
 		* Set length of each micro traffic scan by seconds
 	    */
 	    public void setScanTime(int scanLengthInSeconds) {
-			this.scanLengthInSeconds = scanLengthInSeconds;
+			useOwnSettings(ScanSettings.partial(settings().getNumOfTrafficScans(), scanLengthInSeconds));
 	    }
+
+		/**
+		 * Set adaptive scan scheduling: within a data collector cycle scans are shortened down to minScanMillis 
+		 * when traffic is heavy and lengthened up to maxScanMillis when it is quiet
+		 * 
+		 * @param referenceRate vehicles per second at which the configured scan length is kept
+		 */
+		public void enableAdaptiveScans(int minScanMillis, int maxScanMillis, double referenceRate) {
+			tdc.setScheduler(new AdaptiveScanScheduler(minScanMillis, maxScanMillis, referenceRate));
+		}
+		
+		/**
+		 * Set fixed scan scheduling back, numOfTrafficScans scans of scanLengthInSeconds each
+		 */
+		public void disableAdaptiveScans() {
+			tdc.setScheduler(null);
+		}
+
+		/**
+		 * Set listener told of every traffic scan of this VRS, null for none
+		 */
+		public void setScanListener(ScanListener listener) {
+			tdc.setScanListener(listener);
+		}
+
+		/**
+		 * Set whether the camera of this VRS feeds its counters through a FrameIngestionPipeline,
+		 * instead of the simulated counts
+		 */
+		public void setCameraFed(boolean cameraFed) {
+			tdc.setCameraFed(cameraFed);
+		}
+
+		/**
+		 * Set configuration published by the Traffic Control System to all its VRSs,
+		 * the VRS reads it from its next data collector cycle on
+		 */
+		public void useConfiguration(VisualRecognitionConfig published) {
+			config.set(published);
+		}
 		
 	    
 		// getters
@@ -114,7 +175,7 @@
 		 * Get getNumOfTrafficScans
 		 */
 		public int getNumOfTrafficScans() {
-			return numOfTrafficScans;
+			return settings().getNumOfTrafficScans();
 		}
 
 		
@@ -123,9 +184,7 @@
 		 */
 
 		public int getTotalVehicles() {
-			
-			this.totalVehicles = (tdc.getCarCounter() + tdc.getBikeCounter() + tdc.getBusCounter() + tdc.getTruckCounter());
-			return this.totalVehicles;
+			return store.getTotalVehicles(index);
 		}
 		
 		/**
@@ -142,6 +201,13 @@
 			return TrafficLightSystemID;
 		} 
 		
+		/**
+		 * Get dense index of the VRS in the CityStateStore
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
 		/**
 		 * Get getSYSTEMID
 		 */
@@ -154,7 +220,43 @@
 		* @return the scanTime
 		*/
 		public int getScanTimeInNanoSeconds() {
-			return scanLengthInSeconds;
+			return settings().getScanLengthInSeconds();
+		}
+
+		/**
+		 * Get time a data collector cycle observes the intersection for, in milliseconds
+		 */
+		public long getCollectionWindowMillis() {
+			ScanSettings settings = settings();
+			return settings.getNumOfTrafficScans() * settings.getScanLengthInSeconds() * 1000L;
+		}
+
+		/**
+		 * Get current scan configuration
+		 */
+		public VisualRecognitionConfig getConfiguration() {
+			return config.get();
+		}
+
+		/**
+		 * Get number of scans taken by the last data collector cycle
+		 */
+		public int getScansTaken() {
+			return tdc.getScansTaken();
+		}
+
+		/**
+		 * Get circuit breaker telling whether the counts of the camera can be trusted
+		 */
+		public CameraCircuitBreaker getCircuitBreaker() {
+			return tdc.getCircuitBreaker();
+		}
+
+		/**
+		 * Get version of the configuration used by the last data collector cycle
+		 */
+		public long getConfigVersion() {
+			return lastConfigVersion;
 		}
 		
 		
@@ -166,16 +268,32 @@
 		* - scanTime is the length in seconds of each micro scan 
 	    */
 		public void configVisualRecognition(int numOfTrafficScans, int scanLengthInSeconds) {
-			 this.numOfTrafficScans = numOfTrafficScans;
-		     this.scanLengthInSeconds = scanLengthInSeconds;
+			useOwnSettings(new ScanSettings(numOfTrafficScans, scanLengthInSeconds));
 		}
 		
 		/**
-		 * Methos responsible for startting visual recognition proccess
+		 * Methos responsible for startting visual recognition proccess.
+		 * The configuration is read once, a configuration published meanwhile applies from the next cycle
 		 * **/
 		public void startDataCollectorCycle() {
+			VisualRecognitionConfig cycleConfig = config.get();
+			ScanSettings settings = settingsOf(cycleConfig);
+			lastConfigVersion = cycleConfig.getVersion();
+	            tdc.startDataCollector(settings.getNumOfTrafficScans(), settings.getScanLengthInSeconds());
+		}
 		
-	            tdc.startDataCollector(this.numOfTrafficScans, this.scanLengthInSeconds);
+		/**
+		 * Method reports the vehicles the camera detected during a scan
+		 * **/
+		public void reportDetectedVehicles(int cars, int trucks, int bikes, int buses, int scanMillis) {
+			tdc.recordDetectedScan(System.currentTimeMillis(), cars, trucks, bikes, buses, scanMillis);
+		}
+		
+		/**
+		 * Method reports the vehicles counted during a scan by a camera process, at the time it stamped the scan with
+		 * **/
+		public void reportDetectedVehicles(long timestamp, int cars, int trucks, int bikes, int buses, int scanMillis) {
+			tdc.recordDetectedScan(timestamp, cars, trucks, bikes, buses, scanMillis);
 		}
 		
 		/**
@@ -185,6 +303,43 @@
 			  tdc.printVehiclesCount();
 		}
 		
+		/*
+		 * Method returns the current scan settings of this VRS
+		 */
+		private ScanSettings settings() {
+			return settingsOf(config.get());
+		}
+		
+		/*
+		 * Method returns the scan settings of this VRS under the given published configuration,
+		 * its own settings win unless the configuration was published after them
+		 */
+		private ScanSettings settingsOf(VisualRecognitionConfig published) {
+			OwnSettings own = ownSettings;
+			return own != null && own.version >= published.getVersion() ? own.settings : published.settingsOf(systemID);
+		}
+		
+		/*
+		 * Method sets scan settings on this VRS alone, on top of the configuration published so far
+		 */
+		private void useOwnSettings(ScanSettings settings) {
+			ownSettings = new OwnSettings(settings, config.get().getVersion());
+		}
+		
+		
+		/*
+		 * Scan settings set on one VRS and the version of the published configuration they were set on
+		 */
+		private static final class OwnSettings {
+			final ScanSettings settings;
+			final long version;
+			
+			OwnSettings(ScanSettings settings, long version) {
+				this.settings = settings;
+				this.version = version;
+			}
+		}
+		
 		@Override 
 		public String toString() {
 			String str = "";
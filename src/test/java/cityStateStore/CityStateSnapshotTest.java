@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests that snapshots never show a half applied phase while the systems keep writing,
+ * and that a snapshot is reused, or only partly copied again, when the store did not change.
+ */
+class CityStateSnapshotTest {
+
+	@Test
+	void snapshotsNeverShowAHalfAppliedPhase() throws InterruptedException {
+		CityStateStore store = new CityStateStore();
+		int systems = 4;
+		int[] first = new int[systems];
+		int[] second = new int[systems];
+		for (int tcs = 0; tcs < systems; tcs++) {
+			first[tcs] = store.registerTrafficLightSystem(100 + tcs, tcs);
+			second[tcs] = store.registerTrafficLightSystem(200 + tcs, tcs);
+			store.setTrafficLightSystemState(first[tcs], CityStateStore.STATE_GREEN);
+			store.setTrafficLightSystemState(second[tcs], CityStateStore.STATE_RED);
+		}
+
+		AtomicBoolean running = new AtomicBoolean(true);
+		Thread[] writers = new Thread[systems];
+		for (int tcs = 0; tcs < systems; tcs++) {
+			int a = first[tcs];
+			int b = second[tcs];
+			writers[tcs] = new Thread(() -> {
+				boolean flip = false;
+				while (running.get()) {
+					int section = store.beginSystemUpdate(a);
+					try {
+						store.setTrafficLightSystemState(a, flip ? CityStateStore.STATE_GREEN : CityStateStore.STATE_RED);
+						store.setTrafficLightSystemState(b, flip ? CityStateStore.STATE_RED : CityStateStore.STATE_GREEN);
+					} finally {
+						store.endSystemUpdate(section);
+					}
+					flip = !flip;
+				}
+			});
+			writers[tcs].start();
+		}
+
+		try {
+			long lastVersion = -1;
+			for (int read = 0; read < 500; read++) {
+				CityStateSnapshot snapshot = store.snapshot();
+				assertTrue(snapshot.getVersion() >= lastVersion);
+				lastVersion = snapshot.getVersion();
+				for (int tcs = 0; tcs < systems; tcs++) {
+					int a = snapshot.getTrafficLightSystemStateCode(snapshot.indexOfTrafficLightSystem(100 + tcs));
+					int b = snapshot.getTrafficLightSystemStateCode(snapshot.indexOfTrafficLightSystem(200 + tcs));
+					assertNotEquals(a, b, "half applied phase of TCS " + tcs);
+				}
+			}
+		} finally {
+			running.set(false);
+			for (Thread writer : writers) {
+				writer.join();
+			}
+		}
+	}
+
+	@Test
+	void unchangedStoreReturnsTheSameSnapshot() {
+		CityStateStore store = new CityStateStore();
+		int tls = store.registerTrafficLightSystem(11, 10);
+		store.registerTrafficLight(12, 11);
+		int vrs = store.registerVisualRecognitionSystem(13, 12, 11);
+		store.addVehicleCounts(vrs, 1, 2, 3, 4);
+
+		CityStateSnapshot snapshot = store.snapshot();
+		assertSame(snapshot, store.snapshot());
+		assertEquals(store.getVersion(), snapshot.getVersion());
+		assertEquals(10, snapshot.getTotalVehicles(snapshot.indexOfTrafficLightSystem(11)));
+
+		store.setTrafficLightSystemState(tls, CityStateStore.STATE_YELLOW);
+		CityStateSnapshot next = store.snapshot();
+		assertTrue(next.getVersion() > snapshot.getVersion());
+		assertEquals("yellow", next.getTrafficLightSystemState(next.indexOfTrafficLightSystem(11)));
+		assertEquals("", snapshot.getTrafficLightSystemState(snapshot.indexOfTrafficLightSystem(11)));   // snapshots are immutable
+	}
+
+	@Test
+	void onlyTheChangedStripeIsCopiedAgain() {
+		CityStateStore store = new CityStateStore();
+		int tls = store.registerTrafficLightSystem(11, 10);
+		store.registerTrafficLight(12, 11);
+		int vrs = store.registerVisualRecognitionSystem(13, 12, 11);
+		int otherTls = store.registerTrafficLightSystem(21, 20);
+		store.registerTrafficLight(22, 21);
+		int otherVrs = store.registerVisualRecognitionSystem(23, 22, 21);
+		store.addVehicleCounts(vrs, 5, 0, 0, 0);
+		store.addVehicleCounts(otherVrs, 7, 0, 0, 0);
+		CityStateSnapshot before = store.snapshot();
+
+		store.addVehicleCounts(otherVrs, 1, 0, 0, 0);
+		CityStateSnapshot after = store.snapshot();
+		assertEquals(5, after.getTotalVehicles(tls));
+		assertEquals(8, after.getTotalVehicles(otherTls));
+		assertEquals(7, before.getTotalVehicles(otherTls));
+	}
+
+	@Test
+	void registeredSystemsAppearInTheNextSnapshot() {
+		CityStateStore store = new CityStateStore();
+		store.registerTrafficLightSystem(11, 10);
+		assertEquals(1, store.snapshot().getTrafficLightSystemCount());
+
+		store.registerTrafficLightSystem(21, 20);
+		store.registerTrafficLight(22, 21);
+		CityStateSnapshot snapshot = store.snapshot();
+		assertEquals(2, snapshot.getTrafficLightSystemCount());
+		assertEquals(1, snapshot.getLightCount());
+		assertEquals(20, snapshot.getTrafficControlSystemId(snapshot.indexOfTrafficLightSystem(21)));
+	}
+}
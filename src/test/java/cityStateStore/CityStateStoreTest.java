@@ -0,0 +1,167 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests that the totals the store rolls up from the VRS counters stay equal to the counters,
+ * also under parallel writers of different Traffic Control Systems,
+ * and that unregistered systems give back their rows and their counts.
+ */
+class CityStateStoreTest {
+
+	@Test
+	void rolledUpTotalsFollowEveryCounterWrite() {
+		CityStateStore store = new CityStateStore();
+		int tls = store.registerTrafficLightSystem(11, 10);
+		store.registerTrafficLight(12, 11);
+		int vrs = store.registerVisualRecognitionSystem(13, 12, 11);
+		int otherTls = store.registerTrafficLightSystem(21, 20);
+		store.registerTrafficLight(22, 21);
+		int otherVrs = store.registerVisualRecognitionSystem(23, 22, 21);
+
+		store.addVehicleCounts(vrs, 3, 1, 0, 2);
+		store.addVehicleCounts(otherVrs, 1, 0, 4, 0);
+		store.setVehicleCount(vrs, CityStateStore.CARS, 10);
+		store.resetVehicleCounts(otherVrs);
+		store.addVehicleCounts(otherVrs, 0, 2, 0, 0);
+
+		assertEquals(13, store.getTrafficLightSystemTotalVehicles(tls));
+		assertEquals(2, store.getTrafficLightSystemTotalVehicles(otherTls));
+		assertEquals(13, store.getTrafficControlSystemTotalVehicles(store.indexOfTrafficControlSystem(10)));
+		assertEquals(15, store.getCityTotalVehicles());
+		for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+			assertEquals(store.sumCityVehicleCount(vehicleClass), store.getCityVehicleCount(vehicleClass));
+		}
+	}
+
+	@Test
+	void unregisteringASystemFreesItsRowsAndCounts() {
+		CityStateStore store = new CityStateStore();
+		store.registerTrafficLightSystem(11, 10);
+		int light = store.registerTrafficLight(12, 11);
+		int vrs = store.registerVisualRecognitionSystem(13, 12, 11);
+		int otherTls = store.registerTrafficLightSystem(21, 20);
+		store.registerTrafficLight(22, 21);
+		int otherVrs = store.registerVisualRecognitionSystem(23, 22, 21);
+		store.addVehicleCounts(vrs, 5, 0, 0, 0);
+		store.addVehicleCounts(otherVrs, 2, 0, 0, 0);
+
+		store.unregisterTrafficControlSystem(10);
+		assertEquals(-1, store.indexOfTrafficLightSystem(11));
+		assertEquals(-1, store.indexOfTrafficLight(12));
+		assertEquals(-1, store.indexOfVisualRecognitionSystem(13));
+		assertEquals(-1, store.indexOfTrafficControlSystem(10));
+		assertEquals(2, store.getCityTotalVehicles());
+		assertEquals(otherTls, store.indexOfTrafficLightSystem(21));
+		assertEquals(otherVrs, store.indexOfVisualRecognitionSystem(23));
+
+		store.registerTrafficLightSystem(31, 30);
+		assertEquals(light, store.registerTrafficLight(32, 31));          // the freed rows are reused
+		int reused = store.registerVisualRecognitionSystem(33, 32, 31);
+		assertEquals(vrs, reused);
+		assertEquals(0, store.getTotalVehicles(reused));
+		assertEquals(2, store.getCityTotalVehicles());
+	}
+
+	@Test
+	void unregisteringAnUnknownSystemChangesNothing() {
+		CityStateStore store = new CityStateStore();
+		int tls = store.registerTrafficLightSystem(11, 10);
+		store.unregisterTrafficControlSystem(99);
+		assertEquals(tls, store.indexOfTrafficLightSystem(11));
+	}
+
+	@Test
+	void parallelWritersOfDifferentSystemsKeepEveryTotalExact() throws InterruptedException {
+		CityStateStore store = new CityStateStore();
+		int systems = 8;
+		int scans = 20000;
+		int[] tls = new int[systems];
+		int[] vrs = new int[systems];
+		for (int tcs = 0; tcs < systems; tcs++) {
+			tls[tcs] = store.registerTrafficLightSystem(100 + tcs, tcs);
+			store.registerTrafficLight(200 + tcs, 100 + tcs);
+			vrs[tcs] = store.registerVisualRecognitionSystem(300 + tcs, 200 + tcs, 100 + tcs);
+		}
+
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] writers = new Thread[systems];
+		for (int tcs = 0; tcs < systems; tcs++) {
+			int row = vrs[tcs];
+			int system = tls[tcs];
+			writers[tcs] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int scan = 0; scan < scans; scan++) {
+					store.addVehicleCounts(row, 1, 1, 0, 1);
+					store.setTrafficLightSystemState(system, scan % 3 + 1);
+				}
+			});
+			writers[tcs].start();
+		}
+		start.countDown();
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		for (int tcs = 0; tcs < systems; tcs++) {
+			assertEquals(3 * scans, store.getTotalVehicles(vrs[tcs]));
+			assertEquals(3 * scans, store.getTrafficControlSystemTotalVehicles(store.indexOfTrafficControlSystem(tcs)));
+		}
+		assertEquals((long) systems * scans, store.getCityVehicleCount(CityStateStore.CARS));
+		assertEquals(3L * systems * scans, store.getCityTotalVehicles());
+		assertEquals(store.sumCityVehicleCount(CityStateStore.BUSES), store.getCityVehicleCount(CityStateStore.BUSES));
+	}
+
+	@Test
+	void statesPackedInOneWordAreNotLostUnderParallelWriters() throws InterruptedException {
+		CityStateStore store = new CityStateStore();
+		int lights = 32;              // one packed word, every light in its own Traffic Control System
+		int[] rows = new int[lights];
+		for (int light = 0; light < lights; light++) {
+			store.registerTrafficLightSystem(100 + light, light);
+			rows[light] = store.registerTrafficLight(200 + light, 100 + light);
+		}
+
+		Thread[] writers = new Thread[lights];
+		for (int light = 0; light < lights; light++) {
+			int row = rows[light];
+			writers[light] = new Thread(() -> {
+				for (int write = 0; write < 5000; write++) {
+					store.setLightState(row, write % 3 + 1);
+				}
+				store.setLightState(row, CityStateStore.STATE_GREEN);
+			});
+			writers[light].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		assertEquals(lights, store.countLightsInState(CityStateStore.STATE_GREEN));
+	}
+
+	@Test
+	void aGlobalSectionCannotBeOpenedInsideASystemSection() {
+		CityStateStore store = new CityStateStore();
+		int tls = store.registerTrafficLightSystem(11, 10);
+		int section = store.beginSystemUpdate(tls);
+		try {
+			assertThrows(IllegalStateException.class, store::beginUpdate);
+		} finally {
+			store.endSystemUpdate(section);
+		}
+		store.beginUpdate();              // nothing is left locked
+		store.endUpdate();
+	}
+}
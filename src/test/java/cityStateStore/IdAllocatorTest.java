@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Class tests that the id allocator never hands out an id twice, nor a claimed one,
+ * within one allocator and across allocators sharing a high-water mark file.
+ */
+class IdAllocatorTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void idsAreUniqueAcrossThreads() throws InterruptedException {
+		IdAllocator allocator = new IdAllocator(16);
+		int[][] handedOut = new int[4][10_000];
+		List<Thread> threads = new ArrayList<>();
+		for (int[] ids : handedOut) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = allocator.nextId();
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		Set<Integer> seen = new HashSet<>();
+		for (int[] ids : handedOut) {
+			for (int id : ids) {
+				assertTrue(seen.add(id), "id " + id + " handed out twice");
+			}
+		}
+	}
+
+	@Test
+	void claimedIdsAreNeverHandedOut() {
+		IdAllocator allocator = new IdAllocator(16);
+		int first = allocator.nextId();
+		allocator.claim(first + 5);
+		int next = allocator.nextId();
+		assertTrue(next > first + 5);
+		allocator.claim(first);                // already handed out, nothing changes
+		assertEquals(next + 1, allocator.nextId());
+	}
+
+	@Test
+	void blocksAreContiguousAndMapToDenseIndexes() {
+		IdAllocator allocator = new IdAllocator(16);
+		IdAllocator.IdBlock block = allocator.lease(40);     // larger than a lease
+		assertEquals(40, block.getSize());
+		int first = block.nextId();
+		assertEquals(first, block.getFirst());
+		assertEquals(first + 1, block.nextId());
+		assertEquals(39, block.indexOf(first + 39));
+		assertFalse(block.contains(first + 40));
+		assertThrows(IllegalArgumentException.class, () -> block.indexOf(first + 40));
+		assertTrue(allocator.nextId() >= first + 40);
+
+		for (int i = 2; i < 40; i++) {
+			block.nextId();
+		}
+		assertThrows(IllegalStateException.class, block::nextId);
+	}
+
+	@Test
+	void allocatorsSharingAMarkFileNeverHandOutTheSameId() throws IOException {
+		Path file = directory.resolve("ids.hwm");
+		IdAllocator first = new IdAllocator(16);
+		IdAllocator second = new IdAllocator(16);
+		first.persistTo(file);
+		second.persistTo(file);
+
+		Set<Integer> seen = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(seen.add(first.nextId()));
+			assertTrue(seen.add(second.nextId()));
+		}
+		first.close();
+		second.close();
+	}
+
+	@Test
+	void publishedClaimsAreKeptClearOfByTheOtherAllocators() throws IOException {
+		Path file = directory.resolve("claims.hwm");
+		IdAllocator loader = new IdAllocator(16);
+		loader.persistTo(file);
+		loader.claim(5000);
+		loader.publishClaims();
+		assertEquals(5001, ByteBuffer.wrap(Files.readAllBytes(file)).getLong());
+
+		IdAllocator other = new IdAllocator(16);
+		other.persistTo(file);
+		assertTrue(other.nextId() > 5000);
+		loader.close();
+		other.close();
+	}
+
+	@Test
+	void processesSharingAMarkFileNeverHandOutTheSameId() throws Exception {
+		Path file = directory.resolve("processes.hwm");
+		List<Path> outputs = new ArrayList<>();
+		List<Process> workers = new ArrayList<>();
+		for (int worker = 0; worker < 2; worker++) {
+			Path output = directory.resolve("ids-" + worker + ".out");
+			outputs.add(output);
+			workers.add(IdAllocatorWorker.start(file, output, 4, 20_000, 5000));     // both load a topology using id 5000
+		}
+		for (Process worker : workers) {
+			assertTrue(worker.waitFor(60, TimeUnit.SECONDS), "worker did not finish");
+			assertEquals(0, worker.exitValue());
+		}
+
+		BitSet seen = new BitSet();
+		for (Path output : outputs) {
+			ByteBuffer ids = ByteBuffer.wrap(Files.readAllBytes(output));
+			assertEquals(4 * 20_000 * Integer.BYTES, ids.remaining());
+			while (ids.hasRemaining()) {
+				int id = ids.getInt();
+				assertFalse(seen.get(id), "id " + id + " handed out twice");
+				seen.set(id);
+			}
+		}
+		assertFalse(seen.get(5000));
+		assertTrue(ByteBuffer.wrap(Files.readAllBytes(file)).getLong() >= seen.length());
+	}
+
+	@Test
+	void aRestartedAllocatorCarriesOnAboveTheMark() throws IOException {
+		Path file = directory.resolve("restart.hwm");
+		IdAllocator before = new IdAllocator(16);
+		before.persistTo(file);
+		int last = 0;
+		for (int i = 0; i < 20; i++) {
+			last = before.nextId();
+		}
+		before.close();
+
+		IdAllocator after = new IdAllocator(16);
+		after.persistTo(file);
+		assertTrue(after.nextId() > last);
+		after.close();
+	}
+}
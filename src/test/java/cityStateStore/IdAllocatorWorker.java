@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package cityStateStore;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class is the worker process of the id allocator tests: it shares a high-water mark file with the other workers,
+ * claims an id as if it loaded a topology using it, hands out ids from several threads and writes them to a file.
+ */
+final class IdAllocatorWorker {
+
+	private IdAllocatorWorker() {
+	}
+
+	/***
+	 * Method starts a worker process sharing the given mark file, it writes the ids it handed out to the output file
+	 * **/
+	static Process start(Path markFile, Path output, int threads, int idsPerThread, int claimedId) throws Exception {
+		return new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+				"-cp", System.getProperty("java.class.path"), IdAllocatorWorker.class.getName(),
+				markFile.toString(), output.toString(), String.valueOf(threads), String.valueOf(idsPerThread),
+				String.valueOf(claimedId)).inheritIO().start();
+	}
+
+	/**
+	 * Hands out ids from several threads, half of them one by one and the other half from leased blocks of 64.
+	 *
+	 * @param args mark file, output file, threads, ids per thread and claimed id
+	 */
+	public static void main(String[] args) throws Exception {
+		Path file = Paths.get(args[0]);
+		Path output = Paths.get(args[1]);
+		int threads = Integer.parseInt(args[2]);
+		int idsPerThread = Integer.parseInt(args[3]);
+
+		IdAllocator allocator = new IdAllocator(1024);
+		allocator.persistTo(file);
+		allocator.claim(Integer.parseInt(args[4]));
+		int[][] handedOut = new int[threads][idsPerThread];
+		List<Thread> workers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int[] ids = handedOut[t];
+			boolean useBlocks = t % 2 == 1;
+			workers.add(new Thread(() -> {
+				IdAllocator.IdBlock block = null;
+				for (int i = 0; i < idsPerThread; i++) {
+					if (useBlocks) {
+						if (block == null || block.getRemaining() == 0) {
+							block = allocator.lease(64);
+						}
+						ids[i] = block.nextId();
+					} else {
+						ids[i] = allocator.nextId();
+					}
+				}
+			}));
+		}
+		for (Thread worker : workers) {
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		allocator.close();
+
+		ByteBuffer ids = ByteBuffer.allocate(threads * idsPerThread * Integer.BYTES);
+		for (int[] threadIds : handedOut) {
+			for (int id : threadIds) {
+				ids.putInt(id);
+			}
+		}
+		Files.write(output, ids.array());
+	}
+}
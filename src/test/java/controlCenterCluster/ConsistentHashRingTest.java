@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package controlCenterCluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests that the ring spreads the Traffic Control Systems evenly, moves only the systems of the
+ * arcs a worker takes or gives away, and places the workers the same whatever their join order.
+ */
+class ConsistentHashRingTest {
+
+	private static final int SYSTEMS = 10000;
+
+	@Test
+	void systemsAreSpreadEvenly() {
+		ConsistentHashRing ring = ringOf("worker-1", "worker-2", "worker-3", "worker-4");
+		Map<String, List<Integer>> assigned = ring.assign(systems());
+
+		assertEquals(4, assigned.size());
+		for (List<Integer> tcsIds : assigned.values()) {
+			// 128 virtual nodes keep every share within a third of the fair one
+			assertTrue(Math.abs(tcsIds.size() - SYSTEMS / 4) < SYSTEMS / 12, "share " + tcsIds.size());
+		}
+	}
+
+	@Test
+	void aJoiningWorkerOnlyTakesSystemsFromTheOthers() {
+		ConsistentHashRing before = ringOf("worker-1", "worker-2", "worker-3");
+		ConsistentHashRing after = before.withWorker("worker-4");
+
+		int moved = 0;
+		for (int tcsId : systems()) {
+			String owner = after.ownerOf(tcsId);
+			if (!owner.equals(before.ownerOf(tcsId))) {
+				assertEquals("worker-4", owner, "TCS " + tcsId + " moved between the old workers");
+				moved++;
+			}
+		}
+		assertTrue(moved > SYSTEMS / 8 && moved < SYSTEMS / 3, "moved " + moved);
+	}
+
+	@Test
+	void aLeavingWorkerOnlyGivesAwayItsOwnSystems() {
+		ConsistentHashRing before = ringOf("worker-1", "worker-2", "worker-3", "worker-4");
+		ConsistentHashRing after = before.withoutWorker("worker-2");
+
+		for (int tcsId : systems()) {
+			String owner = before.ownerOf(tcsId);
+			if (!owner.equals("worker-2")) {
+				assertEquals(owner, after.ownerOf(tcsId));
+			}
+		}
+	}
+
+	@Test
+	void ownersDoNotDependOnTheJoinOrder() {
+		ConsistentHashRing forward = ringOf("a", "b", "c");
+		ConsistentHashRing backward = ringOf("c", "b", "a");
+		for (int tcsId : systems()) {
+			assertEquals(forward.ownerOf(tcsId), backward.ownerOf(tcsId));
+		}
+	}
+
+	@Test
+	void similarIdsGetUnrelatedPositions() {
+		// ids differing in one character, or with equal String hash codes, must not share positions
+		assertNotEquals(ConsistentHashRing.nodePosition("worker-1", 0), ConsistentHashRing.nodePosition("worker-2", 0));
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertNotEquals(ConsistentHashRing.nodePosition("Aa", 7), ConsistentHashRing.nodePosition("BB", 7));
+		assertNotEquals(ConsistentHashRing.nodePosition("w", 1), ConsistentHashRing.nodePosition("w", 256));
+
+		Map<String, List<Integer>> assigned = ringOf("Aa", "BB").assign(systems());
+		assertTrue(assigned.get("Aa").size() > SYSTEMS / 3 && assigned.get("BB").size() > SYSTEMS / 3);
+	}
+
+	@Test
+	void emptyRingHasNoOwner() {
+		assertNull(new ConsistentHashRing().ownerOf(1));
+		assertTrue(new ConsistentHashRing().assign(systems()).isEmpty());
+	}
+
+
+	/*
+	 * Method returns a ring of the given workers, added in order
+	 */
+	private static ConsistentHashRing ringOf(String... workers) {
+		ConsistentHashRing ring = new ConsistentHashRing();
+		for (String worker : workers) {
+			ring = ring.withWorker(worker);
+		}
+		return ring;
+	}
+
+	/*
+	 * Method returns the TCS ids 1 to SYSTEMS
+	 */
+	private static List<Integer> systems() {
+		List<Integer> tcsIds = new ArrayList<>();
+		for (int id = 1; id <= SYSTEMS; id++) {
+			tcsIds.add(id);
+		}
+		return tcsIds;
+	}
+}
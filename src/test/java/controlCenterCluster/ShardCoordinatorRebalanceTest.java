@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package controlCenterCluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.Server;
+import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import trafficCluster.AssignmentAck;
+import trafficCluster.JoinReply;
+import trafficCluster.LeaseAck;
+import trafficCluster.LeaseRenewal;
+import trafficCluster.ShardAssignment;
+import trafficCluster.ShardWorkerGrpc;
+import trafficCluster.WorkerInfo;
+
+/**
+ * Class tests that a rebalance never starts a Traffic Control System on a worker while another one may still run it:
+ * a system whose stop was not acknowledged stays with its worker, and the systems of a worker that stopped
+ * answering are held until its lease is over.
+ */
+class ShardCoordinatorRebalanceTest {
+
+	private static final long LEASE_MILLIS = 500;
+
+	private final List<Server> servers = new ArrayList<>();
+
+	@AfterEach
+	void shutdown() {
+		for (Server server : servers) {
+			server.shutdownNow();
+		}
+	}
+
+	@Test
+	void aSystemThatDidNotStopIsNotStartedElsewhere() throws Exception {
+		List<Integer> tcsIds = List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12);
+		ShardCoordinator coordinator = new ShardCoordinator(tcsIds, LEASE_MILLIS, 100);
+		FakeWorker a = new FakeWorker("a");
+		FakeWorker b = new FakeWorker("b");
+		join(coordinator, a);
+		awaitTrue(() -> a.running().size() == tcsIds.size());
+
+		a.stuck = true;            // a does not manage to stop anything
+		join(coordinator, b);
+		awaitTrue(() -> a.assignments.size() >= 3);
+
+		Set<Integer> movingToB = new HashSet<>(coordinator.getRing().assign(tcsIds).get("b"));
+		assertFalse(movingToB.isEmpty());
+		Thread.sleep(300);
+		assertTrue(Collections.disjoint(b.running(), movingToB), "b started " + b.running());
+		assertEquals(tcsIds.size(), a.running().size());
+
+		a.stuck = false;           // the retried rebalance stops them, only then b gets them
+		awaitTrue(() -> b.running().equals(movingToB));
+		assertTrue(Collections.disjoint(a.running(), movingToB));
+	}
+
+	@Test
+	void theSystemsOfAFailedWorkerAreHeldUntilItsLeaseIsOver() throws Exception {
+		List<Integer> tcsIds = List.of(1, 2, 3, 4, 5, 6, 7, 8);
+		ShardCoordinator coordinator = new ShardCoordinator(tcsIds, LEASE_MILLIS, 100);
+		FakeWorker a = new FakeWorker("a");
+		FakeWorker b = new FakeWorker("b");
+		join(coordinator, a);
+		join(coordinator, b);
+		awaitTrue(() -> a.running().size() + b.running().size() == tcsIds.size() && !b.running().isEmpty());
+		Set<Integer> ofB = b.running();
+
+		long failedAt = System.nanoTime();
+		b.server.shutdownNow();                      // b is gone without leaving, its renewals fail
+		awaitTrue(() -> !coordinator.getRing().getWorkers().contains("b"));
+		awaitTrue(() -> a.running().size() == tcsIds.size(), 15000);
+
+		long heldMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - failedAt);
+		assertTrue(heldMillis >= LEASE_MILLIS, "systems of b moved after " + heldMillis + " ms");
+		assertTrue(a.running().containsAll(ofB));
+	}
+
+
+	/*
+	 * Method joins a worker to the coordinator
+	 */
+	private static void join(ShardCoordinator coordinator, FakeWorker worker) throws Exception {
+		CompletableFuture<JoinReply> reply = new CompletableFuture<>();
+		coordinator.join(WorkerInfo.newBuilder().setWorkerId(worker.id).setHost("127.0.0.1").setPort(worker.server.getPort()).build(),
+				new StreamObserver<JoinReply>() {
+					@Override
+					public void onNext(JoinReply value) {
+						reply.complete(value);
+					}
+
+					@Override
+					public void onError(Throwable t) {
+						reply.completeExceptionally(t);
+					}
+
+					@Override
+					public void onCompleted() {
+					}
+				});
+		reply.get(10, TimeUnit.SECONDS);
+	}
+
+	/*
+	 * Method waits up to 10 seconds for the condition
+	 */
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		awaitTrue(condition, 10000);
+	}
+
+	/*
+	 * Method waits up to the given time for the condition
+	 */
+	private static void awaitTrue(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+
+
+	/*
+	 * Worker keeping the assigned ids, without running them. A stuck worker never stops a system.
+	 */
+	private final class FakeWorker extends ShardWorkerGrpc.ShardWorkerImplBase {
+		private final String id;
+		private final Server server;
+		private final Set<Integer> running = new HashSet<>();
+		private final List<ShardAssignment> assignments = new CopyOnWriteArrayList<>();
+		private volatile boolean stuck;
+
+		FakeWorker(String id) throws Exception {
+			this.id = id;
+			this.server = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", 0)).addService(this).build().start();
+			servers.add(server);
+		}
+
+		@Override
+		public synchronized void assign(ShardAssignment assignment, StreamObserver<AssignmentAck> responseObserver) {
+			assignments.add(assignment);
+			AssignmentAck.Builder ack = AssignmentAck.newBuilder().setWorkerId(id).setEpoch(assignment.getEpoch());
+			for (int tcsId : new ArrayList<>(running)) {
+				if (!assignment.getTcsIdsList().contains(tcsId)) {
+					if (stuck) {
+						ack.addUnstoppedTcsIds(tcsId);
+					} else {
+						running.remove(tcsId);
+					}
+				}
+			}
+			running.addAll(assignment.getTcsIdsList());
+			responseObserver.onNext(ack.build());
+			responseObserver.onCompleted();
+		}
+
+		@Override
+		public void renew(LeaseRenewal renewal, StreamObserver<LeaseAck> responseObserver) {
+			responseObserver.onNext(LeaseAck.newBuilder().setWorkerId(id).setEpoch(renewal.getEpoch()).build());
+			responseObserver.onCompleted();
+		}
+
+		synchronized Set<Integer> running() {
+			return new HashSet<>(running);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package controlCenterCluster;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import io.grpc.stub.StreamObserver;
+import trafficCluster.AssignmentAck;
+import trafficCluster.LeaseAck;
+import trafficCluster.LeaseRenewal;
+import trafficCluster.ShardAssignment;
+
+/**
+ * Class tests that a worker stops the systems it loses before acknowledging, and stops all of them
+ * on its own once the coordinator no longer renews its lease.
+ */
+class ShardWorkerLeaseTest {
+
+	@Test
+	void aLostSystemIsStoppedBeforeTheAcknowledgement() throws Exception {
+		ShardWorker worker = new ShardWorker("worker-a");
+		AssignmentAck started = assign(worker, 1, 60000, 9101, 9102);
+		assertEquals(2, started.getStarted());
+		assertEquals(List.of(9101, 9102), worker.getRunningSystems());
+
+		AssignmentAck stopped = assign(worker, 2, 60000, 9102);
+		assertEquals(1, stopped.getStopped());
+		assertEquals(0, stopped.getUnstoppedTcsIdsCount());
+		assertEquals(List.of(9102), worker.getRunningSystems());
+
+		assertEquals(2, assign(worker, 1, 60000, 9101).getEpoch());     // an older assignment is ignored
+		assertEquals(List.of(9102), worker.getRunningSystems());
+		worker.stopAll();
+	}
+
+	@Test
+	void systemsRunWhileTheLeaseIsRenewedAndStopOnceItIsNot() throws Exception {
+		ShardWorker worker = new ShardWorker("worker-b");
+		assign(worker, 1, 60000, 9201, 9202);       // starting the systems takes longer than the short lease
+		for (int i = 0; i < 8; i++) {
+			LeaseAck ack = call(observer -> worker.renew(LeaseRenewal.newBuilder().setEpoch(1).setLeaseMillis(400).build(), observer));
+			assertEquals(1, ack.getEpoch());
+			Thread.sleep(100);
+		}
+		assertEquals(List.of(9201, 9202), worker.getRunningSystems());
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!worker.getRunningSystems().isEmpty()) {
+			assertTrue(System.currentTimeMillis() < deadline, "systems still running " + worker.getRunningSystems());
+			Thread.sleep(50);
+		}
+	}
+
+
+	/*
+	 * Method sends an assignment to the worker and returns its acknowledgement
+	 */
+	private static AssignmentAck assign(ShardWorker worker, long epoch, long leaseMillis, Integer... tcsIds) throws Exception {
+		ShardAssignment assignment = ShardAssignment.newBuilder().setEpoch(epoch).setLeaseMillis(leaseMillis)
+				.addAllTcsIds(List.of(tcsIds)).build();
+		return call(observer -> worker.assign(assignment, observer));
+	}
+
+	/*
+	 * Method calls a service method and returns its single reply
+	 */
+	private static <T> T call(Consumer<StreamObserver<T>> method) throws Exception {
+		CompletableFuture<T> reply = new CompletableFuture<>();
+		method.accept(new StreamObserver<T>() {
+			@Override
+			public void onNext(T value) {
+				reply.complete(value);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				reply.completeExceptionally(t);
+			}
+
+			@Override
+			public void onCompleted() {
+			}
+		});
+		return reply.get(10, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cityStateStore.CityStateStore;
+import visualRecognitionSystem.CameraFeedSimulator;
+import visualRecognitionSystem.CountFeedProtocol;
+import visualRecognitionSystem.VisualRecognitionSystem;
+
+/**
+ * Class tests the camera feed server over TCP and Unix domain sockets: the frames are routed to their VRSs
+ * however the stream is split, unknown VRSs and message types are skipped, and invalid frames drop the connection.
+ */
+class CameraFeedServerTest {
+
+	@TempDir
+	Path directory;
+
+	private CameraFeedServer server;
+	private VisualRecognitionSystem[] systems;
+	private SocketAddress tcp;
+	private SocketAddress unix;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = new CameraFeedServer();
+		systems = new VisualRecognitionSystem[40];
+		for (int i = 0; i < systems.length; i++) {
+			systems[i] = new VisualRecognitionSystem();
+			server.register(systems[i]);
+		}
+		tcp = server.bindTcp(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		unix = server.bindUnix(directory.resolve("feed.sock"));
+		server.start();
+	}
+
+	@AfterEach
+	void closeServer() {
+		server.close();
+	}
+
+	@Test
+	void scansFromManyConnectionsAreAllRouted() throws InterruptedException {
+		int[] tcpCameras = new int[systems.length / 2];
+		int[] unixCameras = new int[systems.length / 2];
+		for (int i = 0; i < tcpCameras.length; i++) {
+			tcpCameras[i] = systems[i].getSYSTEMID();
+			unixCameras[i] = systems[tcpCameras.length + i].getSYSTEMID();
+		}
+		long sent = new CameraFeedSimulator(tcp, tcpCameras, 4, 7).run(50)
+				+ new CameraFeedSimulator(unix, unixCameras, 4, 11).run(50);
+
+		assertEquals(systems.length * 50L, sent);
+		awaitTrue(() -> server.getMessages() == sent);
+		assertEquals(0, server.getUnknownVrsMessages());
+		assertEquals(0, server.getMalformedConnections());
+	}
+
+	@Test
+	void aFrameSplitOverManyWritesIsRoutedOnce() throws Exception {
+		VisualRecognitionSystem vrs = systems[0];
+		CityStateStore store = CityStateStore.getInstance();
+		int carsBefore = store.getVehicleCount(vrs.getIndex(), CityStateStore.CARS);
+		ByteBuffer frames = ByteBuffer.allocate(2 * CountFeedProtocol.SCAN_FRAME_BYTES);
+		long now = System.currentTimeMillis();
+		CountFeedProtocol.putScanCounts(frames, vrs.getSYSTEMID(), now, 3, 1, 0, 2, 2000);
+		CountFeedProtocol.putScanCounts(frames, vrs.getSYSTEMID(), now, 4, 0, 1, 0, 2000);
+		frames.flip();
+
+		try (SocketChannel channel = SocketChannel.open(tcp)) {
+			while (frames.hasRemaining()) {
+				ByteBuffer oneByte = frames.slice();
+				oneByte.limit(1);
+				channel.write(oneByte);
+				frames.position(frames.position() + 1);
+				Thread.sleep(1);
+			}
+			awaitTrue(() -> server.getMessages() == 2);
+		}
+		assertEquals(carsBefore + 7, store.getVehicleCount(vrs.getIndex(), CityStateStore.CARS));
+	}
+
+	@Test
+	void unknownVrsesAndMessageTypesAreSkipped() throws Exception {
+		ByteBuffer frames = ByteBuffer.allocate(64);
+		long now = System.currentTimeMillis();
+		CountFeedProtocol.putScanCounts(frames, -12345, now, 1, 0, 0, 0, 2000);
+		frames.putShort((short) 3).put((byte) 99).put((byte) 0).put((byte) 0);          // a type of a newer protocol
+		CountFeedProtocol.putScanCounts(frames, systems[1].getSYSTEMID(), now, 1, 0, 0, 0, 2000);
+		frames.flip();
+
+		try (SocketChannel channel = SocketChannel.open(unix)) {
+			channel.write(frames);
+			awaitTrue(() -> server.getMessages() == 1);
+		}
+		assertEquals(1, server.getUnknownVrsMessages());
+		assertEquals(0, server.getMalformedConnections());
+	}
+
+	@Test
+	void anInvalidFrameDropsItsConnectionOnly() throws Exception {
+		try (SocketChannel bad = SocketChannel.open(tcp); SocketChannel good = SocketChannel.open(tcp)) {
+			bad.write(ByteBuffer.wrap(new byte[] { 0, 0, 1 }));                                 // zero length body
+			awaitTrue(() -> server.getMalformedConnections() == 1);
+
+			ByteBuffer frame = ByteBuffer.allocate(CountFeedProtocol.SCAN_FRAME_BYTES);
+			CountFeedProtocol.putScanCounts(frame, systems[2].getSYSTEMID(), System.currentTimeMillis(), 1, 0, 0, 0, 2000);
+			frame.flip();
+			good.write(frame);
+			awaitTrue(() -> server.getMessages() == 1);
+			assertTrue(bad.read(ByteBuffer.allocate(1)) < 0, "invalid connection still open");
+		}
+	}
+
+	@Test
+	void theSocketFileIsRemovedOnClose() {
+		server.close();
+		assertFalse(Files.exists(directory.resolve("feed.sock")));
+	}
+
+
+	/*
+	 * Method waits up to 10 seconds for the condition
+	 */
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+			Thread.sleep(5);
+		}
+	}
+}
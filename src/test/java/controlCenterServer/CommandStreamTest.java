@@ -0,0 +1,145 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import trafficCommands.CommandReply;
+import trafficCommands.CommandServiceGrpc;
+import trafficCommands.ConfigAck;
+import trafficCommands.ConfigBatch;
+import trafficCommands.Register;
+import trafficControlSystem.CommandClient;
+import trafficControlSystem.TrafficControlConfig;
+import trafficControlSystem.TrafficControlSystem;
+
+/**
+ * Class tests the command streams over the in-process transport: versioned pushes and their acknowledgements,
+ * stale batches, the version counter following the registered systems, and acknowledgements that never come.
+ */
+class CommandStreamTest {
+
+	private CommandDispatcher dispatcher;
+	private Server server;
+	private ManagedChannel channel;
+
+	@BeforeEach
+	void start() throws Exception {
+		String name = InProcessServerBuilder.generateName();
+		dispatcher = new CommandDispatcher();
+		server = InProcessServerBuilder.forName(name).addService(dispatcher).build().start();
+		channel = InProcessChannelBuilder.forName(name).build();
+	}
+
+	@AfterEach
+	void shutdown() {
+		channel.shutdownNow();
+		server.shutdownNow();
+	}
+
+	@Test
+	void pushedConfigurationIsAppliedAndAcknowledged() throws Exception {
+		TrafficControlSystem tcs = new TrafficControlSystem(7101);
+		CommandClient client = new CommandClient(tcs, channel);
+		client.start();
+		assertTrue(dispatcher.awaitSessions(1, 5, TimeUnit.SECONDS));
+
+		Map<Integer, ConfigAck> acks = dispatcher.pushToAll(ConfigBatch.newBuilder().setNumOfScans(4).setScanLengthSeconds(3),
+				5, TimeUnit.SECONDS).get();
+		ConfigAck ack = acks.get(7101);
+		assertTrue(ack.getApplied());
+		assertEquals(1, ack.getVersion());
+		assertEquals(1, ack.getRunningVersion());
+		assertEquals(1, tcs.getConfiguration().getVersion());
+		client.close();
+	}
+
+	@Test
+	void staleBatchIsNotReportedAsApplied() {
+		TrafficControlSystem tcs = new TrafficControlSystem(7102);
+		tcs.applyConfiguration(new TrafficControlConfig(5, 2, 2));
+
+		ConfigAck stale = CommandClient.apply(tcs, ConfigBatch.newBuilder().setVersion(3).setNumOfScans(1).setScanLengthSeconds(1).build());
+		assertFalse(stale.getApplied());
+		assertEquals(3, stale.getVersion());
+		assertEquals(5, stale.getRunningVersion());
+		assertFalse(stale.getError().isEmpty());
+
+		ConfigAck resent = CommandClient.apply(tcs, ConfigBatch.newBuilder().setVersion(5).setNumOfScans(2).setScanLengthSeconds(2).build());
+		assertTrue(resent.getApplied());      // the version it runs, resent after a reconnection
+		assertEquals(5, tcs.getConfiguration().getVersion());
+	}
+
+	@Test
+	void versionsContinueAfterTheHighestRegisteredOne() throws Exception {
+		TrafficControlSystem tcs = new TrafficControlSystem(7103);
+		tcs.applyConfiguration(new TrafficControlConfig(41, 2, 2));   // pushed before the Control Center restarted
+		CommandClient client = new CommandClient(tcs, channel);
+		client.start();
+		assertTrue(dispatcher.awaitSessions(1, 5, TimeUnit.SECONDS));
+		assertEquals(41, dispatcher.getVersion());
+
+		ConfigAck ack = dispatcher.pushToAll(ConfigBatch.newBuilder().setNumOfScans(3).setScanLengthSeconds(1), 5, TimeUnit.SECONDS)
+				.get().get(7103);
+		assertEquals(42, ack.getVersion());
+		assertTrue(ack.getApplied());
+		assertEquals(42, tcs.getConfiguration().getVersion());
+		client.close();
+	}
+
+	@Test
+	void missingAcknowledgementCompletesAsNotApplied() throws Exception {
+		StreamObserver<CommandReply> silent = CommandServiceGrpc.newStub(channel).openCommandStream(new StreamObserver<ConfigBatch>() {
+			@Override
+			public void onNext(ConfigBatch batch) {
+				// never acknowledged
+			}
+
+			@Override
+			public void onError(Throwable t) {
+			}
+
+			@Override
+			public void onCompleted() {
+			}
+		});
+		silent.onNext(CommandReply.newBuilder().setRegister(Register.newBuilder().setTcsId(7104)).build());
+		assertTrue(dispatcher.awaitSessions(1, 5, TimeUnit.SECONDS));
+
+		long started = System.nanoTime();
+		ConfigAck ack = dispatcher.pushToAll(ConfigBatch.newBuilder().setNumOfScans(1).setScanLengthSeconds(1), 200, TimeUnit.MILLISECONDS)
+				.get(5, TimeUnit.SECONDS).get(7104);
+		assertFalse(ack.getApplied());
+		assertEquals(CommandDispatcher.NOT_ACKNOWLEDGED, ack.getError());
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 200);
+
+		// a late acknowledgement of the abandoned batch is ignored
+		silent.onNext(CommandReply.newBuilder().setAck(ConfigAck.newBuilder().setTcsId(7104).setVersion(ack.getVersion()).setApplied(true)).build());
+		silent.onCompleted();
+	}
+
+	@Test
+	void replyHoldsEitherARegistrationOrAnAcknowledgement() {
+		CommandReply reply = CommandReply.newBuilder()
+				.setRegister(Register.newBuilder().setTcsId(1))
+				.setAck(ConfigAck.newBuilder().setTcsId(1).setVersion(2))
+				.build();
+		assertEquals(CommandReply.ReplyCase.ACK, reply.getReplyCase());
+		assertFalse(reply.hasRegister());
+	}
+}
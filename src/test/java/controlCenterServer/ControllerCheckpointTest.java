@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cityStateStore.CityStateStore;
+import trafficLightSystem.TrafficLightSystem;
+
+/**
+ * Class tests that checkpoints restore the state they saved and that corrupt or truncated files are rejected
+ * with an IOException before anything is restored.
+ */
+class ControllerCheckpointTest {
+
+	private static final int MAGIC = 0x54434B50;   // "TCKP"
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restoreWithoutFileRestoresNothing() throws IOException {
+		assertFalse(ControllerCheckpoint.restore(directory.resolve("missing.ckpt")));
+	}
+
+	@Test
+	void restoreGivesBackTheSavedState() throws IOException {
+		TrafficLightSystem tls = new TrafficLightSystem(910_001, 910_000);
+		tls.updateLightsState("red");
+		Path file = directory.resolve("state.ckpt");
+		ControllerCheckpoint.write(file);
+
+		tls.updateLightsState("green");
+		assertTrue(ControllerCheckpoint.restore(file));
+		assertEquals(CityStateStore.STATE_RED, CityStateStore.getInstance().getTrafficLightSystemState(tls.getIndex()));
+	}
+
+	@Test
+	void restoreAcceptsAnEmptyCheckpoint() throws IOException {
+		Path file = directory.resolve("empty.ckpt");
+		Files.write(file, checkpoint(new int[] { 0, 0, 0, 0 }));
+		assertTrue(ControllerCheckpoint.restore(file));
+	}
+
+	@Test
+	void restoreRejectsAFlippedByte() throws IOException {
+		new TrafficLightSystem(910_011, 910_010).updateLightsState("red");
+		Path file = directory.resolve("flipped.ckpt");
+		ControllerCheckpoint.write(file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(file, bytes);
+
+		IOException e = assertThrows(IOException.class, () -> ControllerCheckpoint.restore(file));
+		assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+	}
+
+	@Test
+	void restoreRejectsATruncatedFile() throws IOException {
+		Path file = directory.resolve("truncated.ckpt");
+		ControllerCheckpoint.write(file);
+		byte[] bytes = Files.readAllBytes(file);
+
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+		assertThrows(IOException.class, () -> ControllerCheckpoint.restore(file));
+		Files.write(file, Arrays.copyOf(bytes, 10));
+		assertThrows(IOException.class, () -> ControllerCheckpoint.restore(file));
+	}
+
+	@Test
+	void restoreRejectsCountsLargerThanTheFile() throws IOException {
+		Path file = directory.resolve("huge.ckpt");
+		Files.write(file, checkpoint(new int[] { Integer.MAX_VALUE }));
+		assertThrows(IOException.class, () -> ControllerCheckpoint.restore(file));
+
+		Files.write(file, checkpoint(new int[] { -1 }));
+		assertThrows(IOException.class, () -> ControllerCheckpoint.restore(file));
+	}
+
+	@Test
+	void restoreRejectsTrailingBytes() throws IOException {
+		Path file = directory.resolve("trailing.ckpt");
+		Files.write(file, checkpoint(new int[] { 0, 0, 0, 0, 42 }));
+		assertThrows(IOException.class, () -> ControllerCheckpoint.restore(file));
+	}
+
+
+	/*
+	 * Method builds a checkpoint of the given ints after the header, with a valid checksum
+	 */
+	private static byte[] checkpoint(int[] body) {
+		ByteBuffer bytes = ByteBuffer.allocate(16 + body.length * 4 + 8);
+		bytes.putInt(MAGIC).putInt(1).putLong(0);
+		for (int value : body) {
+			bytes.putInt(value);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes.array(), 0, bytes.position());
+		bytes.putLong(crc.getValue());
+		return bytes.array();
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.CycleHeartbeats;
+
+/**
+ * Class tests how the watchdog acts on loops missing their heartbeats. The scans are driven by the test
+ * with explicit times, except for the last test which runs the watchdog thread over many loops.
+ */
+class CycleWatchdogTest {
+
+	private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	void aLoopWithinItsPhaseIsLeftAlone() throws InterruptedException {
+		CycleHeartbeats heartbeats = new CycleHeartbeats(4, 0);
+		int slot = heartbeats.register(CycleHeartbeats.CYCLE, 930_000);
+		Loop loop = Loop.start(heartbeats, slot, CycleHeartbeats.GREEN, 60_000);
+		CycleWatchdog watchdog = newWatchdog(heartbeats, List.of(), 2);
+
+		watchdog.scan(System.nanoTime());
+		assertEquals(0, watchdog.getOverdueCycles());
+		assertFalse(loop.interrupted.await(100, TimeUnit.MILLISECONDS));
+		loop.release();
+	}
+
+	@Test
+	void anOverrunningCycleIsInterruptedOnce() throws InterruptedException {
+		CycleHeartbeats heartbeats = new CycleHeartbeats(4, 0);
+		int slot = heartbeats.register(CycleHeartbeats.CYCLE, 930_010);
+		Loop loop = Loop.start(heartbeats, slot, CycleHeartbeats.GREEN, 10);
+		CycleWatchdog watchdog = newWatchdog(heartbeats, List.of(), 2);
+
+		long now = System.nanoTime() + SECOND_NANOS;
+		watchdog.scan(now);
+		assertTrue(loop.interrupted.await(5, TimeUnit.SECONDS));
+		watchdog.scan(now + 1);
+		assertEquals(1, watchdog.getOverdueCycles());
+		loop.release();
+	}
+
+	@Test
+	void aCycleThatDoesNotRecoverUsesUpItsRestarts() throws InterruptedException {
+		TrafficControlSystem tcs = new TrafficControlSystem(930_020);
+		CycleHeartbeats heartbeats = new CycleHeartbeats(4, 0);
+		int slot = heartbeats.register(CycleHeartbeats.CYCLE, tcs.getSystemID());
+		Loop loop = Loop.start(heartbeats, slot, CycleHeartbeats.GREEN, 10);
+		CycleWatchdog watchdog = newWatchdog(heartbeats, List.of(tcs), 0);
+
+		long now = System.nanoTime() + SECOND_NANOS;
+		watchdog.scan(now);                              // interrupted, it has a second to stamp again
+		watchdog.scan(now + SECOND_NANOS / 2);
+		assertTrue(tcs.isOperative());
+		watchdog.scan(now + 2 * SECOND_NANOS);
+		assertFalse(tcs.isOperative());
+		assertEquals(1, watchdog.getStoppedSystems());
+		assertFalse(heartbeats.isOverdue(slot, now + 3 * SECOND_NANOS));
+		loop.release();
+	}
+
+	@Test
+	void aDeadCycleThreadIsActedOnAtOnce() throws InterruptedException {
+		TrafficControlSystem tcs = new TrafficControlSystem(930_030);
+		CycleHeartbeats heartbeats = new CycleHeartbeats(4, 0);
+		int slot = heartbeats.register(CycleHeartbeats.CYCLE, tcs.getSystemID());
+		Thread loop = new Thread(() -> heartbeats.beat(slot, CycleHeartbeats.YELLOW, 10));
+		loop.start();
+		loop.join();
+		CycleWatchdog watchdog = newWatchdog(heartbeats, List.of(tcs), 0);
+
+		watchdog.scan(System.nanoTime() + SECOND_NANOS);
+		assertFalse(tcs.isOperative());
+		assertEquals(1, watchdog.getStoppedSystems());
+	}
+
+	@Test
+	void anInterruptedCycleEndsItsLoopAndKeepsTheInterrupt() throws Exception {
+		TrafficControlSystem tcs = new TrafficControlSystem(930_050);
+		tcs.initTrafficLightSystems();
+		CycleHeartbeats heartbeats = new CycleHeartbeats(8, 0);
+		tcs.setHeartbeats(heartbeats);
+		int slot = cycleSlot(heartbeats, tcs.getSystemID());
+		AtomicBoolean interruptKept = new AtomicBoolean();
+		Thread loop = new Thread(() -> {
+			tcs.startTrafficControlCycle("green");
+			interruptKept.set(Thread.currentThread().isInterrupted());
+		});
+		loop.setDaemon(true);
+		loop.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (heartbeats.getPhase(slot) != CycleHeartbeats.GREEN) {
+			assertTrue(System.currentTimeMillis() < deadline, "green phase not started");
+			Thread.sleep(5);
+		}
+
+		loop.interrupt();
+		loop.join(5000);
+		assertFalse(loop.isAlive());
+		assertTrue(interruptKept.get());
+		assertEquals(1, tcs.getCycleCount());                                      // not run again on the interrupted thread
+		assertTrue(heartbeats.isOverdue(slot, System.nanoTime() + 60 * SECOND_NANOS));   // left for the watchdog to restart
+	}
+
+	@Test
+	void anOverrunningCollectionIsInterruptedAndNoLongerWatched() throws InterruptedException {
+		CycleHeartbeats heartbeats = new CycleHeartbeats(4, 0);
+		int slot = heartbeats.register(CycleHeartbeats.COLLECTION, 930_040);
+		Loop loop = Loop.start(heartbeats, slot, CycleHeartbeats.COLLECTING, 10);
+		CycleWatchdog watchdog = newWatchdog(heartbeats, List.of(), 2);
+
+		long now = System.nanoTime() + SECOND_NANOS;
+		watchdog.scan(now);
+		assertTrue(loop.interrupted.await(5, TimeUnit.SECONDS));
+		assertEquals(1, watchdog.getStalledCollections());
+		assertFalse(heartbeats.isOverdue(slot, now + SECOND_NANOS));
+		loop.release();
+	}
+
+	@Test
+	void theWatchdogThreadInterruptsOnlyTheHungLoops() throws InterruptedException {
+		int loops = 30;
+		CycleHeartbeats heartbeats = new CycleHeartbeats(loops, 50);
+		CycleWatchdog watchdog = new CycleWatchdog(heartbeats, List.of(), 10, 1000, 3, 10, 3);
+		AtomicIntegerArray endings = new AtomicIntegerArray(loops);        // 1 finished, 2 interrupted
+		Thread[] threads = new Thread[loops];
+		for (int i = 0; i < loops; i++) {
+			int loop = i;
+			int slot = heartbeats.register(CycleHeartbeats.COLLECTION, 930_100 + loop);
+			threads[loop] = new Thread(() -> {
+				try {
+					for (int phase = 0; phase < 20; phase++) {
+						heartbeats.beat(slot, CycleHeartbeats.COLLECTING, 20);
+						Thread.sleep(loop % 3 == 0 && phase == 5 ? 60_000 : 20);      // every third loop hangs
+					}
+					heartbeats.idle(slot);
+					endings.set(loop, 1);
+				} catch (InterruptedException e) {
+					endings.set(loop, 2);
+				}
+			});
+			threads[loop].setDaemon(true);
+			threads[loop].start();
+		}
+
+		watchdog.start();
+		try {
+			for (Thread thread : threads) {
+				thread.join(10_000);
+			}
+		} finally {
+			watchdog.close();
+		}
+		for (int loop = 0; loop < loops; loop++) {
+			assertEquals(loop % 3 == 0 ? 2 : 1, endings.get(loop), "loop " + loop);
+		}
+		assertEquals(loops / 3, watchdog.getStalledCollections());
+	}
+
+
+	/*
+	 * Method finds the cycle slot of a Traffic Control System
+	 */
+	private static int cycleSlot(CycleHeartbeats heartbeats, int tcsId) {
+		for (int slot = 0; slot < heartbeats.getSlotCount(); slot++) {
+			if (heartbeats.getKind(slot) == CycleHeartbeats.CYCLE && heartbeats.getOwnerId(slot) == tcsId) {
+				return slot;
+			}
+		}
+		throw new IllegalStateException("no cycle slot for " + tcsId);
+	}
+
+	/*
+	 * Method builds a watchdog giving an interrupted cycle a second to recover
+	 */
+	private static CycleWatchdog newWatchdog(CycleHeartbeats heartbeats, List<TrafficControlSystem> systems, int maxRestarts) {
+		return new CycleWatchdog(heartbeats, systems, 50, 1000, maxRestarts, 4, 2);
+	}
+
+	/*
+	 * A loop stamping one phase then hanging until released, interrupts are recorded but do not end it
+	 */
+	private static final class Loop {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+
+		static Loop start(CycleHeartbeats heartbeats, int slot, int phase, long expectedMillis) throws InterruptedException {
+			Loop loop = new Loop();
+			CountDownLatch stamped = new CountDownLatch(1);
+			Thread thread = new Thread(() -> {
+				heartbeats.beat(slot, phase, expectedMillis);
+				stamped.countDown();
+				while (true) {
+					try {
+						loop.released.await();
+						return;
+					} catch (InterruptedException e) {
+						loop.interrupted.countDown();
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+			stamped.await();
+			return loop;
+		}
+
+		void release() {
+			released.countDown();
+		}
+	}
+}
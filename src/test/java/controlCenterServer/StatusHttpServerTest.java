@@ -0,0 +1,170 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cityStateStore.CityStateStore;
+
+/**
+ * Class tests the ETags and status codes of the status server. Documents are refreshed by the test,
+ * the interval of the server is too long to refresh them on its own.
+ *
+ * Requests go through HttpURLConnection, which sends a request again on a fresh connection when the kept alive
+ * one it picked was closed by the server. The java.net.http client fails such requests on JDK 17.
+ */
+class StatusHttpServerTest {
+
+	private StatusHttpServer server;
+	private String base;
+
+	@BeforeEach
+	void start() throws IOException {
+		server = new StatusHttpServer(TCSystemsListManager.getInstance(), 60_000, 2);
+		InetSocketAddress address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		base = "http://" + address.getHostString() + ":" + address.getPort();
+	}
+
+	@AfterEach
+	void stop() {
+		server.close();
+	}
+
+	@Test
+	void anUnchangedCityKeepsItsETag() throws Exception {
+		HttpURLConnection first = get(StatusHttpServer.CITY_PATH, null);
+		assertEquals(200, first.getResponseCode());
+		String etag = first.getHeaderField("ETag");
+		String body = read(first);
+
+		server.refresh();
+		HttpURLConnection second = get(StatusHttpServer.CITY_PATH, null);
+		assertEquals(etag, second.getHeaderField("ETag"));
+		assertEquals(body, read(second));
+	}
+
+	@Test
+	void aMatchingETagGetsANotModified() throws Exception {
+		String etag = get(StatusHttpServer.CITY_PATH, null).getHeaderField("ETag");
+
+		HttpURLConnection revalidated = get(StatusHttpServer.CITY_PATH, etag);
+		assertEquals(304, revalidated.getResponseCode());
+		assertTrue(read(revalidated).isEmpty());
+		assertEquals(200, get(StatusHttpServer.CITY_PATH, "\"another\"").getResponseCode());
+	}
+
+	@Test
+	void aChangedCityGetsANewETag() throws Exception {
+		CityStateStore store = CityStateStore.getInstance();
+		int tls = store.registerTrafficLightSystem(940_001, 940_000);
+		server.refresh();
+		String etag = get(StatusHttpServer.CITY_PATH, null).getHeaderField("ETag");
+
+		store.setTrafficLightSystemState(tls, CityStateStore.STATE_RED);
+		server.refresh();
+		HttpURLConnection changed = get(StatusHttpServer.CITY_PATH, etag);
+		assertEquals(200, changed.getResponseCode());
+		assertNotEquals(etag, changed.getHeaderField("ETag"));
+	}
+
+	@Test
+	void clientsRevalidatingTheirGzipETagAreServedWithoutSerializing() throws Exception {
+		CityStateStore store = CityStateStore.getInstance();
+		for (int tls = 0; tls < 100; tls++) {
+			store.setTrafficLightSystemState(store.registerTrafficLightSystem(941_001 + tls, 941_000), CityStateStore.STATE_GREEN);
+		}
+		server.refresh();
+		HttpURLConnection first = gzipConnection(null);
+		assertEquals(200, first.getResponseCode());
+		assertEquals("gzip", first.getHeaderField("Content-Encoding"));
+		String etag = first.getHeaderField("ETag");
+		assertTrue(etag.endsWith("-gz\""), etag);
+		try (InputStream in = new GZIPInputStream(first.getInputStream())) {
+			assertTrue(new String(in.readAllBytes(), StandardCharsets.UTF_8).contains("941001"));
+		}
+
+		long serializations = server.getSerializations();
+		long notModified = server.getNotModified();
+		AtomicInteger others = new AtomicInteger();
+		List<Thread> pollers = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Thread poller = new Thread(() -> {
+				for (int i = 0; i < 50; i++) {
+					try {
+						if (gzipConnection(etag).getResponseCode() != 304) {
+							others.incrementAndGet();
+						}
+					} catch (IOException e) {
+						others.incrementAndGet();
+					}
+				}
+			});
+			poller.start();
+			pollers.add(poller);
+		}
+		for (Thread poller : pollers) {
+			poller.join();
+		}
+		assertEquals(0, others.get());
+		assertEquals(notModified + 400, server.getNotModified());
+		assertEquals(serializations, server.getSerializations());
+	}
+
+	@Test
+	void unknownPathsAndMethodsAreRejected() throws Exception {
+		assertEquals(404, get(StatusHttpServer.CITY_PATH + "/more", null).getResponseCode());
+		HttpURLConnection post = (HttpURLConnection) new URL(base + StatusHttpServer.CITY_PATH).openConnection();
+		post.setRequestMethod("POST");
+		assertEquals(405, post.getResponseCode());
+		assertEquals("GET, HEAD", post.getHeaderField("Allow"));
+	}
+
+
+	/*
+	 * Method opens a request for a document, with an If-None-Match header when an ETag is given
+	 */
+	private HttpURLConnection get(String path, String etag) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(base + path).openConnection();
+		if (etag != null) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		return connection;
+	}
+
+	/*
+	 * Method opens a request for the Traffic Light Systems taking gzip, with an If-None-Match header when an ETag is given
+	 */
+	private HttpURLConnection gzipConnection(String etag) throws IOException {
+		HttpURLConnection connection = get(StatusHttpServer.TLS_PATH, etag);
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		return connection;
+	}
+
+	/*
+	 * Method reads the body of a response
+	 */
+	private static String read(HttpURLConnection connection) throws IOException {
+		try (InputStream in = connection.getInputStream()) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
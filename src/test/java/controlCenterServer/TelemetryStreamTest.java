@@ -0,0 +1,197 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import trafficControlSystem.TelemetryClient;
+import trafficTelemetry.TelemetryAck;
+
+/**
+ * Class tests the telemetry stream between a TelemetryClient and a TelemetryReceiver over the in-process transport:
+ * batching, the manual inbound flow control, dropping the oldest batches when the queue is full,
+ * and delivery of the queued batches once a restarted receiver is back.
+ */
+class TelemetryStreamTest {
+
+	private static final int TCS_ID = 2012;
+
+	private String name;
+	private ManagedChannel channel;
+	private Server server;
+
+	@BeforeEach
+	void openChannel() {
+		name = InProcessServerBuilder.generateName();
+		channel = InProcessChannelBuilder.forName(name).build();
+	}
+
+	@AfterEach
+	void shutdown() {
+		channel.shutdownNow();
+		if (server != null) {
+			server.shutdownNow();
+		}
+	}
+
+	@Test
+	void recordsAreSentInFullBatches() throws Exception {
+		TelemetryReceiver receiver = new TelemetryReceiver();
+		server = InProcessServerBuilder.forName(name).addService(receiver).build().start();
+
+		TelemetryClient client = new TelemetryClient(TCS_ID, channel);
+		int records = 3 * TelemetryClient.MAX_RECORDS_PER_BATCH + 10;
+		for (int i = 0; i < records; i++) {
+			client.recordScan(i % 8, i, 0, 1, 0, 0, 0);           // recorded before start, no periodic flush in between
+		}
+		client.start();
+		TelemetryAck ack = client.close(10, TimeUnit.SECONDS);
+
+		assertNotNull(ack);
+		assertEquals(records, ack.getRecords());
+		assertEquals(4, ack.getBatches());
+		assertEquals(3, ack.getLastSequence());
+		TelemetryStats stats = receiver.getStats(TCS_ID);
+		assertEquals(records, stats.getScans());
+		assertEquals(0, stats.getMissedBatches());
+	}
+
+	@Test
+	void aBusyReceiverKeepsTheBatchesQueuedInTheClient() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger delivered = new AtomicInteger();
+		TelemetryReceiver receiver = new TelemetryReceiver();
+		server = InProcessServerBuilder.forName(name)
+				.addService(ServerInterceptors.intercept(receiver, blockingFirstMessage(release, delivered)))
+				.build().start();
+
+		TelemetryClient client = new TelemetryClient(TCS_ID, channel);
+		client.start();
+		int batches = 10;
+		for (int i = 0; i < batches * TelemetryClient.MAX_RECORDS_PER_BATCH; i++) {
+			client.recordScan(1, i, 0, 1, 0, 0, 0);
+		}
+		awaitTrue(() -> delivered.get() == 1);
+		Thread.sleep(100);
+
+		// the receiver has not asked for a second batch, the client may not write more than one ahead of it
+		assertTrue(client.getQueuedBatches() >= batches - 2, "queued " + client.getQueuedBatches());
+		assertEquals(1, delivered.get());
+
+		release.countDown();
+		TelemetryAck ack = client.close(10, TimeUnit.SECONDS);
+		assertNotNull(ack);
+		assertEquals(batches * TelemetryClient.MAX_RECORDS_PER_BATCH, ack.getRecords());
+		assertEquals(0, client.getDroppedRecords());
+	}
+
+	@Test
+	void theOldestBatchesAreDroppedPastTheQueueLimit() throws Exception {
+		TelemetryClient client = new TelemetryClient(TCS_ID, channel);
+		int batches = TelemetryClient.MAX_QUEUED_BATCHES + 6;
+		for (int i = 0; i < batches * TelemetryClient.MAX_RECORDS_PER_BATCH; i++) {
+			client.recordScan(1, i, 0, 1, 0, 0, 0);                 // no stream yet, every batch is queued
+		}
+		assertEquals(TelemetryClient.MAX_QUEUED_BATCHES, client.getQueuedBatches());
+		assertEquals(6 * TelemetryClient.MAX_RECORDS_PER_BATCH, client.getDroppedRecords());
+
+		TelemetryReceiver receiver = new TelemetryReceiver();
+		server = InProcessServerBuilder.forName(name).addService(receiver).build().start();
+		client.start();
+		TelemetryAck ack = client.close(10, TimeUnit.SECONDS);
+
+		assertNotNull(ack);
+		assertEquals(TelemetryClient.MAX_QUEUED_BATCHES * TelemetryClient.MAX_RECORDS_PER_BATCH, ack.getRecords());
+		TelemetryStats stats = receiver.getStats(TCS_ID);
+		assertEquals(6 * TelemetryClient.MAX_RECORDS_PER_BATCH, stats.getDroppedRecords());   // reported by the sender
+		assertEquals(batches - 1, stats.getLastSequence());
+	}
+
+	@Test
+	void queuedBatchesAreDeliveredOnceTheReceiverIsBack() throws Exception {
+		TelemetryReceiver first = new TelemetryReceiver();
+		server = InProcessServerBuilder.forName(name).addService(first).build().start();
+
+		TelemetryClient client = new TelemetryClient(TCS_ID, channel);
+		client.start();
+		client.recordScan(1, 1, 0, 1, 0, 0, 0);
+		client.flush();
+		awaitTrue(() -> first.getStats(TCS_ID) != null);
+
+		server.shutdownNow();
+		server.awaitTermination(5, TimeUnit.SECONDS);
+		awaitTrue(() -> client.getReconnects() >= 1);
+
+		int records = 2 * TelemetryClient.MAX_RECORDS_PER_BATCH + 5;
+		for (int i = 0; i < records; i++) {
+			client.recordScan(1, i, 0, 1, 0, 0, 0);
+		}
+		TelemetryReceiver second = new TelemetryReceiver();
+		server = InProcessServerBuilder.forName(name).addService(second).build().start();
+		TelemetryAck ack = client.close(15, TimeUnit.SECONDS);
+
+		assertNotNull(ack);
+		assertEquals(records, ack.getRecords());
+		assertEquals(records, second.getStats(TCS_ID).getScans());
+		assertEquals(0, client.getDroppedRecords());
+	}
+
+
+	/*
+	 * Method returns an interceptor holding the first message of every call until the latch is released
+	 */
+	private static ServerInterceptor blockingFirstMessage(CountDownLatch release, AtomicInteger delivered) {
+		return new ServerInterceptor() {
+			@Override
+			public <Q, A> ServerCall.Listener<Q> interceptCall(ServerCall<Q, A> call, Metadata headers,
+					ServerCallHandler<Q, A> next) {
+				return new SimpleForwardingServerCallListener<Q>(next.startCall(call, headers)) {
+					@Override
+					public void onMessage(Q message) {
+						if (delivered.incrementAndGet() == 1) {
+							try {
+								release.await(10, TimeUnit.SECONDS);
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+						super.onMessage(message);
+					}
+				};
+			}
+		};
+	}
+
+	/*
+	 * Method waits up to 10 seconds for the condition
+	 */
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package controlCenterServer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cityStateStore.CityStateStore;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.TrafficLightSystem;
+
+/**
+ * Class tests that topology files load the systems they hold, and that invalid files are rejected
+ * before any system is registered.
+ */
+class TopologyFileTest {
+
+	private static final List<String> POSITIONS = List.of("North", "South");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void loadBuildsTheSystemsOfTheFile() throws IOException {
+		Path file = directory.resolve("city.topology");
+		try (TopologyFile.Writer writer = new TopologyFile.Writer(file, POSITIONS)) {
+			writeIntersection(writer, 920_000);
+		}
+
+		List<TrafficControlSystem> systems = TopologyFile.load(file);
+		assertEquals(1, systems.size());
+		TrafficControlSystem tcs = systems.get(0);
+		assertEquals(920_000, tcs.getSystemID());
+		assertEquals(2, tcs.getTrafficLightSystems().size());
+		TrafficLightSystem tls = tcs.getTrafficLightSystems().get(0);
+		assertEquals(920_001, tls.getSystemId());
+		assertEquals(List.of(920_002, 920_004), List.of(tls.getTrafficLights().get(0).getTrafficLightID(),
+				tls.getTrafficLights().get(1).getTrafficLightID()));
+		assertEquals(920_003, tls.getVisualRecognitionSystems().get(0).getSYSTEMID());
+		assertEquals(tls.getIndex(), CityStateStore.getInstance().indexOfTrafficLightSystem(920_001));
+	}
+
+	@Test
+	void aCityLargerThanTheWriteBufferLoadsWhole() throws IOException {
+		Path file = directory.resolve("large.topology");
+		int intersections = 5_000;
+		try (TopologyFile.Writer writer = new TopologyFile.Writer(file, POSITIONS)) {
+			for (int i = 0; i < intersections; i++) {
+				writeIntersection(writer, 2_000_000 + i * 11);
+			}
+		}
+		assertTrue(Files.size(file) > 64 * 1024);
+
+		List<TrafficControlSystem> systems = TopologyFile.load(file);
+		assertEquals(intersections, systems.size());
+		TrafficControlSystem last = systems.get(intersections - 1);
+		assertEquals(2_000_000 + (intersections - 1) * 11, last.getSystemID());
+		assertEquals(2, last.getTrafficLightSystems().get(1).getTrafficLights().size());
+		for (int i = 0; i < intersections; i += 499) {
+			assertNotEquals(-1, CityStateStore.getInstance().indexOfTrafficLightSystem(2_000_000 + i * 11 + 6));
+		}
+	}
+
+	@Test
+	void loadRejectsIdsUsedTwice() throws IOException {
+		Path file = directory.resolve("twice.topology");
+		try (TopologyFile.Writer writer = new TopologyFile.Writer(file, POSITIONS)) {
+			writeIntersection(writer, 921_000);
+			writeIntersection(writer, 921_000);
+		}
+		assertThrows(IllegalArgumentException.class, () -> TopologyFile.load(file));
+		assertEquals(-1, CityStateStore.getInstance().indexOfTrafficLightSystem(921_001));
+	}
+
+	@Test
+	void loadRejectsIdsAlreadyRegistered() throws IOException {
+		Path file = directory.resolve("registered.topology");
+		try (TopologyFile.Writer writer = new TopologyFile.Writer(file, POSITIONS)) {
+			writeIntersection(writer, 922_000);
+		}
+		TopologyFile.load(file);
+		assertThrows(IllegalArgumentException.class, () -> TopologyFile.load(file));
+	}
+
+	@Test
+	void loadRejectsSystemCountsTheFileCannotHold() throws IOException {
+		Path file = directory.resolve("count.topology");
+		Files.write(file, header(Integer.MAX_VALUE));
+		assertThrows(IllegalArgumentException.class, () -> TopologyFile.load(file));
+
+		Files.write(file, header(-1));
+		assertThrows(IllegalArgumentException.class, () -> TopologyFile.load(file));
+	}
+
+	@Test
+	void loadRejectsATruncatedFile() throws IOException {
+		Path file = directory.resolve("truncated.topology");
+		try (TopologyFile.Writer writer = new TopologyFile.Writer(file, POSITIONS)) {
+			writeIntersection(writer, 923_000);
+		}
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+		assertThrows(IllegalArgumentException.class, () -> TopologyFile.load(file));
+		assertEquals(-1, CityStateStore.getInstance().indexOfTrafficLightSystem(923_001));
+	}
+
+	@Test
+	void loadRejectsAnotherFile() throws IOException {
+		Path file = directory.resolve("other.topology");
+		Files.write(file, "not a topology".getBytes(StandardCharsets.UTF_8));
+		assertThrows(IllegalArgumentException.class, () -> TopologyFile.load(file));
+	}
+
+
+	/*
+	 * Method writes an intersection of two TLSs with two lights and cameras each, ids counted up from the TCS id
+	 */
+	private static void writeIntersection(TopologyFile.Writer writer, int tcsId) throws IOException {
+		int id = tcsId;
+		writer.beginTrafficControlSystem(id++, 2);
+		for (int tls = 0; tls < 2; tls++) {
+			writer.beginTrafficLightSystem(id++, 2);
+			writer.addTrafficLight(id++, POSITIONS.get(0), id++);
+			writer.addTrafficLight(id++, POSITIONS.get(1), id++);
+		}
+	}
+
+	/*
+	 * Method builds the header of a topology file, without positions, claiming the given number of TCSs
+	 */
+	private static byte[] header(int tcsCount) {
+		return ByteBuffer.allocate(13 + 64).putInt(0x544F504F).putInt(1).put((byte) 0).putInt(tcsCount).array();
+	}
+}
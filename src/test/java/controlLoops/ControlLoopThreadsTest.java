@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package controlLoops;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests that the control loops run on platform threads unless virtual threads are asked for,
+ * and that the loops started are counted and waited for.
+ */
+class ControlLoopThreadsTest {
+
+	@AfterEach
+	void reset() {
+		System.clearProperty(ControlLoopThreads.VIRTUAL_PROPERTY);
+		ControlLoopThreads.setMode(ControlLoopThreads.Mode.PLATFORM);
+	}
+
+	@Test
+	void platformThreadsUnlessVirtualOnesAreAskedFor() {
+		assertEquals(ControlLoopThreads.Mode.PLATFORM, ControlLoopThreads.getRequestedMode());
+		System.setProperty(ControlLoopThreads.VIRTUAL_PROPERTY, "false");
+		assertEquals(ControlLoopThreads.Mode.PLATFORM, ControlLoopThreads.getRequestedMode());
+		System.setProperty(ControlLoopThreads.VIRTUAL_PROPERTY, "true");
+		assertEquals(ControlLoopThreads.Mode.VIRTUAL, ControlLoopThreads.getRequestedMode());
+	}
+
+	@Test
+	void virtualModeNeedsAJdkWithVirtualThreads() throws InterruptedException {
+		if (!ControlLoopThreads.isVirtualSupported()) {
+			assertThrows(UnsupportedOperationException.class, () -> ControlLoopThreads.setMode(ControlLoopThreads.Mode.VIRTUAL));
+			assertEquals(ControlLoopThreads.Mode.PLATFORM, ControlLoopThreads.getMode());
+			return;
+		}
+		ControlLoopThreads.setMode(ControlLoopThreads.Mode.VIRTUAL);
+		Thread loop = ControlLoopThreads.start("virtual-loop", () -> { });
+		loop.join();
+		assertEquals("virtual-loop", loop.getName());
+		assertTrue(loop.isDaemon());      // virtual threads are always daemons
+	}
+
+	@Test
+	void startedLoopsAreCountedAndJoined() {
+		int before = ControlLoopThreads.getStarted();
+		AtomicInteger ran = new AtomicInteger();
+		List<Thread> loops = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			loops.add(ControlLoopThreads.start("loop-" + i, ran::incrementAndGet));
+		}
+		assertTrue(ControlLoopThreads.joinAll(loops));
+		assertEquals(8, ran.get());
+		assertEquals(before + 8, ControlLoopThreads.getStarted());
+		assertEquals("loop-3", loops.get(3).getName());
+	}
+
+	@Test
+	void joinWithTimeoutReportsLoopsStillRunning() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> loops = new ArrayList<>();
+		loops.add(ControlLoopThreads.start("quick", () -> { }));
+		loops.add(ControlLoopThreads.start("stuck", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		assertFalse(ControlLoopThreads.joinAll(loops, 100));
+
+		release.countDown();
+		assertTrue(ControlLoopThreads.joinAll(loops, 5000));
+	}
+
+	@Test
+	void newThreadIsNotStartedYet() throws InterruptedException {
+		AtomicInteger ran = new AtomicInteger();
+		Thread loop = ControlLoopThreads.newThread("later", ran::incrementAndGet);
+		assertEquals(Thread.State.NEW, loop.getState());
+		loop.start();
+		loop.join();
+		assertEquals(1, ran.get());
+	}
+}
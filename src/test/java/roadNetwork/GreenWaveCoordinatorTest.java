@@ -0,0 +1,186 @@
+/**
+ *
+ */
+package roadNetwork;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests how the green wave offsets follow the busiest roads: the offsets along a corridor,
+ * the roads left uncoordinated, rings, and recomputing only when demand shifted.
+ */
+class GreenWaveCoordinatorTest {
+
+	private static final int CYCLE_SECONDS = 90;
+
+	@Test
+	void offsetsAddUpTheTravelTimesAlongACorridor() {
+		RoadNetwork network = new RoadNetwork.Builder()
+				.addRoad(1, 2, 20)
+				.addRoad(2, 3, 30)
+				.addRoad(3, 4, 50)
+				.build();
+		GreenWavePlan plan = new GreenWaveCoordinator(network, CYCLE_SECONDS).computePlan(uniform(network, 100));
+
+		assertEquals(0f, plan.getOffsetOf(1));
+		assertEquals(20f, plan.getOffsetOf(2));
+		assertEquals(50f, plan.getOffsetOf(3));
+		assertEquals(10f, plan.getOffsetOf(4));         // 100 s, one cycle later
+		assertEquals(1, plan.getCorridors());
+		assertEquals(3, plan.getCoordinatedRoads());
+		assertEquals(-1f, plan.getOffsetOf(5));
+	}
+
+	@Test
+	void onlyTheBusiestRoadIntoAnIntersectionIsCoordinated() {
+		RoadNetwork network = new RoadNetwork.Builder()
+				.addRoad(1, 3, 20)
+				.addRoad(2, 3, 40)
+				.build();
+		double[] demand = new double[network.getEdgeCount()];
+		demand[network.edgeBetween(network.indexOf(1), network.indexOf(3))] = 100;
+		demand[network.edgeBetween(network.indexOf(2), network.indexOf(3))] = 300;
+		GreenWaveCoordinator coordinator = new GreenWaveCoordinator(network, CYCLE_SECONDS);
+		GreenWavePlan plan = coordinator.computePlan(demand);
+
+		int three = network.indexOf(3);
+		assertEquals(plan.getCorridor(network.indexOf(2)), plan.getCorridor(three));
+		assertEquals(40f, plan.getOffsetOf(3));
+		assertEquals(1, plan.getCoordinatedRoads());
+		assertEquals(2, plan.getCorridors());
+		assertSame(plan, coordinator.getPlan());
+	}
+
+	@Test
+	void aRingIsCutAtOneIntersection() {
+		RoadNetwork network = new RoadNetwork.Builder()
+				.addRoad(1, 2, 30)
+				.addRoad(2, 3, 30)
+				.addRoad(3, 1, 30)
+				.build();
+		GreenWavePlan plan = new GreenWaveCoordinator(network, CYCLE_SECONDS).computePlan(uniform(network, 100));
+
+		assertEquals(1, plan.getCorridors());
+		assertEquals(3, plan.getCoordinatedRoads());
+		float[] offsets = { plan.getOffsetOf(1), plan.getOffsetOf(2), plan.getOffsetOf(3) };
+		Arrays.sort(offsets);
+		assertArrayEquals(new float[] { 0, 30, 60 }, offsets);
+	}
+
+	@Test
+	void everyCoordinatedRoadCarriesTheWaveOnAGrid() {
+		RoadNetwork network = grid(30, new Random(11));
+		Random random = new Random(5);
+		double[] demand = new double[network.getEdgeCount()];
+		for (int e = 0; e < demand.length; e++) {
+			demand[e] = 1 + random.nextInt(800);
+		}
+		GreenWaveCoordinator coordinator = new GreenWaveCoordinator(network, CYCLE_SECONDS);
+		GreenWavePlan plan = coordinator.computePlan(demand);
+
+		int n = network.getNodeCount();
+		assertTrue(plan.getCoordinatedRoads() >= n - plan.getCorridors());
+		int[] carried = new int[n];
+		for (int e = 0; e < network.getEdgeCount(); e++) {
+			int u = network.getSource(e);
+			int v = network.getTarget(e);
+			float expected = (plan.getOffset(u) + network.getTravelSeconds(e)) % CYCLE_SECONDS;
+			if (plan.getCorridor(u) == plan.getCorridor(v) && Math.abs(plan.getOffset(v) - expected) < 1e-3) {
+				carried[u]++;
+			}
+			assertTrue(plan.getOffset(v) >= 0 && plan.getOffset(v) < CYCLE_SECONDS);
+		}
+		int carrying = 0;
+		for (int u = 0; u < n; u++) {
+			carrying += carried[u] > 0 ? 1 : 0;
+		}
+		assertTrue(carrying >= plan.getCoordinatedRoads() - plan.getCorridors());   // ring closing roads may not line up
+
+		GreenWavePlan again = new GreenWaveCoordinator(network, CYCLE_SECONDS).computePlan(demand);
+		for (int v = 0; v < n; v++) {
+			assertEquals(plan.getOffset(v), again.getOffset(v));      // the parallel passes give the same plan
+		}
+	}
+
+	@Test
+	void aPlanIsRecomputedOnlyWhenDemandShifted() {
+		RoadNetwork network = grid(10, new Random(3));
+		GreenWaveCoordinator coordinator = new GreenWaveCoordinator(network, CYCLE_SECONDS);
+		double[] demand = uniform(network, 100);
+		GreenWavePlan first = coordinator.recomputeIfShifted(demand, 0.1);
+
+		double[] nudged = demand.clone();
+		nudged[0] += 50;
+		assertSame(first, coordinator.recomputeIfShifted(nudged, 0.1));
+
+		double[] shifted = demand.clone();
+		for (int e = 0; e < shifted.length; e++) {
+			if (network.getNodeId(network.getTarget(e)) == network.getNodeId(network.getSource(e)) + 1) {
+				shifted[e] *= 3;                                            // eastbound roads get busier
+			}
+		}
+		assertNotSame(first, coordinator.recomputeIfShifted(shifted, 0.1));
+	}
+
+	@Test
+	void intersectionCountsAreSpreadOverTheRoadsEnteringThem() {
+		RoadNetwork network = new RoadNetwork.Builder()
+				.addRoad(1, 3, 20)
+				.addRoad(2, 3, 20)
+				.addRoad(3, 1, 20)
+				.build();
+		GreenWaveCoordinator coordinator = new GreenWaveCoordinator(network, CYCLE_SECONDS);
+		double[] demand = coordinator.demandFromCounts(node -> network.getNodeId(node) == 3 ? 60 : 10);
+
+		assertEquals(30, demand[network.edgeBetween(network.indexOf(1), network.indexOf(3))]);
+		assertEquals(30, demand[network.edgeBetween(network.indexOf(2), network.indexOf(3))]);
+		assertEquals(10, demand[network.edgeBetween(network.indexOf(3), network.indexOf(1))]);
+	}
+
+	@Test
+	void demandMustCoverEveryRoad() {
+		RoadNetwork network = new RoadNetwork.Builder().addRoad(1, 2, 20).build();
+		GreenWaveCoordinator coordinator = new GreenWaveCoordinator(network, CYCLE_SECONDS);
+		assertThrows(IllegalArgumentException.class, () -> coordinator.computePlan(new double[2]));
+		assertThrows(IllegalArgumentException.class, () -> new GreenWaveCoordinator(network, 0));
+	}
+
+
+	/*
+	 * Method builds a grid city of two way roads with random travel times
+	 */
+	private static RoadNetwork grid(int side, Random random) {
+		RoadNetwork.Builder builder = new RoadNetwork.Builder();
+		for (int row = 0; row < side; row++) {
+			for (int col = 0; col < side; col++) {
+				int id = row * side + col;
+				if (col + 1 < side) {
+					builder.addTwoWayRoad(id, id + 1, 20 + random.nextInt(40));
+				}
+				if (row + 1 < side) {
+					builder.addTwoWayRoad(id, id + side, 20 + random.nextInt(40));
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	/*
+	 * Method returns the same demand on every road
+	 */
+	private static double[] uniform(RoadNetwork network, double vehiclesPerHour) {
+		double[] demand = new double[network.getEdgeCount()];
+		Arrays.fill(demand, vehiclesPerHour);
+		return demand;
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package roadNetwork;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests the CSR layout of the road network built from roads added in any order
+ */
+class RoadNetworkTest {
+
+	@Test
+	void roadsAreGroupedByTheirSourceAndTarget() {
+		RoadNetwork network = new RoadNetwork.Builder()
+				.addRoad(30, 10, 5)
+				.addRoad(10, 20, 10)
+				.addRoad(20, 30, 15)
+				.addRoad(10, 30, 20)
+				.build();
+		assertEquals(3, network.getNodeCount());
+		assertEquals(4, network.getEdgeCount());
+
+		int a = network.indexOf(10);
+		int b = network.indexOf(20);
+		int c = network.indexOf(30);
+		assertEquals(2, network.getEndOutEdge(a) - network.getFirstOutEdge(a));
+		for (int e = network.getFirstOutEdge(a); e < network.getEndOutEdge(a); e++) {
+			assertEquals(a, network.getSource(e));
+		}
+		assertEquals(Set.of(a, b), entering(network, c));
+		assertEquals(Set.of(c), entering(network, a));
+
+		int road = network.edgeBetween(b, c);
+		assertEquals(15f, network.getTravelSeconds(road));
+		assertEquals(-1, network.edgeBetween(b, a));
+		assertEquals(20, network.getNodeId(b));
+		assertEquals(-1, network.indexOf(40));
+	}
+
+	@Test
+	void anIntersectionAddedTwiceIsKeptOnce() {
+		RoadNetwork network = new RoadNetwork.Builder()
+				.addIntersection(7)
+				.addIntersection(7)
+				.addTwoWayRoad(7, 8, 30)
+				.build();
+		assertEquals(2, network.getNodeCount());
+		assertEquals(2, network.getEdgeCount());
+		assertEquals(0, network.indexOf(7));
+	}
+
+	@Test
+	void loopsAndRoadsWithoutTravelTimeAreRejected() {
+		RoadNetwork.Builder builder = new RoadNetwork.Builder();
+		assertThrows(IllegalArgumentException.class, () -> builder.addRoad(1, 1, 10));
+		assertThrows(IllegalArgumentException.class, () -> builder.addRoad(1, 2, 0));
+	}
+
+
+	/*
+	 * Method returns the sources of the roads entering a node
+	 */
+	private static Set<Integer> entering(RoadNetwork network, int node) {
+		Set<Integer> sources = new HashSet<>();
+		for (int p = network.getFirstInPosition(node); p < network.getEndInPosition(node); p++) {
+			int e = network.getInEdge(p);
+			assertEquals(node, network.getTarget(e));
+			sources.add(network.getSource(e));
+		}
+		return sources;
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests the parsing of signal plans and plan schedules
+ */
+class PlanScheduleTest {
+
+	@Test
+	void planLinesParseBackToEqualPlans() {
+		SignalPlan plan = new SignalPlan(2012, 23, 11, 3, 5);
+		SignalPlan parsed = SignalPlan.parse(plan.toLine());
+		assertEquals(plan, parsed);
+		assertEquals(plan.hashCode(), parsed.hashCode());
+		assertNotEquals(plan, new SignalPlan(2012, 23, 11, 3, 0));
+	}
+
+	@Test
+	void invalidPlansAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> SignalPlan.parse("2012 23 11 3"));
+		assertThrows(IllegalArgumentException.class, () -> SignalPlan.parse("2012 23 eleven 3 0"));
+		assertThrows(IllegalArgumentException.class, () -> SignalPlan.parse("2012 3 11 3 0"));     // green below the minimum
+		assertThrows(IllegalArgumentException.class, () -> SignalPlan.parse("2012 23 11 3 40"));    // offset outside the cycle
+	}
+
+	@Test
+	void aPlanRunsUntilTheNextLineOfItsDayType() {
+		PlanSchedule schedule = PlanSchedule.parse(2012, List.of(
+				"# morning peak",
+				"WEEKDAY 07:00 2012 23 11 3 0",
+				"",
+				"WEEKDAY 09:30 2012 15 15 3 0",
+				"SATURDAY 10:00 2012 20 10 3 0"));
+
+		assertNull(schedule.planAt(DayType.WEEKDAY, PlanSchedule.slotOf(LocalTime.of(6, 59))));
+		assertEquals(23, schedule.planAt(DayType.WEEKDAY, PlanSchedule.slotOf(LocalTime.of(7, 0))).getMainGreenSeconds());
+		assertEquals(23, schedule.planAt(DayType.WEEKDAY, PlanSchedule.slotOf(LocalTime.of(9, 29))).getMainGreenSeconds());
+		assertEquals(15, schedule.planAt(DayType.WEEKDAY, PlanSchedule.slotOf(LocalTime.of(23, 59))).getMainGreenSeconds());
+		assertNull(schedule.planAt(DayType.SATURDAY, PlanSchedule.slotOf(LocalTime.of(9, 0))));
+		assertEquals(20, schedule.planAt(DayType.SATURDAY, PlanSchedule.slotOf(LocalTime.of(10, 0))).getMainGreenSeconds());
+	}
+
+	@Test
+	void equalPlansAreKeptOnce() {
+		PlanSchedule schedule = PlanSchedule.parse(2012, List.of(
+				"WEEKDAY 07:00 2012 23 11 3 0",
+				"WEEKDAY 09:30 2012 15 15 3 0",
+				"WEEKDAY 16:00 2012 23 11 3 0"));
+
+		assertEquals(2, schedule.getPlanCount());
+		assertSame(schedule.planAt(DayType.WEEKDAY, PlanSchedule.slotOf(LocalTime.of(7, 0))),
+				schedule.planAt(DayType.WEEKDAY, PlanSchedule.slotOf(LocalTime.of(16, 0))));
+	}
+
+	@Test
+	void invalidSchedulesAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> PlanSchedule.parse(2012, List.of("WEEKDAY 07:00")));
+		assertThrows(IllegalArgumentException.class, () -> PlanSchedule.parse(2012, List.of("WEEKDAY 7h 2012 23 11 3 0")));
+		assertThrows(IllegalArgumentException.class, () -> PlanSchedule.parse(2012, List.of("HOLIDAYS 07:00 2012 23 11 3 0")));
+		assertThrows(IllegalArgumentException.class, () -> PlanSchedule.parse(2012, List.of("WEEKDAY 07:00 2013 23 11 3 0")));
+	}
+}
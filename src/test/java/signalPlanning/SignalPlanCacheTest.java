@@ -0,0 +1,140 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Class tests that plan lookups never wait for a schedule to load, answer by time of day once it is resident,
+ * and that the least recently used schedules are evicted over the capacity.
+ */
+class SignalPlanCacheTest {
+
+	private static final long MONDAY_8AM = LocalDateTime.of(2026, 10, 19, 8, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+	private static final long MONDAY_11PM = LocalDateTime.of(2026, 10, 19, 23, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+	@TempDir
+	Path directory;
+
+	private SignalPlanCache cache;
+
+	@AfterEach
+	void close() {
+		if (cache != null) {
+			cache.close();
+		}
+	}
+
+	@Test
+	void aMissIsLoadedInTheBackgroundAndThenAnsweredByTimeOfDay() throws Exception {
+		writeSchedule(7);
+		cache = new SignalPlanCache(directory, 4, ZoneOffset.UTC);
+
+		assertNull(cache.planFor(7, MONDAY_8AM));                 // not resident yet, the caller keeps its plan
+		awaitTrue(() -> cache.isResident(7));
+		assertEquals(new SignalPlan(7, 40, 20, 3, 7), cache.planFor(7, MONDAY_8AM));
+		assertEquals(new SignalPlan(7, 20, 14, 3, 0), cache.planFor(7, MONDAY_11PM));
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	void aSystemWithoutScheduleIsNotLoadedAgain() throws Exception {
+		Files.write(directory.resolve("9.plans"), List.of("not a schedule"));
+		cache = new SignalPlanCache(directory, 4, ZoneOffset.UTC);
+
+		cache.planFor(8, MONDAY_8AM);
+		cache.planFor(9, MONDAY_8AM);
+		awaitTrue(() -> cache.isResident(8) && cache.isResident(9));
+		assertNull(cache.planFor(8, MONDAY_8AM));
+		assertNull(cache.planFor(9, MONDAY_8AM));
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	void theLeastRecentlyUsedScheduleIsEvicted() throws Exception {
+		cache = new SignalPlanCache(directory, 2, ZoneOffset.UTC);
+		cache.publish(schedule(1));
+		Thread.sleep(5);
+		cache.publish(schedule(2));
+		Thread.sleep(5);
+		cache.planFor(1, MONDAY_8AM);                              // 1 used after 2
+		Thread.sleep(5);
+		cache.publish(schedule(3));
+
+		assertEquals(2, cache.getResidentCount());
+		assertTrue(cache.isResident(1));
+		assertFalse(cache.isResident(2));
+		assertTrue(cache.isResident(3));
+	}
+
+	@Test
+	void aReloadPicksUpTheReplacedFile() throws Exception {
+		writeSchedule(5);
+		cache = new SignalPlanCache(directory, 4, ZoneOffset.UTC);
+		cache.reload(5);
+		awaitTrue(() -> cache.isResident(5));
+
+		Files.write(directory.resolve("5.plans"), List.of("WEEKDAY 00:00 " + new SignalPlan(5, 30, 30, 3, 10).toLine()));
+		awaitTrue(() -> {
+			cache.reload(5);                                     // dropped while the first load is still finishing
+			return new SignalPlan(5, 30, 30, 3, 10).equals(cache.planFor(5, MONDAY_8AM));
+		});
+	}
+
+
+	/*
+	 * Method writes the schedule file of a system, with a morning peak plan on every day type
+	 */
+	private void writeSchedule(int tcsId) throws IOException {
+		Files.write(directory.resolve(tcsId + ".plans"), lines(tcsId));
+	}
+
+	/*
+	 * Method returns the schedule of a system, with a morning peak plan on every day type
+	 */
+	private static PlanSchedule schedule(int tcsId) {
+		return PlanSchedule.parse(tcsId, lines(tcsId));
+	}
+
+	/*
+	 * Method returns the lines of a schedule with a morning peak plan on every day type
+	 */
+	private static List<String> lines(int tcsId) {
+		List<String> lines = new ArrayList<>();
+		for (DayType dayType : DayType.values()) {
+			lines.add(dayType + " 00:00 " + new SignalPlan(tcsId, 20, 14, 3, 0).toLine());
+			lines.add(dayType + " 07:00 " + new SignalPlan(tcsId, 40, 20, 3, tcsId).toLine());
+			lines.add(dayType + " 21:00 " + new SignalPlan(tcsId, 20, 14, 3, 0).toLine());
+		}
+		return lines;
+	}
+
+	/*
+	 * Method waits up to 5 seconds for the condition
+	 */
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+			Thread.sleep(5);
+		}
+	}
+}
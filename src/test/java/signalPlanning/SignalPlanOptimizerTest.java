@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package signalPlanning;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests the signal plan search: that it beats the fixed cycle, keeps the plans within their bounds,
+ * and finds the same plans whatever the parallelism of the pool scoring the candidates.
+ */
+class SignalPlanOptimizerTest {
+
+	private static final int[] TCS_IDS = { 2012, 2013, 2014 };
+	private static final int[] TRAVEL_SECONDS = { 25, 40 };
+
+	@Test
+	void theBestPlansDelayLessThanTheFixedCycle() {
+		CorridorDemand demand = CorridorDemand.synthetic(TCS_IDS, TRAVEL_SECONDS, 600, 0.45, 0.2, 3);
+		SignalPlanOptimizer optimizer = new SignalPlanOptimizer(1.0, 3, 40, 80, 20);
+		SignalPlanOptimizer.Result result = optimizer.optimize(demand);
+
+		assertTrue(result.getDelay() < result.getBaselineDelay(), result.toString());
+		assertEquals(optimizer.getEvaluations(), result.getEvaluations());
+		SignalPlan[] plans = result.getPlans();
+		assertEquals(TCS_IDS.length, plans.length);
+		int cycle = plans[0].getCycleSeconds();
+		assertTrue(cycle >= 40 && cycle <= 80);
+		for (int i = 0; i < plans.length; i++) {
+			assertEquals(TCS_IDS[i], plans[i].getTcsId());
+			assertEquals(cycle, plans[i].getCycleSeconds());                  // one common cycle along the corridor
+			assertTrue(plans[i].getMainGreenSeconds() >= SignalPlan.MIN_GREEN_SECONDS);
+			assertTrue(plans[i].getSideGreenSeconds() >= SignalPlan.MIN_GREEN_SECONDS);
+			assertTrue(plans[i].getOffsetSeconds() >= 0 && plans[i].getOffsetSeconds() < cycle);
+		}
+		assertEquals(result.getDelay(), optimizer.evaluate(demand, plans));
+	}
+
+	@Test
+	void thePlansDoNotDependOnTheParallelism() {
+		CorridorDemand demand = CorridorDemand.synthetic(TCS_IDS, TRAVEL_SECONDS, 300, 0.4, 0.25, 9);
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool wide = new ForkJoinPool(4);
+		try {
+			SignalPlanOptimizer.Result one = new SignalPlanOptimizer(single, 1.0, 3, 40, 60, 20).optimize(demand);
+			SignalPlanOptimizer.Result four = new SignalPlanOptimizer(wide, 1.0, 3, 40, 60, 20).optimize(demand);
+			assertEquals(one.getDelay(), four.getDelay());
+			assertEquals(one.getEvaluations(), four.getEvaluations());
+			for (int i = 0; i < TCS_IDS.length; i++) {
+				assertEquals(one.getPlans()[i], four.getPlans()[i]);
+			}
+		} finally {
+			single.shutdown();
+			wide.shutdown();
+		}
+	}
+
+	@Test
+	void aGreenWaveDelaysTheMainRoadLessThanAWaveAgainstTheTraffic() {
+		int horizon = 600;
+		float[] mainEntry = new float[horizon];
+		Arrays.fill(mainEntry, 0.3f);
+		CorridorDemand demand = new CorridorDemand(TCS_IDS, TRAVEL_SECONDS, mainEntry, new float[TCS_IDS.length][horizon]);
+		SignalPlanOptimizer optimizer = new SignalPlanOptimizer(1.0, 3, 40, 80, 20);
+
+		SignalPlan[] wave = plans(0, 25, 65 % 60);
+		SignalPlan[] against = plans(0, 60 - 25, 60 - 65 % 60);
+		assertTrue(optimizer.evaluate(demand, wave) < optimizer.evaluate(demand, against));
+	}
+
+	@Test
+	void invalidSettingsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new SignalPlanOptimizer(0, 3, 40, 80, 20));
+		assertThrows(IllegalArgumentException.class, () -> new SignalPlanOptimizer(1.0, 1, 40, 80, 20));
+		assertThrows(IllegalArgumentException.class, () -> new SignalPlanOptimizer(1.0, 3, 10, 80, 20));
+		assertThrows(IllegalArgumentException.class, () -> new SignalPlanOptimizer(1.0, 3, 80, 40, 20));
+	}
+
+
+	/*
+	 * Method returns 60 second plans with 24 second greens and the given offsets
+	 */
+	private static SignalPlan[] plans(int... offsets) {
+		SignalPlan[] plans = new SignalPlan[offsets.length];
+		for (int i = 0; i < plans.length; i++) {
+			plans[i] = new SignalPlan(TCS_IDS[i], 24, 30, 3, offsets[i]);
+		}
+		return plans;
+	}
+}
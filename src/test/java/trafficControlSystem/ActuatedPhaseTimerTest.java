@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package trafficControlSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import trafficControlSystem.ActuatedPhaseTimer.PhasePlan;
+
+/**
+ * Class tests that green phases are sized by the vehicles counted at the saturation flow within their bounds,
+ * that the yellow phase follows the green one, and that the totals add up the phases run.
+ */
+class ActuatedPhaseTimerTest {
+
+	@Test
+	void greenClearsTheCountedVehiclesAtTheSaturationFlow() {
+		ActuatedPhaseTimer timer = new ActuatedPhaseTimer(5, 60, 0.5);
+		PhasePlan plan = timer.plan(20, 21, 2);
+		assertEquals(42, plan.getGreenSeconds());
+		assertEquals(44, plan.getYellowSeconds());
+		assertEquals(20, plan.getPlannedGreenSeconds());
+		assertEquals(21, plan.getVehicles());
+
+		assertEquals(13, new ActuatedPhaseTimer(5, 60, 0.4).plan(20, 5, 0).getGreenSeconds());   // 12.5 s rounded up
+	}
+
+	@Test
+	void greenStaysWithinItsBounds() {
+		ActuatedPhaseTimer timer = new ActuatedPhaseTimer(5, 60, 0.5);
+		assertEquals(5, timer.plan(20, 0, 2).getGreenSeconds());
+		assertEquals(60, timer.plan(20, 1000, 2).getGreenSeconds());
+		assertEquals(62, timer.plan(20, 1000, 2).getYellowSeconds());
+	}
+
+	@Test
+	void theFirstCycleRunsThePlannedGreen() {
+		ActuatedPhaseTimer timer = new ActuatedPhaseTimer(5, 60, 0.5);
+		PhasePlan plan = timer.plan(20, -1, 3);
+		assertEquals(20, plan.getGreenSeconds());
+		assertEquals(23, plan.getYellowSeconds());
+		assertEquals(0, plan.getVehicles());
+		assertEquals(60, timer.plan(90, -1, 0).getGreenSeconds());
+	}
+
+	@Test
+	void theReportAddsUpThePhasesRun() {
+		ActuatedPhaseTimer timer = new ActuatedPhaseTimer(5, 60, 0.5);
+		assertEquals("No green phase run yet", timer.report());
+
+		timer.recordGreen(1, timer.plan(20, 10, 2), 20_000);      // 10 vehicles, time for 10
+		timer.recordGreen(2, timer.plan(20, 30, 2), 30_000);      // 30 vehicles, time for 15
+		String report = timer.report();
+		assertTrue(report.startsWith("2 green phases: planned 40 s, actuated 80 s, achieved 50.0 s, 25 vehicles cleared"), report);
+	}
+
+	@Test
+	void invalidBoundsOrFlowAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new ActuatedPhaseTimer(0, 60, 0.5));
+		assertThrows(IllegalArgumentException.class, () -> new ActuatedPhaseTimer(10, 5, 0.5));
+		assertThrows(IllegalArgumentException.class, () -> new ActuatedPhaseTimer(5, 60, 0));
+		assertThrows(IllegalArgumentException.class, () -> new ActuatedPhaseTimer(5, 60, Double.NaN));
+	}
+}
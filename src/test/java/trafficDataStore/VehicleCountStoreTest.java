@@ -0,0 +1,118 @@
+/**
+ *
+ */
+package trafficDataStore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cityStateStore.CityStateStore;
+
+/**
+ * Class tests that the queries of the store give the same answers from the current partition, from sealed
+ * segments and after the store is opened again. Partitions last a second, the samples of a test span three.
+ */
+class VehicleCountStoreTest {
+
+	private static final int VRS_ID = 7;
+	private static final long PARTITION_MILLIS = 1000;
+
+	@TempDir
+	Path directory;
+
+	private VehicleCountStore store;
+
+	@AfterEach
+	void close() throws IOException {
+		if (store != null) {
+			store.close();
+		}
+	}
+
+	@Test
+	void queriesAnswerTheSameBeforeAndAfterSealing() throws IOException {
+		store = VehicleCountStore.open(directory, PARTITION_MILLIS);
+		recordSamples();
+		checkQueries();
+
+		store.flush();
+		assertEquals(3, store.getSegments().size());
+		checkQueries();
+
+		store.close();
+		store = VehicleCountStore.open(directory, PARTITION_MILLIS);
+		checkQueries();
+	}
+
+	@Test
+	void samplesOfASealedPartitionAreDropped() throws IOException {
+		store = VehicleCountStore.open(directory, PARTITION_MILLIS);
+		recordSamples();
+		store.flush();
+		store.record(VRS_ID, 500, 100, 0, 0, 0);
+		assertEquals(1, store.getDroppedSamples());
+		store.flush();
+		assertEquals(435, store.sum(VRS_ID, CityStateStore.CARS, 0, 3000));
+	}
+
+	@Test
+	void lateSamplesOfAPartitionNotSealedYetAreKept() throws IOException {
+		Path segments = directory.resolve("segments");
+		Path away = directory.resolve("away");
+		store = VehicleCountStore.open(segments, PARTITION_MILLIS);
+		Files.move(segments, away);            // the partitions fail to seal and stay pending
+		recordSamples();
+		store.record(VRS_ID, 500, 100, 0, 0, 0);
+		store.record(VRS_ID, -500, 7, 0, 0, 0);   // a partition that never had a sample
+		assertEquals(0, store.getDroppedSamples());
+		assertEquals(535, store.sum(VRS_ID, CityStateStore.CARS, 0, 3000));
+
+		Files.move(away, segments);
+		store.flush();
+		assertEquals(0, store.getDroppedSamples());
+		assertEquals(542, store.sum(VRS_ID, CityStateStore.CARS, -1000, 3000));
+		assertEquals(100, store.max(VRS_ID, CityStateStore.CARS, 0, 1000));
+	}
+
+	@Test
+	void emptyRangesGiveNothing() throws IOException {
+		store = VehicleCountStore.open(directory, PARTITION_MILLIS);
+		recordSamples();
+		assertEquals(0, store.percentile(VRS_ID, CityStateStore.CARS, 1000, 1000, 50));
+		assertEquals(0, store.percentile(VRS_ID, CityStateStore.CARS, 5000, 6000, 50));
+		assertEquals(0, store.sum(VRS_ID + 1, CityStateStore.CARS, 0, 3000));
+		assertEquals(0, store.max(VRS_ID, CityStateStore.CARS, 5000, 6000));
+	}
+
+
+	/*
+	 * Method records one scan every 100 ms for 3 seconds, the n-th with n cars and 1 truck
+	 */
+	private void recordSamples() {
+		for (int n = 0; n < 30; n++) {
+			store.record(VRS_ID, n * 100L, n, 1, 0, 0);
+		}
+	}
+
+	/*
+	 * Method checks the queries over the samples of recordSamples()
+	 */
+	private void checkQueries() {
+		assertEquals(435, store.sum(VRS_ID, CityStateStore.CARS, 0, 3000));
+		assertEquals(465, store.sum(VRS_ID, VehicleCountStore.ALL_CLASSES, 0, 3000));
+		assertEquals(290, store.sum(VRS_ID, CityStateStore.CARS, 500, 2500));      // partitions partly in the range
+		assertEquals(29, store.max(VRS_ID, CityStateStore.CARS, 0, 3000));
+		assertEquals(9, store.max(VRS_ID, CityStateStore.CARS, 0, 1000));
+		assertEquals(14, store.percentile(VRS_ID, CityStateStore.CARS, 0, 3000, 50));
+		assertEquals(19, store.percentile(VRS_ID, CityStateStore.CARS, 1000, 2000, 100));
+		assertArrayEquals(new long[] { 45, 145, 245 }, store.sumPerInterval(VRS_ID, CityStateStore.CARS, 0, 3000, 1000));
+	}
+}
@@ -0,0 +1,281 @@
+/**
+ *
+ */
+package trafficLightSystem;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import cityStateStore.CityStateStore;
+
+/**
+ * Class tests that subscribers get the current state of the city first, then every change in order,
+ * that a subscriber falling behind gets the latest state of each system instead, and that every event
+ * is a delta from the state the subscriber was last told of.
+ */
+class StateChangePublisherTest {
+
+	private static final int GREEN = CityStateStore.STATE_GREEN;
+	private static final int RED = CityStateStore.STATE_RED;
+
+	private final List<StateChangePublisher> publishers = new ArrayList<>();
+
+	@AfterEach
+	void closePublishers() {
+		for (StateChangePublisher publisher : publishers) {
+			publisher.close();
+		}
+	}
+
+	@Test
+	void aNewSubscriberGetsTheCurrentStateThenEveryChange() throws InterruptedException {
+		StateChangePublisher publisher = newPublisher(64, 16);
+		publisher.publish(0, 100, 0, GREEN);
+		publisher.publish(1, 101, 0, RED);
+		publisher.publish(0, 100, GREEN, RED);
+
+		Recorder recorder = new Recorder(4, Long.MAX_VALUE);
+		publisher.subscribe(recorder);
+		awaitTrue(() -> recorder.count() == 2);
+		assertTrue(recorder.get(0).isConflated() && recorder.get(1).isConflated());
+		assertArrayEquals(new int[] { RED, RED, 0, 0 }, recorder.view());
+
+		publisher.publish(2, 102, 0, GREEN);
+		publisher.publish(1, 101, RED, GREEN);
+		awaitTrue(() -> recorder.count() == 4);
+		assertFalse(recorder.get(2).isConflated());
+		assertEquals(3, recorder.get(2).getSequence());
+		assertEquals(4, recorder.get(3).getSequence());
+		assertEquals(RED, recorder.get(3).getPreviousState());
+		assertEquals(101, recorder.get(3).getTlsId());
+		assertNull(recorder.failure());
+	}
+
+	@Test
+	void aSubscriberFallingBehindGetsTheLatestStateOfEachSystem() throws InterruptedException {
+		StateChangePublisher publisher = newPublisher(64, 8);
+		Recorder recorder = new Recorder(4, 0);
+		publisher.subscribe(recorder);
+
+		int[] truth = new int[4];
+		for (int i = 0; i < 100; i++) {
+			int tlsIndex = i % 4;
+			int next = truth[tlsIndex] == GREEN ? RED : GREEN;
+			publisher.publish(tlsIndex, 100 + tlsIndex, truth[tlsIndex], next);
+			truth[tlsIndex] = next;
+		}
+		recorder.request(Long.MAX_VALUE);
+
+		awaitTrue(() -> recorder.count() == 4);
+		for (int event = 0; event < 4; event++) {
+			assertTrue(recorder.get(event).isConflated());
+		}
+		assertArrayEquals(truth, recorder.view());
+		assertNull(recorder.failure());
+	}
+
+	@Test
+	void subscribersAreCompletedOnCloseAfterTheirRequestedChanges() throws InterruptedException {
+		StateChangePublisher publisher = newPublisher(64, 16);
+		Recorder recorder = new Recorder(2, Long.MAX_VALUE);
+		publisher.subscribe(recorder);
+		publisher.publish(0, 100, 0, GREEN);
+		publisher.publish(1, 101, 0, GREEN);
+		publisher.close();
+
+		awaitTrue(recorder::isCompleted);
+		assertArrayEquals(new int[] { GREEN, GREEN }, recorder.view());
+		assertEquals(0, publisher.getSubscriberCount());
+
+		Recorder late = new Recorder(2, Long.MAX_VALUE);           // told the final state, then completed
+		publisher.subscribe(late);
+		awaitTrue(late::isCompleted);
+		assertArrayEquals(new int[] { GREEN, GREEN }, late.view());
+	}
+
+	@Test
+	void aRequestThatIsNotPositiveFailsTheSubscription() throws InterruptedException {
+		StateChangePublisher publisher = newPublisher(64, 16);
+		Recorder recorder = new Recorder(1, 0);
+		publisher.subscribe(recorder);
+		recorder.request(0);
+
+		awaitTrue(() -> recorder.failure() != null);
+		assertTrue(recorder.failure() instanceof IllegalArgumentException);
+		assertEquals(0, publisher.getSubscriberCount());
+	}
+
+	@Test
+	void fastAndSlowSubscribersEndWithTheStateOfEverySystem() throws InterruptedException {
+		ExecutorService deliveries = Executors.newFixedThreadPool(2);
+		StateChangePublisher publisher = new StateChangePublisher(1024, 64, deliveries);
+		publishers.add(publisher);
+		int systems = 200;
+		int writers = 4;
+		List<Recorder> recorders = new ArrayList<>();
+		for (int s = 0; s < 20; s++) {
+			Recorder recorder = new Recorder(systems, s < 18 ? Long.MAX_VALUE : 0);   // the last two are slow
+			recorders.add(recorder);
+			publisher.subscribe(recorder);
+		}
+		Thread ticker = new Thread(() -> {
+			while (!Thread.currentThread().isInterrupted()) {
+				recorders.get(18).request(16);
+				recorders.get(19).request(16);
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		});
+		ticker.setDaemon(true);
+		ticker.start();
+
+		int[] truth = new int[systems];
+		Thread[] threads = new Thread[writers];
+		for (int w = 0; w < writers; w++) {
+			int writer = w;
+			threads[w] = new Thread(() -> {
+				for (int i = 0; i < 50_000; i++) {
+					int tlsIndex = writer + (i % (systems / writers)) * writers;     // each writer owns its systems
+					int next = truth[tlsIndex] == GREEN ? RED : GREEN;
+					publisher.publish(tlsIndex, 10_000 + tlsIndex, truth[tlsIndex], next);
+					truth[tlsIndex] = next;
+				}
+			});
+			threads[w].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		try {
+			for (Recorder recorder : recorders) {
+				awaitTrue(() -> recorder.sees(truth));
+				assertNull(recorder.failure());
+			}
+			assertTrue(recorders.get(19).conflated() > 0);
+		} finally {
+			ticker.interrupt();
+			deliveries.shutdownNow();
+		}
+	}
+
+
+	/*
+	 * Method returns a publisher delivering on the dispatcher thread, closed after the test
+	 */
+	private StateChangePublisher newPublisher(int ringSize, int bufferCapacity) {
+		StateChangePublisher publisher = new StateChangePublisher(ringSize, bufferCapacity, Runnable::run);
+		publishers.add(publisher);
+		return publisher;
+	}
+
+	/*
+	 * Method waits up to 10 seconds for the condition
+	 */
+	private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+			Thread.sleep(5);
+		}
+	}
+
+
+	/*
+	 * A subscriber keeping the events and the state it was told of each system,
+	 * an event that is not a delta from that state is kept as its failure
+	 */
+	private static final class Recorder implements Flow.Subscriber<StateChange> {
+		private final int[] view;
+		private final long initialRequest;
+		private final List<StateChange> events = new ArrayList<>();
+		private volatile Flow.Subscription subscription;
+		private volatile Throwable failure;
+		private volatile boolean completed;
+		private long conflated;
+
+		Recorder(int systems, long initialRequest) {
+			this.view = new int[systems];
+			this.initialRequest = initialRequest;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (initialRequest > 0) {
+				subscription.request(initialRequest);
+			}
+		}
+
+		@Override
+		public synchronized void onNext(StateChange change) {
+			if (change.getPreviousState() != view[change.getTlsIndex()]) {
+				failure = new AssertionError("not a delta: " + change);
+			}
+			view[change.getTlsIndex()] = change.getNewState();
+			if (change.isConflated()) {
+				conflated++;
+			}
+			events.add(change);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			failure = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+
+		void request(long n) {
+			subscription.request(n);
+		}
+
+		synchronized int count() {
+			return events.size();
+		}
+
+		synchronized StateChange get(int event) {
+			return events.get(event);
+		}
+
+		synchronized int[] view() {
+			return view.clone();
+		}
+
+		synchronized boolean sees(int[] truth) {
+			return Arrays.equals(view, truth);
+		}
+
+		synchronized long conflated() {
+			return conflated;
+		}
+
+		Throwable failure() {
+			return failure;
+		}
+
+		boolean isCompleted() {
+			return completed;
+		}
+	}
+}
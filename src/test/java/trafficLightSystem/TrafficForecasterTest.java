@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package trafficLightSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests the traffic forecast of a Traffic Light System: its level, its time of day seasonal term,
+ * and that it beats repeating the last scan once it has seen a day of traffic.
+ */
+class TrafficForecasterTest {
+
+	private static final long MINUTE_MILLIS = 60_000;
+	private static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
+	private static final int SCAN_MILLIS = 2000;
+
+	@Test
+	void nothingIsForecastBeforeTheFirstScan() {
+		TrafficForecaster forecaster = new TrafficForecaster();
+		assertEquals(-1, forecaster.forecastRate(0));
+		assertEquals(-1, forecaster.forecastVehicles(0, 10, 2));
+	}
+
+	@Test
+	void steadyTrafficIsForecastAtItsRate() {
+		TrafficForecaster forecaster = new TrafficForecaster();
+		for (long t = 0; t < 60 * MINUTE_MILLIS; t += MINUTE_MILLIS) {
+			forecaster.observe(t, 6, SCAN_MILLIS);                       // 3 vehicles per second
+		}
+		assertEquals(60, forecaster.getObservations());
+		assertEquals(3.0, forecaster.forecastRate(61 * MINUTE_MILLIS), 0.01);
+		assertEquals(60, forecaster.forecastVehicles(61 * MINUTE_MILLIS, 10, 2));   // 2 cameras for 10 s
+	}
+
+	@Test
+	void scansWithoutLengthAreIgnored() {
+		TrafficForecaster forecaster = new TrafficForecaster();
+		forecaster.observe(0, 10, 0);
+		assertEquals(0, forecaster.getObservations());
+	}
+
+	@Test
+	void theNextCycleFollowsTheRushHour() {
+		TrafficForecaster forecaster = new TrafficForecaster();
+		Random random = new Random(7);
+		long start = localMidnight();
+		long day = start + 2 * DAY_MILLIS;
+		double night = 0;
+		for (long t = start; t < day + 8 * 60 * MINUTE_MILLIS; t += MINUTE_MILLIS) {
+			if (t == day + 3 * 60 * MINUTE_MILLIS) {
+				night = forecaster.forecastRate(t);
+			}
+			forecaster.observe(t, vehicles(random, rate(t - start)), SCAN_MILLIS);
+		}
+		double peak = forecaster.forecastRate(day + 8 * 60 * MINUTE_MILLIS);
+		assertEquals(rate(8 * 60 * MINUTE_MILLIS), peak, 0.75);
+		assertEquals(rate(3 * 60 * MINUTE_MILLIS), night, 0.5);
+	}
+
+	@Test
+	void theSecondDayIsForecastBetterThanByRepeatingTheLastScan() {
+		TrafficForecaster forecaster = new TrafficForecaster();
+		Random random = new Random(7);
+		long start = localMidnight();
+		double forecastError = 0;
+		double lastScanError = 0;
+		int last = 0;
+		for (long t = start; t < start + 2 * DAY_MILLIS; t += MINUTE_MILLIS) {
+			int vehicles = vehicles(random, rate(t - start));
+			if (t >= start + DAY_MILLIS) {
+				forecastError += Math.abs(forecaster.forecastRate(t) * SCAN_MILLIS / 1000.0 - vehicles);
+				lastScanError += Math.abs(last - vehicles);
+			}
+			forecaster.observe(t, vehicles, SCAN_MILLIS);
+			last = vehicles;
+		}
+		assertTrue(forecastError < lastScanError, forecastError + " >= " + lastScanError);
+	}
+
+	@Test
+	void scansFromManyCollectorsAreAllCounted() throws InterruptedException {
+		TrafficForecaster forecaster = new TrafficForecaster();
+		Thread[] collectors = new Thread[4];
+		for (int i = 0; i < collectors.length; i++) {
+			int vrsId = i;
+			collectors[i] = new Thread(() -> {
+				for (int scan = 0; scan < 1000; scan++) {
+					forecaster.onScan(vrsId, scan * MINUTE_MILLIS, 4, SCAN_MILLIS);
+				}
+			});
+			collectors[i].start();
+		}
+		for (Thread collector : collectors) {
+			collector.join();
+		}
+		assertEquals(4000, forecaster.getObservations());
+		assertEquals(2.0, forecaster.forecastRate(1000 * MINUTE_MILLIS), 0.01);
+	}
+
+	@Test
+	void invalidWeightsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new TrafficForecaster(0, 0.05, 0.1, 0.9));
+		assertThrows(IllegalArgumentException.class, () -> new TrafficForecaster(0.3, 1.5, 0.1, 0.9));
+		assertThrows(IllegalArgumentException.class, () -> new TrafficForecaster(0.3, 0.05, 0.1, 1.0));
+	}
+
+
+	/*
+	 * Method returns the arrival rate of a camera at a time of the day, quiet at night and peaking at 8 and 18
+	 */
+	private static double rate(long sinceMidnight) {
+		double hour = Math.floorMod(sinceMidnight, DAY_MILLIS) / 3_600_000.0;
+		return 0.5 + 3.0 * Math.exp(-Math.pow(hour - 8, 2) / 2.0) + 3.0 * Math.exp(-Math.pow(hour - 18, 2) / 2.0);
+	}
+
+	/*
+	 * Method draws the vehicles counted by one scan at the given rate
+	 */
+	private static int vehicles(Random random, double rate) {
+		return (int) Math.max(0, Math.round(rate * SCAN_MILLIS / 1000.0 + random.nextGaussian()));
+	}
+
+	/*
+	 * Method returns a local midnight, the forecaster slots the day by local time
+	 */
+	private static long localMidnight() {
+		long offsetMillis = ZoneId.systemDefault().getRules().getOffset(Instant.now()).getTotalSeconds() * 1000L;
+		return 10 * DAY_MILLIS - offsetMillis;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Class tests how the scan scheduler scales the scan lengths with the traffic seen, within its bounds
+ * and by at most a factor of 2 per scan.
+ */
+class AdaptiveScanSchedulerTest {
+
+	private static final int BASE_SCAN_MILLIS = 2000;
+
+	@Test
+	void theFirstScanUsesTheConfiguredLength() {
+		AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(500, 6000, 2.0);
+		assertEquals(BASE_SCAN_MILLIS, scheduler.nextScanMillis(BASE_SCAN_MILLIS));
+	}
+
+	@Test
+	void heavyTrafficShortensTheScansDownToTheMinimum() {
+		AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(500, 6000, 2.0);
+		int last = scheduler.nextScanMillis(BASE_SCAN_MILLIS);
+		for (int scan = 0; scan < 20; scan++) {
+			scheduler.observe(last * 20 / 1000, last);               // 20 vehicles per second
+			int next = scheduler.nextScanMillis(BASE_SCAN_MILLIS);
+			assertTrue(next <= last && next * 2 >= last, last + " -> " + next);
+			last = next;
+		}
+		assertEquals(500, last);
+	}
+
+	@Test
+	void anIdleIntersectionIsScannedAtTheLongestLength() {
+		AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(500, 6000, 2.0);
+		int last = scheduler.nextScanMillis(BASE_SCAN_MILLIS);
+		for (int scan = 0; scan < 10; scan++) {
+			scheduler.observe(0, last);
+			int next = scheduler.nextScanMillis(BASE_SCAN_MILLIS);
+			assertTrue(next >= last && next <= last * 2, last + " -> " + next);
+			last = next;
+		}
+		assertEquals(6000, last);
+	}
+
+	@Test
+	void theReferenceRateKeepsTheConfiguredLength() {
+		AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(500, 6000, 2.0);
+		for (int scan = 0; scan < 10; scan++) {
+			scheduler.observe(4, BASE_SCAN_MILLIS);                     // 2 vehicles per second, no variance
+		}
+		assertEquals(2.0, scheduler.getMeanRate(), 1e-9);
+		assertEquals(0.0, scheduler.getRateDeviation(), 1e-9);
+		assertEquals(BASE_SCAN_MILLIS, scheduler.nextScanMillis(BASE_SCAN_MILLIS));
+	}
+
+	@Test
+	void erraticTrafficIsScannedMoreOftenThanSteadyTraffic() {
+		AdaptiveScanScheduler steady = new AdaptiveScanScheduler(100, 6000, 2.0);
+		AdaptiveScanScheduler erratic = new AdaptiveScanScheduler(100, 6000, 2.0);
+		for (int scan = 0; scan < 40; scan++) {
+			steady.observe(4, 1000);
+			erratic.observe(scan % 2 == 0 ? 0 : 8, 1000);             // same mean rate
+		}
+		assertEquals(steady.getMeanRate(), erratic.getMeanRate(), 1.0);       // the last scans weigh most
+		assertTrue(erratic.getRateDeviation() > 1);
+		assertTrue(erratic.nextScanMillis(BASE_SCAN_MILLIS) < steady.nextScanMillis(BASE_SCAN_MILLIS));
+	}
+
+	@Test
+	void resetForgetsTheTrafficSeen() {
+		AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(500, 6000, 2.0);
+		scheduler.nextScanMillis(BASE_SCAN_MILLIS);
+		scheduler.observe(100, BASE_SCAN_MILLIS);
+		scheduler.reset();
+		assertEquals(0.0, scheduler.getMeanRate());
+		assertEquals(BASE_SCAN_MILLIS, scheduler.nextScanMillis(BASE_SCAN_MILLIS));
+	}
+
+	@Test
+	void aQuietNightTakesFewerScansThanThePeak() {
+		AdaptiveScanScheduler scheduler = new AdaptiveScanScheduler(500, 6000, 2.0);
+		Random random = new Random(42);
+		int night = scansPerHour(scheduler, random, 0.2);
+		int peak = scansPerHour(scheduler, random, 8.0);
+		int fixed = 60 * 3;                                             // 3 scans of 2 s per cycle
+		assertTrue(night < fixed, "night " + night);
+		assertTrue(peak > fixed, "peak " + peak);
+	}
+
+	@Test
+	void invalidBoundsAreRejected() {
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveScanScheduler(0, 6000, 2.0));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveScanScheduler(6000, 500, 2.0));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveScanScheduler(500, 6000, 0));
+		assertThrows(IllegalArgumentException.class, () -> new AdaptiveScanScheduler(500, 6000, 2.0, 1.5));
+	}
+
+
+	/*
+	 * Method runs 60 cycles of a 6 second observation window at the given arrival rate, returns the scans taken
+	 */
+	private static int scansPerHour(AdaptiveScanScheduler scheduler, Random random, double rate) {
+		int windowMillis = 6000;
+		int scans = 0;
+		for (int cycle = 0; cycle < 60; cycle++) {
+			int elapsed = 0;
+			while (elapsed < windowMillis) {
+				int scanMillis = Math.min(scheduler.nextScanMillis(BASE_SCAN_MILLIS), windowMillis - elapsed);
+				scheduler.observe(poisson(random, rate * scanMillis / 1000.0), scanMillis);
+				elapsed += scanMillis;
+				scans++;
+			}
+		}
+		return scans;
+	}
+
+	/*
+	 * Method draws a Poisson distributed count
+	 */
+	private static int poisson(Random random, double mean) {
+		double limit = Math.exp(-mean);
+		double product = random.nextDouble();
+		int count = 0;
+		while (product > limit) {
+			product *= random.nextDouble();
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import visualRecognitionSystem.CameraCircuitBreaker.State;
+
+/**
+ * Class tests the transitions of the camera circuit breaker, driven by explicit times
+ */
+class CameraCircuitBreakerTest {
+
+	private static final long OPEN_MILLIS = 1000;
+
+	@Test
+	void failuresInARowOpenTheBreaker() {
+		CameraCircuitBreaker breaker = newBreaker();
+		breaker.recordTimeout(0);
+		breaker.recordTimeout(10);
+		assertTrue(breaker.isClosed(10));
+
+		breaker.recordTimeout(20);
+		assertEquals(State.OPEN, breaker.getState(20));
+		assertEquals(1, breaker.getTrips());
+		assertEquals(3, breaker.getTimeouts());
+	}
+
+	@Test
+	void aPlausibleScanResetsTheFailures() {
+		CameraCircuitBreaker breaker = newBreaker();
+		breaker.recordTimeout(0);
+		breaker.recordTimeout(10);
+		assertTrue(breaker.checkScan(20, 20, 5, 1, 0, 0, 2000));
+		breaker.recordTimeout(30);
+		breaker.recordTimeout(40);
+		assertTrue(breaker.isClosed(40));
+	}
+
+	@Test
+	void implausibleScansAreRejectedAndCountAsFailures() {
+		CameraCircuitBreaker breaker = newBreaker();
+		assertFalse(breaker.checkScan(0, 0, -1, 0, 0, 0, 2000));              // negative count
+		assertFalse(breaker.checkScan(0, 0, 1, 0, 0, 0, 0));                  // no length
+		assertFalse(breaker.checkScan(0, 0, 101, 0, 0, 0, 2000));             // more than 50 a second
+		assertEquals(3, breaker.getImplausibleScans());
+		assertEquals(State.OPEN, breaker.getState(0));
+	}
+
+	@Test
+	void anOpenBreakerProbesAfterOpenMillisAndClosesOnPlausibleScans() {
+		CameraCircuitBreaker breaker = openBreaker(0);
+		assertEquals(State.OPEN, breaker.getState(OPEN_MILLIS - 1));
+		assertEquals(State.HALF_OPEN, breaker.getState(OPEN_MILLIS));
+
+		long now = OPEN_MILLIS;
+		assertTrue(breaker.checkScan(now, now, 5, 0, 0, 0, 2000));
+		assertTrue(breaker.checkScan(now, now, 5, 0, 0, 0, 2000));
+		assertEquals(State.HALF_OPEN, breaker.getState(now));
+		assertTrue(breaker.checkScan(now, now, 5, 0, 0, 0, 2000));
+		assertTrue(breaker.isClosed(now));
+	}
+
+	@Test
+	void aFailureWhileHalfOpenOpensTheBreakerAgain() {
+		CameraCircuitBreaker breaker = openBreaker(0);
+		breaker.recordTimeout(OPEN_MILLIS);
+		assertEquals(State.OPEN, breaker.getState(OPEN_MILLIS));
+		assertEquals(2, breaker.getTrips());
+		assertEquals(State.OPEN, breaker.getState(2 * OPEN_MILLIS - 1));
+	}
+
+	@Test
+	void failuresWhileOpenKeepItOpen() {
+		CameraCircuitBreaker breaker = openBreaker(0);
+		breaker.recordTimeout(OPEN_MILLIS - 1);
+		assertEquals(State.OPEN, breaker.getState(OPEN_MILLIS));
+		assertEquals(1, breaker.getTrips());
+	}
+
+	@Test
+	void aCameraThatFailsThenRecoversOpensTheBreakerOnce() {
+		CameraCircuitBreaker breaker = new CameraCircuitBreaker();
+		List<State> states = new ArrayList<>();
+		long now = 0;
+		for (int scan = 0; scan < 60; scan++, now += 2000) {
+			if (scan >= 10 && scan < 15) {
+				breaker.recordTimeout(now);                                   // silent
+			} else if (scan >= 15 && scan < 30) {
+				breaker.checkScan(now, now, 500, 0, 0, 0, 2000);              // nonsense
+			} else {
+				breaker.checkScan(now, now, 6, 1, 2, 1, 2000);
+			}
+			State state = breaker.getState(now);
+			if (states.isEmpty() || states.get(states.size() - 1) != state) {
+				states.add(state);
+			}
+		}
+		assertEquals(List.of(State.CLOSED, State.OPEN, State.HALF_OPEN, State.CLOSED), states);
+		assertEquals(5, breaker.getTimeouts());
+		assertEquals(15, breaker.getImplausibleScans());
+		assertEquals(1, breaker.getTrips());
+	}
+
+
+	/*
+	 * Method builds a breaker opening after 3 failures, probing after a second and closing after 3 plausible scans
+	 */
+	private static CameraCircuitBreaker newBreaker() {
+		return new CameraCircuitBreaker(3, OPEN_MILLIS, 3, 50.0);
+	}
+
+	/*
+	 * Method builds a breaker opened at the given time
+	 */
+	private static CameraCircuitBreaker openBreaker(long now) {
+		CameraCircuitBreaker breaker = newBreaker();
+		for (int i = 0; i < 3; i++) {
+			breaker.recordTimeout(now);
+		}
+		return breaker;
+	}
+}
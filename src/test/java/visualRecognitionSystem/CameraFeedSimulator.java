@@ -0,0 +1,138 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class simulates camera processes pushing their scan counts to the Control Center camera feed server,
+ * for testing the server without cameras.
+ *
+ * The cameras are spread over a number of connections, each one written by its own thread the way a separate
+ * camera process would. Messages are encoded with CountFeedProtocol into a reused buffer and sent in batches.
+ */
+public class CameraFeedSimulator {
+
+	// vars
+	private static final int BATCH_MESSAGES = 64;
+
+	private final SocketAddress address;
+	private final int[] vrsIds;
+	private final int connections;
+	private final long seed;
+	private final LongAdder sent;
+
+
+	/**
+	 * Initialises a simulator of the given cameras
+	 *
+	 * @param address TCP or Unix domain socket address of the server
+	 * @param vrsIds ids of the VRSs the cameras report for
+	 * @param connections connections the cameras are spread over
+	 * **/
+	public CameraFeedSimulator(SocketAddress address, int[] vrsIds, int connections, long seed) {
+		if (connections <= 0) {
+			throw new IllegalArgumentException("At least one connection is needed");
+		}
+		this.address = address;
+		this.vrsIds = vrsIds.clone();
+		this.connections = Math.min(connections, Math.max(1, vrsIds.length));
+		this.seed = seed;
+		this.sent = new LongAdder();
+	}
+
+
+	// helper methods
+
+	/***
+	 * Method sends the given number of scans of every camera as fast as the server takes them
+	 *
+	 * @return messages sent
+	 * **/
+	public long run(int scansPerCamera) {
+		return run(scansPerCamera, 0);
+	}
+
+	/***
+	 * Method sends the given number of scans of every camera, one round of scans every intervalMillis
+	 *
+	 * @return messages sent
+	 * **/
+	public long run(int scansPerCamera, int intervalMillis) {
+		List<Thread> clients = new ArrayList<>();
+		for (int connection = 0; connection < connections; connection++) {
+			int first = connection;
+			Thread client = new Thread(() -> sendScans(first, scansPerCamera, intervalMillis), "camera-client-" + connection);
+			client.start();
+			clients.add(client);
+		}
+		for (Thread client : clients) {
+			try {
+				client.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		return sent.sum();
+	}
+
+	/*
+	 * Method sends the scans of the cameras of one connection: every connections-th camera from the first one
+	 */
+	private void sendScans(int firstCamera, int scansPerCamera, int intervalMillis) {
+		Random random = new Random(seed + firstCamera);
+		ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_MESSAGES * CountFeedProtocol.SCAN_FRAME_BYTES);
+		int scanMillis = Math.max(intervalMillis, 1000);
+		try (SocketChannel channel = SocketChannel.open(address)) {
+			for (int scan = 0; scan < scansPerCamera; scan++) {
+				long now = System.currentTimeMillis();
+				for (int camera = firstCamera; camera < vrsIds.length; camera += connections) {
+					if (batch.remaining() < CountFeedProtocol.SCAN_FRAME_BYTES) {
+						flush(channel, batch);
+					}
+					CountFeedProtocol.putScanCounts(batch, vrsIds[camera], now, random.nextInt(10), random.nextInt(3),
+							random.nextInt(4), random.nextInt(2), scanMillis);
+					sent.increment();
+				}
+				flush(channel, batch);
+				if (intervalMillis > 0) {
+					Thread.sleep(intervalMillis);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Camera client could not send to " + address + ": " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Method writes the messages of a batch and clears it
+	 */
+	private static void flush(SocketChannel channel, ByteBuffer batch) throws IOException {
+		batch.flip();
+		while (batch.hasRemaining()) {
+			channel.write(batch);
+		}
+		batch.clear();
+	}
+
+
+	// getters
+
+	/**
+	 * Get number of messages sent so far
+	 */
+	public long getSent() {
+		return sent.sum();
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cityStateStore.CityStateStore;
+import visualRecognitionSystem.FrameBufferPool.CameraFrame;
+
+/**
+ * Class tests the raw frame pipeline on a synthetic video: every frame of every camera is detected once,
+ * the pooled buffers all come back, and the vehicles detected match the ones driving through the zones.
+ */
+class FrameIngestionPipelineTest {
+
+	private static final int WIDTH = 160;
+	private static final int HEIGHT = 120;
+	private static final int FRAMES = 500;              // 20 seconds at 25 frames per second
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void everyFrameOfEveryCameraIsDetectedAndTheBuffersComeBack() throws Exception {
+		int[] truth = new int[CityStateStore.VEHICLE_CLASSES];
+		Path video = directory.resolve("camera.raw");
+		writeSyntheticVideo(video, WIDTH, HEIGHT, FRAMES, truth, new Random(7));
+
+		int cameras = 4;
+		FrameIngestionPipeline pipeline = new FrameIngestionPipeline(8, WIDTH * HEIGHT, 2000);
+		List<VisualRecognitionSystem> systems = new ArrayList<>();
+		for (int i = 0; i < cameras; i++) {
+			VisualRecognitionSystem vrs = new VisualRecognitionSystem();
+			systems.add(vrs);
+			pipeline.addCamera(video, new VehicleDetector(WIDTH, HEIGHT, lanes(), 12, 60, 200), 25, false, vrs);
+		}
+		pipeline.start();
+		pipeline.awaitCompletion();
+
+		assertEquals((long) cameras * FRAMES, pipeline.getFramesDetected());
+		assertEquals(pipeline.getPool().getCapacity(), pipeline.getPool().getAvailable());
+		CityStateStore store = CityStateStore.getInstance();
+		int expected = truth[CityStateStore.CARS] + truth[CityStateStore.TRUCKS] + truth[CityStateStore.BIKES]
+				+ truth[CityStateStore.BUSES];
+		assertTrue(expected > 20, "video of " + expected + " vehicles");
+		long total = 0;
+		for (VisualRecognitionSystem vrs : systems) {
+			int detected = 0;
+			for (int vehicleClass = 0; vehicleClass < CityStateStore.VEHICLE_CLASSES; vehicleClass++) {
+				detected += store.getVehicleCount(vrs.getIndex(), vehicleClass);
+			}
+			assertTrue(Math.abs(detected - expected) <= expected / 10, "detected " + detected + " of " + expected);
+			total += detected;
+		}
+		assertEquals(total, pipeline.getVehiclesDetected());
+	}
+
+	@Test
+	void aLoopedFileIsPlayedUntilThePipelineStops() throws Exception {
+		Path video = directory.resolve("loop.raw");
+		writeSyntheticVideo(video, WIDTH, HEIGHT, 10, new int[CityStateStore.VEHICLE_CLASSES], new Random(3));
+		VisualRecognitionSystem vrs = new VisualRecognitionSystem();
+		FrameIngestionPipeline pipeline = new FrameIngestionPipeline(4, WIDTH * HEIGHT, 2000);
+		pipeline.addCamera(video, new VehicleDetector(WIDTH, HEIGHT, lanes(), 12, 60, 200), 25, true, vrs);
+		pipeline.start();
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (pipeline.getFramesDetected() < 100) {
+			assertTrue(System.currentTimeMillis() < deadline, "looped file not played again");
+			Thread.sleep(5);
+		}
+		pipeline.stop();
+	}
+
+	@Test
+	void framesLargerThanThePoolBuffersAreRejected() {
+		FrameIngestionPipeline pipeline = new FrameIngestionPipeline(4, 100, 2000);
+		assertThrows(IllegalArgumentException.class, () -> pipeline.addCamera(directory.resolve("none.raw"),
+				new VehicleDetector(WIDTH, HEIGHT, lanes(), 12, 60, 200), 25, false, new VisualRecognitionSystem()));
+	}
+
+	@Test
+	void poolBuffersAreReusedAndAcquireWaitsForARelease() throws Exception {
+		FrameBufferPool pool = new FrameBufferPool(2, 64);
+		CameraFrame first = pool.acquire();
+		CameraFrame second = pool.acquire();
+		assertNotSame(first, second);
+		assertTrue(first.getBuffer().isDirect());
+		assertEquals(0, pool.getAvailable());
+
+		CountDownLatch acquired = new CountDownLatch(1);
+		CameraFrame[] third = new CameraFrame[1];
+		Thread waiter = new Thread(() -> {
+			try {
+				third[0] = pool.acquire();
+				acquired.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiter.start();
+		first.getBuffer().put((byte) 1);
+		assertNotYet(acquired);
+		pool.release(first);
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		assertSame(first, third[0]);
+		assertEquals(0, third[0].getBuffer().position());         // handed out cleared
+		assertEquals(64, third[0].getBuffer().limit());
+	}
+
+
+	/*
+	 * Method checks that the latch is not released within 100 ms
+	 */
+	private static void assertNotYet(CountDownLatch latch) throws InterruptedException {
+		assertFalse(latch.await(100, TimeUnit.MILLISECONDS), "acquired without a free buffer");
+	}
+
+	/*
+	 * Method returns the detection zones of the four lanes of the synthetic video
+	 */
+	private static LaneRegion[] lanes() {
+		LaneRegion[] lanes = new LaneRegion[4];
+		for (int lane = 0; lane < lanes.length; lane++) {
+			lanes[lane] = new LaneRegion(60, lane * 30 + 3, 50, 24);
+		}
+		return lanes;
+	}
+
+	/*
+	 * Method writes frames of vehicles driving left to right over four lanes of a noisy road,
+	 * and counts in truth the vehicles that drive through the detection zones before the end
+	 */
+	private static void writeSyntheticVideo(Path file, int width, int height, int frames, int[] truth, Random random)
+			throws IOException {
+		int speed = 4;                                            // pixels per frame
+		int[][] sizes = new int[CityStateStore.VEHICLE_CLASSES][];
+		sizes[CityStateStore.CARS] = new int[] { 14, 8 };
+		sizes[CityStateStore.TRUCKS] = new int[] { 24, 12 };
+		sizes[CityStateStore.BIKES] = new int[] { 6, 4 };
+		sizes[CityStateStore.BUSES] = new int[] { 36, 10 };
+		int[] classOdds = { CityStateStore.CARS, CityStateStore.CARS, CityStateStore.CARS, CityStateStore.CARS,
+				CityStateStore.BIKES, CityStateStore.TRUCKS, CityStateStore.BUSES };
+
+		// vehicles of each lane: first frame and class
+		List<int[]> vehicles = new ArrayList<>();
+		for (int lane = 0; lane < 4; lane++) {
+			int start = 5 + random.nextInt(20);
+			while (start < frames) {
+				int vehicleClass = classOdds[random.nextInt(classOdds.length)];
+				vehicles.add(new int[] { lane, start, vehicleClass });
+				int length = sizes[vehicleClass][0];
+				start += (length + 60 + random.nextInt(140)) / speed;
+			}
+		}
+
+		byte[] frame = new byte[width * height];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (int f = 0; f < frames; f++) {
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						frame[y * width + x] = (byte) (60 + (x + y) % 40 + random.nextInt(13) - 6);
+					}
+				}
+				for (int[] vehicle : vehicles) {
+					int length = sizes[vehicle[2]][0];
+					int thickness = sizes[vehicle[2]][1];
+					int tail = (f - vehicle[1]) * speed - length;
+					if (f < vehicle[1] || tail >= width) {
+						continue;
+					}
+					int top = vehicle[0] * 30 + 15 - thickness / 2;
+					for (int y = top; y < top + thickness; y++) {
+						for (int x = Math.max(0, tail); x < Math.min(width, tail + length); x++) {
+							frame[y * width + x] = (byte) (200 + random.nextInt(13) - 6);
+						}
+					}
+				}
+				channel.write(ByteBuffer.wrap(frame));
+			}
+		}
+		for (int[] vehicle : vehicles) {
+			if ((frames - 1 - vehicle[1]) * speed - sizes[vehicle[2]][0] >= 110) {
+				truth[vehicle[2]]++;             // tail past the end of the zone
+			}
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package visualRecognitionSystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import trafficControlSystem.TrafficControlConfig;
+import trafficControlSystem.TrafficControlSystem;
+import trafficLightSystem.TrafficLightSystem;
+import visualRecognitionSystem.VisualRecognitionConfig.ScanSettings;
+
+/**
+ * Class tests that scan configurations are immutable snapshots, that settings set on one VRS win only until
+ * a newer configuration is published, and that racing publishes leave every VRS on the winning configuration.
+ */
+class VisualRecognitionConfigTest {
+
+	@Test
+	void configurationsAreNotChangedByTheirCopiesOrTheirSources() {
+		Map<Integer, ScanSettings> overrides = new HashMap<>();
+		overrides.put(7, new ScanSettings(2, 1));
+		VisualRecognitionConfig config = new VisualRecognitionConfig(3, 4, 2, overrides);
+		overrides.put(8, new ScanSettings(9, 9));
+
+		VisualRecognitionConfig copy = config.withOverride(8, new ScanSettings(5, 5));
+		assertEquals(1, config.getOverrides().size());
+		assertEquals(4, config.settingsOf(8).getNumOfTrafficScans());
+		assertEquals(5, copy.settingsOf(8).getNumOfTrafficScans());
+		assertEquals(2, copy.settingsOf(7).getNumOfTrafficScans());
+		assertEquals(3, copy.getVersion());
+		assertThrows(UnsupportedOperationException.class, () -> config.getOverrides().put(9, new ScanSettings(1, 1)));
+		assertThrows(IllegalArgumentException.class, () -> new VisualRecognitionConfig(4, 0, 2, overrides));
+	}
+
+	@Test
+	void ownSettingsWinUntilANewerConfigurationIsPublished() {
+		VisualRecognitionSystem vrs = new VisualRecognitionSystem();
+		vrs.useConfiguration(new VisualRecognitionConfig(5, 4, 2, Map.of()));
+		vrs.configVisualRecognition(6, 1);
+		assertEquals(6, vrs.getNumOfTrafficScans());
+
+		vrs.useConfiguration(new VisualRecognitionConfig(5, 4, 2, Map.of()));   // republished, same version
+		assertEquals(6, vrs.getNumOfTrafficScans());
+		assertEquals(6000, vrs.getCollectionWindowMillis());
+
+		VisualRecognitionConfig newer = new VisualRecognitionConfig(6, 3, 3, Map.of());
+		vrs.useConfiguration(newer);
+		assertEquals(3, vrs.getNumOfTrafficScans());
+		assertSame(newer, vrs.getConfiguration());
+	}
+
+	@Test
+	void settingsCanBeSetOneAtATimeOnAnUnconfiguredSystem() {
+		VisualRecognitionSystem vrs = new VisualRecognitionSystem();
+		vrs.setNumOfTrafficScans(3);
+		assertEquals(3, vrs.getNumOfTrafficScans());
+		assertEquals(0, vrs.getScanTimeInNanoSeconds());
+
+		vrs.setScanTime(2);
+		assertEquals(3, vrs.getNumOfTrafficScans());
+		assertEquals(2, vrs.getScanTimeInNanoSeconds());
+		assertThrows(IllegalArgumentException.class, () -> vrs.setScanTime(-1));
+	}
+
+	@Test
+	void racingPublishesLeaveEverySystemOnTheWinner() throws Exception {
+		TrafficControlSystem tcs = new TrafficControlSystem(940_000);
+		tcs.initTrafficLightSystems();
+		int writers = 4;
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[writers];
+		for (int w = 0; w < writers; w++) {
+			int scans = w + 1;
+			threads[w] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < 200; i++) {
+					if (i % 2 == 0) {
+						tcs.configAllVisualRecognitionSystems(scans, scans);
+					} else {
+						tcs.applyConfiguration(new TrafficControlConfig(scans * 1000 + i, scans, scans));
+					}
+				}
+			});
+			threads[w].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		VisualRecognitionConfig published = tcs.getVisualRecognitionConfig();
+		assertEquals(published.getNumOfTrafficScans(), published.getScanLengthInSeconds());
+		for (TrafficLightSystem tls : tcs.getTrafficLightSystems()) {
+			for (VisualRecognitionSystem vrs : tls.getVisualRecognitionSystems()) {
+				assertSame(published, vrs.getConfiguration());
+			}
+		}
+	}
+}